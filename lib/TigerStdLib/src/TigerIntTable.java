@@ -0,0 +1,124 @@
+/*
+ * The values of the Tiger type itable, a hash map from ints to ints (see
+ * the itable_ functions of TigerStdLib).
+ *
+ * As in TigerTable, the keys and values are kept in two arrays, with
+ * linear probing and removal by moving back what came after the key
+ * removed.  A place is free if its key is 0;  the key 0 itself, which
+ * would then be taken for a free place, is kept apart from the arrays.  A
+ * key's place is picked by a multiplicative hash, so that keys that are
+ * close together (as ints so often are) spread out over the arrays.
+ */
+
+public class TigerIntTable {
+
+	private int[] keys = new int[16];
+	private int[] values = new int[16];
+	private int size = 0;
+
+	private boolean hasZero = false;
+	private int zeroValue;
+
+	public int size() {
+		return size;
+	}
+
+	/*
+	 * The value of key, or absent if there is none
+	 */
+	public int get(int key, int absent) {
+		if (key == 0)
+			return (hasZero ? zeroValue : absent);
+		int i = find(key);
+		return (keys[i] == 0 ? absent : values[i]);
+	}
+
+	public void put(int key, int value) {
+		if (key == 0) {
+			if (!hasZero)
+				size++;
+			hasZero = true;
+			zeroValue = value;
+			return;
+		}
+
+		int i = find(key);
+		values[i] = value;
+		if (keys[i] == 0) {
+			keys[i] = key;
+			if (++size > keys.length / 2)
+				grow();
+		}
+	}
+
+	public void remove(int key) {
+		if (key == 0) {
+			if (hasZero)
+				size--;
+			hasZero = false;
+			return;
+		}
+
+		int i = find(key);
+		if (keys[i] == 0)
+			return;
+		size--;
+
+		// Move back any key that could not have gone where it is, had i
+		// been free
+		int mask = keys.length - 1;
+		for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+			int home = slot(keys[j]);
+			if (((j - home) & mask) >= ((j - i) & mask)) {
+				keys[i] = keys[j];
+				values[i] = values[j];
+				i = j;
+			}
+		}
+		keys[i] = 0;
+	}
+
+	public String toString() {
+		StringBuilder s = new StringBuilder("{");
+		if (hasZero)
+			s.append("0=").append(zeroValue);
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != 0) {
+				if (s.length() > 1)
+					s.append(", ");
+				s.append(keys[i]).append('=').append(values[i]);
+			}
+		}
+		return s.append('}').toString();
+	}
+
+	/*
+	 * The place of key (which is not 0), or where it would go
+	 */
+	private int find(int key) {
+		int mask = keys.length - 1;
+		int i = slot(key);
+		while (keys[i] != 0 && keys[i] != key)
+			i = (i + 1) & mask;
+		return i;
+	}
+
+	private int slot(int key) {
+		int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & (keys.length - 1);
+	}
+
+	private void grow() {
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new int[2 * oldKeys.length];
+		values = new int[2 * oldKeys.length];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != 0) {
+				int j = find(oldKeys[i]);
+				keys[j] = oldKeys[i];
+				values[j] = oldValues[i];
+			}
+		}
+	}
+}
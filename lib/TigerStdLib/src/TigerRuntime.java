@@ -0,0 +1,132 @@
+/*
+ * Support for the code tigerc generates, rather than part of the Tiger
+ * library:  Tiger programs cannot call these methods themselves.  Each does
+ * at once what the compiler would otherwise write a loop for, over a range
+ * lo..hi of an array (inclusive, and empty if hi < lo, as for a Tiger for
+ * loop), so that the work is done by the JDK's own intrinsics.
+ *
+ * An index out of range is an ArrayIndexOutOfBoundsException, as it would
+ * be from the loop, though it may come before the loop would have done any
+ * of its work.
+ */
+
+import java.util.Arrays;
+
+public class TigerRuntime {
+
+	// Array creation:  every element set to v
+
+	public static void fill(int[] a, int v) {
+		Arrays.fill(a, v);
+	}
+
+	public static void fill(Object[] a, Object v) {
+		Arrays.fill(a, v);
+	}
+
+	// for i := lo to hi do a[i] := v
+
+	public static void fill(int[] a, int lo, int hi, int v) {
+		if (lo <= hi)
+			Arrays.fill(a, lo, end(hi), v);
+	}
+
+	public static void fill(Object[] a, int lo, int hi, Object v) {
+		if (lo <= hi)
+			Arrays.fill(a, lo, end(hi), v);
+	}
+
+	// for i := lo to hi do dst[i + dOff] := src[i + sOff]
+
+	public static void copy(int[] dst, int dOff, int[] src, int sOff, int lo, int hi) {
+		if (lo > hi)
+			return;
+		if (dst == src && dOff > sOff && dOff - sOff <= hi - lo) {
+			// Each element copied is one the loop has written already
+			for (int i = lo; ; i++) {
+				dst[i + dOff] = src[i + sOff];
+				if (i == hi)
+					break;
+			}
+		} else {
+			System.arraycopy(src, lo + sOff, dst, lo + dOff, end(hi) - lo);
+		}
+	}
+
+	public static void copy(Object[] dst, int dOff, Object[] src, int sOff, int lo, int hi) {
+		if (lo > hi)
+			return;
+		if (dst == src && dOff > sOff && dOff - sOff <= hi - lo) {
+			for (int i = lo; ; i++) {
+				dst[i + dOff] = src[i + sOff];
+				if (i == hi)
+					break;
+			}
+		} else {
+			System.arraycopy(src, lo + sOff, dst, lo + dOff, end(hi) - lo);
+		}
+	}
+
+	// for i := lo to hi do s := s + a[i]
+
+	public static int sum(int[] a, int lo, int hi) {
+		if (lo > hi)
+			return 0;
+		check(a, lo, hi);
+		int s = 0;
+		for (int i = lo; i < hi; i++)
+			s += a[i];
+		return s + a[hi];
+	}
+
+	// for i := lo to hi do if a[i] = v then (...; break)
+	// (the first such i, or -1)
+
+	public static int indexOf(int[] a, int lo, int hi, int v) {
+		if (lo > hi)
+			return -1;
+		for (int i = lo; ; i++) {
+			if (a[i] == v)
+				return i;
+			if (i == hi)
+				return -1;
+		}
+	}
+
+	// for i := lo to hi do if a[i] <> b[i] then (...; break)
+	// (the first such i, or -1)
+
+	public static int mismatch(int[] a, int[] b, int lo, int hi) {
+		if (lo > hi)
+			return -1;
+		if (lo < 0)
+			throw new ArrayIndexOutOfBoundsException(lo);
+
+		// As far as both arrays go; past that, the loop would fail
+		int last = Math.min(hi, Math.min(a.length, b.length) - 1);
+		if (lo <= last) {
+			int i = Arrays.mismatch(a, lo, last + 1, b, lo, last + 1);
+			if (i >= 0)
+				return lo + i;
+		}
+		if (last < hi)
+			throw new ArrayIndexOutOfBoundsException(last + 1);
+		return -1;
+	}
+
+	/*
+	 * The end (exclusive) of a range whose last index is hi: one past it,
+	 * unless that would overflow, when an index out of range is all there
+	 * can be
+	 */
+	private static int end(int hi) {
+		if (hi == Integer.MAX_VALUE)
+			throw new ArrayIndexOutOfBoundsException(hi);
+		return hi + 1;
+	}
+
+	private static void check(int[] a, int lo, int hi) {
+		if (lo < 0 || hi >= a.length)
+			throw new ArrayIndexOutOfBoundsException(lo < 0 ? lo : hi);
+	}
+}
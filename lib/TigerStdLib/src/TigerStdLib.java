@@ -1,25 +1,208 @@
 
+/*
+ * The Tiger standard library, for the interpreter and for compiled code.
+ *
+ * Output goes to a large buffer, which is written out by flush(), by exit(),
+ * when the program ends, and before we wait for input (so that a prompt is
+ * seen).  Input is read through a buffer too, decoded in the platform's
+ * charset.  A string of one character (from chr() or getchar()) below 256
+ * is always the same object.
+ *
+ * readline(), readint() and eof() read from the same buffer as getchar(),
+ * so they can be mixed.  readfile() and readints() read a whole file at
+ * once, by mapping it into memory, and printints() writes out an array of
+ * int (a Tiger intarray) in one call.
+ *
+ * A Tiger program has a single thread, and so does this library:  nothing
+ * here is synchronized.  The one other thread that calls into it is the
+ * shutdown hook that flushes the output, which only runs once the program's
+ * thread has ended, or is waiting in System.exit() (from exit()).
+ *
+ * An error in reading the input or a file is an UncheckedIOException, which
+ * ends the program with the message of the IOException.
+ *
+ * The table_ functions are those of the type table, a map from strings to
+ * ints (see TigerTable), and the itable_ functions those of itable, a map
+ * from ints to ints (see TigerIntTable).
+ */
+
 public class TigerStdLib {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private static final StringBuilder out = new StringBuilder(BUFFER_SIZE);
+
+	private static final java.io.Reader in = new java.io.InputStreamReader(System.in);
+	private static final char[] inBuf = new char[BUFFER_SIZE];
+	private static int inPos = 0, inEnd = 0;
+
+	private static final long MAP_SIZE = 1 << 30; // (the most readints() maps at once)
+
+	private static final String[] CHARS = new String[256];
+
+	static {
+		for (int c = 0; c < CHARS.length; c++)
+			CHARS[c] = String.valueOf((char) c);
+		Runtime.getRuntime().addShutdownHook(new Thread(TigerStdLib::flush));
+	}
+
 	public static void print(String s) {
-		System.out.print(s);
+		out.append(s);
+		if (out.length() >= BUFFER_SIZE)
+			flush();
 	}
 
 	public static void printi(int i) {
-		System.out.print(i);
+		out.append(i);
+		if (out.length() >= BUFFER_SIZE)
+			flush();
 	}
 
 	public static void flush() {
+		if (out.length() > 0) {
+			System.out.append(out);
+			out.setLength(0);
+		}
 		System.out.flush();
 	}
 
+	/*
+	 * The next character of input, or "" at the end of it
+	 */
 	public static java.lang.String getchar() {
-		try {
-			char c = (char) System.in.read();
-			return "" + c;
+		if (!fill())
+			return "";
+		return chr(inBuf[inPos++]);
+	}
+
+	/*
+	 * The rest of the current line of input, without the end of line, or ""
+	 * at the end of input
+	 */
+	public static java.lang.String readline() {
+		StringBuilder line = null;
+		while (fill()) {
+			int start = inPos;
+			while (inPos < inEnd && inBuf[inPos] != '\n')
+				inPos++;
+			int end = inPos;
+			boolean done = (inPos < inEnd);
+			if (done)
+				inPos++;
+			if (line == null && done)
+				return new String(inBuf, start, trim(start, end) - start);
+			if (line == null)
+				line = new StringBuilder();
+			line.append(inBuf, start, end - start);
+			if (done)
+				break;
+		}
+		if (line == null)
+			return "";
+		if (line.length() > 0 && line.charAt(line.length() - 1) == '\r')
+			line.setLength(line.length() - 1);
+		return line.toString();
+	}
+
+	/*
+	 * The int at the start of the next token of input (a run of anything
+	 * but white space), or 0 if it does not start with one, or if there is
+	 * none.  The whole token is read, and the white space after it, so that
+	 * eof() is 1 after the last one;  at a terminal, then, this waits for
+	 * the line after the one the token ends.
+	 */
+	public static int readint() {
+		while (fill() && Character.isWhitespace(inBuf[inPos]))
+			inPos++;
+		boolean negative = fill() && inBuf[inPos] == '-';
+		if (negative)
+			inPos++;
+		int n = 0;
+		while (fill() && '0' <= inBuf[inPos] && inBuf[inPos] <= '9')
+			n = 10 * n + (inBuf[inPos++] - '0');
+		while (fill() && !Character.isWhitespace(inBuf[inPos]))
+			inPos++;
+		while (fill() && Character.isWhitespace(inBuf[inPos]))
+			inPos++;
+		return (negative ? -n : n);
+	}
+
+	/*
+	 * 1 if there is no more input, and 0 otherwise
+	 */
+	public static int eof() {
+		return (fill() ? 0 : 1);
+	}
+
+	/*
+	 * The whole of the file called name
+	 */
+	public static java.lang.String readfile(String name) {
+		try (java.nio.channels.FileChannel file = java.nio.channels.FileChannel.open(java.nio.file.Paths.get(name))) {
+			long size = file.size();
+			if (size > Integer.MAX_VALUE)
+				throw new java.io.IOException(name + ": file too large for a string");
+			java.nio.MappedByteBuffer bytes = file.map(java.nio.channels.FileChannel.MapMode.READ_ONLY, 0, size);
+			return java.nio.charset.Charset.defaultCharset().decode(bytes).toString();
+		} catch (java.io.IOException e) {
+			throw fail(e);
+		}
+	}
+
+	/*
+	 * The ints of the file called name, written in decimal and separated by
+	 * anything else
+	 */
+	public static int[] readints(String name) {
+		int[] a = new int[1024];
+		int count = 0;
+		try (java.nio.channels.FileChannel file = java.nio.channels.FileChannel.open(java.nio.file.Paths.get(name))) {
+			long size = file.size();
+			int n = 0;
+			boolean inInt = false, negative = false;
+			// A file may be larger than one buffer can map, and an int may
+			// straddle two of them
+			for (long at = 0; at < size; at += MAP_SIZE) {
+				java.nio.MappedByteBuffer bytes = file.map(java.nio.channels.FileChannel.MapMode.READ_ONLY, at,
+						Math.min(MAP_SIZE, size - at));
+				while (bytes.hasRemaining()) {
+					byte b = bytes.get();
+					if ('0' <= b && b <= '9') {
+						n = 10 * n + (b - '0');
+						inInt = true;
+						continue;
+					}
+					if (inInt) {
+						if (count == a.length)
+							a = java.util.Arrays.copyOf(a, 2 * count);
+						a[count++] = (negative ? -n : n);
+					}
+					n = 0;
+					inInt = false;
+					negative = (b == '-');
+				}
+			}
+			if (inInt) {
+				if (count == a.length)
+					a = java.util.Arrays.copyOf(a, count + 1);
+				a[count++] = (negative ? -n : n);
+			}
 		} catch (java.io.IOException e) {
-			System.err.println(e.getMessage());
-			e.printStackTrace();
-			throw new Error();
+			throw fail(e);
+		}
+		return java.util.Arrays.copyOf(a, count);
+	}
+
+	/*
+	 * Prints the elements of a, with sep between each two
+	 */
+	public static void printints(int[] a, String sep) {
+		for (int i = 0; i < a.length; i++) {
+			if (i > 0)
+				out.append(sep);
+			out.append(a[i]);
+			if (out.length() >= BUFFER_SIZE)
+				flush();
 		}
 	}
 
@@ -32,8 +215,9 @@ public class TigerStdLib {
 	}
 
 	public static java.lang.String chr(int x) {
-		String res = "" + (char) x;
-		return res;
+		if (0 <= x && x < CHARS.length)
+			return CHARS[x];
+		return String.valueOf((char) x);
 	}
 
 	public static int size(String s) {
@@ -52,7 +236,86 @@ public class TigerStdLib {
 		return (b==0?1:0);
 	}
 
+	public static TigerTable table_new() {
+		return new TigerTable();
+	}
+
+	/*
+	 * The value of key in t, or absent if it has none
+	 */
+	public static int table_get(TigerTable t, String key, int absent) {
+		return t.get(key, absent);
+	}
+
+	public static void table_put(TigerTable t, String key, int value) {
+		t.put(key, value);
+	}
+
+	public static void table_remove(TigerTable t, String key) {
+		t.remove(key);
+	}
+
+	public static int table_size(TigerTable t) {
+		return t.size();
+	}
+
+	public static TigerIntTable itable_new() {
+		return new TigerIntTable();
+	}
+
+	/*
+	 * The value of key in t, or absent if it has none
+	 */
+	public static int itable_get(TigerIntTable t, int key, int absent) {
+		return t.get(key, absent);
+	}
+
+	public static void itable_put(TigerIntTable t, int key, int value) {
+		t.put(key, value);
+	}
+
+	public static void itable_remove(TigerIntTable t, int key) {
+		t.remove(key);
+	}
+
+	public static int itable_size(TigerIntTable t) {
+		return t.size();
+	}
+
 	public static void exit(int code) {
+		flush();
 		System.exit(code);
 	}
+
+	/*
+	 * Whether there is input left in the buffer, which is refilled (once what
+	 * has been printed is written out) if it is empty
+	 */
+	private static boolean fill() {
+		if (inPos < inEnd)
+			return true;
+		flush();
+		try {
+			int n = in.read(inBuf, 0, inBuf.length);
+			if (n <= 0)
+				return false;
+			inPos = 0;
+			inEnd = n;
+			return true;
+		} catch (java.io.IOException e) {
+			throw fail(e);
+		}
+	}
+
+	/*
+	 * The end of a line of the input buffer from start to end, without a
+	 * carriage return
+	 */
+	private static int trim(int start, int end) {
+		return (end > start && inBuf[end - 1] == '\r' ? end - 1 : end);
+	}
+
+	private static java.io.UncheckedIOException fail(java.io.IOException e) {
+		return new java.io.UncheckedIOException(e);
+	}
 }
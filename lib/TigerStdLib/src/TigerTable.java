@@ -0,0 +1,104 @@
+/*
+ * The values of the Tiger type table, a hash map from strings to ints (see
+ * the table_ functions of TigerStdLib).
+ *
+ * The keys and values are kept in two arrays, with no object for an entry:
+ * a key is at the first free place after the one its hash code picks
+ * (linear probing), and a removal moves back whatever came after the key
+ * removed, so that no place is ever marked as deleted.  The arrays are
+ * never more than half full.
+ */
+
+public class TigerTable {
+
+	private String[] keys = new String[16];
+	private int[] values = new int[16];
+	private int size = 0;
+
+	public int size() {
+		return size;
+	}
+
+	/*
+	 * The value of key, or absent if there is none
+	 */
+	public int get(String key, int absent) {
+		int i = find(key);
+		return (keys[i] == null ? absent : values[i]);
+	}
+
+	public void put(String key, int value) {
+		int i = find(key);
+		if (keys[i] == null) {
+			keys[i] = key;
+			if (++size > keys.length / 2) {
+				values[i] = value;
+				grow();
+				return;
+			}
+		}
+		values[i] = value;
+	}
+
+	public void remove(String key) {
+		int i = find(key);
+		if (keys[i] == null)
+			return;
+		size--;
+
+		// Move back any key that could not have gone where it is, had i
+		// been free
+		int mask = keys.length - 1;
+		for (int j = (i + 1) & mask; keys[j] != null; j = (j + 1) & mask) {
+			int home = slot(keys[j]);
+			if (((j - home) & mask) >= ((j - i) & mask)) {
+				keys[i] = keys[j];
+				values[i] = values[j];
+				i = j;
+			}
+		}
+		keys[i] = null;
+	}
+
+	public String toString() {
+		StringBuilder s = new StringBuilder("{");
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != null) {
+				if (s.length() > 1)
+					s.append(", ");
+				s.append(keys[i]).append('=').append(values[i]);
+			}
+		}
+		return s.append('}').toString();
+	}
+
+	/*
+	 * The place of key, or where it would go
+	 */
+	private int find(String key) {
+		int mask = keys.length - 1;
+		int i = slot(key);
+		while (keys[i] != null && !keys[i].equals(key))
+			i = (i + 1) & mask;
+		return i;
+	}
+
+	private int slot(String key) {
+		int h = key.hashCode();
+		return (h ^ (h >>> 16)) & (keys.length - 1);
+	}
+
+	private void grow() {
+		String[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new String[2 * oldKeys.length];
+		values = new int[2 * oldKeys.length];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != null) {
+				int j = find(oldKeys[i]);
+				keys[j] = oldKeys[i];
+				values[j] = oldValues[i];
+			}
+		}
+	}
+}
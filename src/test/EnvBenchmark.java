@@ -0,0 +1,89 @@
+/*************************************************************************
+ **  tigerc/test/EnvBenchmark.java
+ **
+ **  Created:  10/18/2026
+ **
+ **  A microbenchmark for tigerc.semant.Env.  For each combination of
+ **  nesting depth and bindings per scope, it builds an environment of that
+ **  shape and reports the average cost of a lookup, both for a name bound in
+ **  the outermost scope (the worst case for a scope chain) and for a mix of
+ **  names from every level.  The "cold" figures re-enter a scope before every
+ **  round of lookups, which is what a visitor does at every let and call;
+ **  the "warm" ones repeat queries against an unchanged environment.
+ **
+ **  Usage:  java test.EnvBenchmark [max-depth [max-bindings]]
+ **
+ ************************************************************************/
+package test;
+
+import tigerc.semant.Env;
+import tigerc.util.Symbol;
+
+public class EnvBenchmark {
+    private static final int ROUNDS = 200000;
+    private static int sink; // keeps the JIT from discarding the lookups
+
+    public static void main(String[] args) {
+        int maxDepth = (args.length >= 1 ? Integer.parseInt(args[0]) : 64);
+        int maxBindings = (args.length >= 2 ? Integer.parseInt(args[1]) : 32);
+
+        // Warm up the JIT on a mid-sized shape before measuring anything
+        for (int i = 0; i < 5; i++)
+            measure(8, 4);
+
+        System.out.printf("%6s %9s %12s %12s %12s %12s%n", "depth",
+                "bindings", "outer cold", "outer warm", "mixed cold",
+                "mixed warm");
+        for (int depth = 1; depth <= maxDepth; depth *= 4) {
+            for (int n = 1; n <= maxBindings; n *= 2) {
+                double[] ns = measure(depth, n);
+                System.out.printf("%6d %9d %12.1f %12.1f %12.1f %12.1f%n",
+                        depth, n, ns[0], ns[1], ns[2], ns[3]);
+            }
+        }
+        if (sink == 42)
+            System.out.println();
+    }
+
+    /*
+     * Returns nanoseconds per lookup: {outer cold, outer warm, mixed cold,
+     * mixed warm}.
+     */
+    private static double[] measure(int depth, int bindings) {
+        Env<Integer> env = Env.instance_noparent();
+        Symbol[][] names = new Symbol[depth][bindings];
+        for (int d = 0; d < depth; d++) {
+            if (d > 0)
+                env.beginScope();
+            for (int b = 0; b < bindings; b++) {
+                names[d][b] = Symbol.sym("v" + d + "_" + b);
+                env.extend(names[d][b], d * bindings + b);
+            }
+        }
+
+        Symbol[] outer = names[0];
+        Symbol[] mixed = new Symbol[bindings];
+        for (int b = 0; b < bindings; b++)
+            mixed[b] = names[(b * 7) % depth][b];
+
+        return new double[] { time(env, outer, true), time(env, outer, false),
+                time(env, mixed, true), time(env, mixed, false) };
+    }
+
+    private static double time(Env<Integer> env, Symbol[] queries,
+            boolean cold) {
+        int acc = 0;
+        long start = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r++) {
+            if (cold) {
+                env.beginScope();
+                env.endScope();
+            }
+            for (Symbol x : queries)
+                acc += env.lookup(x);
+        }
+        long elapsed = System.nanoTime() - start;
+        sink += acc;
+        return (double) elapsed / ((long) ROUNDS * queries.length);
+    }
+}
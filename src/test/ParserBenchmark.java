@@ -0,0 +1,118 @@
+/*************************************************************************
+ **  tigerc/test/ParserBenchmark.java
+ **
+ **  Created:  10/18/2026
+ **
+ **  Compares the hand-written parser TigerRDParse against the CUP parser
+ **  TigerParse.  For each file, it first checks that the two produce the
+ **  same tree -- compared through AbsynBinaryWriter, whose output records
+ **  every node, symbol and position -- and then reports the best of several
+ **  timed runs of each, over the same pre-scanned TigerMappedLex tokens
+ **  (so that only parsing is measured) and from source text with TigerLex.
+ **
+ **  With no files, it generates a large program with long operator chains
+ **  and sequences, which would overflow the stack of a parser that recursed
+ **  on them.
+ **
+ **  Usage:  java test.ParserBenchmark [file.tig ...]
+ **
+ ************************************************************************/
+package test;
+
+import tigerc.syntax.absyn.IAbsyn;
+import tigerc.syntax.parse.*;
+import tigerc.util.AbsynBinaryWriter;
+import tigerc.util.ErrorMsg;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class ParserBenchmark {
+    private static final int RUNS = 7;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            byte[] text = generate(200000).getBytes(StandardCharsets.UTF_8);
+            run("<generated>", text);
+        }
+        for (String f : args)
+            run(f, java.nio.file.Files.readAllBytes(java.nio.file.Paths.get(f)));
+    }
+
+    private static void run(String name, byte[] text) throws Exception {
+        byte[] cup = tree(parse(false, new TigerLex(
+                new java.io.ByteArrayInputStream(text), new ErrorMsg(name))));
+        byte[] rd = tree(parse(true, mapped(text, name)));
+        if (!java.util.Arrays.equals(cup, rd)) {
+            System.out.println(name + ": TREES DIFFER");
+            return;
+        }
+
+        long cupTokens = Long.MAX_VALUE, rdTokens = Long.MAX_VALUE;
+        long cupText = Long.MAX_VALUE, rdText = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            TigerMappedLex lex = mapped(text, name);
+            long t0 = System.nanoTime();
+            parse(false, lex);
+            cupTokens = Math.min(cupTokens, System.nanoTime() - t0);
+
+            lex = mapped(text, name);
+            t0 = System.nanoTime();
+            parse(true, lex);
+            rdTokens = Math.min(rdTokens, System.nanoTime() - t0);
+
+            t0 = System.nanoTime();
+            parse(false, new TigerLex(new java.io.ByteArrayInputStream(text), new ErrorMsg(name)));
+            cupText = Math.min(cupText, System.nanoTime() - t0);
+
+            t0 = System.nanoTime();
+            parse(true, new TigerLex(new java.io.ByteArrayInputStream(text), new ErrorMsg(name)));
+            rdText = Math.min(rdText, System.nanoTime() - t0);
+        }
+
+        System.out.printf("%s: %d bytes, trees identical%n", name, text.length);
+        System.out.printf("  from tokens: cup %8.1f ms   rd %8.1f ms   (%.2fx)%n",
+                cupTokens / 1e6, rdTokens / 1e6, (double) cupTokens / rdTokens);
+        System.out.printf("  from text:   cup %8.1f ms   rd %8.1f ms   (%.2fx)%n",
+                cupText / 1e6, rdText / 1e6, (double) cupText / rdText);
+    }
+
+    private static IAbsyn parse(boolean rd, Lexer lexer) throws Exception {
+        ErrorMsg errorMsg = new ErrorMsg(null);
+        if (rd)
+            return (IAbsyn) new TigerRDParse(lexer, errorMsg).parse().value;
+        return (IAbsyn) new TigerParse(lexer, errorMsg).parse().value;
+    }
+
+    private static TigerMappedLex mapped(byte[] text, String name) {
+        return new TigerMappedLex(ByteBuffer.wrap(text), new ErrorMsg(name));
+    }
+
+    private static byte[] tree(IAbsyn prog) throws java.io.IOException {
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        AbsynBinaryWriter.write(prog, out);
+        return out.toByteArray();
+    }
+
+    /*
+     * A program of n statements, each assigning a long arithmetic chain, with
+     * a few thousand-term comparisons mixed in.
+     */
+    private static String generate(int n) {
+        StringBuilder b = new StringBuilder("let var x := 0\n    var a := array_init()\n");
+        b.append("    function array_init() : int = 1\nin\n");
+        for (int i = 0; i < n; i++) {
+            b.append(i == 0 ? "  " : ";\n  ");
+            if (i % 1000 == 0) {
+                b.append("if x");
+                for (int j = 0; j < 1000; j++)
+                    b.append(" + ").append(j);
+                b.append(" > 0 then x := -x");
+            } else {
+                b.append("x := x * ").append(i).append(" + (a - ").append(i % 7)
+                        .append(") / 3 - -x");
+            }
+        }
+        return b.append("\nend\n").toString();
+    }
+}
@@ -0,0 +1,118 @@
+/*************************************************************************
+ **  tigerc/test/SemantBenchmark.java
+ **
+ **  Created:  10/18/2026
+ **
+ **  Compares type checking with SemantV one function body at a time against
+ **  checking the bodies in parallel on a ForkJoinPool.  For each file, it
+ **  first checks that the two report the same errors, in the same order, and
+ **  find the same type, and then reports the best of several timed runs of
+ **  each.
+ **
+ **  With no files, it generates a program of some thousands of functions,
+ **  with nested functions and a type error in every seventh.
+ **
+ **  Usage:  java test.SemantBenchmark [-jobs N] [file.tig ...]
+ **
+ ************************************************************************/
+package test;
+
+import tigerc.semant.analysis.SemantV;
+import tigerc.syntax.absyn.IAbsyn;
+import tigerc.syntax.parse.*;
+import tigerc.util.ErrorMsg;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+
+public class SemantBenchmark {
+    private static final int RUNS = 7;
+
+    public static void main(String[] args) throws Exception {
+        int jobs = Runtime.getRuntime().availableProcessors();
+        int argi = 0;
+        if (args.length >= 2 && args[0].equals("-jobs")) {
+            jobs = Integer.parseInt(args[1]);
+            argi = 2;
+        }
+        ForkJoinPool pool = new ForkJoinPool(jobs);
+
+        boolean same = true;
+        if (argi == args.length)
+            same = run("<generated>", generate(4000), pool);
+        for (; argi < args.length; argi++)
+            same = run(args[argi], java.nio.file.Files.readAllBytes(java.nio.file.Paths.get(args[argi])), pool)
+                    && same;
+        if (!same)
+            System.exit(1);
+    }
+
+    private static boolean run(String name, byte[] text, ForkJoinPool pool) throws Exception {
+        IAbsyn prog = parse(text);
+        String[] type = new String[2];
+        String sequential = capture(() -> type[0] = check(prog, null));
+        String parallel = capture(() -> type[1] = check(prog, pool));
+        if (!sequential.equals(parallel) || !type[0].equals(type[1])) {
+            System.out.println(name + ": ERRORS DIFFER\n  sequential: " + type[0] + "\n" + sequential
+                    + "  parallel: " + type[1] + "\n" + parallel);
+            return false;
+        }
+
+        long seqTime = Long.MAX_VALUE, parTime = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            long t0 = System.nanoTime();
+            capture(() -> check(prog, null));
+            seqTime = Math.min(seqTime, System.nanoTime() - t0);
+
+            t0 = System.nanoTime();
+            capture(() -> check(prog, pool));
+            parTime = Math.min(parTime, System.nanoTime() - t0);
+        }
+
+        System.out.printf("%s: %d bytes, %d error lines, same in both%n", name, text.length,
+                sequential.isEmpty() ? 0 : sequential.split("\n").length);
+        System.out.printf("  sequential %8.1f ms   parallel (%d threads) %8.1f ms   (%.2fx)%n",
+                seqTime / 1e6, pool.getParallelism(), parTime / 1e6, (double) seqTime / parTime);
+        return true;
+    }
+
+    private static String check(IAbsyn prog, ForkJoinPool pool) {
+        ErrorMsg errorMsg = new ErrorMsg(null);
+        SemantV checker = (pool == null ? new SemantV(errorMsg) : new SemantV(errorMsg, pool));
+        prog.accept(checker);
+        return String.valueOf(checker.getType());
+    }
+
+    private static IAbsyn parse(byte[] text) throws Exception {
+        ErrorMsg errorMsg = new ErrorMsg(null);
+        Lexer lexer = new TigerMappedLex(ByteBuffer.wrap(text), errorMsg);
+        return (IAbsyn) new TigerRDParse(lexer, errorMsg).parse().value;
+    }
+
+    private static String capture(Runnable r) {
+        java.io.PrintStream err = System.err;
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        System.setErr(new java.io.PrintStream(out));
+        try {
+            r.run();
+        } finally {
+            System.setErr(err);
+        }
+        return out.toString();
+    }
+
+    private static byte[] generate(int functions) {
+        StringBuilder b = new StringBuilder("let\n  type list = {hd: int, tl: list}\n  var x := 0\n");
+        for (int i = 0; i < functions; i++) {
+            b.append("  function f").append(i).append("(n: int, l: list) : int =\n");
+            b.append("    let function g(k: int) : int = if k > n then k else g(k + 1) + l.hd\n");
+            b.append("        function h(s: string) : string = concat(s, ")
+                    .append(i % 7 == 0 ? "n" : "\"h\"").append(")\n");
+            b.append("        var y := n * ").append(i).append(" + g(0)\n");
+            b.append("    in if n > 0 then f").append((i * 7) % functions)
+                    .append("(n - 1, l.tl) + y else (x := size(h(\"a\")); y)\n    end\n");
+        }
+        return b.append("in\n  f1(3, nil)\nend\n").toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,276 @@
+/*************************************************************************
+ **  tigerc/test/TestCodegen.java
+ **
+ **  Created:  10/19/2026
+ **
+ **  Differential test of the JVM code generator.  Each sample program is
+ **  run by InterpV, with and without EscapeAnalysis, which gives what it
+ **  should print;  it is then compiled by JVMGeneratorV at -O0, -O1 and
+ **  -O2, assembled with Jasmin, and run, and each of those must print the
+ **  same, and fail (exit with a status other than 0) only if the
+ **  interpreter did.
+ **
+ **  Every run is a JVM of its own, so that each program starts with a
+ **  fresh TigerStdLib.  A sample name.tig is given name.in as its input, if
+ **  there is one, and no input otherwise;  if there is a name.out, the
+ **  interpreter must print just that.  The value of a sample, if it has
+ **  one, should be an int or a string, since the interpreter and compiled
+ **  code print other values differently.
+ **
+ **  With no files, it runs every sample in src/test/testcases/codegen.  Run
+ **  it from the top of the project, with the standard library (and the CUP
+ **  runtime) on the class path.
+ **
+ **  Usage:  java test.TestCodegen [-jasmin jasmin.jar] [file.tig | dir ...]
+ **
+ ************************************************************************/
+package test;
+
+import tigerc.syntax.absyn.IAbsyn;
+import tigerc.syntax.parse.*;
+import tigerc.util.ErrorMsg;
+import tigerc.semant.analysis.EscapeAnalysis;
+import tigerc.semant.analysis.Resolution;
+import tigerc.semant.analysis.SemantV;
+import tigerc.semant.analysis.types.INT;
+import tigerc.semant.analysis.types.STRING;
+import tigerc.semant.analysis.types.Type;
+import tigerc.semant.interp.InterpV;
+import tigerc.translate.ICodegen;
+import tigerc.translate.jvm.JVMGeneratorV;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+public class TestCodegen {
+    private static final String SAMPLES = "src/test/testcases/codegen";
+    private static final int TIMEOUT = 60; // (seconds, for each run)
+
+    private static String jasmin = "lib/jasmin.jar";
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 2 && args[0].equals("-interpret")) {
+            // (the interpreter's run, in a JVM of its own)
+            interpret(new File(args[args.length - 1]), args.length > 2);
+            return;
+        }
+
+        int argi = 0;
+        if (args.length >= 2 && args[0].equals("-jasmin")) {
+            jasmin = args[1];
+            argi = 2;
+        }
+        if (argi == args.length)
+            args = new String[] { SAMPLES };
+
+        List<File> samples = new java.util.ArrayList<>();
+        for (; argi < args.length; argi++) {
+            File f = new File(args[argi]);
+            if (f.isDirectory()) {
+                File[] programs = f.listFiles((dir, name) -> name.endsWith(".tig"));
+                java.util.Arrays.sort(programs);
+                samples.addAll(java.util.Arrays.asList(programs));
+            } else {
+                samples.add(f);
+            }
+        }
+
+        File work = Files.createTempDirectory("tigerc-test").toFile();
+        try {
+            for (File sample : samples)
+                run(sample, work);
+        } finally {
+            delete(work);
+        }
+        System.out.println(failures == 0 ? "All tests passed." : failures + " FAILURES");
+        if (failures > 0)
+            System.exit(1);
+    }
+
+    private static void run(File sample, File work) throws Exception {
+        String name = sample.getName();
+        String stem = name.substring(0, name.length() - 4);
+        File in = new File(sample.getParent(), stem + ".in"), out = new File(sample.getParent(), stem + ".out");
+        String cp = System.getProperty("java.class.path");
+        int before = failures;
+
+        Result want = exec(in, work, "-cp", cp, TestCodegen.class.getName(), "-interpret", sample.getPath());
+        if (out.exists() && !want.out.equals(read(out))) {
+            failures++;
+            System.out.println(name + ": the interpreter does not print what " + out.getName() + " holds");
+        }
+        check(name, "the interpreter with EscapeAnalysis", want,
+                exec(in, work, "-cp", cp, TestCodegen.class.getName(), "-interpret", "-escapes", sample.getPath()));
+
+        for (int level = 0; level <= 2; level++) {
+            File dir = new File(work, name + ".O" + level);
+            dir.mkdirs();
+            String cls;
+            try {
+                cls = compile(sample, level, dir);
+            } catch (Exception | Error e) {
+                cls = null;
+                e.printStackTrace(System.out);
+            }
+            if (cls == null) {
+                failures++;
+                System.out.println(name + ": -O" + level + " was not compiled");
+                continue;
+            }
+            check(name, "-O" + level, want, exec(in, work, "-cp", dir.getPath() + File.pathSeparator + cp, cls));
+        }
+        if (failures == before)
+            System.out.println(name + ": " + (want.failed ? "fails" : "runs") + " the same at -O0, -O1 and -O2");
+    }
+
+    private static void check(String name, String how, Result want, Result got) {
+        if (want.failed == got.failed && want.out.equals(got.out))
+            return;
+        failures++;
+        System.out.println(name + ": " + how + " differs from the interpreter");
+        if (want.failed != got.failed)
+            System.out.println("    " + (got.failed ? "fails:  " + firstLine(got.err) : "does not fail"));
+        String[] w = want.out.split("\n", -1), g = got.out.split("\n", -1);
+        for (int i = 0; i < Math.max(w.length, g.length); i++) {
+            String wi = (i < w.length ? w[i] : "<none>"), gi = (i < g.length ? g[i] : "<none>");
+            if (!wi.equals(gi)) {
+                System.out.println("    line " + (i + 1) + ":  \"" + gi + "\", not \"" + wi + "\"");
+                break;
+            }
+        }
+    }
+
+    /*
+     * Compiles sample at the given level into dir, and assembles it, giving
+     * the name of its main class, or null if that fails
+     */
+    private static String compile(File sample, int level, File dir) throws Exception {
+        String stem = sample.getName().substring(0, sample.getName().length() - 4);
+        String cls = Character.toUpperCase(stem.charAt(0)) + stem.substring(1);
+
+        ErrorMsg errorMsg = new ErrorMsg(sample.getName());
+        IAbsyn prog = parse(sample, errorMsg);
+        SemantV typechecker = new SemantV(errorMsg);
+        prog.accept(typechecker);
+        if (errorMsg.anyErrors)
+            return null;
+
+        List<String> command = new java.util.ArrayList<>(
+                java.util.Arrays.asList(java(), "-jar", jasmin, "-d", dir.getPath()));
+        File main = new File(dir, cls + ".j");
+        try (java.io.PrintWriter out = new java.io.PrintWriter(main)) {
+            ICodegen jvm = new JVMGeneratorV(out, typechecker.getResolution());
+            jvm.setOptimization(level);
+            jvm.setProg(prog, cls, "j");
+            jvm.emitPrelude("generated from " + sample.getName());
+            jvm.emitMain();
+            jvm.emitProcedures();
+            for (java.util.Map.Entry<String, String> c : jvm.classes().entrySet()) {
+                File f = new File(dir, c.getKey() + ".j");
+                Files.write(f.toPath(), c.getValue().getBytes(StandardCharsets.UTF_8));
+                command.add(f.getPath());
+            }
+        }
+        command.add(main.getPath());
+
+        Process p = new ProcessBuilder(command).redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+        p.waitFor();
+        return (new File(dir, cls + ".class").exists() ? cls : null);
+    }
+
+    /*
+     * Runs the interpreter on sample, printing its value (if it is an int
+     * or a string) as compiled code does
+     */
+    private static void interpret(File sample, boolean escapes) throws Exception {
+        ErrorMsg errorMsg = new ErrorMsg(sample.getName());
+        IAbsyn prog = parse(sample, errorMsg);
+        SemantV typechecker = new SemantV(errorMsg);
+        prog.accept(typechecker);
+        if (errorMsg.anyErrors)
+            System.exit(2);
+
+        Resolution res = typechecker.getResolution();
+        InterpV interp = (escapes ? new InterpV(errorMsg, res, new EscapeAnalysis(prog, res))
+                : new InterpV(errorMsg, res));
+        try {
+            prog.accept(interp);
+        } finally {
+            InterpV.flushOutput();
+        }
+        Type t = res.typeOf(prog);
+        if (t.coerceTo(INT.inst) || t.coerceTo(STRING.inst))
+            System.out.println(interp.getResult());
+    }
+
+    private static IAbsyn parse(File f, ErrorMsg errorMsg) throws Exception {
+        try (java.io.FileInputStream inp = new java.io.FileInputStream(f)) {
+            return (IAbsyn) new TigerParse(new TigerLex(inp, errorMsg), errorMsg).parse().value;
+        }
+    }
+
+    private static final class Result {
+        final boolean failed;
+        final String out, err;
+
+        Result(boolean failed, String out, String err) {
+            this.failed = failed;
+            this.out = out;
+            this.err = err;
+        }
+    }
+
+    /*
+     * Runs a JVM with the given arguments, and in as its input if it exists
+     */
+    private static Result exec(File in, File work, String... args) throws Exception {
+        File out = File.createTempFile("out", ".txt", work), err = File.createTempFile("err", ".txt", work);
+        List<String> command = new java.util.ArrayList<>();
+        command.add(java());
+        command.add("-Xss64m"); // (some samples recurse deeply at -O0)
+        command.addAll(java.util.Arrays.asList(args));
+
+        ProcessBuilder pb = new ProcessBuilder(command).redirectOutput(out).redirectError(err);
+        if (in.exists())
+            pb.redirectInput(in);
+        Process p = pb.start();
+        if (!in.exists())
+            p.getOutputStream().close();
+
+        boolean failed;
+        if (p.waitFor(TIMEOUT, java.util.concurrent.TimeUnit.SECONDS)) {
+            failed = (p.exitValue() != 0);
+        } else {
+            p.destroyForcibly().waitFor();
+            failed = true;
+            Files.write(err.toPath(), "timed out".getBytes(StandardCharsets.UTF_8));
+        }
+        return new Result(failed, read(out), read(err));
+    }
+
+    private static String java() {
+        return System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    }
+
+    private static String read(File f) throws java.io.IOException {
+        return new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static String firstLine(String s) {
+        int i = s.indexOf('\n');
+        return (i < 0 ? s : s.substring(0, i));
+    }
+
+    private static void delete(File f) {
+        File[] files = f.listFiles();
+        if (files != null) {
+            for (File g : files)
+                delete(g);
+        }
+        f.delete();
+    }
+}
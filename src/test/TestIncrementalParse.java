@@ -0,0 +1,206 @@
+/*************************************************************************
+ **  tigerc/test/TestIncrementalParse.java
+ **
+ **  Created:  10/18/2026
+ **
+ **  Differential test of tigerc.syntax.parse.TigerIncrementalParse.  It
+ **  applies a long series of random edits to a program -- changing and
+ **  extending literals, renaming identifiers, inserting declarations, and
+ **  deleting or inserting arbitrary text -- and after each one compares the
+ **  incrementally updated tree with the result of parsing the new text from
+ **  scratch, through AbsynBinaryWriter, which records every node, symbol
+ **  and position.  An edit that leaves a syntax error must make both fail;
+ **  it is then undone, through the incremental parser as well.
+ **
+ **  With no files, it edits a generated program of many functions.
+ **
+ **  Usage:  java test.TestIncrementalParse [-edits N] [-seed S] [file.tig ...]
+ **
+ ************************************************************************/
+package test;
+
+import tigerc.syntax.absyn.IAbsyn;
+import tigerc.syntax.parse.*;
+import tigerc.util.AbsynBinaryWriter;
+import tigerc.util.ErrorMsg;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class TestIncrementalParse {
+    private static final String[] SNIPPETS = { " + 1", "x", ";", " end", "let ",
+            "(", ")", " var q := 0 ", " function h() = 2 ", " type u = int ",
+            "\"s\"", "/* c */", " in ", "-", " := ", "7" };
+
+    private static java.util.Random random;
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        int edits = 5000;
+        long seed = 1;
+        int argi = 0;
+        for (; argi < args.length && args[argi].startsWith("-"); argi += 2) {
+            if (args[argi].equals("-edits"))
+                edits = Integer.parseInt(args[argi + 1]);
+            else
+                seed = Long.parseLong(args[argi + 1]);
+        }
+        random = new java.util.Random(seed);
+
+        // Syntax errors are expected; keep their messages out of the report
+        java.io.PrintStream err = System.err;
+        System.setErr(new java.io.PrintStream(java.io.OutputStream.nullOutputStream()));
+        try {
+            if (argi == args.length)
+                run("<generated>", generate(300), edits);
+            for (; argi < args.length; argi++)
+                run(args[argi], new String(java.nio.file.Files.readAllBytes(
+                        java.nio.file.Paths.get(args[argi])), StandardCharsets.UTF_8), edits);
+        } finally {
+            System.setErr(err);
+        }
+        System.out.println(failures == 0 ? "All tests passed." : failures + " FAILURES");
+        if (failures > 0)
+            System.exit(1);
+    }
+
+    private static void run(String name, String text, int edits) throws Exception {
+        TigerIncrementalParse inc = new TigerIncrementalParse(text, new ErrorMsg(name));
+        int incremental = 0, errors = 0;
+        long fragments = 0;
+
+        for (int n = 0; n < edits; n++) {
+            String before = inc.text();
+            int[] span = new int[2];
+            String replacement = mutation(before, span);
+            int offset = span[0], length = span[1];
+
+            IAbsyn got;
+            try {
+                got = inc.edit(offset, length, replacement);
+            } catch (Exception e) {
+                got = null;
+            }
+            byte[] want = full(inc.text());
+            if (!same(got, want)) {
+                failures++;
+                System.out.println(name + ": edit " + n + " (" + offset + "+" + length
+                        + " -> \"" + replacement + "\") differs from a full parse");
+            }
+
+            if (want == null) {
+                // Put it back, so the program stays mostly valid
+                errors++;
+                try {
+                    inc.edit(offset, replacement.length(), before.substring(offset, offset + length));
+                } catch (Exception e) {
+                    failures++;
+                    System.out.println(name + ": undoing edit " + n + " failed");
+                    inc = new TigerIncrementalParse(before, new ErrorMsg(name));
+                }
+                if (!same(inc.tree(), full(before))) {
+                    failures++;
+                    System.out.println(name + ": undoing edit " + n + " differs from a full parse");
+                }
+            } else if (inc.lastReparsedLength() < inc.text().length()) {
+                incremental++;
+                fragments += inc.lastReparsedLength();
+            }
+        }
+
+        System.out.printf("%s: %d edits (%d with syntax errors), %d reparsed "
+                + "incrementally (%.0f chars on average, of %d)%n", name, edits,
+                errors, incremental, (incremental == 0 ? 0.0 : (double) fragments / incremental),
+                inc.text().length());
+    }
+
+    /*
+     * Picks a random edit of text, setting span to its offset and length and
+     * returning the replacement text.
+     */
+    private static String mutation(String text, int[] span) {
+        int p = random.nextInt(text.length() + 1);
+        span[0] = p;
+        span[1] = 0;
+        switch (random.nextInt(6)) {
+        case 0: { // change a number
+            int i = find(text, p, "0123456789");
+            if (i < 0)
+                break;
+            span[0] = i;
+            span[1] = 1;
+            return Integer.toString(random.nextInt(1000));
+        }
+        case 1: { // extend a number
+            int i = find(text, p, "0123456789");
+            if (i < 0)
+                break;
+            span[0] = i + 1;
+            return " * 2";
+        }
+        case 2: { // add a declaration in front of another
+            String[] keywords = { "function ", "var ", "type " };
+            int i = text.indexOf(keywords[random.nextInt(3)], p);
+            if (i < 0)
+                break;
+            span[0] = i;
+            return SNIPPETS[7 + random.nextInt(3)].substring(1);
+        }
+        case 3: // delete a little
+            span[1] = Math.min(text.length() - p, 1 + random.nextInt(6));
+            return "";
+        default:
+            break;
+        }
+        return SNIPPETS[random.nextInt(SNIPPETS.length)];
+    }
+
+    private static int find(String text, int from, String chars) {
+        for (int i = from; i < text.length(); i++) {
+            if (chars.indexOf(text.charAt(i)) >= 0)
+                return i;
+        }
+        return -1;
+    }
+
+    /*
+     * The binary form of the tree for text, parsed from scratch, or null if
+     * it has a syntax error.
+     */
+    private static byte[] full(String text) {
+        try {
+            ErrorMsg errorMsg = new ErrorMsg(null);
+            Lexer lexer = new TigerMappedLex(
+                    ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)), errorMsg);
+            return bytes((IAbsyn) new TigerRDParse(lexer, errorMsg).parse().value);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static boolean same(IAbsyn got, byte[] want) throws java.io.IOException {
+        if (got == null || want == null)
+            return got == null && want == null;
+        return java.util.Arrays.equals(bytes(got), want);
+    }
+
+    private static byte[] bytes(IAbsyn prog) throws java.io.IOException {
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        AbsynBinaryWriter.write(prog, out);
+        return out.toByteArray();
+    }
+
+    private static String generate(int functions) {
+        StringBuilder b = new StringBuilder("let\n  type list = {hd: int, tl: list}\n  var x := 0\n");
+        for (int i = 0; i < functions; i++) {
+            b.append("  function f").append(i).append("(n: int) : int =\n");
+            b.append("    let var y := n * ").append(i).append(" + 1\n");
+            b.append("        type t = array of int\n");
+            b.append("    in if n > 0 then f").append(i).append("(n - 1) + y else (x := y; ")
+                    .append(i).append(")\n    end\n");
+            if (i % 10 == 9)
+                b.append("  var v").append(i).append(" := \"s").append(i).append("\"\n");
+        }
+        return b.append("in\n  f1(3)\nend\n").toString();
+    }
+}
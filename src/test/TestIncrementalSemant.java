@@ -0,0 +1,242 @@
+/*************************************************************************
+ **  tigerc/test/TestIncrementalSemant.java
+ **
+ **  Created:  10/18/2026
+ **
+ **  Differential test of tigerc.semant.analysis.IncrementalSemant.  It edits
+ **  a program through TigerIncrementalParse -- changing literals to strings,
+ **  calling other functions, changing the result and parameter types of
+ **  functions and the definitions of types, inserting declarations, and
+ **  deleting text -- and after each edit that parses, checks the tree with
+ **  IncrementalSemant and compares its diagnostics and type with those of
+ **  a new SemantV on the same text parsed from scratch.  Most edits are
+ **  undone again (and checked again), so that the program stays mostly
+ **  sound.
+ **
+ **  With no files, it edits a generated program of many functions.
+ **
+ **  Usage:  java test.TestIncrementalSemant [-edits N] [-seed S] [file.tig ...]
+ **
+ ************************************************************************/
+package test;
+
+import tigerc.semant.analysis.IncrementalSemant;
+import tigerc.semant.analysis.SemantV;
+import tigerc.syntax.absyn.IAbsyn;
+import tigerc.syntax.parse.*;
+import tigerc.util.ErrorMsg;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class TestIncrementalSemant {
+    private static final String[][] REWRITES = { { ": int =", ": string =" },
+            { "(n: int)", "(n: string)" }, { "array of int", "array of string" },
+            { "array of int", "int" }, { "hd: int", "hd: string" }, { "tl: list", "tl: int" },
+            { "x := y", "x := \"y\"" }, { "type t = ", "type t = list type u = " } };
+
+    private static java.util.Random random;
+    private static int failures = 0;
+    private static long runs, checked, reused, incTime, fullTime;
+
+    public static void main(String[] args) throws Exception {
+        int edits = 2000;
+        long seed = 1;
+        int argi = 0;
+        for (; argi < args.length && args[argi].startsWith("-"); argi += 2) {
+            if (args[argi].equals("-edits"))
+                edits = Integer.parseInt(args[argi + 1]);
+            else
+                seed = Long.parseLong(args[argi + 1]);
+        }
+        random = new java.util.Random(seed);
+
+        if (argi == args.length)
+            run("<generated>", generate(200), edits);
+        for (; argi < args.length; argi++)
+            run(args[argi], new String(java.nio.file.Files.readAllBytes(
+                    java.nio.file.Paths.get(args[argi])), StandardCharsets.UTF_8), edits);
+
+        System.out.println(failures == 0 ? "All tests passed." : failures + " FAILURES");
+        if (failures > 0)
+            System.exit(1);
+    }
+
+    private static void run(String name, String text, int edits) throws Exception {
+        TigerIncrementalParse parse = new TigerIncrementalParse(text, quiet());
+        IncrementalSemant semant = new IncrementalSemant();
+        semant.check(parse.tree(), parse.takeChanges(), quiet());
+        runs = checked = reused = incTime = fullTime = 0;
+
+        for (int n = 0; n < edits; n++) {
+            String before = parse.text();
+            int[] span = new int[2];
+            String replacement = mutation(before, span);
+            if (!edit(parse, span[0], span[1], replacement))
+                continue;
+            compare(name + ": edit " + n + " (" + span[0] + "+" + span[1] + " -> \""
+                    + replacement + "\")", parse, semant);
+
+            // Most are undone, so that the program stays mostly sound
+            if (random.nextInt(4) > 0) {
+                edit(parse, span[0], replacement.length(), before.substring(span[0], span[0] + span[1]));
+                compare(name + ": undoing edit " + n, parse, semant);
+            }
+        }
+
+        System.out.printf("%s: %d checks, %.1f units checked and %.1f reused on average; "
+                + "%.2f ms incremental, %.2f ms in full%n", name, runs,
+                (double) checked / Math.max(runs, 1), (double) reused / Math.max(runs, 1),
+                incTime / 1e6 / Math.max(runs, 1), fullTime / 1e6 / Math.max(runs, 1));
+    }
+
+    /*
+     * Checks the tree of parse incrementally, and its text from scratch, and
+     * reports any difference.
+     */
+    private static void compare(String what, TigerIncrementalParse parse, IncrementalSemant semant)
+            throws Exception {
+        String[] type = new String[2];
+        long t0 = System.nanoTime();
+        String got = capture(() -> type[0] = String.valueOf(
+                semant.check(parse.tree(), parse.takeChanges(), new ErrorMsg(null))));
+        incTime += System.nanoTime() - t0;
+
+        IAbsyn fresh = full(parse.text());
+        SemantV checker = new SemantV(new ErrorMsg(null));
+        t0 = System.nanoTime();
+        String want = capture(() -> {
+            fresh.accept(checker);
+            type[1] = String.valueOf(checker.getType());
+        });
+        fullTime += System.nanoTime() - t0;
+
+        if (!got.equals(want) || !java.util.Objects.equals(type[0], type[1])) {
+            failures++;
+            System.out.println(what + " checks differently:\n  incremental: " + type[0] + "\n" + got
+                    + "  full: " + type[1] + "\n" + want);
+        }
+        runs++;
+        checked += semant.checkedUnits();
+        reused += semant.reusedUnits();
+    }
+
+    /*
+     * Applies an edit, returning false (after undoing it) if it leaves a
+     * syntax error.
+     */
+    private static boolean edit(TigerIncrementalParse parse, int offset, int length, String replacement)
+            throws Exception {
+        String old = parse.text().substring(offset, offset + length);
+        java.io.PrintStream err = System.err;
+        System.setErr(new java.io.PrintStream(java.io.OutputStream.nullOutputStream()));
+        try {
+            parse.edit(offset, length, replacement);
+            return true;
+        } catch (Exception e) {
+            parse.edit(offset, replacement.length(), old);
+            return false;
+        } finally {
+            System.setErr(err);
+        }
+    }
+
+    /*
+     * Picks a random edit of text, setting span to its offset and length and
+     * returning the replacement text.
+     */
+    private static String mutation(String text, int[] span) {
+        int p = random.nextInt(text.length());
+        span[0] = p;
+        span[1] = 0;
+        switch (random.nextInt(5)) {
+        case 0: { // a number becomes a string
+            int i = p;
+            while (i < text.length() && !Character.isDigit(text.charAt(i)))
+                i++;
+            if (i == text.length() || (i > 0 && Character.isLetter(text.charAt(i - 1))))
+                break;
+            span[0] = i;
+            span[1] = 1;
+            return "\"" + text.charAt(i) + "\"";
+        }
+        case 1: { // call another function
+            int i = text.indexOf("f", p);
+            int j = i + 1;
+            while (j < text.length() && Character.isDigit(text.charAt(j)))
+                j++;
+            if (i < 0 || j == i + 1 || text.charAt(j) != '(')
+                break;
+            span[0] = i;
+            span[1] = j - i;
+            return "f" + random.nextInt(250);
+        }
+        case 2: { // change a type
+            String[] r = REWRITES[random.nextInt(REWRITES.length)];
+            int i = text.indexOf(r[0], p);
+            if (i < 0)
+                break;
+            span[0] = i;
+            span[1] = r[0].length();
+            return r[1];
+        }
+        case 3: { // declare something in front of a variable
+            int i = text.indexOf("var ", p);
+            if (i < 0)
+                break;
+            span[0] = i;
+            return (random.nextBoolean() ? "var x := \"shadow\" " : "type list = int ");
+        }
+        default:
+            break;
+        }
+        span[1] = Math.min(text.length() - p, 1 + random.nextInt(4));
+        return "";
+    }
+
+    private static String capture(Runnable r) {
+        java.io.PrintStream err = System.err;
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        System.setErr(new java.io.PrintStream(out));
+        try {
+            r.run();
+        } catch (RuntimeException e) {
+            // SemantV has a few; they should happen alike
+            System.err.println(e.getClass().getName());
+        } finally {
+            System.setErr(err);
+        }
+        return out.toString();
+    }
+
+    private static IAbsyn full(String text) throws Exception {
+        ErrorMsg errorMsg = quiet();
+        Lexer lexer = new TigerMappedLex(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)), errorMsg);
+        return (IAbsyn) new TigerRDParse(lexer, errorMsg).parse().value;
+    }
+
+    private static ErrorMsg quiet() {
+        return new ErrorMsg(null) {
+            @Override
+            public void error(int col, String msg) {
+                this.anyErrors = true;
+            }
+        };
+    }
+
+    private static String generate(int functions) {
+        StringBuilder b = new StringBuilder("let\n  type list = {hd: int, tl: list}\n  var x := 0\n");
+        for (int i = 9; i < functions; i += 10)
+            b.append("  var v").append(i).append(" := \"s").append(i).append("\"\n");
+        for (int i = 0; i < functions; i++) {
+            b.append("  function f").append(i).append("(n: int) : int =\n");
+            b.append("    let var y := n * ").append(i).append(" + 1\n");
+            b.append("        type t = array of int\n");
+            b.append("        var l : list := list{hd = y, tl = nil}\n");
+            b.append("    in if n > 0 then f").append((i * 7) % functions).append("(n - 1) + l.hd")
+                    .append(" else (x := y; let var a := t[2] of ").append(i)
+                    .append(" in a[1] end)\n    end\n");
+        }
+        return b.append("in\n  f1(3)\nend\n").toString();
+    }
+}
@@ -17,6 +17,7 @@ import tigerc.syntax.absyn.*;
 
 import tigerc.util.ErrorMsg;
 import tigerc.util.AbsynPrintVisitor;
+import tigerc.semant.analysis.SemantV;
 import tigerc.semant.interp.InterpV;
 import tigerc.semant.interp.values.IValue;
 
@@ -38,8 +39,14 @@ public class TigerInterpreter {
                 prog.accept(prettyprint); // "call prettyprint(prog)"
                 System.out.println();
 
-                InterpV interpreter = new InterpV(errorMsg);
+                SemantV typechecker = new SemantV(errorMsg);
+                prog.accept(typechecker);
+                if (errorMsg.anyErrors)
+                    continue;
+
+                InterpV interpreter = new InterpV(errorMsg, typechecker.getResolution());
                 prog.accept(interpreter);
+                InterpV.flushOutput();
                 IValue val = interpreter.getResult();
                 System.out.println(val);
             }
@@ -0,0 +1,388 @@
+/*************************************************************************
+ **  tigerc/BuildCache.java
+ **
+ **  Created:  10/18/2026
+ **
+ **  A content-addressed, on-disk cache of compiler output.  The key for a
+ **  compilation is a SHA-256 digest of everything the output depends on:
+ **  the source text, the compiler itself (every class of the tigerc
+ **  packages, by name and content, whether they are in a jar or a
+ **  directory), the signatures of the methods in TigerStdLib, the name of
+ **  the target class, and any code generation options.  The files generated
+ **  under that key are kept in a directory of the same name inside the
+ **  cache directory, along with the report of what the code generator did
+ **  (its statistics), which a hit prints again.
+ **
+ **  A hit copies the cached files to the output directory, so that TigerC
+ **  never has to parse, type check, or generate code for a source file it
+ **  has seen before.  Each hit or store touches the entry's directory; when
+ **  the cache grows beyond its size bound, the least recently used entries
+ **  are deleted.  The number of hits and misses is kept in the file "stats"
+ **  at the top of the cache directory.
+ **
+ ************************************************************************/
+
+package tigerc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+public class BuildCache {
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final String STATS_FILE = "stats";
+    private static final String REPORT_FILE = "report"; // (in each entry)
+    private static final String COMPILER_PACKAGE = "tigerc/";
+    private static final String STDLIB_CLASS = "TigerStdLib";
+
+    private final File dir;
+    private final long maxBytes;
+
+    /**
+     * Returns the default location of the cache: the directory named by the
+     * TIGERC_CACHE environment variable, if set, and otherwise .tigerc/cache
+     * in the user's home directory.
+     */
+    public static File defaultDirectory() {
+        String env = System.getenv("TIGERC_CACHE");
+        if (env != null && !env.isEmpty())
+            return new File(env);
+        return new File(new File(System.getProperty("user.home"), ".tigerc"),
+                "cache");
+    }
+
+    public BuildCache(File dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Computes the cache key for a compilation of source into the class
+     * tgtClassName.
+     *
+     * @param source
+     *            - the contents of the source file (the buffer's position is
+     *            not changed)
+     * @param tgtClassName
+     *            - name of the class the code will define
+     * @param options
+     *            - anything else that affects the generated code
+     * @return a hex string naming the cache entry, or null if the
+     *         compiler's own classes cannot be read, in which case nothing
+     *         should be cached
+     */
+    public static String key(java.nio.ByteBuffer source, String tgtClassName,
+            List<String> options) {
+        String compiler = compilerDigest();
+        if (compiler == null)
+            return null;
+        MessageDigest md = sha256();
+
+        // Each component is length-prefixed, so that no two different
+        // combinations can produce the same stream of bytes
+        update(md, compiler);
+        update(md, stdLibSignatures());
+        update(md, tgtClassName);
+        for (String o : options)
+            update(md, o);
+        md.update(longBytes(source.remaining()));
+        md.update(source.duplicate());
+        return hex(md);
+    }
+
+    /**
+     * If there is an entry for key, copies its files into outDir and returns
+     * the list of files written. Otherwise, returns null. Either way, the
+     * outcome is counted in the statistics.
+     */
+    public List<File> fetch(String key, File outDir) throws IOException {
+        File entry = new File(this.dir, key);
+        File[] files = entry.listFiles();
+        if (files == null || files.length == 0) {
+            count(false);
+            return null;
+        }
+
+        List<File> written = new java.util.ArrayList<>();
+        for (File f : files) {
+            if (f.getName().equals(REPORT_FILE))
+                continue;
+            File out = new File(outDir, f.getName());
+            Files.copy(f.toPath(), out.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            written.add(out);
+        }
+        touch(entry);
+        count(true);
+        return written;
+    }
+
+    /**
+     * Returns the report stored with the entry for key, or "" if there is
+     * none.
+     */
+    public String report(String key) {
+        try {
+            return new String(Files.readAllBytes(
+                    new File(new File(this.dir, key), REPORT_FILE).toPath()),
+                    StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    /**
+     * Records the output files of a compilation under key, with the report
+     * to print again on a hit, then evicts least recently used entries until
+     * the cache is within its size bound. Failure to store is not an error
+     * for the compilation, so I/O problems are reported and otherwise
+     * ignored.
+     */
+    public void store(String key, List<File> outputs, String report) {
+        File entry = new File(this.dir, key);
+        File tmp = new File(this.dir, key + ".tmp" + System.nanoTime());
+        try {
+            Files.createDirectories(tmp.toPath());
+            for (File f : outputs) {
+                Files.copy(f.toPath(), new File(tmp, f.getName()).toPath());
+            }
+            Files.write(new File(tmp, REPORT_FILE).toPath(),
+                    report.getBytes(StandardCharsets.UTF_8));
+            // Publish the entry all at once, so that a concurrent build never
+            // sees a partial one
+            if (!tmp.renameTo(entry)) {
+                deleteTree(tmp);
+            }
+            touch(entry);
+            evict();
+        } catch (IOException e) {
+            System.err.println("warning: could not store in build cache: " + e);
+            deleteTree(tmp);
+        }
+    }
+
+    /**
+     * Returns a one-line summary of the cache's statistics and size.
+     */
+    public String statistics() {
+        long[] stats = readStats();
+        long total = stats[0] + stats[1];
+        long bytes = 0;
+        int entries = 0;
+        File[] all = this.dir.listFiles(File::isDirectory);
+        if (all != null) {
+            for (File e : all) {
+                bytes += sizeOf(e);
+                entries++;
+            }
+        }
+        return String.format(
+                "build cache %s: %d hits, %d misses (%.1f%% hit rate), %d entries, %d of %d bytes",
+                this.dir, stats[0], stats[1],
+                (total == 0 ? 0.0 : 100.0 * stats[0] / total), entries, bytes,
+                this.maxBytes);
+    }
+
+    /*************************************************************************
+     ***** private utility methods
+     ****************************/
+
+    /*
+     * A digest of every class file of the tigerc packages, found where
+     * BuildCache itself was loaded from (a jar, or the top of a directory of
+     * classes), or null if they cannot be read.  Any change to the compiler
+     * that is built changes it; a rebuild that changes nothing does not.
+     */
+    private static String compilerDigest() {
+        return CompilerDigest.VALUE;
+    }
+
+    private static final class CompilerDigest {
+        // (computed once, when first asked for)
+        static final String VALUE = compute();
+
+        private static String compute() {
+            try {
+                java.security.CodeSource src = BuildCache.class
+                        .getProtectionDomain().getCodeSource();
+                if (src == null)
+                    return null;
+                File where = new File(src.getLocation().toURI());
+                java.util.SortedMap<String, byte[]> classes = new java.util.TreeMap<>();
+                if (where.isDirectory()) {
+                    java.nio.file.Path top = where.toPath();
+                    try (java.util.stream.Stream<java.nio.file.Path> files = Files
+                            .walk(top.resolve(COMPILER_PACKAGE))) {
+                        for (java.nio.file.Path f : (Iterable<java.nio.file.Path>) files::iterator) {
+                            String name = top.relativize(f).toString()
+                                    .replace(File.separatorChar, '/');
+                            if (name.endsWith(".class"))
+                                classes.put(name, Files.readAllBytes(f));
+                        }
+                    }
+                } else {
+                    try (java.util.jar.JarFile jar = new java.util.jar.JarFile(where)) {
+                        for (java.util.jar.JarEntry e : java.util.Collections.list(jar.entries())) {
+                            String name = e.getName();
+                            if (name.startsWith(COMPILER_PACKAGE) && name.endsWith(".class")) {
+                                try (java.io.InputStream in = jar.getInputStream(e)) {
+                                    classes.put(name, in.readAllBytes());
+                                }
+                            }
+                        }
+                    }
+                }
+                if (classes.isEmpty())
+                    return null;
+
+                MessageDigest md = sha256();
+                for (java.util.Map.Entry<String, byte[]> c : classes.entrySet()) {
+                    update(md, c.getKey());
+                    md.update(longBytes(c.getValue().length));
+                    md.update(c.getValue());
+                }
+                return "tigerc-" + hex(md);
+            } catch (IOException | java.net.URISyntaxException | RuntimeException e) {
+                return null;
+            }
+        }
+    }
+
+    /*
+     * The public static methods of TigerStdLib are exactly the externals that
+     * generated code may call, so a change to any of their signatures must
+     * invalidate the cache.
+     */
+    private static String stdLibSignatures() {
+        try {
+            List<String> sigs = new java.util.ArrayList<>();
+            for (java.lang.reflect.Method m : Class.forName(STDLIB_CLASS)
+                    .getMethods()) {
+                if (java.lang.reflect.Modifier.isStatic(m.getModifiers()))
+                    sigs.add(m.toGenericString());
+            }
+            java.util.Collections.sort(sigs);
+            return String.join("\n", sigs);
+        } catch (ClassNotFoundException e) {
+            return "";
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new Error("SHA-256 is not available", e);
+        }
+    }
+
+    private static String hex(MessageDigest md) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : md.digest())
+            hex.append(String.format("%02x", b & 0xff));
+        return hex.toString();
+    }
+
+    private static void update(MessageDigest md, String s) {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        md.update(longBytes(b.length));
+        md.update(b);
+    }
+
+    private static byte[] longBytes(long n) {
+        return java.nio.ByteBuffer.allocate(Long.BYTES).putLong(n).array();
+    }
+
+    private static void touch(File entry) {
+        entry.setLastModified(System.currentTimeMillis());
+    }
+
+    private void evict() {
+        File[] entries = this.dir.listFiles(
+                f -> f.isDirectory() && !f.getName().contains(".tmp"));
+        if (entries == null)
+            return;
+
+        long[] sizes = new long[entries.length];
+        long total = 0;
+        for (int i = 0; i < entries.length; i++) {
+            sizes[i] = sizeOf(entries[i]);
+            total += sizes[i];
+        }
+        if (total <= this.maxBytes)
+            return;
+
+        Integer[] order = new Integer[entries.length];
+        long[] used = new long[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            order[i] = i;
+            used[i] = entries[i].lastModified();
+        }
+        java.util.Arrays.sort(order, (a, b) -> Long.compare(used[a], used[b]));
+
+        for (int i = 0; i < order.length && total > this.maxBytes; i++) {
+            deleteTree(entries[order[i]]);
+            total -= sizes[order[i]];
+        }
+    }
+
+    private static long sizeOf(File entry) {
+        long n = 0;
+        File[] files = entry.listFiles();
+        if (files != null) {
+            for (File f : files)
+                n += f.length();
+        }
+        return n;
+    }
+
+    private static void deleteTree(File f) {
+        File[] files = f.listFiles();
+        if (files != null) {
+            for (File g : files)
+                deleteTree(g);
+        }
+        f.delete();
+    }
+
+    /*
+     * stats[0] is the number of hits, stats[1] the number of misses.
+     */
+    private long[] readStats() {
+        long[] stats = new long[2];
+        try {
+            List<String> lines = Files.readAllLines(
+                    new File(this.dir, STATS_FILE).toPath(),
+                    StandardCharsets.UTF_8);
+            for (String line : lines) {
+                String[] kv = line.trim().split("\\s+");
+                if (kv.length == 2 && kv[0].equals("hits"))
+                    stats[0] = Long.parseLong(kv[1]);
+                else if (kv.length == 2 && kv[0].equals("misses"))
+                    stats[1] = Long.parseLong(kv[1]);
+            }
+        } catch (IOException | NumberFormatException e) {
+            // no statistics yet
+        }
+        return stats;
+    }
+
+    private void count(boolean hit) {
+        try {
+            Files.createDirectories(this.dir.toPath());
+            long[] stats = readStats();
+            stats[hit ? 0 : 1]++;
+            Files.write(new File(this.dir, STATS_FILE).toPath(),
+                    ("hits " + stats[0] + "\nmisses " + stats[1] + "\n")
+                            .getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // statistics are advisory only
+        }
+    }
+}
@@ -6,6 +6,31 @@
  **  Last Modified: 04/21/2018
  **
  **  Driver for the tigerc compiler. 
+ **
+ **  Usage:  java tigerc.TigerC [options] [file.tig | file.tast]
+ **
+ **  A .tast file holds a program that has already been parsed, in the binary
+ **  form written by tigerc.util.AbsynBinaryWriter.  It is loaded directly,
+ **  without running the lexer or parser.
+ **
+ **  Options:
+ **     -emit-ast          also write the parsed program to file.tast
+ **     -lexer mapped      scan a memory-mapped copy of the input with
+ **                        TigerMappedLex, rather than with TigerLex
+ **     -parser rd         parse with the hand-written TigerRDParse, rather
+ **                        than with the CUP parser TigerParse
+ **     -no-cache          always compile, and don't record the output
+ **     -cache-dir DIR     keep the build cache in DIR
+ **     -cache-size BYTES  bound on the size of the build cache
+ **     -cache-stats       print build cache statistics
+ **     -jobs N            type-check function bodies on N threads
+ **     -O0, -O1, -O2      how much to optimize the generated code (by
+ **                        default, -O2); see JVMGeneratorV.setOptimization
+ **
+ **  Output for a file that has been compiled before (by the same build of
+ **  the compiler, against the same standard library) is taken from the
+ **  build cache, and so is the report of the code generator's statistics.
+ **  See BuildCache.
  ** 
  ************************************************************************/
 
@@ -13,14 +38,17 @@ package tigerc;
 
 import tigerc.syntax.parse.*;
 import tigerc.syntax.absyn.*;
+import tigerc.util.AbsynBinaryReader;
+import tigerc.util.AbsynBinaryWriter;
 import tigerc.util.AbsynPrintVisitor;
 import tigerc.util.ErrorMsg;
+import tigerc.util.Symbol;
 import tigerc.semant.analysis.SemantV;
 import tigerc.translate.*;
 import tigerc.translate.jvm.JVMGeneratorV;
 
 import java.io.InputStream;
-import java.io.FileInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.PrintWriter;
 
@@ -28,6 +56,52 @@ public class TigerC {
     private static boolean _DEBUG = false;
 
     public static void main(String[] args) {
+        boolean useCache = true;
+        boolean showStats = false;
+        boolean emitAst = false;
+        boolean mappedLexer = false;
+        boolean rdParser = false;
+        File cacheDir = BuildCache.defaultDirectory();
+        long cacheSize = BuildCache.DEFAULT_MAX_BYTES;
+        int jobs = 1;
+        int optLevel = 2;
+        int argi = 0;
+
+        for (; argi < args.length && args[argi].startsWith("-"); argi++) {
+            String opt = args[argi];
+            if (opt.equals("-no-cache")) {
+                useCache = false;
+            } else if (opt.equals("-emit-ast")) {
+                emitAst = true;
+            } else if (opt.equals("-lexer") && argi + 1 < args.length
+                    && (args[argi + 1].equals("mapped") || args[argi + 1].equals("jflex"))) {
+                mappedLexer = args[++argi].equals("mapped");
+            } else if (opt.equals("-parser") && argi + 1 < args.length
+                    && (args[argi + 1].equals("rd") || args[argi + 1].equals("cup"))) {
+                rdParser = args[++argi].equals("rd");
+            } else if (opt.equals("-cache-stats")) {
+                showStats = true;
+            } else if (opt.equals("-cache-dir") && argi + 1 < args.length) {
+                cacheDir = new File(args[++argi]);
+            } else if (opt.equals("-cache-size") && argi + 1 < args.length) {
+                cacheSize = Long.parseLong(args[++argi]);
+            } else if (opt.equals("-jobs") && argi + 1 < args.length) {
+                jobs = Integer.parseInt(args[++argi]);
+            } else if (opt.equals("-O0") || opt.equals("-O1") || opt.equals("-O2")) {
+                optLevel = opt.charAt(2) - '0';
+            } else {
+                System.err.println("error: unrecognized option " + opt);
+                System.exit(1);
+            }
+        }
+        args = java.util.Arrays.copyOfRange(args, argi, args.length);
+
+        BuildCache cache = new BuildCache(cacheDir, cacheSize);
+        if (showStats && args.length == 0) {
+            System.out.println(cache.statistics());
+            System.exit(0);
+        }
+
         File srcFile = null;
         String fname = null;
         InputStream inp = null;
@@ -35,25 +109,58 @@ public class TigerC {
         ErrorMsg errorMsg = null;
         String tgtClassName = "A_out";
         String outFileName = "A_out.j";
+        File outFile = null;
+        String cacheKey = null;
+        java.nio.ByteBuffer source = null;
+        java.nio.ByteBuffer binaryAbsyn = null;
         // String outFileNameFull = "A_out.j";
 
+        // The program's names are interned in a dictionary of its own, which
+        // the threads of a parallel check share (see SemantV)
+        Symbol.Session symbols = Symbol.openSession();
         try {
             if (args.length >= 1) {
                 srcFile = (new File(args[0])).getCanonicalFile();
                 fname = srcFile.getName();
 
-                if (fname.endsWith(".tig")) {
-                    tgtClassName = Character.toUpperCase(srcFile.getName().charAt(0))
-                            + fname.substring(1, fname.length() - 4);
+                if (fname.endsWith(".tig") || fname.endsWith(".tast")) {
+                    String stem = fname.substring(0, fname.lastIndexOf('.'));
+                    tgtClassName = Character.toUpperCase(stem.charAt(0))
+                            + stem.substring(1);
                     System.out.println("target class is " + tgtClassName);
 
                     outFileName = tgtClassName + ".j";
                     errorMsg = new ErrorMsg(fname);
-                    inp = new FileInputStream(srcFile);
+                    if (fname.endsWith(".tast")) {
+                        source = binaryAbsyn = map(srcFile);
+                    } else if (mappedLexer) {
+                        source = map(srcFile);
+                    } else {
+                        byte[] text = java.nio.file.Files.readAllBytes(srcFile.toPath());
+                        source = java.nio.ByteBuffer.wrap(text);
+                        inp = new ByteArrayInputStream(text);
+                    }
 
-                    File f = new File(srcFile.getParent(), outFileName);
-                    System.out.println("Opening " + f.getCanonicalPath() + "(" + f.getCanonicalFile() + ")");
-                    outp = new PrintWriter(f);
+                    if (useCache) {
+                        cacheKey = BuildCache.key(source, tgtClassName,
+                                java.util.Collections.singletonList("-O" + optLevel));
+                    }
+                    if (cacheKey != null) {
+                        java.util.List<File> cached = cache.fetch(cacheKey,
+                                srcFile.getParentFile());
+                        if (cached != null) {
+                            System.out.println("build cache hit");
+                            if (showStats)
+                                System.out.println(cache.statistics());
+                            System.err.print(cache.report(cacheKey));
+                            System.err.println("Code written to " + outFileName);
+                            System.exit(0);
+                        }
+                    }
+
+                    outFile = new File(srcFile.getParent(), outFileName);
+                    System.out.println("Opening " + outFile.getCanonicalPath() + "(" + outFile.getCanonicalFile() + ")");
+                    outp = new PrintWriter(outFile);
                 } else {
                     System.err.println(
                             "error: source format " + fname.substring(fname.length() - 4) + " not recognized.");
@@ -65,31 +172,56 @@ public class TigerC {
                 outp = new PrintWriter(System.out);
             }
 
-            TigerParse parser = new TigerParse(new TigerLex(inp, errorMsg), errorMsg);
-
             IAbsyn prog;
-           
-            if (TigerC._DEBUG ) {
-                prog = (IAbsyn) (parser.debug_parse().value);
-                AbsynPrintVisitor prettyprint = new AbsynPrintVisitor(System.out);
-                prog.accept(prettyprint);
+
+            if (binaryAbsyn != null) {
+                prog = AbsynBinaryReader.read(binaryAbsyn);
             } else {
-                prog = (IAbsyn) (parser.parse().value);
+                Lexer lexer;
+                if (!mappedLexer)
+                    lexer = new TigerLex(inp, errorMsg);
+                else if (source != null)
+                    lexer = new TigerMappedLex(source.duplicate(), errorMsg);
+                else
+                    lexer = new TigerMappedLex(inp, errorMsg);
+
+                if (rdParser) {
+                    prog = (IAbsyn) (new TigerRDParse(lexer, errorMsg).parse().value);
+                } else if (TigerC._DEBUG ) {
+                    prog = (IAbsyn) (new TigerParse(lexer, errorMsg).debug_parse().value);
+                } else {
+                    prog = (IAbsyn) (new TigerParse(lexer, errorMsg).parse().value);
+                }
+                if (TigerC._DEBUG ) {
+                    AbsynPrintVisitor prettyprint = new AbsynPrintVisitor(System.out);
+                    prog.accept(prettyprint);
+                }
+
+                if (inp != null)
+                    inp.close();
+
+                if (emitAst && srcFile != null && !errorMsg.anyErrors) {
+                    File astFile = new File(srcFile.getParent(),
+                            fname.substring(0, fname.length() - 4) + ".tast");
+                    AbsynBinaryWriter.write(prog, astFile);
+                    System.out.println("Syntax tree written to " + astFile.getName());
+                }
             }
-            
-            inp.close();
 
 
             System.out.println();
-            SemantV typechecker = new SemantV(errorMsg);
+            SemantV typechecker = (jobs > 1
+                    ? new SemantV(errorMsg, new java.util.concurrent.ForkJoinPool(jobs))
+                    : new SemantV(errorMsg));
             prog.accept(typechecker);
 
             if (errorMsg.anyErrors) {
                 System.err.println("Error - no code was generated.");
                 System.exit(1);
             } else {
-                ICodegen jvm = new JVMGeneratorV(outp);
+                ICodegen jvm = new JVMGeneratorV(outp, typechecker.getResolution());
                 // jvm.setupStdLibrary();
+                jvm.setOptimization(optLevel);
                 jvm.setProg(prog, tgtClassName, "j");
                 if (fname != null) {
                     jvm.emitPrelude("generated from " + fname + " on " + new java.util.Date());
@@ -99,20 +231,59 @@ public class TigerC {
                 jvm.emitMain();
                 jvm.emitProcedures();
 
+                // The other classes (one for each record type) each go to
+                // a file of their own, next to the main one
+                java.util.List<File> outFiles = new java.util.ArrayList<File>();
+                outFiles.add(outFile);
+                for (java.util.Map.Entry<String, String> c : jvm.classes().entrySet()) {
+                    if (outFile == null) {
+                        outp.print(c.getValue());
+                    } else {
+                        File f = new File(outFile.getParent(), c.getKey() + ".j");
+                        PrintWriter classOut = new PrintWriter(f);
+                        classOut.print(c.getValue());
+                        classOut.close();
+                        outFiles.add(f);
+                        System.err.println("Code written to " + f.getName());
+                    }
+                }
+
                 outp.flush();
                 outp.close();
 
+                StringBuilder report = new StringBuilder();
+                for (java.util.Map.Entry<String, Integer> stat : jvm.statistics().entrySet()) {
+                    if (stat.getValue() > 0)
+                        report.append(stat.getValue()).append(" ").append(stat.getKey())
+                                .append(System.lineSeparator());
+                }
+                System.err.print(report);
+
+                if (cacheKey != null) {
+                    cache.store(cacheKey, outFiles, report.toString());
+                    if (showStats)
+                        System.out.println(cache.statistics());
+                }
+
                 System.err.println("Code written to " + outFileName);
                 System.err.println("JVM byte code can be produced using Jasmin.");
                 System.exit(0);
             }
-        } catch (java.io.FileNotFoundException e) {
+        } catch (java.io.FileNotFoundException | java.nio.file.NoSuchFileException e) {
             System.err.println("Cannot open input file " + args[0] + "");
             e.printStackTrace();
             System.exit(1);
         } catch (Throwable e) {
             System.err.println("Error: " + e);
             e.printStackTrace();
+        } finally {
+            symbols.close();
         }
     } // main
+
+    private static java.nio.ByteBuffer map(File f) throws java.io.IOException {
+        try (java.nio.channels.FileChannel ch = java.nio.channels.FileChannel.open(f.toPath())) {
+            return ch.map(java.nio.channels.FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+    }
 }
\ No newline at end of file
@@ -7,6 +7,15 @@
  **
  **  
  **  Tiger Interpreter. 
+ **
+ **  Usage:  java tigerc.TigerI [-parser rd|cup] [file.tig | file.tast ...]
+ **
+ **  With no arguments, TigerI reads programs from standard input, evaluating
+ **  each one when it sees a blank line.  Otherwise, it evaluates each of the
+ **  named files in turn.  A .tast file is a program in the binary AST format
+ **  (see tigerc.util.AbsynBinaryWriter), which is loaded without parsing.
+ **  With -parser rd, programs are parsed by the hand-written TigerRDParse
+ **  instead of the CUP parser.
  ** 
  ************************************************************************/
 
@@ -14,13 +23,18 @@ package tigerc;
 
 import tigerc.syntax.parse.*;
 import tigerc.syntax.absyn.*;
+import tigerc.util.AbsynBinaryReader;
 import tigerc.util.AbsynPrintVisitor;
 import tigerc.util.ErrorMsg;
+import tigerc.util.Symbol;
+import tigerc.semant.analysis.EscapeAnalysis;
 import tigerc.semant.analysis.SemantV;
 import tigerc.semant.interp.InterpV;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
@@ -30,8 +44,40 @@ public class TigerI {
     private static final double version = 0.1;
     private static String lastModified = "April 22, 2020";
     private static boolean _DEBUG = false;
+    private static boolean rdParser = false;
     
     public static void main(String[] args) throws IOException {
+        if (args.length >= 2 && args[0].equals("-parser")
+                && (args[1].equals("rd") || args[1].equals("cup"))) {
+            rdParser = args[1].equals("rd");
+            args = java.util.Arrays.copyOfRange(args, 2, args.length);
+        }
+
+        if (args.length > 0) {
+            PrintStream out = new PrintStream(System.out, true);
+            for (String fname : args) {
+                Symbol.Session symbols = Symbol.openSession();
+                try {
+                    File f = new File(fname);
+                    ErrorMsg errorMsg = new ErrorMsg(fname);
+                    IAbsyn prog;
+                    if (AbsynBinaryReader.isBinaryAbsyn(f)) {
+                        prog = AbsynBinaryReader.read(f);
+                    } else {
+                        try (FileInputStream inp = new FileInputStream(f)) {
+                            prog = parse(new TigerLex(inp, errorMsg), errorMsg);
+                        }
+                    }
+                    evaluate(prog, errorMsg, out);
+                } catch (Exception e) {
+                    System.err.println("\nError: " + e);
+                    e.printStackTrace();
+                } finally {
+                    symbols.close();
+                }
+            }
+            return;
+        }
 
         System.out.println(
                 "************ TigerI (interactive Tiger) *******************");
@@ -54,37 +100,28 @@ public class TigerI {
             if (line != null) {
                 // blank line triggers evaluation
                 if (line.trim().equals("")) {
+                    // Each evaluation gets its own symbol dictionary, so that
+                    // a long session doesn't keep every identifier ever typed
+                    Symbol.Session symbols = Symbol.openSession();
                     try {
                         ErrorMsg errorMsg = new ErrorMsg(null);
-                        TigerParse parser = new TigerParse(
+                        IAbsyn prog = parse(
                                 new TigerLex(new StringReader(input), errorMsg),
                                 errorMsg);
-                        IAbsyn prog = null;
                         
                         if (TigerI._DEBUG  ) {
-                            prog = (IAbsyn) (parser.debug_parse().value);
                             AbsynPrintVisitor prettyprint = new AbsynPrintVisitor(System.out);
                             prog.accept(prettyprint);
                             // "call prettyprint(prog)"
-                        } else {
-                            prog = (IAbsyn) (parser.parse().value);
                         }
 
-                        SemantV typechecker = new SemantV(errorMsg);
-                        prog.accept(typechecker);
-
-                        if (!errorMsg.anyErrors) {
-                            InterpV interp = new InterpV(errorMsg);
-                            prog.accept(interp);
-
-                            out.println(
-                                    "\nRESULT = " + interp.getResult() + "\n");
-
-                        }
+                        evaluate(prog, errorMsg, out);
                     } catch (Exception e) {
                         System.err.println("\nError: " + e);
                         e.printStackTrace();
                         // in.skip(b_in.available()); // clear anything still on the input
+                    } finally {
+                        symbols.close();
                     }
 
                     input = "";
@@ -99,4 +136,37 @@ public class TigerI {
             } // if line != null
         } while (input != null);
     } // main
+
+    /*
+     * Parses the program read by lexer, with whichever parser was chosen.
+     */
+    private static IAbsyn parse(Lexer lexer, ErrorMsg errorMsg) throws Exception {
+        if (rdParser)
+            return (IAbsyn) (new TigerRDParse(lexer, errorMsg).parse().value);
+        TigerParse parser = new TigerParse(lexer, errorMsg);
+        return (IAbsyn) (TigerI._DEBUG ? parser.debug_parse() : parser.parse()).value;
+    }
+
+    /*
+     * Type checks prog and, if there are no errors, runs it and prints the
+     * result.
+     */
+    private static void evaluate(IAbsyn prog, ErrorMsg errorMsg, PrintStream out) {
+        SemantV typechecker = new SemantV(errorMsg);
+        prog.accept(typechecker);
+
+        if (!errorMsg.anyErrors) {
+            InterpV interp = new InterpV(errorMsg, typechecker.getResolution(),
+                    new EscapeAnalysis(prog, typechecker.getResolution()));
+            try {
+                prog.accept(interp);
+            } finally {
+                InterpV.flushOutput();
+            }
+
+            out.println(
+                    "\nRESULT = " + interp.getResult() + "\n");
+
+        }
+    }
 }
\ No newline at end of file
@@ -19,8 +19,33 @@
  *   generation, we'll need to store bindings to stack frame offsets and blocks 
  *   of code for procedure entries and exits.  And so on.
  *
+ *   Lookups are memoized in a small direct-mapped cache, indexed by symbol id.
+ *   A cached entry records the Scope and slot where the binding was found,
+ *   and that Scope's version, so update() never makes it stale; it is
+ *   discarded whenever this Env begins or ends a scope or adds a binding, or
+ *   the Scope moves its bindings (as when another Env that shares it adds
+ *   to it).  (The one assumption left is that a scope beneath the current
+ *   one is not given a binding, through some other Env, that shadows one
+ *   cached from further out.  Every pass in TigerC only ever extends the
+ *   innermost scope of the Env it is working in.)
+ *
+ *   Because of the cache, an Env must not be used by two threads at once.
+ *   Copies of it (see copyOf()) may be, one to a thread, so long as the
+ *   scopes they share are not extended meanwhile: Scope.find() only reads.
+ *   This is how SemantV checks function bodies in parallel.
+ *
+ *   A LookupListener is told of every lookup that is answered from outside
+ *   the scopes begun since it was added -- that is, from the scope that was
+ *   current then, or an enclosing one -- including those that find nothing.
+ *   These are the free names of whatever is checked while it listens, which
+ *   is what IncrementalSemant needs to know to decide whether a declaration
+ *   must be checked again.
+ *
  *   Author:  John Lasseter
  *   History: 01/15-2016 (jhel) created
+ *            10/18-2026 lookup cache; Scope no longer a Hashtable
+ *            10/18-2026 lookup listeners
+ *            10/19-2026 cached slots checked against the Scope's version
  *       
  */
 
@@ -29,8 +54,34 @@ package tigerc.semant;
 import tigerc.util.Symbol;
 
 public class Env<T> {
+    private static final int CACHE_SIZE = 32; // must be a power of 2
+
     Scope<T> env;
 
+    /*
+     * The lookup cache: for each line i, the symbol most recently looked up
+     * that hashes there, the Scope and slot that hold its binding, and the
+     * value of generation, and of the Scope's version, when it was stored.
+     * Allocated on first lookup.
+     */
+    private Symbol[] cacheKey;
+    private Scope<T>[] cacheScope;
+    private int[] cacheSlot;
+    private int[] cacheGen;
+    private int[] cacheVersion;
+    private int generation = 1;
+
+    /**
+     * Receives the lookups answered from outside the scopes begun after it
+     * was added (see addLookupListener()).
+     */
+    public interface LookupListener<T> {
+        void lookedUp(Symbol x, T value);
+    }
+
+    private java.util.List<LookupListener<T>> listeners;
+    private int[] listenerDepth;
+
     protected static Symbol sym(String s) {
         return Symbol.sym(s);
     }
@@ -82,19 +133,76 @@ public class Env<T> {
      * @return the value of the lexically-closest binding for key, if that
      *         exists; otherwise, null
      */
+    @SuppressWarnings("unchecked")
     public T lookup(Symbol x) {
+        if (x == null)
+            return null;
+
+        if (cacheKey == null) {
+            cacheKey = new Symbol[CACHE_SIZE];
+            cacheScope = (Scope<T>[]) new Scope<?>[CACHE_SIZE];
+            cacheSlot = new int[CACHE_SIZE];
+            cacheGen = new int[CACHE_SIZE];
+            cacheVersion = new int[CACHE_SIZE];
+        }
+
+        int line = x.id & (CACHE_SIZE - 1);
+        if (cacheKey[line] == x && cacheGen[line] == generation
+                && cacheScope[line].version() == cacheVersion[line]) {
+            T v = cacheScope[line].valueAt(cacheSlot[line]);
+            if (listeners != null)
+                notify(x, v, cacheScope[line].depth);
+            return v;
+        }
+
         Scope<T> cur = env;
 
         while (cur != null) {
-            T v = cur.bindings.get(x);
-            if (v != null) // x is defined in this scope
+            int slot = cur.find(x);
+            if (slot >= 0) { // x is defined in this scope
+                cacheKey[line] = x;
+                cacheScope[line] = cur;
+                cacheSlot[line] = slot;
+                cacheGen[line] = generation;
+                cacheVersion[line] = cur.version();
+                T v = cur.valueAt(slot);
+                if (listeners != null)
+                    notify(x, v, cur.depth);
                 return v;
+            }
             cur = cur.enclosing;
         }
 
+        if (listeners != null)
+            notify(x, null, -1);
         return null; // x is not in this or any enclosing scope
     }
 
+    /**
+     * Starts telling l of each lookup that is answered from the current scope
+     * or one that encloses it, until l is removed. Listeners nest: each one
+     * added must be removed before any that was added before it.
+     */
+    public void addLookupListener(LookupListener<T> l) {
+        if (listeners == null) {
+            listeners = new java.util.ArrayList<>();
+            listenerDepth = new int[4];
+        }
+        int n = listeners.size();
+        if (n == listenerDepth.length)
+            listenerDepth = java.util.Arrays.copyOf(listenerDepth, 2 * n);
+        listeners.add(l);
+        listenerDepth[n] = env.depth;
+    }
+
+    public void removeLookupListener(LookupListener<T> l) {
+        int n = listeners.size() - 1;
+        assert listeners.get(n) == l;
+        listeners.remove(n);
+        if (n == 0)
+            listeners = null;
+    }
+
     /**
      * Adds the specified Symbol/value binding in to the current scope. Returns
      * true if and only if this call results in a new binding in the current
@@ -115,10 +223,11 @@ public class Env<T> {
      * @effects - there may be a new entry in bindings
      */
     public boolean extend(Symbol key, T value) {
-        if (env.bindings.containsKey(key) || key == null || value == null)
+        if (key == null || value == null || env.find(key) >= 0)
             return false;
 
-        env.bindings.put(key, value);
+        env.add(key, value);
+        generation++; // key may now shadow a cached binding
 
         return true;
     }
@@ -149,8 +258,11 @@ public class Env<T> {
         else {
             Scope<T> cur = env;
             while (cur != null) {
-                if (cur.bindings.replace(key, value) != null) // binding exists
+                int slot = cur.find(key);
+                if (slot >= 0) { // binding exists
+                    cur.setValueAt(slot, value);
                     return true;
+                }
 
                 // No binding for key in this scope, so try the enclosing one
                 cur = cur.enclosing;
@@ -165,6 +277,7 @@ public class Env<T> {
      * Remembers the current state of the Table.
      */
     public void beginScope() {
+        // The new scope is empty, so every cached binding is still visible
         this.env = new Scope<>(this.env);
     }
 
@@ -174,6 +287,14 @@ public class Env<T> {
      */
     public void endScope() {
         this.env = this.env.enclosing;
+        generation++; // cached bindings may belong to the scope just ended
+    }
+
+    private void notify(Symbol x, T v, int depth) {
+        // Listeners added later are deeper, so a binding from inside one
+        // listener's scopes is inside those of every listener added before it
+        for (int i = listeners.size() - 1; i >= 0 && depth <= listenerDepth[i]; i--)
+            listeners.get(i).lookedUp(x, v);
     }
 
     // /**
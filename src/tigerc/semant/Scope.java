@@ -2,23 +2,37 @@
  *  Scope.java
  *
  *  Author:  John Lasseter
- *   
+ *
  *  This is a "sheaf of tables" implementation of a symbol table, in which each
- *  scope consists of a hashmap of symbols to entries and a pointer to the 
+ *  scope consists of a hashmap of symbols to entries and a pointer to the
  *  lexically enclosing scope.  (See, for example, Cooper and Torczon, p. 259.).
  *  For an industrial-scale, imperative language, you might have source code
  *  files with thousands of identifiers, and in that case, a more efficient
  *  implementation scheme might be useful.  This one will do for our purposes,
- *  however (and for a lot of real-world settings, too).  Moreover, it makes it 
- *  easy to support the representation of functions-as-data, which may require  
- *  us to hang on to a function's lexically-enclosing scope beyond the point 
+ *  however (and for a lot of real-world settings, too).  Moreover, it makes it
+ *  easy to support the representation of functions-as-data, which may require
+ *  us to hang on to a function's lexically-enclosing scope beyond the point
  *  where that scope ends.
- *  
+ *
+ *  Almost every scope (a let, a for, a function body, a call in the
+ *  interpreter) holds only a handful of bindings, so the "hashmap" is a pair
+ *  of parallel key/value arrays.  Up to LINEAR bindings, these are searched
+ *  front to back; beyond that, they become an open-addressing table with
+ *  linear probing, indexed by the symbols' ids.  Keys are compared by
+ *  identity.  There is no synchronization: a Scope may be read by several
+ *  threads at once, but must only be modified by one.
+ *
+ *  Moving to the table, and growing it, moves bindings to other slots.  Each
+ *  time that happens, the Scope's version goes up, so that whoever holds on
+ *  to a slot (as Env's lookup cache does) can tell that it is no longer good.
+ *
  *  History: 01-15-2016 (jhel) created
  *           03-03-2018 (jhel) added clone() method and Cloneable declaration
  *                             changed type of bindings from Map to Hashtable
  *                             added private copy constructor
- *   
+ *           10-18-2026        inline arrays/open addressing instead of Hashtable
+ *           10-19-2026        version, bumped whenever slots move
+ *
  **************************************************************/
 
 package tigerc.semant;
@@ -26,32 +40,137 @@ package tigerc.semant;
 import tigerc.util.Symbol;
 
 public class Scope<T> {
+    private static final int LINEAR = 8; // largest linearly-searched scope
+    private static final Symbol[] NO_KEYS = new Symbol[0];
+    private static final Object[] NO_VALS = new Object[0];
+
     /*
      * This represents the Symbol/"value" bindings defined in a scope. It also
      * stores one additional piece of information: enclosing is the scope that
      * lexically encloses this one. Only in the top-level scope should this
      * value be null.
      */
-    final java.util.Hashtable<Symbol, T> bindings;
+    private Symbol[] keys;
+    private Object[] vals;
+    private int size;
+    private int version = 0; // (see version())
     final Scope<T> enclosing;
+    final int depth; // number of enclosing scopes
 
     Scope(Scope<T> tail) {
-        this(tail, new java.util.Hashtable<>());
+        this(tail, NO_KEYS, NO_VALS, 0);
     }
 
     Scope() {
         this(null);
     }
 
-    private Scope(Scope<T> tail, java.util.Hashtable<Symbol, T> b) {
+    private Scope(Scope<T> tail, Symbol[] k, Object[] v, int n) {
         this.enclosing = tail;
-        this.bindings = b;
+        this.depth = (tail == null ? 0 : tail.depth + 1);
+        this.keys = k;
+        this.vals = v;
+        this.size = n;
     }
 
     public Scope<T> copyOf() {
-        Scope<T> copy = new Scope<>(this.enclosing,
-                (java.util.Hashtable<Symbol, T>) this.bindings.clone());
+        Scope<T> copy = new Scope<>(this.enclosing, this.keys.clone(),
+                this.vals.clone(), this.size);
 
         return copy;
     }
+
+    /**
+     * Returns the slot holding the binding for x in this scope (not including
+     * any enclosing ones), or -1 if there is none. A slot stays valid for as
+     * long as version() does not change.
+     */
+    int find(Symbol x) {
+        Symbol[] k = this.keys;
+        if (k.length <= LINEAR) {
+            for (int i = 0; i < this.size; i++) {
+                if (k[i] == x)
+                    return i;
+            }
+        } else {
+            int mask = k.length - 1;
+            for (int i = x.id & mask; k[i] != null; i = (i + 1) & mask) {
+                if (k[i] == x)
+                    return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A number that changes whenever add() moves bindings to other slots
+     */
+    int version() {
+        return this.version;
+    }
+
+    Symbol keyAt(int slot) {
+        return this.keys[slot];
+    }
+
+    @SuppressWarnings("unchecked")
+    T valueAt(int slot) {
+        return (T) this.vals[slot];
+    }
+
+    void setValueAt(int slot, T v) {
+        this.vals[slot] = v;
+    }
+
+    /**
+     * Adds a binding for x, which must not already be bound in this scope.
+     */
+    void add(Symbol x, T v) {
+        if (this.keys.length <= LINEAR) {
+            if (this.size < this.keys.length) {
+                this.keys[this.size] = x;
+                this.vals[this.size] = v;
+                this.size++;
+                return;
+            } else if (this.size < LINEAR) {
+                int n = Math.min(LINEAR, Math.max(2, 2 * this.size));
+                this.keys = java.util.Arrays.copyOf(this.keys, n);
+                this.vals = java.util.Arrays.copyOf(this.vals, n);
+                add(x, v);
+                return;
+            }
+        }
+
+        // Keep the table at most half full, so that probe chains stay short
+        if (2 * (this.size + 1) > this.keys.length || this.keys.length <= LINEAR)
+            rehash(Math.max(4 * LINEAR, 2 * this.keys.length));
+
+        int mask = this.keys.length - 1;
+        int i = x.id & mask;
+        while (this.keys[i] != null)
+            i = (i + 1) & mask;
+        this.keys[i] = x;
+        this.vals[i] = v;
+        this.size++;
+    }
+
+    private void rehash(int capacity) {
+        Symbol[] oldKeys = this.keys;
+        Object[] oldVals = this.vals;
+        this.keys = new Symbol[capacity];
+        this.vals = new Object[capacity];
+        this.version++;
+
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            Symbol x = oldKeys[j];
+            if (x != null) {
+                int i = x.id & mask;
+                while (this.keys[i] != null)
+                    i = (i + 1) & mask;
+                this.keys[i] = x;
+                this.vals[i] = oldVals[j];
+            }
+        }
+    }
 }
@@ -0,0 +1,318 @@
+/*************************************************************************
+ *  tigerc/src/semant/analysis/EscapeAnalysis.java
+ *
+ *  Finds the records that never escape the function that makes them, so
+ *  that a backend need not make them at all.  A record variable is
+ *  "scalar" if
+ *
+ *     - it is declared by a DeclVar whose initializer is a record
+ *       expression, or a call of a function whose body is one (as with a
+ *       helper that makes a pair) and that uses nothing but its own
+ *       variables and the library's functions,
+ *     - it is never assigned, and
+ *     - it is only ever used to get at a field, in the function that
+ *       declares it:  as p.f, or p.f := e, but never as p alone.
+ *
+ *  Nothing but that variable ever sees the record, then, so its fields
+ *  might as well be variables of their own:  each is given a slot of its
+ *  own, numbered after those of the Resolution's bindings, for a backend
+ *  that keeps variables by slot.  Such a variable cannot be nil, so p.f
+ *  never fails.
+ *
+ *  History: 10/18/2026 created
+ *
+ ************************************************************************/
+
+package tigerc.semant.analysis;
+
+import tigerc.syntax.absyn.*;
+import tigerc.semant.analysis.types.RECORD;
+
+import java.util.Map;
+import java.util.Set;
+
+public class EscapeAnalysis implements IAbsynVisitor {
+
+    private final Resolution res;
+
+    private final Map<VarEntry, DeclVar> candidates = new java.util.IdentityHashMap<>();
+    private final Map<DeclVar, DeclFn> helpers = new java.util.IdentityHashMap<>();
+    // The record variables, and the functions that make the records of those
+    // that are initialized by a call
+
+    private final Map<VarEntry, DeclFn> owner = new java.util.IdentityHashMap<>();
+    private final Set<VarEntry> escaped = java.util.Collections.newSetFromMap(new java.util.IdentityHashMap<>());
+    private final Map<FunEntry, DeclFn> declarations = new java.util.IdentityHashMap<>();
+    private final Set<DeclFn> open = java.util.Collections.newSetFromMap(new java.util.IdentityHashMap<>());
+    // The functions that use a variable of another, or call or declare a
+    // function of the program
+
+    private final Map<VarEntry, Integer> firstSlot = new java.util.IdentityHashMap<>();
+    private int slots;
+
+    private DeclFn current = null; // (the function whose body we are in)
+
+    /**
+     * Finds the scalar record variables of prog, which SemantV has checked
+     * (with no errors) and found res for.
+     */
+    public EscapeAnalysis(IAbsyn prog, Resolution res) {
+        this.res = res;
+        prog.accept(this);
+
+        this.slots = res.bindings();
+        for (Map.Entry<VarEntry, DeclVar> c : this.candidates.entrySet()) {
+            VarEntry x = c.getKey();
+            DeclFn helper = this.helpers.get(c.getValue());
+            if (this.escaped.contains(x) || (helper != null && this.open.contains(helper)))
+                continue;
+            this.firstSlot.put(x, this.slots);
+            this.slots += ((RECORD) x.ty.actual()).fields.size();
+        }
+    }
+
+    /**
+     * Whether x is a scalar record variable, whose fields are kept in slots of
+     * their own, and not in a record
+     */
+    public boolean scalar(VarEntry x) {
+        return this.firstSlot.containsKey(x);
+    }
+
+    /**
+     * The record expression whose fields are the first values of those of the
+     * variable d declares, which is scalar: d's initializer, or the body of
+     * the function it calls (see helper())
+     */
+    public ExpRecord allocation(DeclVar d) {
+        DeclFn helper = this.helpers.get(d);
+        return (ExpRecord) unwrap(helper == null ? d.init : helper.body);
+    }
+
+    /**
+     * The function whose call is the initializer of d, whose variable is
+     * scalar, or null if that is a record expression
+     */
+    public DeclFn helper(DeclVar d) {
+        return this.helpers.get(d);
+    }
+
+    /**
+     * The slot of field i (in declaration order) of scalar record variable x
+     */
+    public int fieldSlot(VarEntry x, int i) {
+        return this.firstSlot.get(x) + i;
+    }
+
+    /**
+     * The number of slots needed for all bindings and all fields of scalar
+     * record variables
+     */
+    public int slots() {
+        return this.slots;
+    }
+
+    /**
+     * The number of places where a record is no longer made: one for each
+     * scalar record variable
+     */
+    public int eliminated() {
+        return this.firstSlot.size();
+    }
+
+    /*
+     * e, without the parentheses around it
+     */
+    private static Exp unwrap(Exp e) {
+        while (e instanceof ExpSeq && ((ExpSeq) e).list.size() == 1)
+            e = ((ExpSeq) e).list.get(0);
+        return e;
+    }
+
+    // //////////////////////// IAbsynVisitor ////////////////////////
+
+    @Override
+    public void visit(DeclGroupFunction d) {
+        if (this.current != null)
+            this.open.add(this.current);
+
+        for (DeclFn dfn : d.fns) {
+            this.declarations.put(this.res.function(dfn), dfn);
+            for (VarEntry x : this.res.params(dfn))
+                this.owner.put(x, dfn);
+        }
+
+        DeclFn saved = this.current;
+        for (DeclFn dfn : d.fns) {
+            this.current = dfn;
+            dfn.body.accept(this);
+        }
+        this.current = saved;
+    }
+
+    @Override
+    public void visit(DeclGroupType d) {
+    }
+
+    @Override
+    public void visit(DeclVar d) {
+        d.init.accept(this);
+        VarEntry x = this.res.variable(d);
+        this.owner.put(x, this.current);
+
+        Exp init = unwrap(d.init);
+        if (init instanceof ExpRecord) {
+            this.candidates.put(x, d);
+        } else if (init instanceof ExpCall) {
+            DeclFn helper = this.declarations.get(this.res.target((ExpCall) init));
+            if (helper != null && unwrap(helper.body) instanceof ExpRecord) {
+                this.candidates.put(x, d);
+                this.helpers.put(d, helper);
+            }
+        }
+    }
+
+    @Override
+    public void visit(ExpArray e) {
+        e.size.accept(this);
+        e.init.accept(this);
+    }
+
+    @Override
+    public void visit(ExpAssign e) {
+        if (e.lhs instanceof VarSimple)
+            this.escaped.add(this.res.binding((VarSimple) e.lhs));
+        e.lhs.accept(this);
+        e.rhs.accept(this);
+    }
+
+    @Override
+    public void visit(ExpBreak e) {
+    }
+
+    @Override
+    public void visit(ExpCall e) {
+        if (this.current != null && this.declarations.containsKey(this.res.target(e)))
+            this.open.add(this.current);
+        for (Exp arg : e.args)
+            arg.accept(this);
+    }
+
+    @Override
+    public void visit(ExpFor e) {
+        this.owner.put(this.res.variable(e), this.current);
+        e.lo.accept(this);
+        e.hi.accept(this);
+        e.body.accept(this);
+    }
+
+    @Override
+    public void visit(ExpIf e) {
+        e.test.accept(this);
+        e.thenclause.accept(this);
+    }
+
+    @Override
+    public void visit(ExpIfElse e) {
+        e.test.accept(this);
+        e.thenclause.accept(this);
+        e.elseclause.accept(this);
+    }
+
+    @Override
+    public void visit(ExpInt e) {
+    }
+
+    @Override
+    public void visit(ExpLet e) {
+        for (Decl d : e.decls)
+            d.accept(this);
+        e.body.accept(this);
+    }
+
+    @Override
+    public void visit(ExpNil e) {
+    }
+
+    @Override
+    public void visit(ExpOp e) {
+        e.left.accept(this);
+        e.right.accept(this);
+    }
+
+    @Override
+    public void visit(ExpRecord e) {
+        for (tigerc.util.Pair<tigerc.util.Symbol, Exp> field : e.fields)
+            field.snd.accept(this);
+    }
+
+    @Override
+    public void visit(ExpSeq e) {
+        for (Exp e1 : e.list)
+            e1.accept(this);
+    }
+
+    @Override
+    public void visit(ExpString e) {
+    }
+
+    @Override
+    public void visit(ExpVar e) {
+        e.var.accept(this);
+    }
+
+    @Override
+    public void visit(ExpWhile e) {
+        e.test.accept(this);
+        e.body.accept(this);
+    }
+
+    @Override
+    public void visit(TyArray t) {
+    }
+
+    @Override
+    public void visit(TyName t) {
+    }
+
+    @Override
+    public void visit(TyRecord t) {
+    }
+
+    @Override
+    public void visit(VarField v) {
+        if (v.var instanceof VarSimple) {
+            // Getting at a field is not an escape, but only in the function
+            // that declares the variable
+            VarEntry x = this.res.binding((VarSimple) v.var);
+            if (this.owner.get(x) != this.current)
+                use(x);
+        } else {
+            v.var.accept(this);
+        }
+    }
+
+    @Override
+    public void visit(VarSimple v) {
+        // Anything else is
+        VarEntry x = this.res.binding(v);
+        this.escaped.add(x);
+        if (this.owner.get(x) != this.current)
+            use(x);
+    }
+
+    @Override
+    public void visit(VarSubscript v) {
+        v.var.accept(this);
+        v.index.accept(this);
+    }
+
+    /*
+     * Notes a use of x, a variable of another function, in the current one
+     */
+    private void use(VarEntry x) {
+        this.escaped.add(x);
+        if (this.current != null)
+            this.open.add(this.current);
+    }
+}
@@ -0,0 +1,317 @@
+/*************************************************************************
+ *  tigerc/src/semant/analysis/IncrementalSemant.java
+ *
+ *  A type checker for a long-running process -- an editor or a build
+ *  server -- that checks the same program over and over as it is edited,
+ *  and should not re-check the parts of it that an edit cannot have
+ *  affected.
+ *
+ *  Each check() runs an ordinary SemantV over the whole program, but that
+ *  SemantV hands three kinds of declaration to this class: the body of
+ *  each function, the initializer of each variable, and each group of
+ *  type declarations.  These are the "units" of checking.  While a unit is
+ *  checked, LookupListeners on venv and tenv record its free names and the
+ *  Entry or Type each was bound to; the unit's result (its type, or the
+ *  bindings of a type group) and its diagnostics are kept with them.  On
+ *  the next run, a unit is reused -- its diagnostics reported again,
+ *  moved along with it, and its result returned without visiting it --
+ *  if its syntax has not been changed and every free name it looked up is
+ *  still bound to the very same object.  Otherwise it is checked again, and
+ *  the units inside it are reused in the same way.
+ *
+ *  That last condition only holds across runs because the objects
+ *  themselves are kept: the FunEntry for a function whose signature has
+ *  not changed, and the VarEntry for a variable whose type has not, are
+ *  interned by their declaration, and a reused type group binds its names
+ *  to the same types as before.  So changing the body of a function
+ *  re-checks that body alone; changing its signature, or a type, also
+ *  re-checks whatever mentions it.
+ *
+ *  The declarations are known by identity, so the caller must say which
+ *  of them it has changed in place (TigerIncrementalParse.takeChanges()
+ *  does); anything it has replaced is new, and is simply checked.
+ *
+ *  History: 10/18/2026 created
+ *
+ ************************************************************************/
+
+package tigerc.semant.analysis;
+
+import tigerc.util.ErrorMsg;
+import tigerc.util.Symbol;
+import tigerc.syntax.absyn.*;
+import tigerc.semant.Env;
+import tigerc.semant.analysis.types.*;
+
+import java.util.List;
+import java.util.Map;
+
+public class IncrementalSemant {
+
+    /*
+     * What is known about one unit from the last time it was checked
+     */
+    private static final class Unit {
+        final boolean inLoop; // (whether break was allowed in it)
+        final Map<Symbol, Entry> vdeps = new java.util.LinkedHashMap<>();
+        final Map<Symbol, Type> tdeps = new java.util.LinkedHashMap<>();
+        final java.util.ArrayList<Integer> errCols = new java.util.ArrayList<>(0);
+        final java.util.ArrayList<String> errMsgs = new java.util.ArrayList<>(0);
+        // (errCols are relative to the position of the unit's declaration)
+
+        Type type; // of a body or initializer
+        boolean sound; // of a type group
+        Symbol[] names; // the names declared by a type group,
+        Type[] bindings; // and their types
+
+        final Env.LookupListener<Entry> vlistener = new Env.LookupListener<Entry>() {
+            public void lookedUp(Symbol x, Entry value) {
+                if (!vdeps.containsKey(x))
+                    vdeps.put(x, value);
+            }
+        };
+        final Env.LookupListener<Type> tlistener = new Env.LookupListener<Type>() {
+            public void lookedUp(Symbol x, Type value) {
+                if (!tdeps.containsKey(x))
+                    tdeps.put(x, value);
+            }
+        };
+
+        Unit(boolean inLoop) {
+            this.inLoop = inLoop;
+        }
+    }
+
+    /*
+     * Passes each error on, after noting it in the unit being checked
+     */
+    private static final class Recorder extends ErrorMsg {
+        final ErrorMsg out;
+        private final Unit unit;
+        private final int base;
+
+        Recorder(ErrorMsg out, Unit unit, int base) {
+            super(null);
+            this.out = out;
+            this.unit = unit;
+            this.base = base;
+        }
+
+        @Override
+        public void error(int col, String msg) {
+            unit.errCols.add(col - base);
+            unit.errMsgs.add(msg);
+            out.error(col, msg);
+        }
+    }
+
+    // Both keyed by declaration (the absyn classes have identity equality)
+    private final Map<ISyntaxElt, Unit> units = new java.util.WeakHashMap<>();
+    private final Map<ISyntaxElt, Entry> entries = new java.util.WeakHashMap<>();
+
+    private int checked = 0;
+    private int reused = 0;
+
+    /**
+     * Type-checks prog, reporting errors to err exactly as a new SemantV
+     * would, and returns its type. The declarations in changed are those
+     * whose text has been edited since the last call -- including any that
+     * merely contain an edited one -- and are checked again.
+     */
+    public Type check(IAbsyn prog, java.util.Set<? extends ISyntaxElt> changed, ErrorMsg err) {
+        for (ISyntaxElt d : changed)
+            units.remove(d);
+        this.checked = 0;
+        this.reused = 0;
+
+        SemantV checker = new SemantV(err, this);
+        prog.accept(checker);
+        return checker.getType();
+    }
+
+    /**
+     * The number of units (function bodies, initializers and type groups)
+     * that the last check() visited.
+     */
+    public int checkedUnits() {
+        return this.checked;
+    }
+
+    /**
+     * The number of units that the last check() took from an earlier one.
+     */
+    public int reusedUnits() {
+        return this.reused;
+    }
+
+    // ///////////////////////// called by SemantV //////////////////////////
+
+    /*
+     * The type of the body of dfn, checked by body.
+     */
+    Type check(DeclFn dfn, SemantV body) {
+        Unit u = reuse(dfn, body, false);
+        if (u != null)
+            return u.type;
+
+        u = begin(body, new Unit(false), dfn.getPos());
+        try {
+            u.type = body.checkBody(dfn);
+        } finally {
+            end(body, u);
+        }
+        this.units.put(dfn, u);
+        return u.type;
+    }
+
+    /*
+     * The type of the initializer of d.
+     */
+    Type check(DeclVar d, SemantV checker, boolean inLoop) {
+        Unit u = reuse(d, checker, inLoop);
+        if (u != null)
+            return u.type;
+
+        u = begin(checker, new Unit(inLoop), d.getPos());
+        try {
+            u.type = checker.checkInit(d);
+        } finally {
+            end(checker, u);
+        }
+        this.units.put(d, u);
+        return u.type;
+    }
+
+    /*
+     * Adds the types of dts to checker's tenv, returning whether they are
+     * sound.
+     */
+    boolean check(DeclGroupType dts, SemantV checker) {
+        Unit u = reuse(dts, checker, false);
+        if (u != null) {
+            for (int i = 0; i < u.names.length; i++)
+                checker.tenv.extend(u.names[i], u.bindings[i]);
+            return u.sound;
+        }
+
+        u = begin(checker, new Unit(false), dts.getPos());
+        try {
+            u.sound = checker.checkTypes(dts);
+        } finally {
+            end(checker, u);
+        }
+
+        // The group's own names were looked up (and bound) as it was
+        // checked. They are what it declares, not what it depends on.
+        int n = dts.decls.size();
+        u.names = new Symbol[n];
+        u.bindings = new Type[n];
+        for (int i = 0; i < n; i++) {
+            u.names[i] = dts.decls.get(i).name;
+            u.bindings[i] = u.tdeps.get(u.names[i]);
+        }
+        for (Symbol x : u.names)
+            u.tdeps.remove(x);
+        this.units.put(dts, u);
+        return u.sound;
+    }
+
+    FunEntry intern(DeclFn dfn, FunEntry e) {
+        Entry old = this.entries.get(dfn);
+        if (old instanceof FunEntry && sameSignature((FunEntry) old, e))
+            return (FunEntry) old;
+        this.entries.put(dfn, e);
+        return e;
+    }
+
+    VarEntry intern(DeclVar d, VarEntry e) {
+        Entry old = this.entries.get(d);
+        if (old instanceof VarEntry && ((VarEntry) old).ty == e.ty
+                && ((VarEntry) old).assignable == e.assignable)
+            return (VarEntry) old;
+        this.entries.put(d, e);
+        return e;
+    }
+
+    /*
+     * SemantV calls this for a let that declares some name twice. If it is
+     * the name of a type, the second group to declare it binds the THUNK of
+     * the first, so nothing known about the let's declarations can be
+     * trusted, and it is dropped.
+     */
+    void forget(List<Decl> decls) {
+        java.util.Set<Symbol> types = new java.util.HashSet<Symbol>();
+        boolean twice = false;
+        for (Decl d : decls) {
+            if (d instanceof DeclGroupType) {
+                for (DeclTy dt : ((DeclGroupType) d).decls)
+                    twice = !types.add(dt.name) || twice;
+            }
+        }
+        if (!twice)
+            return;
+
+        for (Decl d : decls) {
+            this.units.remove(d);
+            if (d instanceof DeclGroupFunction) {
+                for (DeclFn dfn : ((DeclGroupFunction) d).fns)
+                    this.units.remove(dfn);
+            }
+        }
+    }
+
+    // //////////////////////// private utility methods ////////////////////////
+
+    /*
+     * The unit of owner from an earlier run, if it can stand for checking it
+     * with checker now; its errors are reported again. Otherwise, null.
+     */
+    private Unit reuse(ISyntaxElt owner, SemantV checker, boolean inLoop) {
+        Unit u = this.units.get(owner);
+        if (u == null || u.inLoop != inLoop)
+            return null;
+
+        // These lookups also tell any unit being checked around this one
+        // what it depends on through it
+        for (Map.Entry<Symbol, Entry> dep : u.vdeps.entrySet()) {
+            if (checker.venv.lookup(dep.getKey()) != dep.getValue())
+                return null;
+        }
+        for (Map.Entry<Symbol, Type> dep : u.tdeps.entrySet()) {
+            if (checker.tenv.lookup(dep.getKey()) != dep.getValue())
+                return null;
+        }
+
+        int base = owner.getPos();
+        for (int i = 0; i < u.errCols.size(); i++)
+            checker.err.error(base + u.errCols.get(i), u.errMsgs.get(i));
+        this.reused++;
+        return u;
+    }
+
+    private Unit begin(SemantV checker, Unit u, int base) {
+        checker.err = new Recorder(checker.err, u, base);
+        checker.venv.addLookupListener(u.vlistener);
+        checker.tenv.addLookupListener(u.tlistener);
+        this.checked++;
+        return u;
+    }
+
+    private void end(SemantV checker, Unit u) {
+        checker.tenv.removeLookupListener(u.tlistener);
+        checker.venv.removeLookupListener(u.vlistener);
+        checker.err = ((Recorder) checker.err).out;
+    }
+
+    private static boolean sameSignature(FunEntry a, FunEntry b) {
+        if (a.result != b.result || a.formals.size() != b.formals.size())
+            return false;
+        java.util.Iterator<tigerc.util.Pair<Symbol, Type>> bs = b.formals.iterator();
+        for (tigerc.util.Pair<Symbol, Type> p : a.formals) {
+            tigerc.util.Pair<Symbol, Type> q = bs.next();
+            if (p.fst != q.fst || p.snd != q.snd)
+                return false;
+        }
+        return true;
+    }
+}
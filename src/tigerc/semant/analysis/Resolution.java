@@ -0,0 +1,156 @@
+/*************************************************************************
+ *  tigerc/src/semant/analysis/Resolution.java
+ *
+ *  What SemantV learns about a program, kept for the passes that follow
+ *  it, so that they need not learn it again:  the type of every expression
+ *  and variable, the binding that each variable names, and the function
+ *  that each call calls.  It is a set of side tables keyed by the nodes of
+ *  the tree (which have identity equality), rather than fields in the
+ *  nodes themselves, since the same tree may be checked more than once.
+ *
+ *  A binding is the VarEntry made for it -- one for each variable
+ *  declaration, each for-loop, and each parameter of each function -- and
+ *  a function is its FunEntry (the library's functions have FunEntries
+ *  too, but no DeclFn).  Each binding is numbered, densely from 0, so that
+ *  a backend can keep what it knows about it in an array.
+ *
+ *  It is only complete for a program without errors.
+ *
+ *  History: 10/18/2026 created
+ *
+ ************************************************************************/
+
+package tigerc.semant.analysis;
+
+import tigerc.syntax.absyn.*;
+import tigerc.semant.analysis.types.Type;
+
+import java.util.List;
+import java.util.Map;
+
+public class Resolution {
+
+    private final Map<IAbsyn, Type> types = new java.util.IdentityHashMap<>();
+    private final Map<VarSimple, VarEntry> uses = new java.util.IdentityHashMap<>();
+    private final Map<ISyntaxElt, VarEntry> variables = new java.util.IdentityHashMap<>();
+    // (keyed by DeclVar or ExpFor)
+    private final Map<DeclFn, List<VarEntry>> params = new java.util.IdentityHashMap<>();
+    private final Map<DeclFn, FunEntry> functions = new java.util.IdentityHashMap<>();
+    private final Map<ExpCall, FunEntry> calls = new java.util.IdentityHashMap<>();
+
+    // Shared with the Resolutions of function bodies checked in parallel,
+    // so that their bindings are numbered apart
+    private final java.util.concurrent.atomic.AtomicInteger bindings;
+
+    Resolution() {
+        this(new java.util.concurrent.atomic.AtomicInteger());
+    }
+
+    private Resolution(java.util.concurrent.atomic.AtomicInteger bindings) {
+        this.bindings = bindings;
+    }
+
+    /**
+     * The type of e, as SemantV found it. It may be a NAME (a THUNK); use
+     * actual() to see through it.
+     */
+    public Type typeOf(IAbsyn e) {
+        return this.types.get(e);
+    }
+
+    /**
+     * The binding that x names.
+     */
+    public VarEntry binding(VarSimple x) {
+        return this.uses.get(x);
+    }
+
+    /**
+     * The binding declared by d.
+     */
+    public VarEntry variable(DeclVar d) {
+        return this.variables.get(d);
+    }
+
+    /**
+     * The binding of the counter of e.
+     */
+    public VarEntry variable(ExpFor e) {
+        return this.variables.get(e);
+    }
+
+    /**
+     * The bindings of the parameters of f, in order.
+     */
+    public List<VarEntry> params(DeclFn f) {
+        return this.params.get(f);
+    }
+
+    /**
+     * The signature of f.
+     */
+    public FunEntry function(DeclFn f) {
+        return this.functions.get(f);
+    }
+
+    /**
+     * The function that e calls.
+     */
+    public FunEntry target(ExpCall e) {
+        return this.calls.get(e);
+    }
+
+    /**
+     * The number of bindings. Each VarEntry's slot is less than this.
+     */
+    public int bindings() {
+        return this.bindings.get();
+    }
+
+    // ///////////////////////// called by SemantV //////////////////////////
+
+    void noteType(IAbsyn e, Type t) {
+        this.types.put(e, t);
+    }
+
+    void noteUse(VarSimple x, VarEntry v) {
+        this.uses.put(x, v);
+    }
+
+    void noteVariable(ISyntaxElt d, VarEntry v) {
+        this.variables.put(d, v);
+    }
+
+    void noteParams(DeclFn f, List<VarEntry> vs) {
+        this.params.put(f, vs);
+    }
+
+    void noteFunction(DeclFn f, FunEntry fe) {
+        this.functions.put(f, fe);
+    }
+
+    void noteCall(ExpCall e, FunEntry fe) {
+        this.calls.put(e, fe);
+    }
+
+    int newSlot() {
+        return this.bindings.getAndIncrement();
+    }
+
+    /*
+     * A Resolution for a function body checked on another thread, to be
+     * added to this one with addAll() once it is done.
+     */
+    Resolution fork() {
+        return new Resolution(this.bindings);
+    }
+
+    void addAll(Resolution r) {
+        this.types.putAll(r.types);
+        this.uses.putAll(r.uses);
+        this.variables.putAll(r.variables);
+        this.params.putAll(r.params);
+        this.functions.putAll(r.functions);
+        this.calls.putAll(r.calls);
+    }
+}
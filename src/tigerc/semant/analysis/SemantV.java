@@ -14,6 +14,17 @@
  *           05/02/2014 (jhel) added ErrorMsg err field (refactoring from EnvTrans)
  *                             refactored "env.err."  accesses.
  *           01/19/2016 (jhel) refactored to use simpler Env interface
+ *           10/18/2026        hooks for IncrementalSemant: function bodies,
+ *                             variable initializers and type groups are
+ *                             checked through it when one is given
+ *           10/18/2026        function bodies checked in parallel, when
+ *                             given a ForkJoinPool
+ *           10/18/2026        records what it finds in a Resolution, for
+ *                             the backends
+ *           10/19/2026        a parallel check interns symbols in the
+ *                             session of the thread that started it
+ *           10/19/2026        the names of each type group count their
+ *                             rebinds in a THUNK.Group of their own
  *           
  *           
  ************************************************************************/
@@ -60,8 +71,9 @@ public class SemantV implements IAbsynVisitor {
      * be used for a type and a variable/procedure name, we keep separate name
      * spaces for types and var/procedure bindings
      */
-    private Env<Entry> venv; // (variable / type identifier bindings)
-    private Env<Type> tenv; // (type identifier / type bindings)
+    Env<Entry> venv; // (variable / type identifier bindings)
+    Env<Type> tenv; // (type identifier / type bindings)
+    // (package visibility, for IncrementalSemant, as is err)
 
     /*
      * Components to support external bindings. Right now, that just means the
@@ -78,12 +90,52 @@ public class SemantV implements IAbsynVisitor {
     }
 
     // Finally, an error message reporting object:
-    private ErrorMsg err;
+    ErrorMsg err;
+
+    /*
+     * The long-running checker this one works for, if any. It may answer for
+     * whole function bodies, initializers and type groups from the results
+     * of an earlier run.
+     */
+    private IncrementalSemant incremental = null;
+
+    /*
+     * If not null, the bodies of the functions in a group are checked in
+     * parallel on this pool, once their signatures are all in venv. Each has
+     * its own copy of venv and tenv (the Scopes are shared, and only read),
+     * and its own ErrorBuffer, whose errors are reported in source order
+     * when all are done.
+     */
+    private java.util.concurrent.ForkJoinPool pool = null;
+
+    /*
+     * Where the type of each expression, the binding of each variable and the
+     * target of each call are recorded (see getResolution()). Each body
+     * checked in parallel records in its own, which is added to this one
+     * when it is done. None is kept for IncrementalSemant, whose units are
+     * not always visited.
+     */
+    private Resolution resolution = null;
 
     /*********************************************************************/
 
     public SemantV(ErrorMsg e) {
         this(new Env<Entry>(SemantV.extern_venv), new Env<Type>(SemantV.extern_tenv), e);
+        this.resolution = new Resolution();
+    }
+
+    /**
+     * A SemantV that checks function bodies in parallel on pool. The errors
+     * reported, and their order, are the same as without it.
+     */
+    public SemantV(ErrorMsg e, java.util.concurrent.ForkJoinPool pool) {
+        this(e);
+        this.pool = pool;
+    }
+
+    SemantV(ErrorMsg e, IncrementalSemant incremental) {
+        this(new Env<Entry>(SemantV.extern_venv), new Env<Type>(SemantV.extern_tenv), e);
+        this.incremental = incremental;
     }
 
     private SemantV(Env<Entry> ve, Env<Type> te, ErrorMsg err) {
@@ -100,6 +152,15 @@ public class SemantV implements IAbsynVisitor {
         return ty;
     }
 
+    /**
+     * What was found out about the program this checked: the types of its
+     * expressions, and what each name in it refers to. It is only complete
+     * if there were no errors.
+     */
+    public Resolution getResolution() {
+        return resolution;
+    }
+
     /*********************************************************************/
 
     public void visit(DeclGroupFunction fun_decs) {
@@ -136,7 +197,12 @@ public class SemantV implements IAbsynVisitor {
 
             // C. Put the function in venv, but only if it's a new binding for
             // this scope
-            boolean declWasAdded = this.venv.extend(dfn.name, new FunEntry(formals_construction.fst, t_result));
+            FunEntry entry = new FunEntry(formals_construction.fst, t_result);
+            if (this.incremental != null)
+                entry = this.incremental.intern(dfn, entry);
+            boolean declWasAdded = this.venv.extend(dfn.name, entry);
+            if (this.resolution != null)
+                this.resolution.noteFunction(dfn, entry);
             if (!declWasAdded) {
                 err.error(dfn.getPos(), "Symbol " + dfn.name + " is already defined in this scope.");
                 this.declsOK = false;
@@ -150,35 +216,40 @@ public class SemantV implements IAbsynVisitor {
          * for the duration of the time we spend checking that function's body.
          * The body's type much match the declared return type
          */
-        for (DeclFn dfn : fun_decs.fns) {
+        List<BodyCheck> bodies = null;
+        if (this.pool != null && this.incremental == null && fun_decs.fns.size() > 1) {
+            // (IncrementalSemant follows lookups through this.venv, so it
+            // checks bodies one at a time)
+            bodies = new java.util.ArrayList<BodyCheck>(fun_decs.fns.size());
+            for (DeclFn dfn : fun_decs.fns)
+                bodies.add(new BodyCheck(dfn));
+            invokeAll(bodies);
+        }
+
+        for (int i = 0; i < fun_decs.fns.size(); i++) {
+            DeclFn dfn = fun_decs.fns.get(i);
             FunEntry curEntr = (FunEntry) this.venv.lookup(dfn.name);
             // Note: this cast is safe, since we have just made FunEntry
             // bindings for every element in d.fns
 
-            // (1) Open a new scope, and enter the formals in venv. Note that
-            // this is a shortcut from the "real" interpreter, where we would
-            // have to use the environment stored with each function's closure,
-            // in order to implement lexical scope.
-            this.venv.beginScope();
-
-            for (Pair<Symbol, Symbol> p : dfn.params) {
-                this.venv.extend(p.fst, new VarEntry(this.tenv.lookup(p.snd)));
-                // Note: if p.snd does not refer to a legitimate type
-                // there will be a tenv binding to ERROR: see visitTypeFields
-            }
-
-            // (2) Now create a new Semant for the body of cur.
+            // Create a new Semant for the body of cur.
             // Why? Because certain matters of nesting and scope are "reset"
             // inside a new function body. In particular, you can use this to
             // leverage the checking of correct nesting of break statements.
             // You'll have to think about how. This is a hint here.
 
-            SemantV newSem = new SemantV(this.venv, this.tenv, this.err);
-            dfn.body.accept(newSem);
-            Type bodyTy = newSem.ty;
-
-            // Done with checking the current body. Close this scope.
-            this.venv.endScope();
+            Type bodyTy;
+            if (bodies != null) {
+                bodies.get(i).errors.replay(this.err);
+                this.resolution.addAll(bodies.get(i).resolution);
+                bodyTy = bodies.get(i).ty;
+            } else {
+                SemantV newSem = new SemantV(this.venv, this.tenv, this.err);
+                newSem.incremental = this.incremental;
+                newSem.resolution = this.resolution;
+                bodyTy = (this.incremental != null ? this.incremental.check(dfn, newSem)
+                        : newSem.checkBody(dfn));
+            }
 
             // Did the type of the function body match what was declared?
             if (!bodyTy.coerceTo(curEntr.result)) {
@@ -194,25 +265,8 @@ public class SemantV implements IAbsynVisitor {
          * already been declared there, and it will end at the end of the
          * let-body. Hence, we do not open a new scope here.
          */
-
-        // PASS ONE: Add the names to tenv
-        for (DeclTy dt : dts.decls) {
-            this.tenv.extend(dt.name, new THUNK(dt.name));
-        }
-
-        // PASS TWO: Compute the actual bindings
-        for (DeclTy dt : dts.decls) {
-            dt.ty.accept(this);
-            this.declsOK = this.declsOK && (this.ty != ERROR.inst);
-            Type t_binding = ty;
-            THUNK namet = (THUNK) this.tenv.lookup(dt.name);
-            // Safe, since we just put these same symbols in env.
-            namet.bind(t_binding);
-            if (namet.isLoop()) {
-                err.error(dts.getPos(), "Cycle detected in type declaration");
-                this.declsOK = false;
-            }
-        }
+        boolean sound = (this.incremental != null ? this.incremental.check(dts, this) : checkTypes(dts));
+        this.declsOK = this.declsOK && sound;
     }
 
     public void visit(DeclVar d) {
@@ -222,8 +276,8 @@ public class SemantV implements IAbsynVisitor {
          * let-body. Hence, we do not open a new scope here.
          */
 
-        d.init.accept(this);
-        Type t_init = this.ty;
+        Type t_init = (this.incremental != null ? this.incremental.check(d, this, this.loopNesting > 0)
+                : checkInit(d));
         boolean sound = true;
 
         // All the ways a declaration can be unsound..
@@ -254,7 +308,10 @@ public class SemantV implements IAbsynVisitor {
 
         if (sound) {
             // OK: the type can be inferred from the d.init
-            venv.extend(d.name, new VarEntry(t_init));
+            VarEntry entry = declare(d, t_init);
+            if (this.incremental != null)
+                entry = this.incremental.intern(d, entry);
+            venv.extend(d.name, entry);
         }
 
         this.declsOK = this.declsOK && sound;
@@ -289,6 +346,7 @@ public class SemantV implements IAbsynVisitor {
             err.error(e.getPos(), "Attempt to use non-ARRAY type " + t + " as if it were an ARRAY.");
             this.ty = ERROR.inst;
         }
+        note(e);
     }
 
     public void visit(ExpAssign e) {
@@ -333,7 +391,7 @@ public class SemantV implements IAbsynVisitor {
         } else {
             this.ty = VOID.inst;
         }
-
+        note(e);
     }
 
     public void visit(ExpBreak e) {
@@ -345,6 +403,7 @@ public class SemantV implements IAbsynVisitor {
             err.error(e.getPos(), "BREAK not properly nested.");
             this.ty = ERROR.inst;
         }
+        note(e);
     }
 
     public void visit(ExpCall e) {
@@ -363,6 +422,8 @@ public class SemantV implements IAbsynVisitor {
 
         } else if (en instanceof FunEntry) {
             FunEntry f = ((FunEntry) en);
+            if (this.resolution != null)
+                this.resolution.noteCall(e, f);
             int numParms = f.formals.size();
             int numArgs = e.args.size();
             boolean sound = true;
@@ -391,12 +452,12 @@ public class SemantV implements IAbsynVisitor {
             } else {
                 this.ty = ERROR.inst;
             }
-            return;
         } else {// if (en instanceof VarEntry) {
             err.error(e.getPos(), "Variable " + e.func + " is not a function.");
             ty = ERROR.inst;
 
         }
+        note(e);
     }
 
     public void visit(ExpFor e) {
@@ -421,11 +482,12 @@ public class SemantV implements IAbsynVisitor {
             sound = false;
         }
 
-        venv.extend(e.var, new VarEntry(INT.inst));
+        venv.extend(e.var, declare(e, INT.inst));
         loopNesting++; // BREAK legal in the following
         e.body.accept(this);
         Type t_body = this.ty;
         loopNesting--;
+        venv.endScope();
 
         if (!t_body.coerceTo(VOID.inst)) {
             err.error(e.body.getPos(), "Body of FOR must be of VOID type.");
@@ -437,6 +499,7 @@ public class SemantV implements IAbsynVisitor {
         } else {
             this.ty = ERROR.inst;
         }
+        note(e);
     }
 
     public void visit(ExpIf e) {
@@ -455,6 +518,7 @@ public class SemantV implements IAbsynVisitor {
         if (t_then.coerceTo(VOID.inst)) {
             // Success: all done
             this.ty = VOID.inst;
+            note(e);
             return;
         } else {
             err.error(e.thenclause.getPos(), "Conditional clause must be of VOID type.");
@@ -496,6 +560,7 @@ public class SemantV implements IAbsynVisitor {
                 this.ty = t_then;
             }
             // Either way, we now have a type for e, so we're done
+            note(e);
             return;
         }
 
@@ -505,6 +570,7 @@ public class SemantV implements IAbsynVisitor {
 
     public void visit(ExpInt e) {
         ty = INT.inst;
+        note(e);
     }
 
     public void visit(ExpLet e) {
@@ -515,7 +581,13 @@ public class SemantV implements IAbsynVisitor {
         // save declsOK before checking nested let expressions
         boolean enclosingDeclsOK = this.declsOK;
 
-        this.declsOK = !redeclaration(e.decls);
+        boolean redeclOK = !redeclaration(e.decls);
+        this.declsOK = redeclOK;
+
+        // A type declared twice in one let is bound by both declarations, so
+        // neither can be checked on its own
+        if (this.incremental != null && !redeclOK)
+            this.incremental.forget(e.decls);
 
         venv.beginScope();
         tenv.beginScope();
@@ -528,6 +600,9 @@ public class SemantV implements IAbsynVisitor {
             // invalidate the declsOK flag.
         }
 
+        if (this.incremental != null && !redeclOK)
+            this.incremental.forget(e.decls);
+
         e.body.accept(this);
 
         venv.endScope();
@@ -537,12 +612,14 @@ public class SemantV implements IAbsynVisitor {
             // invalidate the type computed for the body, if any.
             this.ty = ERROR.inst;
         }
+        note(e);
 
         this.declsOK = enclosingDeclsOK;
     }
 
     public void visit(ExpNil e) {
         this.ty = NIL.inst;
+        note(e);
     }
 
     public void visit(ExpOp e) {
@@ -587,6 +664,7 @@ public class SemantV implements IAbsynVisitor {
             err.error(e.getPos(), "Cannot apply '" + op2String(e.oper) + "' to " + t_left + " and " + t_right + ".");
             this.ty = ERROR.inst;
         }
+        note(e);
     }
 
     public void visit(ExpRecord e) {
@@ -648,6 +726,7 @@ public class SemantV implements IAbsynVisitor {
         } else {
             this.ty = ERROR.inst;
         }
+        note(e);
     }
 
     public void visit(ExpSeq es) {
@@ -664,6 +743,7 @@ public class SemantV implements IAbsynVisitor {
         }
         if (errors)
             this.ty = ERROR.inst;
+        note(es);
         // This strategy -- declare the type of the whole sequence an error if
         // any errors are found is a subjective choice. The alternative is
         // simply to let the type of e be the type of the last expression,
@@ -677,10 +757,12 @@ public class SemantV implements IAbsynVisitor {
 
     public void visit(ExpString e) {
         this.ty = STRING.inst;
+        note(e);
     }
 
     public void visit(ExpVar e) {
         e.var.accept(this);
+        note(e);
     }
 
     public void visit(ExpWhile e) {
@@ -702,6 +784,7 @@ public class SemantV implements IAbsynVisitor {
             } else {
                 // Success
                 this.ty = VOID.inst;
+                note(e);
                 return;
             }
         }
@@ -752,10 +835,10 @@ public class SemantV implements IAbsynVisitor {
         v.var.accept(this);
         Type var = this.ty;
         if (var.actual() instanceof RECORD) {
-            List<Pair<Symbol, Type>> r = ((RECORD) var.actual()).fields;
-            Type t = lookup(r, v.field);
+            Type t = ((RECORD) var.actual()).fieldType(v.field);
             if (t != null) {
                 this.ty = t;
+                note(v);
                 return;
             } else {
                 err.error(v.getPos(), "Undefined field for type " + var);
@@ -779,7 +862,10 @@ public class SemantV implements IAbsynVisitor {
         } else {
             VarEntry var = (VarEntry) en;
             this.ty = var.ty; // .actual();
+            if (this.resolution != null)
+                this.resolution.noteUse(v, var);
         }
+        note(v);
     }
 
     public void visit(VarSubscript v) {
@@ -798,16 +884,184 @@ public class SemantV implements IAbsynVisitor {
             err.error(v.getPos(), "Attempt to index non-ARRAY type variable.");
             this.ty = ERROR.inst;
         }
+        note(v);
+    }
+
+    // ////////////////// units checked through IncrementalSemant //////////////////
+
+    /*
+     * Checks the body of dfn, whose signature is already in venv, and returns
+     * its type. This is done by the SemantV made for the body.
+     */
+    Type checkBody(DeclFn dfn) {
+        // Open a new scope, and enter the formals in venv. Note that
+        // this is a shortcut from the "real" interpreter, where we would
+        // have to use the environment stored with each function's closure,
+        // in order to implement lexical scope.
+        this.venv.beginScope();
+
+        List<VarEntry> params = new java.util.ArrayList<VarEntry>(dfn.params.size());
+        for (Pair<Symbol, Symbol> p : dfn.params) {
+            VarEntry param = declare(null, this.tenv.lookup(p.snd));
+            this.venv.extend(p.fst, param);
+            params.add(param);
+            // Note: if p.snd does not refer to a legitimate type
+            // there will be a tenv binding to ERROR: see visitTypeFields
+        }
+        if (this.resolution != null)
+            this.resolution.noteParams(dfn, params);
+
+        dfn.body.accept(this);
 
+        // Done with checking the current body. Close this scope.
+        this.venv.endScope();
+        return this.ty;
+    }
+
+    /*
+     * Returns the type of the initializing expression of d.
+     */
+    Type checkInit(DeclVar d) {
+        d.init.accept(this);
+        return this.ty;
+    }
+
+    /*
+     * Adds the types of dts to tenv, returning false if any of them is
+     * unsound.
+     */
+    boolean checkTypes(DeclGroupType dts) {
+        boolean sound = true;
+
+        // PASS ONE: Add the names to tenv
+        THUNK.Group group = new THUNK.Group();
+        for (DeclTy dt : dts.decls) {
+            this.tenv.extend(dt.name, new THUNK(dt.name, group));
+        }
+
+        // PASS TWO: Compute the actual bindings
+        for (DeclTy dt : dts.decls) {
+            dt.ty.accept(this);
+            sound = sound && (this.ty != ERROR.inst);
+            Type t_binding = ty;
+            THUNK namet = (THUNK) this.tenv.lookup(dt.name);
+            // Safe, since we just put these same symbols in env.
+            namet.bind(t_binding);
+            if (namet.isLoop()) {
+                err.error(dts.getPos(), "Cycle detected in type declaration");
+                sound = false;
+            }
+        }
+        return sound;
+    }
+
+    /*
+     * The check of one function body, on its own copies of venv and tenv
+     */
+    private final class BodyCheck extends java.util.concurrent.RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final DeclFn dfn;
+        final ErrorBuffer errors = new ErrorBuffer();
+        final Resolution resolution = SemantV.this.resolution.fork();
+        private final Symbol.Session symbols = Symbol.session();
+        // (that of the thread that made the task, which the pool's thread
+        // must intern in too)
+        Type ty;
+
+        BodyCheck(DeclFn dfn) {
+            this.dfn = dfn;
+        }
+
+        @Override
+        protected void compute() {
+            Symbol.Session joined = (this.symbols != null ? this.symbols.join() : null);
+            try {
+                SemantV newSem = new SemantV(venv.copyOf(), tenv.copyOf(), this.errors);
+                newSem.pool = pool;
+                newSem.resolution = this.resolution;
+                this.ty = newSem.checkBody(this.dfn);
+            } finally {
+                if (joined != null)
+                    joined.close();
+            }
+        }
+    }
+
+    /*
+     * Holds the errors found in one function body until they can be reported
+     * in order
+     */
+    private static final class ErrorBuffer extends ErrorMsg {
+        private final List<Integer> cols = new java.util.ArrayList<Integer>(0);
+        private final List<String> msgs = new java.util.ArrayList<String>(0);
+
+        ErrorBuffer() {
+            super(null);
+        }
+
+        @Override
+        public void error(int col, String msg) {
+            this.anyErrors = true;
+            this.cols.add(col);
+            this.msgs.add(msg);
+        }
+
+        void replay(ErrorMsg to) {
+            for (int i = 0; i < this.cols.size(); i++)
+                to.error(this.cols.get(i), this.msgs.get(i));
+        }
     }
 
     // //////////////////////// private utility methods ////////////////////////
 
+    /*
+     * A new binding of type t, for the variable declared by d (a DeclVar or an
+     * ExpFor), or for a parameter, if d is null
+     */
+    private VarEntry declare(ISyntaxElt d, Type t) {
+        if (this.resolution == null)
+            return new VarEntry(t);
+        VarEntry v = new VarEntry(t, true, this.resolution.newSlot());
+        if (d != null)
+            this.resolution.noteVariable(d, v);
+        return v;
+    }
+
+    /*
+     * Records this.ty as the type of e
+     */
+    private void note(IAbsyn e) {
+        if (this.resolution != null)
+            this.resolution.noteType(e, this.ty);
+    }
+
+    /*
+     * Runs tasks on pool, or on the pool this thread already works for.
+     */
+    private void invokeAll(final List<BodyCheck> tasks) {
+        if (java.util.concurrent.ForkJoinTask.getPool() == this.pool) {
+            java.util.concurrent.ForkJoinTask.invokeAll(tasks);
+        } else {
+            this.pool.invoke(new java.util.concurrent.RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected void compute() {
+                    java.util.concurrent.ForkJoinTask.invokeAll(tasks);
+                }
+            });
+        }
+    }
+
     /**
      * Sets up appropriate bindings for the two "primitive" types, int and
-     * string, as well as the functions defined as part of the Tiger standard
-     * library: print, flush, getchar, ord, chr, size, substring, concat, not,
-     * exit.
+     * string, and for intarray, table and itable, as well as the functions
+     * defined as part of the Tiger standard library: print, printi, flush,
+     * getchar, ord, chr, size, substring, concat, not, exit, readline,
+     * readint, eof, readfile, readints, printints, table_new, table_get,
+     * table_put, table_remove, table_size, and the itable_ functions of the
+     * same names.
      * 
      */
     private static void setupStdLibrary() {
@@ -816,81 +1070,142 @@ public class SemantV implements IAbsynVisitor {
         // god-awful verbosity. I've kept the formals list constructions
         // separate from the env bindings, which I hope enhances clarity.
 
-        extern_tenv.extend(Symbol.sym("int"), INT.inst);
-        extern_tenv.extend(Symbol.sym("string"), STRING.inst);
+        extern_tenv.extend(Symbol.global("int"), INT.inst);
+        extern_tenv.extend(Symbol.global("string"), STRING.inst);
+        extern_tenv.extend(Symbol.global("intarray"), ARRAY.intarray);
+        extern_tenv.extend(Symbol.global("table"), TABLE.inst);
+        extern_tenv.extend(Symbol.global("itable"), ITABLE.inst);
 
         // print
         List<Pair<Symbol, Type>> printFmls = new java.util.ArrayList<>();
-        printFmls.add(new Pair<Symbol, Type>(Symbol.sym("s"), STRING.inst));
-        extern_venv.extend(Symbol.sym("print"), new FunEntry(printFmls, VOID.inst));
+        printFmls.add(new Pair<Symbol, Type>(Symbol.global("s"), STRING.inst));
+        extern_venv.extend(Symbol.global("print"), new FunEntry(printFmls, VOID.inst));
 
         // printi
         printFmls = new java.util.ArrayList<>();
-        printFmls.add(new Pair<Symbol, Type>(Symbol.sym("x"), INT.inst));
-        extern_venv.extend(Symbol.sym("printi"), new FunEntry(printFmls, VOID.inst));
+        printFmls.add(new Pair<Symbol, Type>(Symbol.global("x"), INT.inst));
+        extern_venv.extend(Symbol.global("printi"), new FunEntry(printFmls, VOID.inst));
 
         // flush
-        extern_venv.extend(Symbol.sym("flush"), new FunEntry(null, VOID.inst));
+        extern_venv.extend(Symbol.global("flush"), new FunEntry(null, VOID.inst));
 
         // getchar
-        extern_venv.extend(Symbol.sym("getchar"), new FunEntry(null, STRING.inst));
+        extern_venv.extend(Symbol.global("getchar"), new FunEntry(null, STRING.inst));
 
         // ord
         List<Pair<Symbol, Type>> ordFmls = new java.util.ArrayList<>();
-        ordFmls.add(new Pair<Symbol, Type>(Symbol.sym("s"), STRING.inst));
-        extern_venv.extend(Symbol.sym("ord"), new FunEntry(ordFmls, INT.inst));
+        ordFmls.add(new Pair<Symbol, Type>(Symbol.global("s"), STRING.inst));
+        extern_venv.extend(Symbol.global("ord"), new FunEntry(ordFmls, INT.inst));
 
         // chr
         List<Pair<Symbol, Type>> chrFmls = new java.util.ArrayList<>();
-        chrFmls.add(new Pair<Symbol, Type>(Symbol.sym("s"), INT.inst));
-        extern_venv.extend(Symbol.sym("chr"), new FunEntry(chrFmls, STRING.inst));
+        chrFmls.add(new Pair<Symbol, Type>(Symbol.global("s"), INT.inst));
+        extern_venv.extend(Symbol.global("chr"), new FunEntry(chrFmls, STRING.inst));
 
         // size
         List<Pair<Symbol, Type>> sizeFmls = new java.util.ArrayList<>();
-        sizeFmls.add(new Pair<Symbol, Type>(Symbol.sym("s"), STRING.inst));
-        extern_venv.extend(Symbol.sym("size"), new FunEntry(sizeFmls, INT.inst));
+        sizeFmls.add(new Pair<Symbol, Type>(Symbol.global("s"), STRING.inst));
+        extern_venv.extend(Symbol.global("size"), new FunEntry(sizeFmls, INT.inst));
 
         // substring
         List<Pair<Symbol, Type>> substringFmls = new java.util.ArrayList<>();
-        substringFmls.add(new Pair<Symbol, Type>(Symbol.sym("s"), STRING.inst));
-        substringFmls.add(new Pair<Symbol, Type>(Symbol.sym("first"), INT.inst));
-        substringFmls.add(new Pair<Symbol, Type>(Symbol.sym("n"), INT.inst));
-        extern_venv.extend(Symbol.sym("substring"), new FunEntry(substringFmls, STRING.inst));
+        substringFmls.add(new Pair<Symbol, Type>(Symbol.global("s"), STRING.inst));
+        substringFmls.add(new Pair<Symbol, Type>(Symbol.global("first"), INT.inst));
+        substringFmls.add(new Pair<Symbol, Type>(Symbol.global("n"), INT.inst));
+        extern_venv.extend(Symbol.global("substring"), new FunEntry(substringFmls, STRING.inst));
 
         // concat
         List<Pair<Symbol, Type>> concatFmls = new java.util.ArrayList<>();
-        concatFmls.add(new Pair<Symbol, Type>(Symbol.sym("s1"), STRING.inst));
-        concatFmls.add(new Pair<Symbol, Type>(Symbol.sym("s2"), STRING.inst));
-        extern_venv.extend(Symbol.sym("concat"), new FunEntry(concatFmls, STRING.inst));
+        concatFmls.add(new Pair<Symbol, Type>(Symbol.global("s1"), STRING.inst));
+        concatFmls.add(new Pair<Symbol, Type>(Symbol.global("s2"), STRING.inst));
+        extern_venv.extend(Symbol.global("concat"), new FunEntry(concatFmls, STRING.inst));
 
         // not
         List<Pair<Symbol, Type>> notFmls = new java.util.ArrayList<>();
-        notFmls.add(new Pair<Symbol, Type>(Symbol.sym("i"), INT.inst));
-        extern_venv.extend(Symbol.sym("not"), new FunEntry(notFmls, INT.inst));
+        notFmls.add(new Pair<Symbol, Type>(Symbol.global("i"), INT.inst));
+        extern_venv.extend(Symbol.global("not"), new FunEntry(notFmls, INT.inst));
 
         // exit
         List<Pair<Symbol, Type>> exitFmls = new java.util.ArrayList<>();
-        exitFmls.add(new Pair<Symbol, Type>(Symbol.sym("i"), INT.inst));
-        extern_venv.extend(Symbol.sym("exit"), new FunEntry(exitFmls, VOID.inst));
-    }
-
-    /**
-     * For a given list of Pairs and left element x, returns the corresponding
-     * right element in the Pair with the lowest index
-     * 
-     * @param ls
-     *            The list of Pairs
-     * @param x
-     *            The left element we're looking for
-     * @return y such that (x,y) is the first Pair in ls containing x. Returns
-     *         <tt>null</tt>, if <em>x</em> is not found
-     */
-    private static <A, B> B lookup(List<Pair<A, B>> ls, A x) {
-        for (Pair<A, B> p : ls) {
-            if (p.fst.equals(x))
-                return p.snd;
-        }
-        return null;
+        exitFmls.add(new Pair<Symbol, Type>(Symbol.global("i"), INT.inst));
+        extern_venv.extend(Symbol.global("exit"), new FunEntry(exitFmls, VOID.inst));
+
+        // readline, readint, eof
+        extern_venv.extend(Symbol.global("readline"), new FunEntry(null, STRING.inst));
+        extern_venv.extend(Symbol.global("readint"), new FunEntry(null, INT.inst));
+        extern_venv.extend(Symbol.global("eof"), new FunEntry(null, INT.inst));
+
+        // readfile
+        List<Pair<Symbol, Type>> readfileFmls = new java.util.ArrayList<>();
+        readfileFmls.add(new Pair<Symbol, Type>(Symbol.global("name"), STRING.inst));
+        extern_venv.extend(Symbol.global("readfile"), new FunEntry(readfileFmls, STRING.inst));
+
+        // readints
+        List<Pair<Symbol, Type>> readintsFmls = new java.util.ArrayList<>();
+        readintsFmls.add(new Pair<Symbol, Type>(Symbol.global("name"), STRING.inst));
+        extern_venv.extend(Symbol.global("readints"), new FunEntry(readintsFmls, ARRAY.intarray));
+
+        // printints
+        List<Pair<Symbol, Type>> printintsFmls = new java.util.ArrayList<>();
+        printintsFmls.add(new Pair<Symbol, Type>(Symbol.global("a"), ARRAY.intarray));
+        printintsFmls.add(new Pair<Symbol, Type>(Symbol.global("sep"), STRING.inst));
+        extern_venv.extend(Symbol.global("printints"), new FunEntry(printintsFmls, VOID.inst));
+
+        // table_new
+        extern_venv.extend(Symbol.global("table_new"), new FunEntry(null, TABLE.inst));
+
+        // table_get
+        List<Pair<Symbol, Type>> tableGetFmls = new java.util.ArrayList<>();
+        tableGetFmls.add(new Pair<Symbol, Type>(Symbol.global("t"), TABLE.inst));
+        tableGetFmls.add(new Pair<Symbol, Type>(Symbol.global("key"), STRING.inst));
+        tableGetFmls.add(new Pair<Symbol, Type>(Symbol.global("absent"), INT.inst));
+        extern_venv.extend(Symbol.global("table_get"), new FunEntry(tableGetFmls, INT.inst));
+
+        // table_put
+        List<Pair<Symbol, Type>> tablePutFmls = new java.util.ArrayList<>();
+        tablePutFmls.add(new Pair<Symbol, Type>(Symbol.global("t"), TABLE.inst));
+        tablePutFmls.add(new Pair<Symbol, Type>(Symbol.global("key"), STRING.inst));
+        tablePutFmls.add(new Pair<Symbol, Type>(Symbol.global("value"), INT.inst));
+        extern_venv.extend(Symbol.global("table_put"), new FunEntry(tablePutFmls, VOID.inst));
+
+        // table_remove
+        List<Pair<Symbol, Type>> tableRemoveFmls = new java.util.ArrayList<>();
+        tableRemoveFmls.add(new Pair<Symbol, Type>(Symbol.global("t"), TABLE.inst));
+        tableRemoveFmls.add(new Pair<Symbol, Type>(Symbol.global("key"), STRING.inst));
+        extern_venv.extend(Symbol.global("table_remove"), new FunEntry(tableRemoveFmls, VOID.inst));
+
+        // table_size
+        List<Pair<Symbol, Type>> tableSizeFmls = new java.util.ArrayList<>();
+        tableSizeFmls.add(new Pair<Symbol, Type>(Symbol.global("t"), TABLE.inst));
+        extern_venv.extend(Symbol.global("table_size"), new FunEntry(tableSizeFmls, INT.inst));
+
+        // itable_new
+        extern_venv.extend(Symbol.global("itable_new"), new FunEntry(null, ITABLE.inst));
+
+        // itable_get
+        List<Pair<Symbol, Type>> itableGetFmls = new java.util.ArrayList<>();
+        itableGetFmls.add(new Pair<Symbol, Type>(Symbol.global("t"), ITABLE.inst));
+        itableGetFmls.add(new Pair<Symbol, Type>(Symbol.global("key"), INT.inst));
+        itableGetFmls.add(new Pair<Symbol, Type>(Symbol.global("absent"), INT.inst));
+        extern_venv.extend(Symbol.global("itable_get"), new FunEntry(itableGetFmls, INT.inst));
+
+        // itable_put
+        List<Pair<Symbol, Type>> itablePutFmls = new java.util.ArrayList<>();
+        itablePutFmls.add(new Pair<Symbol, Type>(Symbol.global("t"), ITABLE.inst));
+        itablePutFmls.add(new Pair<Symbol, Type>(Symbol.global("key"), INT.inst));
+        itablePutFmls.add(new Pair<Symbol, Type>(Symbol.global("value"), INT.inst));
+        extern_venv.extend(Symbol.global("itable_put"), new FunEntry(itablePutFmls, VOID.inst));
+
+        // itable_remove
+        List<Pair<Symbol, Type>> itableRemoveFmls = new java.util.ArrayList<>();
+        itableRemoveFmls.add(new Pair<Symbol, Type>(Symbol.global("t"), ITABLE.inst));
+        itableRemoveFmls.add(new Pair<Symbol, Type>(Symbol.global("key"), INT.inst));
+        extern_venv.extend(Symbol.global("itable_remove"), new FunEntry(itableRemoveFmls, VOID.inst));
+
+        // itable_size
+        List<Pair<Symbol, Type>> itableSizeFmls = new java.util.ArrayList<>();
+        itableSizeFmls.add(new Pair<Symbol, Type>(Symbol.global("t"), ITABLE.inst));
+        extern_venv.extend(Symbol.global("itable_size"), new FunEntry(itableSizeFmls, INT.inst));
     }
 
     private static String op2String(ExpOp.Op op) {
@@ -9,6 +9,7 @@
  *           05/02/2014 (jhel) added access field, for code generation
  *           09/05/2014 (jhel) major refactoring, to separate from interp 
  *                             and translate versions
+ *           10/18/2026        slot, the binding's number in a Resolution
  *           
  *  The value environment has two kinds of entries: variable entries and function
  *  entries. 
@@ -29,13 +30,21 @@ public class VarEntry implements Entry {
 	public final Type ty;
 	public final boolean assignable;
 
+	// Its number in the Resolution it was made for (or -1, if none):
+	public final int slot;
+
 	protected VarEntry(Type t) {
 		this(t, true);
 	}
 
 	protected VarEntry(Type t, boolean a) {
+		this(t, a, -1);
+	}
+
+	VarEntry(Type t, boolean a, int slot) {
 		this.ty = t;
 		this.assignable = a;
+		this.slot = slot;
 	}
 
 }
@@ -3,6 +3,12 @@ package tigerc.semant.analysis.types;
 public class ARRAY implements Type {
     public final Type element;
 
+    /**
+     * The predefined type intarray, of the arrays that the standard library
+     * reads and prints
+     */
+    public static final ARRAY intarray = new ARRAY(INT.inst);
+
     public ARRAY(Type e) {
         element = e;
     }
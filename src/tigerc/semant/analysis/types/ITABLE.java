@@ -0,0 +1,24 @@
+package tigerc.semant.analysis.types;
+
+/**
+ * The predefined type itable, of the library's maps from ints to ints, whose
+ * values are only ever made and used by the itable_ functions
+ */
+public class ITABLE implements Type {
+	private ITABLE() {
+	}
+
+	public static ITABLE inst = new ITABLE();
+
+	public Type actual() {
+		return this;
+	}
+
+	public boolean coerceTo(Type t) {
+		return (t.actual() instanceof ITABLE);
+	}
+
+	public String toString() {
+		return "itable";
+	}
+}
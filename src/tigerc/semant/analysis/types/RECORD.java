@@ -5,6 +5,7 @@
 	
 	History: (10/01/2011)  created
 	         (06/02/2014)  modified to use a hashtable, instead of linked list
+	         (10/18/2026)  fields indexed by name: indexOf(), fieldType()
 */
 
 package tigerc.semant.analysis.types;
@@ -14,8 +15,18 @@ import tigerc.util.Pair;
 import java.util.List;
 
 public class RECORD implements Type {
+	private static final int LINEAR = 8; // widest record searched in order
+
 	public final List<Pair<Symbol,Type>> fields;	
-	// TODO:  this should be a HashMap<Symbol,Type>, instead
+	// (in declaration order, which is also the order of the fields of every
+	// record expression of this type)
+
+	private final Symbol[] names;
+	private final Type[] types;
+	private final int[] slots;
+	// For a record wider than LINEAR, an open-addressing table on the ids of
+	// names, holding 1 + the index of each field (0 for an empty slot).
+	// Otherwise, null.
 	
 	public Type actual() {
 		return this;
@@ -23,6 +34,54 @@ public class RECORD implements Type {
 
 	public RECORD(List<Pair<Symbol,Type>> fs) {
 		fields = fs;
+		int n = fs.size();
+		names = new Symbol[n];
+		types = new Type[n];
+		for (int i = 0; i < n; i++) {
+			names[i] = fs.get(i).fst;
+			types[i] = fs.get(i).snd;
+		}
+
+		if (n <= LINEAR) {
+			slots = null;
+		} else {
+			slots = new int[Integer.highestOneBit(n) * 4];
+			int mask = slots.length - 1;
+			for (int i = 0; i < n; i++) {
+				int s = names[i].id & mask;
+				while (slots[s] != 0 && names[slots[s] - 1] != names[i])
+					s = (s + 1) & mask;
+				if (slots[s] == 0) // (the first of two fields of one name wins)
+					slots[s] = i + 1;
+			}
+		}
+	}
+
+	/**
+	 * Returns the position of the field named f, or -1 if there is none.
+	 */
+	public int indexOf(Symbol f) {
+		if (slots == null) {
+			for (int i = 0; i < names.length; i++) {
+				if (names[i] == f)
+					return i;
+			}
+			return -1;
+		}
+		int mask = slots.length - 1;
+		for (int s = f.id & mask; slots[s] != 0; s = (s + 1) & mask) {
+			if (names[slots[s] - 1] == f)
+				return slots[s] - 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the type of the field named f, or null if there is none.
+	 */
+	public Type fieldType(Symbol f) {
+		int i = indexOf(f);
+		return (i < 0 ? null : types[i]);
 	}
 
 	public boolean coerceTo(Type t) {
@@ -0,0 +1,24 @@
+package tigerc.semant.analysis.types;
+
+/**
+ * The predefined type table, of the library's maps from strings to ints,
+ * whose values are only ever made and used by the table_ functions
+ */
+public class TABLE implements Type {
+	private TABLE() {
+	}
+
+	public static TABLE inst = new TABLE();
+
+	public Type actual() {
+		return this;
+	}
+
+	public boolean coerceTo(Type t) {
+		return (t.actual() instanceof TABLE);
+	}
+
+	public String toString() {
+		return "table";
+	}
+}
@@ -2,32 +2,80 @@ package tigerc.semant.analysis.types;
 
 import tigerc.util.Symbol;
 
+/*
+ * A name for a type, declared in a group of (possibly mutually recursive) type
+ * declarations, and bound to its definition once every name in the group is
+ * known.  actual() follows the chain of names to the type at its end, and
+ * remembers it.  A THUNK is only ever bound again when a let declares the
+ * same type twice in one group; that is counted in the group's rebinds,
+ * which makes every type remembered by a name of that group stale.  (A name
+ * of one group can only lead to names of the same group or of groups already
+ * checked, which are never bound again.)
+ *
+ * The type remembered is published together with the count it was found at,
+ * as one Resolved, so that a thread reading it never sees one without the
+ * other.
+ */
 public class THUNK implements Type {
 	public Symbol name;
 	private Type binding;
+	private final Group group;
 
-	public THUNK(Symbol n) {
+	private volatile Resolved resolved = null; // binding.actual(), as of some
+												// value of group.rebinds
+
+	/*
+	 * The names declared together by one group of type declarations
+	 */
+	public static final class Group {
+		private volatile int rebinds = 0;
+		// (only ever changed by the thread checking the group, while it binds
+		// its names)
+	}
+
+	private static final class Resolved {
+		final Type type;
+		final int at;
+
+		Resolved(Type type, int at) {
+			this.type = type;
+			this.at = at;
+		}
+	}
+
+	public THUNK(Symbol n, Group g) {
 		name = n; // The value of binding must be set later, once every name in
 					// this group has been added
+		group = g;
 	}
 
 	public boolean isLoop() {
-		Type b = binding;
-		boolean any;
-		binding = null;
-		if (b == null)
-			any = true; // A name without binding is a circular definition
-		else if (b instanceof THUNK)
-			any = ((THUNK) b).isLoop(); // This definition is circular if its
-										// binding is
-		else
-			any = false;
-		binding = b;
-		return any;
+		// A name without binding is a circular definition, as is one whose
+		// chain of names comes back on itself. (This only reads the chain,
+		// which may include names that other threads are resolving.)
+		Type slow = this, fast = this;
+		while (true) {
+			for (int i = 0; i < 2; i++) {
+				fast = ((THUNK) fast).binding;
+				if (fast == null)
+					return true;
+				if (!(fast instanceof THUNK))
+					return false;
+			}
+			slow = ((THUNK) slow).binding;
+			if (slow == fast)
+				return true;
+		}
 	}
 
 	public Type actual() {
-		return binding.actual();
+		Resolved r = this.resolved;
+		int now = group.rebinds;
+		if (r == null || r.at != now) {
+			r = new Resolved(binding.actual(), now);
+			this.resolved = r;
+		}
+		return r.type;
 	}
 
 	public boolean coerceTo(Type t) {
@@ -35,6 +83,8 @@ public class THUNK implements Type {
 	}
 
 	public void bind(Type t) {
+		if (binding != null)
+			group.rebinds++;
 		binding = t;
 		// Set during the second phase of processing a group of type defns
 	}
@@ -63,6 +63,8 @@ public class ExternFunEntry extends FunEntry {
             e.printStackTrace();
             throw new Error();
         } catch (InvocationTargetException e) {
+            // What the program printed first belongs before the report
+            InterpV.flushOutput();
             System.err.println("Runtime error:  method " + fn.getName() + " threw exception " + e.getCause());
             e.printStackTrace();
             throw new Error();
@@ -76,8 +78,14 @@ public class ExternFunEntry extends FunEntry {
             return new ValInt(((Integer) obj).intValue());
         else if (obj instanceof String)
             return new ValStr((String) obj);
-        else
-            throw new UnsupportedOperationException("Conversion to array and record types are not implemented");
+        else if (obj instanceof int[]) {
+            int[] ints = (int[]) obj;
+            ValArray a = new ValArray(ints.length, null);
+            for (int i = 0; i < ints.length; i++)
+                a.set(i, new ValInt(ints[i]));
+            return a;
+        } else
+            return new ValExtern(obj);
 
     }
 
@@ -88,8 +96,17 @@ public class ExternFunEntry extends FunEntry {
             return new String(((ValStr) x).val);
         else if (x instanceof ValUnit)
             return null;
+        else if (x instanceof ValArray) {
+            // (an intarray:  the library takes no other kind of array)
+            ValArray a = (ValArray) x;
+            int[] ints = new int[a.size()];
+            for (int i = 0; i < ints.length; i++)
+                ints[i] = ((ValInt) a.get(i)).val;
+            return ints;
+        } else if (x instanceof ValExtern)
+            return ((ValExtern) x).val;
         else
-            throw new UnsupportedOperationException("Conversion from array and record types are not implemented");
+            throw new UnsupportedOperationException("Conversion from records is not implemented");
     }
 
 }
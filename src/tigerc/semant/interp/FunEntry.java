@@ -5,64 +5,69 @@
  *  Created:  01/3/2016
  *  Last Modified: 01/13/216
  *  History: 01/13/2016 (jhel) created
- *           
+ *           10/18/2026        parameters are bindings (slots) from the
+ *                             Resolution, and the saved environment is the
+ *                             interpreter that defined the function
  *
  *  The value environment has two kinds of entries: variable entries and function
  *  entries.  For interpretation, the information we need to represent a function
- *  consists of the parameter list, the function body, and the environment that 
+ *  consists of the parameter list, the function body, and the environment that
  *  was present at the time of the function's definition.  This structure is more
  *  commonly known as a "closure".
- *  
+ *
+ *  Since a Tiger function cannot be passed around as a value, the variables
+ *  a function can see are always those of the latest call of each function
+ *  around it (see InterpV), so the "environment" saved here is simply the
+ *  InterpV with the store holding them.
+ *
  **************************************************************/
 
 package tigerc.semant.interp;
 
 import tigerc.syntax.absyn.Exp;
 import tigerc.util.ErrorMsg;
-import tigerc.util.Symbol;
-import tigerc.semant.*;
 import tigerc.semant.interp.values.IValue;
 
 import java.util.List;
 
 public class FunEntry implements Entry {
 
-    public final List<Symbol> parameters;
+    public final int[] parameters;
     public final Exp body;
-    public final Env<Entry> env;
+    public final InterpV env;
 
-    public FunEntry(List<Symbol> ps, Exp b, Env<Entry> e) {
+    public FunEntry(int[] ps, Exp b, InterpV e) {
         parameters = ps;
         body = b;
         env = e;
     }
-    
+
     protected FunEntry() {
         this(null,null,null);
     }
 
     public IValue apply(ErrorMsg err, List<IValue> args) {
-        
-        assert this.parameters.size() == args.size();
-        this.env.beginScope();
+
+        assert this.parameters.length == args.size();
+        IValue[] store = this.env.store;
+        IValue[] saved = new IValue[args.size()];
         for (int i = 0; i < args.size(); i++) {
-            Symbol x = this.parameters.get(i);
-            VarEntry v = new VarEntry(args.get(i));
             // If we had first-class functions, we'd need to test the value of
             // this.result first, since we might need a FunEntry, instead.
+            saved[i] = store[this.parameters[i]];
+            store[this.parameters[i]] = args.get(i);
+        }
 
-            // Extend the saved environment
-            boolean newBinding = this.env.extend(x, v);
-            assert newBinding;
+        try {
+            // Interpret the body of f, using the saved environment
+            InterpV interp = new InterpV(err, this.env);
+            this.body.accept(interp);
+            return interp.getResult();
+        } finally {
+            // Put back the bindings of the caller's call (conceptually, we're
+            // removing the top frame from the call stack)
+            for (int i = 0; i < saved.length; i++)
+                store[this.parameters[i]] = saved[i];
         }
-        
-        // Interpret the body of f, using the saved environment
-        InterpV interp = new InterpV(err, this.env);
-        this.body.accept(interp);
-        
-        // Discard bindings for this call (conceptually, we're removing the top
-        // frame from the call stack)
-        this.env.endScope();
-        return interp.getResult();
     }
 }
@@ -22,6 +22,15 @@
  *           03/07/2018 (jhel) bug fixes
  *           04/22/2020 (jhel) fixed external bindings
  *                             improved literate programming documentation
+ *           10/18/2026        names are resolved by SemantV (see Resolution);
+ *                             variables are kept in a store, by binding
+ *           10/18/2026        the fields of a record that never escapes
+ *                             (see EscapeAnalysis) are kept in the store
+ *                             too, and the record is never made
+ *           10/18/2026        a chain of calls of concat is evaluated as one,
+ *                             into a single StringBuilder
+ *           10/18/2026        flushOutput(), since TigerStdLib buffers what
+ *                             the program prints
  *           
  ************************************************************************/
 package tigerc.semant.interp;
@@ -30,6 +39,9 @@ import tigerc.syntax.absyn.*;
 import tigerc.util.*;
 import tigerc.semant.interp.values.*;
 import tigerc.semant.Env;
+import tigerc.semant.analysis.EscapeAnalysis;
+import tigerc.semant.analysis.Resolution;
+import tigerc.semant.analysis.types.RECORD;
 
 import java.util.List;
 
@@ -48,15 +60,33 @@ public class InterpV implements IAbsynVisitor {
      */
 
     /*
-     * Local environment. You'll note that, unlike the type checker (SemantV)
-     * and code generator (JVMGeneratorV), there is no environment for type
-     * bindings here that is because in this interpreter, static types are
-     * ignored. Static typing can still be enforced by performing semantic
-     * analysis before interpretation, but assuming the program is free of
-     * errors, the type information itself is not relevant to execution of the
-     * interpreter.
+     * What SemantV found out about the program: in particular, the binding
+     * (declaration) that each variable names and the function that each call
+     * calls. So there is no need to look names up in an environment here. You
+     * might expect one anyway, since the same declaration can be bound to
+     * different values at the same time, in different calls of the function
+     * around it, and a function must see the variables of the call that
+     * defined it (lexical scope). But a Tiger function is never passed around
+     * or returned as a value: it can only be called from inside the function
+     * that declares it, so that the call that defined it is always the latest
+     * call of that function. It is enough, then, to keep the value of each
+     * binding in the latest call, in store -- putting back the value of the
+     * call before when a call returns, or a let or for-loop ends.
+     * 
+     * Type information is not needed at all, since, assuming the program is
+     * free of errors, it is not relevant to execution of the interpreter.
      */
-    private Env<Entry> env; 
+    private final Resolution res;
+
+    final IValue[] store; // (by slot; FunEntry.apply() fills in the parameters)
+
+    private final EscapeAnalysis escapes;
+    // The record variables whose fields have slots of their own in store,
+    // after those of the bindings, in place of a record (or null)
+
+    private final java.util.Map<tigerc.semant.analysis.FunEntry, FunEntry> functions;
+    // The closure of each function declared so far, by its signature in res.
+    // These three are shared by the interpreters of the bodies of functions.
 
     /*
      * Components to support external bindings. Right now, that just means the
@@ -85,13 +115,25 @@ public class InterpV implements IAbsynVisitor {
      * procedure call
      */
 
-    public InterpV(ErrorMsg err) {
-        this(err, new Env<Entry>(extern_env));
+    public InterpV(ErrorMsg err, Resolution res) {
+        this(err, res, null);
     }
 
-    protected InterpV(ErrorMsg err, Env<Entry> e) {
+    public InterpV(ErrorMsg err, Resolution res, EscapeAnalysis escapes) {
+        assert res != null && err != null;
+        this.res = res;
+        this.escapes = escapes;
+        this.store = new IValue[(escapes != null ? escapes.slots() : res.bindings())];
+        this.functions = new java.util.IdentityHashMap<>();
+        this.err = err;
+    }
+
+    protected InterpV(ErrorMsg err, InterpV e) {
         assert e != null && err != null;
-        this.env = e;
+        this.res = e.res;
+        this.escapes = e.escapes;
+        this.store = e.store;
+        this.functions = e.functions;
         this.err = err;
     }
 
@@ -109,86 +151,32 @@ public class InterpV implements IAbsynVisitor {
     public void visit(DeclGroupFunction d) {
         /*
          * This one is subtle: a function declaration must result in a new
-         * binding added to the environment, associating the function's
-         * identifier with its value. The "value" of a function consists of
-         * three parts: the parameters (a list of identifiers, the body (an
-         * expression), and the environment in which the function was declared.
-         * This is represented in TigerC by a tigerc.semant.interp.FunEntry
-         * object.
+         * binding, associating the function with its value. The "value" of a
+         * function consists of three parts: the parameters (here, the slots of
+         * their bindings in this.store), the body (an expression), and the
+         * environment in which the function was declared. This is represented
+         * in TigerC by a tigerc.semant.interp.FunEntry object.
          *
-         * As with DeclVar, we can assume that a new Scope has already been
-         * opened by the let that encloses this group of function declarations.
-         * This is important for two reasons. First, like DeclVar, we don't want
-         * to open/close another Scope inside of the declaration itself, since
-         * that would render the declaration unusable in the body of the let
-         * expression where we intend to use it. Second, lexical scope requires
-         * that the closure (FunEntry) representing each function/procedure
-         * definition stores the environment in which this group of declarations
-         * occurs.
-         * 
-         * A subtlety arises in the choice of saved environment. Because
-         * functions can be nested, they must be able to see every declaration
-         * that is present in their enclosing scope. I.e., the current scope is
-         * the one that must be saved. Because they can be declared in mutual
-         * recursion with each other, however, the saved environment must be one
-         * that includes bindings for every other function declared in the same
-         * group (this is why the syntactic grouping of declarations is
-         * considered significant).
-         * 
-         * We will see how to implement this in class, but the general idea is
-         * that the environment saved in a FunEnv will need to be modified AFTER
-         * the binding is added to the environment. If we were implementing
-         * scopes entirely with linked lists, we would do this by creating each
-         * FunEnv with a dummy environment (a "thunk"), then modifying this
-         * value to point to the environment that encloses all of the present
-         * function declarations, once we are done adding all of their bindings.
-         * Because we are implementing a lexical scope with a hashtable,
-         * however, we can accomplish this here by making sure that all
-         * functions in this group of declarations store the same copy of the
-         * current environment. The underlying hashtable will be modified
-         * appropriately for each declaration, and the fact that every FunEntry
-         * holds an alias to this table guarantees that all bindings within this
-         * group will be visible to each other. However, we will need to make a
-         * COPY, because we need to make sure that the Scope that currently
-         * exists as the value of the field this.enclosing is the one that is
-         * preserved by the closure. This prevents the problem of later
-         * extensions interfering with the bindings saved at declaration time
-         * (which can happen if the let body itself contains another let
-         * expression).
+         * Lexical scope requires that the closure (FunEntry) representing each
+         * function/procedure definition stores the environment in which this
+         * group of declarations occurs. As explained with this.store, though,
+         * that is just the store, which is the same for every call. So each
+         * closure saves this interpreter.
          *
-         * One more subtlety concerns multiple function declaration groups
-         * within the same let, which are syntactically distinct (because a type
-         * or var declaration separates them)? Functions in earlier groups
-         * should NOT be able to see functions in later groups (though the
-         * converse is fine). Otherwise, all functions within the same let could
-         * be mutually recursive, regardless of syntactic grouping. The solution
-         * implemented here is to ignore this! We'll count on the semantic
-         * analysis phase to filter out such programs.
-         * 
+         * Because the functions of a group can be declared in mutual recursion
+         * with each other, each one's body must be able to call every other
+         * function declared in the same group. That is taken care of by
+         * SemantV, which has resolved every call to the function it names: all
+         * we have to do is make sure that this.functions holds them all before
+         * any of them is called.
          */
-        Env<Entry> savedEnv = this.env.copyOf();
-        // NOTE: this will break if a deep copy of this.env is made. In
-        // particular, we're counting on
-        // ...... this.env != savedEnv && this.env.env == savedEnv.env
-        //
-        // assert this.env != savedEnv && (this.env.env == savedEnv.env);
-        // (not really expressible, since env.env is protected)
-        //
-        // What we're saving here is a reference into the *linked list* of
-        // Scope objects. Additional inner scopes will cause new Scope objects
-        // to be pushed onto the head of the stack pointed to by this.env, yet
-        // this will not interfere with the place we've saved in this stack for
-        // a function's closure.
-
         for (DeclFn f : d.fns) {
-            List<Symbol> paramIds = new java.util.ArrayList<>();
-            for (Pair<Symbol, Symbol> p : f.params) {
-                paramIds.add(p.fst);
+            List<tigerc.semant.analysis.VarEntry> params = this.res.params(f);
+            int[] paramSlots = new int[params.size()];
+            for (int i = 0; i < paramSlots.length; i++) {
+                paramSlots[i] = params.get(i).slot;
             }
-            env.extend(f.name, new FunEntry(paramIds, f.body, savedEnv));
-            // Because savedEnv.env == this.env.env, this also extends this.env
-            // Note, too, that we're already updating the environment that we're
-            // saving for each closure (FunEntry).
+            this.functions.put(this.res.function(f), new FunEntry(paramSlots, f.body, this));
         }
     }
 
@@ -211,8 +199,101 @@ public class InterpV implements IAbsynVisitor {
          * let-body. Hence, we do not open a new scope here.
          */
 
+        tigerc.semant.analysis.VarEntry x = this.res.variable(d);
+        if (this.escapes != null && this.escapes.scalar(x)) {
+            initScalar(d, x);
+            return;
+        }
+
         d.init.accept(this);
-        this.env.extend(d.name, new VarEntry(this.result));
+        this.store[x.slot] = this.result;
+    }
+
+    /*
+     * Gives the fields of x, declared by d, their first values, each in its
+     * own slot, in place of making the record d's initializer would make. If
+     * that is a call, the parameters of the function called are bound to its
+     * arguments meanwhile, as FunEntry.apply() would.
+     */
+    private void initScalar(DeclVar d, tigerc.semant.analysis.VarEntry x) {
+        DeclFn helper = this.escapes.helper(d);
+        List<tigerc.semant.analysis.VarEntry> params = java.util.Collections.emptyList();
+        IValue[] saved = new IValue[0];
+
+        if (helper != null) {
+            List<Exp> actuals = ((ExpCall) unwrap(d.init)).args;
+            IValue[] args = new IValue[actuals.size()];
+            for (int i = 0; i < args.length; i++) {
+                actuals.get(i).accept(this);
+                args[i] = this.result;
+            }
+
+            params = this.res.params(helper);
+            saved = new IValue[params.size()];
+            for (int i = 0; i < saved.length; i++) {
+                saved[i] = this.store[params.get(i).slot];
+                this.store[params.get(i).slot] = args[i];
+            }
+        }
+
+        try {
+            List<Pair<Symbol, Exp>> fields = this.escapes.allocation(d).fields;
+            IValue[] values = new IValue[fields.size()];
+            for (int i = 0; i < values.length; i++) {
+                fields.get(i).snd.accept(this);
+                values[i] = this.result;
+            }
+            for (int i = 0; i < values.length; i++)
+                this.store[this.escapes.fieldSlot(x, i)] = values[i];
+        } finally {
+            for (int i = 0; i < saved.length; i++)
+                this.store[params.get(i).slot] = saved[i];
+        }
+    }
+
+    /*
+     * The slot of the field v, if it is one of a record variable kept as
+     * fields (see initScalar()), and -1 otherwise
+     */
+    private int fieldSlot(Var v) {
+        if (this.escapes == null || !(v instanceof VarField) || !(((VarField) v).var instanceof VarSimple))
+            return -1;
+        tigerc.semant.analysis.VarEntry x = this.res.binding((VarSimple) ((VarField) v).var);
+        if (!this.escapes.scalar(x))
+            return -1;
+        RECORD r = (RECORD) x.ty.actual();
+        return this.escapes.fieldSlot(x, r.indexOf(((VarField) v).field));
+    }
+
+    /*
+     * If e is a call of the library's concat, the strings it joins, in order:
+     * the arguments of any call of concat among its arguments are joined in
+     * their place, and so on. Otherwise null.
+     */
+    private List<Exp> concatenation(Exp e) {
+        e = unwrap(e);
+        if (!(e instanceof ExpCall) || !((ExpCall) e).func.toString().equals("concat")
+                || this.functions.containsKey(this.res.target((ExpCall) e)))
+            return null;
+
+        List<Exp> parts = new java.util.ArrayList<>();
+        for (Exp arg : ((ExpCall) e).args) {
+            List<Exp> inner = concatenation(arg);
+            if (inner != null)
+                parts.addAll(inner);
+            else
+                parts.add(arg);
+        }
+        return parts;
+    }
+
+    /*
+     * e, without the parentheses around it
+     */
+    private static Exp unwrap(Exp e) {
+        while (e instanceof ExpSeq && ((ExpSeq) e).list.size() == 1)
+            e = ((ExpSeq) e).list.get(0);
+        return e;
     }
 
     @Override
@@ -237,15 +318,17 @@ public class InterpV implements IAbsynVisitor {
          * is that the way we update a value depends heavily on the actual type
          * of the LHS in this assignment. Record fields and array cells are
          * updated directly. Simple variables, however, must have their bindings
-         * changed in the environment.
+         * changed in the store.
          */
 
         if (e.lhs instanceof VarSimple) {
             VarSimple x = (VarSimple) e.lhs;
 
             e.rhs.accept(this);
-            boolean newx = this.env.update(x.name, new VarEntry(this.result));
-            assert newx;
+            this.store[this.res.binding(x).slot] = this.result;
+        } else if (fieldSlot(e.lhs) >= 0) {
+            e.rhs.accept(this);
+            this.store[fieldSlot(e.lhs)] = this.result;
         } else if (e.lhs instanceof VarSubscript) {
             /*
              * A subtle point here, and one that is not resolved in the language
@@ -312,19 +395,31 @@ public class InterpV implements IAbsynVisitor {
     @Override
     public void visit(ExpCall e) {
         /*
-         * There are several steps involved here. First, the binding for the
-         * function (e.func) must be retrieved from the current environment.
-         * Then, each argument expression must be evaluated in turn, and the
-         * resulting bindings must be added to the environment. The question is,
-         * which environment, the saved one or the current one?
-         * 
+         * There are several steps involved here. First, the closure for the
+         * function SemantV resolved e.func to must be retrieved. Then, each
+         * argument expression must be evaluated in turn, and the resulting
+         * values must be bound to the parameters (that is done by apply()).
          */
 
-        Entry fe = env.lookup(e.func);
-        assert fe != null && fe instanceof FunEntry;
+        List<Exp> parts = concatenation(e);
+        if (parts != null && parts.size() > 2) {
+            // Each string is copied once, rather than once for every concat
+            // around it
+            StringBuilder sb = new StringBuilder();
+            for (Exp part : parts) {
+                part.accept(this);
+                sb.append(((ValStr) this.result).val);
+            }
+            this.result = new ValStr(sb.toString());
+            return;
+        }
 
-        FunEntry f = (FunEntry) fe;
-        assert f.parameters.size() == e.args.size();
+        FunEntry f = this.functions.get(this.res.target(e));
+        if (f == null) {
+            // Only the library's functions are not declared in the program
+            f = (FunEntry) extern_env.lookup(e.func);
+        }
+        assert f != null;
 
         List<IValue> values = new java.util.ArrayList<>();
         for (int i = 0; i < e.args.size(); i++) {
@@ -349,19 +444,20 @@ public class InterpV implements IAbsynVisitor {
         e.hi.accept(this);
         int hi = ((ValInt) this.result).val;
 
-        this.env.beginScope();
-        this.env.extend(e.var, new VarEntry(v_lo));
+        int slot = this.res.variable(e).slot;
+        IValue saved = this.store[slot];
+        this.store[slot] = v_lo;
 
         try {
             for (int i = v_lo.val; i <= hi; i++) {
                 e.body.accept(this);
-                this.env.update(e.var, new VarEntry(new ValInt(i + 1)));
+                this.store[slot] = new ValInt(i + 1);
             }
         } catch (BreakE exc) {
+        } finally {
+            this.store[slot] = saved;
         }
 
-        this.env.endScope();
-
         assert this.result == ValUnit.inst;
     }
 
@@ -406,15 +502,44 @@ public class InterpV implements IAbsynVisitor {
     public void visit(ExpLet e) {
         // The behavior of Tiger's let is more along the lines of Lisp/Scheme
         // let* (scope for each declaration includes the previous binding).
+        // Each variable declared here may already have a value, if this let
+        // is in a function that has called itself: we put it back at the end.
 
-        env.beginScope();
-
+        java.util.List<IValue> saved = new java.util.ArrayList<>();
         for (Decl dec : e.decls) {
-            dec.accept(this);
+            if (dec instanceof DeclVar)
+                for (int slot : slots((DeclVar) dec))
+                    saved.add(this.store[slot]);
+        }
+
+        try {
+            for (Decl dec : e.decls) {
+                dec.accept(this);
+            }
+
+            e.body.accept(this);
+        } finally {
+            int i = 0;
+            for (Decl dec : e.decls) {
+                if (dec instanceof DeclVar)
+                    for (int slot : slots((DeclVar) dec))
+                        this.store[slot] = saved.get(i++);
+            }
         }
+    }
 
-        e.body.accept(this);
-        env.endScope();
+    /*
+     * The slots that d gives values to: that of its variable, or those of
+     * its fields
+     */
+    private int[] slots(DeclVar d) {
+        tigerc.semant.analysis.VarEntry x = this.res.variable(d);
+        if (this.escapes == null || !this.escapes.scalar(x))
+            return new int[] { x.slot };
+        int[] slots = new int[((RECORD) x.ty.actual()).fields.size()];
+        for (int i = 0; i < slots.length; i++)
+            slots[i] = this.escapes.fieldSlot(x, i);
+        return slots;
     }
 
     @Override
@@ -510,6 +635,9 @@ public class InterpV implements IAbsynVisitor {
                 } else if (v1 instanceof ValArray) {
                     this.result = (v1 == v2) ? yes : no;
                     break;
+                } else if (v1 instanceof ValExtern) {
+                    this.result = (((ValExtern) v1).val == ((ValExtern) v2).val) ? yes : no;
+                    break;
                 } else if (v1 == ValNil.inst && v2 == ValNil.inst) {
                     this.result = yes;
                     break;
@@ -612,6 +740,12 @@ public class InterpV implements IAbsynVisitor {
 
     @Override
     public void visit(VarField v) {
+        int slot = fieldSlot(v);
+        if (slot >= 0) {
+            this.result = this.store[slot];
+            return;
+        }
+
         v.var.accept(this);
         assert this.result instanceof ValRecord;
 
@@ -621,10 +755,7 @@ public class InterpV implements IAbsynVisitor {
 
     @Override
     public void visit(VarSimple v) {
-        Entry ve = this.env.lookup(v.name);
-        assert ve instanceof VarEntry;
-
-        this.result = ((VarEntry) ve).val;
+        this.result = this.store[this.res.binding(v).slot];
     }
 
     @Override
@@ -643,6 +774,14 @@ public class InterpV implements IAbsynVisitor {
         return result;
     }
 
+    /**
+     * Writes out what the program has printed so far, which TigerStdLib keeps
+     * in a buffer. Call this before writing anything else to System.out.
+     */
+    public static void flushOutput() {
+        ((FunEntry) extern_env.lookup(Symbol.global("flush"))).apply(null, java.util.Collections.emptyList());
+    }
+
     /*************************************************************************
      * utility methods: Unlike type checking and code generation, we don't need
      * much utility support for the interpreter.  Here, we just have a procedure for 
@@ -659,18 +798,43 @@ public class InterpV implements IAbsynVisitor {
         Class<?>[] oneIntParam = { int_class };
         Class<?>[] strstr = {str_class, str_class };
         Class<?>[] strstrint = {str_class,int_class,int_class};
+        Class<?>[] intsstr = {int[].class, str_class};
+        final Class<?> table_class = Class.forName("TigerTable");
+        Class<?>[] table = { table_class };
+        Class<?>[] tablestr = { table_class, str_class };
+        Class<?>[] tablestrint = { table_class, str_class, int_class };
+        final Class<?> itable_class = Class.forName("TigerIntTable");
+        Class<?>[] itable = { itable_class };
+        Class<?>[] itableint = { itable_class, int_class };
+        Class<?>[] itableintint = { itable_class, int_class, int_class };
         
-        extern_env.extend(Symbol.sym("print"), new ExternFunEntry(std_lib,"print",_string_));
-        extern_env.extend(Symbol.sym("printi"), new ExternFunEntry(std_lib,"printi",oneIntParam));
-        extern_env.extend(Symbol.sym("flush"), new ExternFunEntry(std_lib,"flush",_void_));
-        extern_env.extend(Symbol.sym("getchar"), new ExternFunEntry(std_lib,"getchar",_void_));
-        extern_env.extend(Symbol.sym("ord"), new ExternFunEntry(std_lib,"ord",_string_));
-        extern_env.extend(Symbol.sym("chr"), new ExternFunEntry(std_lib,"chr",oneIntParam));
-        extern_env.extend(Symbol.sym("size"), new ExternFunEntry(std_lib,"size",_string_));
-        extern_env.extend(Symbol.sym("substring"), new ExternFunEntry(std_lib,"substring",strstrint));
-        extern_env.extend(Symbol.sym("concat"), new ExternFunEntry(std_lib,"concat",strstr));
-        extern_env.extend(Symbol.sym("not"), new ExternFunEntry(std_lib,"not",oneIntParam));
-        extern_env.extend(Symbol.sym("exit"), new ExternFunEntry(std_lib,"exit",oneIntParam));
+        extern_env.extend(Symbol.global("print"), new ExternFunEntry(std_lib,"print",_string_));
+        extern_env.extend(Symbol.global("printi"), new ExternFunEntry(std_lib,"printi",oneIntParam));
+        extern_env.extend(Symbol.global("flush"), new ExternFunEntry(std_lib,"flush",_void_));
+        extern_env.extend(Symbol.global("getchar"), new ExternFunEntry(std_lib,"getchar",_void_));
+        extern_env.extend(Symbol.global("ord"), new ExternFunEntry(std_lib,"ord",_string_));
+        extern_env.extend(Symbol.global("chr"), new ExternFunEntry(std_lib,"chr",oneIntParam));
+        extern_env.extend(Symbol.global("size"), new ExternFunEntry(std_lib,"size",_string_));
+        extern_env.extend(Symbol.global("substring"), new ExternFunEntry(std_lib,"substring",strstrint));
+        extern_env.extend(Symbol.global("concat"), new ExternFunEntry(std_lib,"concat",strstr));
+        extern_env.extend(Symbol.global("not"), new ExternFunEntry(std_lib,"not",oneIntParam));
+        extern_env.extend(Symbol.global("exit"), new ExternFunEntry(std_lib,"exit",oneIntParam));
+        extern_env.extend(Symbol.global("readline"), new ExternFunEntry(std_lib,"readline",_void_));
+        extern_env.extend(Symbol.global("readint"), new ExternFunEntry(std_lib,"readint",_void_));
+        extern_env.extend(Symbol.global("eof"), new ExternFunEntry(std_lib,"eof",_void_));
+        extern_env.extend(Symbol.global("readfile"), new ExternFunEntry(std_lib,"readfile",_string_));
+        extern_env.extend(Symbol.global("readints"), new ExternFunEntry(std_lib,"readints",_string_));
+        extern_env.extend(Symbol.global("printints"), new ExternFunEntry(std_lib,"printints",intsstr));
+        extern_env.extend(Symbol.global("table_new"), new ExternFunEntry(std_lib,"table_new",_void_));
+        extern_env.extend(Symbol.global("table_get"), new ExternFunEntry(std_lib,"table_get",tablestrint));
+        extern_env.extend(Symbol.global("table_put"), new ExternFunEntry(std_lib,"table_put",tablestrint));
+        extern_env.extend(Symbol.global("table_remove"), new ExternFunEntry(std_lib,"table_remove",tablestr));
+        extern_env.extend(Symbol.global("table_size"), new ExternFunEntry(std_lib,"table_size",table));
+        extern_env.extend(Symbol.global("itable_new"), new ExternFunEntry(std_lib,"itable_new",_void_));
+        extern_env.extend(Symbol.global("itable_get"), new ExternFunEntry(std_lib,"itable_get",itableintint));
+        extern_env.extend(Symbol.global("itable_put"), new ExternFunEntry(std_lib,"itable_put",itableintint));
+        extern_env.extend(Symbol.global("itable_remove"), new ExternFunEntry(std_lib,"itable_remove",itableint));
+        extern_env.extend(Symbol.global("itable_size"), new ExternFunEntry(std_lib,"itable_size",itable));
     }
 
 }
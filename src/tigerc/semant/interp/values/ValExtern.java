@@ -0,0 +1,17 @@
+package tigerc.semant.interp.values;
+
+/**
+ * A value that the library made and that only the library can use (as a
+ * table is), which the interpreter just passes along
+ */
+public class ValExtern implements IValue {
+    public final Object val;
+
+    public ValExtern(Object val) {
+        this.val = val;
+    }
+
+    public String toString() {
+        return val.toString();
+    }
+}
@@ -6,7 +6,7 @@ import tigerc.util.Pair;
 import java.util.List;
 
 public class DeclFn implements ISyntaxElt {
-	public final int pos;
+	public int pos;
 	public final Symbol name;
 	public final List<Pair<Symbol, Symbol>> params;  // (id,type) pairs
 	public final TyName resultTy; /* optional */
@@ -25,4 +25,9 @@ public class DeclFn implements ISyntaxElt {
 		return pos;
 	}
 
+	@Override
+	public void movePos(int delta) {
+		pos += delta;
+	}
+
 }
@@ -6,7 +6,7 @@ import tigerc.util.Symbol;
 public class DeclTy implements ISyntaxElt {
 	public final Symbol name;
 	public final Ty ty;
-	public final int pos;
+	public int pos;
 	
 	public DeclTy(int p, Symbol id, Ty t) {
 		pos = p;
@@ -15,4 +15,6 @@ public class DeclTy implements ISyntaxElt {
 	}
 	
 	public int getPos() { return pos; }
+
+	public void movePos(int delta) { pos += delta; }
 }
@@ -1,7 +1,7 @@
 package tigerc.syntax.absyn;
 
 abstract public class Exp implements IAbsyn {
-	protected final int pos;
+	protected int pos;
 
 	protected Exp(int p) {
 		pos = p;
@@ -10,4 +10,8 @@ abstract public class Exp implements IAbsyn {
 	public int getPos() {
 		return pos;
 	}
+
+	public void movePos(int delta) {
+		pos += delta;
+	}
 }
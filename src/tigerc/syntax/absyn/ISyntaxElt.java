@@ -2,4 +2,8 @@ package tigerc.syntax.absyn;
 
 public interface ISyntaxElt {
 	int getPos();
+
+	// Moves the construct delta characters along the source text, as when
+	// an edit earlier in the file has been spliced into the tree
+	void movePos(int delta);
 }
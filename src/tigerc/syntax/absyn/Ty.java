@@ -1,7 +1,7 @@
 package tigerc.syntax.absyn;
 
 abstract public class Ty implements IAbsyn {
-	protected final int pos;
+	protected int pos;
 
 	protected Ty(int p) {
 		pos = p;
@@ -9,4 +9,6 @@ abstract public class Ty implements IAbsyn {
 
 	public int getPos() { return pos; }
 
+	public void movePos(int delta) { pos += delta; }
+
 }
@@ -1,9 +1,11 @@
 package tigerc.syntax.absyn;
 
 abstract public class Var implements IAbsyn {
-	protected final int pos;
+	protected int pos;
 	
 	protected Var(int p) {pos = p; }
 	
 	public int getPos() { return pos; }
+
+	public void movePos(int delta) { pos += delta; }
 }
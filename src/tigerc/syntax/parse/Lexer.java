@@ -7,11 +7,14 @@
  **  peek() method, which is handy in recursive descent parsing (it implements
  **  the necessary one token lookahead).
  **
+ **  A Lexer is also a CUP Scanner, so that either parser (TigerParse or
+ **  TigerRDParse) can read from any lexer.
+ **
  **************************************************************************/
 
 package tigerc.syntax.parse;
 
-public interface Lexer {
+public interface Lexer extends java_cup.runtime.Scanner {
     public java_cup.runtime.Symbol next_token() throws java.io.IOException;
     public java_cup.runtime.Symbol peek() throws java.io.IOException;
 }
@@ -0,0 +1,578 @@
+/*************************************************************************
+ **  TigerIncrementalParse.java
+ **  tigerc
+ **
+ **  Keeps the syntax tree of a program up to date as its text is edited,
+ **  for editor tooling that needs a fresh tree after every keystroke.
+ **
+ **  The parser records the extent in the text of every let and every
+ **  declaration (group, function, type or variable) -- the "regions" of the
+ **  program.  An edit is handled by finding the smallest region that
+ **  contains it, lexing and parsing just the new text of that region (with
+ **  TigerMappedLex and TigerRDParse), and splicing the result into the
+ **  existing tree in place of the old one.  The positions of all nodes that
+ **  follow the edit are moved by the change in length.  The tree is
+ **  updated in place, so the caller's previous tree is the new tree.
+ **
+ **  A region is only reparsed on its own when that is certain to give the
+ **  same tree as parsing the whole program: the new text must lex without
+ **  error, parse completely as the same kind of thing (a let, or a run of
+ **  declarations), end with a token that can't run into the text after it,
+ **  and, for a function or type within a group, still be a single group of
+ **  the same kind.  Adjacent groups of the same kind are merged, as the
+ **  parser would have grouped them.  When an edit fails these tests, the
+ **  next larger region is tried, and in the end the whole program is
+ **  reparsed (which reports any syntax error in the usual way).
+ **
+ **  The lets and declarations that have been changed in place, rather than
+ **  replaced, are remembered until takeChanges(), for IncrementalSemant.
+ **
+ **  History:  10/18/2026 created
+ **
+ **************************************************************************/
+
+package tigerc.syntax.parse;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import tigerc.syntax.absyn.*;
+import tigerc.util.ErrorMsg;
+import tigerc.util.Pair;
+import tigerc.util.Symbol;
+
+public class TigerIncrementalParse {
+    private final StringBuilder text;
+    private final ErrorMsg errorMsg;
+    private IAbsyn tree;
+
+    // The outermost regions, in order of position
+    private List<Region> regions = new java.util.ArrayList<Region>();
+
+    private int lastReparsed; // length of the text parsed for the last edit
+
+    // The nodes edited in place since the last takeChanges()
+    private final java.util.Set<ISyntaxElt> changed =
+            java.util.Collections.newSetFromMap(new java.util.IdentityHashMap<ISyntaxElt, Boolean>());
+
+    /*
+     * A let or declaration, with the positions of its first and last
+     * characters (end is exclusive), and the regions immediately inside it.
+     */
+    private static final class Region {
+        final ISyntaxElt node;
+        int start, end;
+        Region parent;
+        final List<Region> children = new java.util.ArrayList<Region>();
+
+        Region(ISyntaxElt node, int start, int end) {
+            this.node = node;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Parses text in full. Syntax errors are reported to errorMsg.
+     *
+     * @throws Exception
+     *             if the text has a syntax error
+     */
+    public TigerIncrementalParse(String text, ErrorMsg errorMsg) throws Exception {
+        this.text = new StringBuilder(text);
+        this.errorMsg = errorMsg;
+        reparseAll();
+    }
+
+    public IAbsyn tree() {
+        return this.tree;
+    }
+
+    public String text() {
+        return this.text.toString();
+    }
+
+    /**
+     * The number of characters parsed to bring the tree up to date after the
+     * last edit (the length of the whole text, if it was reparsed in full).
+     */
+    public int lastReparsedLength() {
+        return this.lastReparsed;
+    }
+
+    /**
+     * Returns the lets and declarations that have been changed in place by
+     * edits since the last call, and forgets them. (A node that an edit has
+     * replaced is new; a region that contains an edit has been changed.)
+     */
+    public java.util.Set<ISyntaxElt> takeChanges() {
+        java.util.Set<ISyntaxElt> s =
+                java.util.Collections.newSetFromMap(new java.util.IdentityHashMap<ISyntaxElt, Boolean>());
+        s.addAll(this.changed);
+        this.changed.clear();
+        return s;
+    }
+
+    /**
+     * Replaces the length characters of the text at offset with replacement,
+     * and returns the syntax tree of the result.
+     *
+     * @throws Exception
+     *             if the new text has a syntax error; the tree is then
+     *             reparsed in full after the next edit
+     */
+    public IAbsyn edit(int offset, int length, String replacement) throws Exception {
+        if (offset < 0 || length < 0 || offset + length > this.text.length())
+            throw new IndexOutOfBoundsException("edit " + offset + "+" + length
+                    + " outside text of length " + this.text.length());
+        this.text.replace(offset, offset + length, replacement);
+        int delta = replacement.length() - length;
+
+        if (this.tree != null) {
+            // The regions containing the edit, innermost first
+            List<Region> chain = new java.util.ArrayList<Region>();
+            for (Region r = innermost(this.regions, offset, offset + length); r != null; r = r.parent)
+                chain.add(r);
+
+            for (Region r : chain) {
+                if (reparse(r, offset + length, delta))
+                    return this.tree;
+            }
+        }
+
+        reparseAll();
+        return this.tree;
+    }
+
+    /*************************************************************************
+     ***** private utility methods
+     ****************************/
+
+    private void reparseAll() throws Exception {
+        this.tree = null;
+        this.regions = new java.util.ArrayList<Region>();
+        this.changed.clear(); // (every node will be new)
+        this.lastReparsed = this.text.length();
+
+        ByteBuffer b = ByteBuffer.wrap(this.text.toString().getBytes(StandardCharsets.UTF_8));
+        TigerRDParse parser = new TigerRDParse(new TigerMappedLex(b, this.errorMsg), this.errorMsg);
+        RegionBuilder builder = new RegionBuilder();
+        parser.extents = builder;
+        IAbsyn t = (IAbsyn) parser.parse().value;
+        this.regions = builder.top;
+        for (Region r : this.regions)
+            r.parent = null;
+        this.tree = t;
+    }
+
+    /*
+     * Tries to bring the tree up to date by reparsing region r alone.
+     * editEnd is the (old) position just after the replaced text.
+     */
+    private boolean reparse(Region r, int editEnd, int delta) {
+        int start = r.start, newEnd = r.end + delta;
+        if (newEnd <= start)
+            return false;
+        String fragment = this.text.substring(start, newEnd);
+        if (newEnd < this.text.length()
+                && isWordChar(fragment.charAt(fragment.length() - 1))
+                && isWordChar(this.text.charAt(newEnd)))
+            return false; // the last token would run into the next one
+
+        ErrorMsg quiet = new ErrorMsg(null) {
+            @Override
+            public void error(int col, String msg) {
+                this.anyErrors = true;
+            }
+        };
+        ByteBuffer b = ByteBuffer.wrap(fragment.getBytes(StandardCharsets.UTF_8));
+        TigerRDParse parser = new TigerRDParse(new TigerMappedLex(b, quiet), quiet);
+        parser.base = start;
+        parser.quiet = true;
+        RegionBuilder builder = new RegionBuilder();
+        parser.extents = builder;
+
+        Object result;
+        try {
+            result = (r.node instanceof ExpLet ? parser.parseExp() : parser.parseDecls());
+        } catch (Exception e) {
+            return false;
+        }
+        if (quiet.anyErrors || parser.end() != newEnd)
+            return false;
+
+        if (r.node instanceof ExpLet) {
+            if (!(result instanceof ExpLet) || builder.top.size() != 1)
+                return false;
+            moveAll(r, editEnd, delta);
+            ExpLet old = (ExpLet) r.node, let = (ExpLet) result;
+            old.decls = let.decls;
+            old.body = let.body;
+            replaceChildren(r, builder.top.get(0).children);
+        } else if (r.node instanceof DeclFn || r.node instanceof DeclTy) {
+            @SuppressWarnings("unchecked")
+            List<Decl> ds = (List<Decl>) result;
+            if (ds.size() != 1 || !sameKind(ds.get(0), (Decl) r.parent.node))
+                return false;
+            moveAll(r, editEnd, delta);
+            List<? extends ISyntaxElt> items = members((Decl) r.parent.node);
+            int i = indexOf(items, r.node);
+            items.remove(i);
+            addAll(items, i, members(ds.get(0)));
+            splice(r, builder.top.get(0).children);
+        } else {
+            @SuppressWarnings("unchecked")
+            List<Decl> ds = (List<Decl>) result;
+            moveAll(r, editEnd, delta);
+            List<Decl> decls = ((ExpLet) r.parent.node).decls;
+            int i = indexOf(decls, r.node);
+            decls.remove(i);
+            decls.addAll(i, ds);
+            int k = splice(r, builder.top);
+
+            // Merge with the neighbours, as the parser would have grouped them
+            if (i + ds.size() < decls.size())
+                merge(decls, i + ds.size() - 1, r.parent, k + ds.size() - 1);
+            if (i > 0)
+                merge(decls, i - 1, r.parent, k - 1);
+        }
+
+        for (Region p = r; p != null; p = p.parent)
+            this.changed.add(p.node);
+        this.lastReparsed = fragment.length();
+        return true;
+    }
+
+    /*
+     * Moves every node and region that follows editEnd by delta, except
+     * those inside r, which are about to be replaced.
+     */
+    private void moveAll(Region r, int editEnd, int delta) {
+        if (delta == 0)
+            return;
+        new Mover(r.node, editEnd, delta).node(this.tree);
+        for (Region top : this.regions)
+            moveRegions(top, r, editEnd, delta);
+    }
+
+    private static void moveRegions(Region r, Region skip, int editEnd, int delta) {
+        if (r.end < editEnd)
+            return;
+        if (r.start >= editEnd)
+            r.start += delta;
+        r.end += delta;
+        if (r == skip)
+            return;
+        for (Region c : r.children)
+            moveRegions(c, skip, editEnd, delta);
+    }
+
+    /*
+     * Replaces region r by the regions rs, among its parent's children, and
+     * returns the index of the first of them.
+     */
+    private static int splice(Region r, List<Region> rs) {
+        List<Region> siblings = r.parent.children;
+        int k = siblings.indexOf(r);
+        siblings.remove(k);
+        siblings.addAll(k, rs);
+        for (Region s : rs)
+            s.parent = r.parent;
+        return k;
+    }
+
+    private static void replaceChildren(Region r, List<Region> children) {
+        r.children.clear();
+        r.children.addAll(children);
+        for (Region c : children)
+            c.parent = r;
+    }
+
+    /*
+     * If decls i and i+1 are groups of the same kind, appends the second to
+     * the first, and does the same with their regions, the children of let
+     * from index k on.
+     */
+    private void merge(List<Decl> decls, int i, Region let, int k) {
+        Decl a = decls.get(i), b = decls.get(i + 1);
+        if (!sameKind(a, b) || a instanceof DeclVar)
+            return;
+        this.changed.add(a);
+        addAll(members(a), members(a).size(), members(b));
+        decls.remove(i + 1);
+
+        Region ra = let.children.get(k), rb = let.children.remove(k + 1);
+        ra.end = rb.end;
+        for (Region c : rb.children) {
+            c.parent = ra;
+            ra.children.add(c);
+        }
+    }
+
+    private static boolean sameKind(Decl a, Decl b) {
+        return a.getClass() == b.getClass();
+    }
+
+    /*
+     * The functions or types of a declaration group.
+     */
+    private static List<? extends ISyntaxElt> members(Decl group) {
+        if (group instanceof DeclGroupFunction)
+            return ((DeclGroupFunction) group).fns;
+        return ((DeclGroupType) group).decls;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void addAll(List<? extends ISyntaxElt> to, int i, List<? extends ISyntaxElt> from) {
+        ((List<ISyntaxElt>) to).addAll(i, from);
+    }
+
+    private static int indexOf(List<? extends ISyntaxElt> items, ISyntaxElt x) {
+        for (int i = 0; i < items.size(); i++) {
+            if (items.get(i) == x)
+                return i;
+        }
+        throw new IllegalStateException("region is not in its parent");
+    }
+
+    /*
+     * The innermost region in rs (or inside one of them) that strictly
+     * contains the text from lo to hi: it must begin before lo, so that its
+     * first token is untouched.
+     */
+    private static Region innermost(List<Region> rs, int lo, int hi) {
+        Region found = null;
+        while (true) {
+            // binary search for the last region beginning before lo
+            int a = 0, b = rs.size() - 1, k = -1;
+            while (a <= b) {
+                int m = (a + b) >>> 1;
+                if (rs.get(m).start < lo) {
+                    k = m;
+                    a = m + 1;
+                } else {
+                    b = m - 1;
+                }
+            }
+            if (k < 0 || rs.get(k).end < hi)
+                return found;
+            found = rs.get(k);
+            rs = found.children;
+        }
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    /*
+     * Assembles the extents reported by the parser, innermost first, into a
+     * tree of regions.
+     */
+    private static final class RegionBuilder implements TigerRDParse.ExtentListener {
+        final List<Region> top = new java.util.ArrayList<Region>();
+
+        @Override
+        public void extent(ISyntaxElt node, int start, int end) {
+            Region r = new Region(node, start, end);
+            int k = this.top.size();
+            while (k > 0 && this.top.get(k - 1).start >= start)
+                k--;
+            List<Region> inner = this.top.subList(k, this.top.size());
+            for (Region c : inner) {
+                c.parent = r;
+                r.children.add(c);
+            }
+            inner.clear();
+            this.top.add(r);
+        }
+    }
+
+    /*
+     * Moves every node at or after a position by delta, skipping one subtree
+     * (the region being replaced) and any let or declaration that ends
+     * before the position.
+     */
+    private final class Mover implements IAbsynVisitor {
+        private final ISyntaxElt skip;
+        private final int from, delta;
+        private final java.util.Map<ISyntaxElt, Region> regionOf =
+                new java.util.IdentityHashMap<ISyntaxElt, Region>();
+
+        Mover(ISyntaxElt skip, int from, int delta) {
+            this.skip = skip;
+            this.from = from;
+            this.delta = delta;
+            for (Region r : TigerIncrementalParse.this.regions)
+                index(r);
+        }
+
+        private void index(Region r) {
+            if (r.end <= this.from)
+                return;
+            this.regionOf.put(r.node, r);
+            for (Region c : r.children)
+                index(c);
+        }
+
+        void node(ISyntaxElt n) {
+            if (n == null || n == this.skip || before(n))
+                return;
+            if (n.getPos() >= this.from)
+                n.movePos(this.delta);
+
+            if (n instanceof IAbsyn) {
+                ((IAbsyn) n).accept(this);
+            } else if (n instanceof DeclFn) {
+                node(((DeclFn) n).resultTy);
+                node(((DeclFn) n).body);
+            } else {
+                node(((DeclTy) n).ty);
+            }
+        }
+
+        /*
+         * True for a region that ends before the edit, and so has nothing in
+         * it to move.
+         */
+        private boolean before(ISyntaxElt n) {
+            return (n instanceof ExpLet || n instanceof Decl || n instanceof DeclFn
+                    || n instanceof DeclTy) && !this.regionOf.containsKey(n);
+        }
+
+        private void nodes(List<? extends ISyntaxElt> ns) {
+            for (ISyntaxElt n : ns)
+                node(n);
+        }
+
+        @Override
+        public void visit(DeclGroupFunction d) {
+            nodes(d.fns);
+        }
+
+        @Override
+        public void visit(DeclGroupType d) {
+            nodes(d.decls);
+        }
+
+        @Override
+        public void visit(DeclVar d) {
+            node(d.init);
+        }
+
+        @Override
+        public void visit(ExpArray e) {
+            node(e.size);
+            node(e.init);
+        }
+
+        @Override
+        public void visit(ExpAssign e) {
+            node(e.lhs);
+            node(e.rhs);
+        }
+
+        @Override
+        public void visit(ExpBreak e) {
+        }
+
+        @Override
+        public void visit(ExpCall e) {
+            nodes(e.args);
+        }
+
+        @Override
+        public void visit(ExpFor e) {
+            node(e.lo);
+            node(e.hi);
+            node(e.body);
+        }
+
+        @Override
+        public void visit(ExpIf e) {
+            node(e.test);
+            node(e.thenclause);
+        }
+
+        @Override
+        public void visit(ExpIfElse e) {
+            node(e.test);
+            node(e.thenclause);
+            node(e.elseclause);
+        }
+
+        @Override
+        public void visit(ExpInt e) {
+        }
+
+        @Override
+        public void visit(ExpLet e) {
+            nodes(e.decls);
+            node(e.body);
+        }
+
+        @Override
+        public void visit(ExpNil e) {
+        }
+
+        @Override
+        public void visit(ExpOp e) {
+            node(e.left);
+            node(e.right);
+        }
+
+        @Override
+        public void visit(ExpRecord e) {
+            for (Pair<Symbol, Exp> f : e.fields)
+                node(f.snd);
+        }
+
+        @Override
+        public void visit(ExpSeq e) {
+            nodes(e.list);
+        }
+
+        @Override
+        public void visit(ExpString e) {
+        }
+
+        @Override
+        public void visit(ExpVar e) {
+            node(e.var);
+        }
+
+        @Override
+        public void visit(ExpWhile e) {
+            node(e.test);
+            node(e.body);
+        }
+
+        @Override
+        public void visit(TyArray t) {
+        }
+
+        @Override
+        public void visit(TyName t) {
+        }
+
+        @Override
+        public void visit(TyRecord t) {
+        }
+
+        @Override
+        public void visit(VarField v) {
+            node(v.var);
+        }
+
+        @Override
+        public void visit(VarSimple v) {
+        }
+
+        @Override
+        public void visit(VarSubscript v) {
+            node(v.var);
+            node(v.index);
+        }
+    }
+}
@@ -0,0 +1,648 @@
+/*************************************************************************
+ **  TigerMappedLex.java
+ **  tigerc
+ **
+ **  A hand-written alternative to the JFlex-generated TigerLex, for large
+ **  (typically machine-generated) source files.  The input is a ByteBuffer,
+ **  normally a memory-mapped file, holding UTF-8 text.  The whole buffer is
+ **  scanned once, up front, into a token stream kept in parallel primitive
+ **  arrays (kind, left and right character positions, byte offset, line).
+ **  Nothing is allocated per token during the scan: identifier, integer and
+ **  string values are only decoded when the parser asks for a token, and
+ **  identifiers are shared through a small table keyed on their bytes.
+ **  Keywords are recognized with a perfect hash on the first and last
+ **  characters and the length.
+ **
+ **  The tokens, positions, values and error messages are exactly those that
+ **  TigerLex produces for the same text, including its quirks: "<--" ends the
+ **  input, the left position of a string literal is that of its closing
+ **  quote, and the escape sequences \ddd, \" and \\ are kept in escaped form.
+ **  The two differ only on input that TigerLex can't handle at all: it
+ **  throws on every \ddd escape and on a vertical tab or form feed, which
+ **  here are decoded as intended and treated as line breaks, respectively.
+ **  Since the scan runs ahead of the parser, calls to ErrorMsg.newline() and
+ **  lexical error reports are deferred until the parser reaches the token
+ **  they precede, so that line numbers in messages come out as they would
+ **  with TigerLex.
+ **
+ **  History:  10/18/2026 created
+ **
+ **************************************************************************/
+
+package tigerc.syntax.parse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import tigerc.util.ErrorMsg;
+
+public class TigerMappedLex implements Lexer, java_cup.runtime.Scanner {
+
+    /*
+     * Keywords, placed at their perfect hash values (see kwHash()).
+     */
+    private static final int KW_SLOTS = 64;
+    private static final byte[][] KW_TEXT = new byte[KW_SLOTS][];
+    private static final int[] KW_KIND = new int[KW_SLOTS];
+
+    static {
+        String[] words = { "import", "while", "for", "to", "break", "let",
+                "in", "end", "function", "var", "type", "array", "if", "then",
+                "else", "do", "of", "nil" };
+        int[] kinds = { TigerSyms.IMPORT, TigerSyms.WHILE, TigerSyms.FOR,
+                TigerSyms.TO, TigerSyms.BREAK, TigerSyms.LET, TigerSyms.IN,
+                TigerSyms.END, TigerSyms.FUNCTION, TigerSyms.VAR,
+                TigerSyms.TYPE, TigerSyms.ARRAY, TigerSyms.IF, TigerSyms.THEN,
+                TigerSyms.ELSE, TigerSyms.DO, TigerSyms.OF, TigerSyms.NIL };
+        for (int k = 0; k < words.length; k++) {
+            byte[] w = words[k].getBytes(StandardCharsets.US_ASCII);
+            int h = kwHash(w[0], w[w.length - 1], w.length);
+            if (KW_TEXT[h] != null)
+                throw new Error("keyword hash collision: " + words[k]);
+            KW_TEXT[h] = w;
+            KW_KIND[h] = kinds[k];
+        }
+    }
+
+    private final ByteBuffer buf;
+    private final int limit;
+    private final ErrorMsg errorMsg;
+
+    /*
+     * The token stream. For token i, kind[i] is its TigerSyms code, left[i]
+     * and right[i] its character positions (as TigerLex's yychar), offset[i]
+     * the byte offset at which its text begins, and lines[i] the number of
+     * newline() calls TigerLex would have made before returning it.
+     */
+    private int count = 0;
+    private byte[] kind;
+    private int[] left, right, offset, lines;
+
+    /*
+     * Lexical errors, in the order found, each with the token it precedes
+     * and the newline() count at the point where it was detected.
+     */
+    private int errCount = 0;
+    private int[] errToken = new int[4], errLines = new int[4],
+            errColumn = new int[4];
+    private String[] errText = new String[4];
+
+    /*
+     * Identifier values, keyed on their bytes. Most identifiers recur many
+     * times, so this avoids making a new String for each occurrence.
+     */
+    private String[] names = new String[256];
+    private int nameCount = 0;
+
+    private int next = 0; // the next token to hand out
+    private int nextErr = 0; // the next error to report
+    private int linesReported = 0;
+
+    // Scanner state (used only during the scan)
+    private int pos; // byte index
+    private int continuations = 0; // UTF-8 continuation bytes before pos
+    private int newlines = 0; // newline() calls so far
+    private int yyline = 0; // all line terminators so far, as in JFlex
+    private int lineStart = 0; // character position where the line began
+
+    public TigerMappedLex(ByteBuffer b, ErrorMsg e) {
+        this.buf = b;
+        this.limit = b.limit();
+        this.pos = b.position();
+        this.errorMsg = e;
+
+        int guess = Math.max(16, (this.limit - this.pos) / 4);
+        this.kind = new byte[guess];
+        this.left = new int[guess];
+        this.right = new int[guess];
+        this.offset = new int[guess];
+        this.lines = new int[guess];
+
+        scan();
+    }
+
+    /**
+     * Maps the file f into memory and scans it.
+     */
+    public TigerMappedLex(File f, ErrorMsg e) throws IOException {
+        this(map(f), e);
+    }
+
+    /**
+     * Reads all of s and scans it. (Mapping a file is preferable, but this
+     * makes the lexer usable on standard input.)
+     */
+    public TigerMappedLex(java.io.InputStream s, ErrorMsg e) throws IOException {
+        this(ByteBuffer.wrap(readAll(s)), e);
+    }
+
+    @Override
+    public java_cup.runtime.Symbol next_token() {
+        java_cup.runtime.Symbol t = token(this.next);
+        if (this.next < this.count - 1)
+            this.next++;
+        return t;
+    }
+
+    @Override
+    public java_cup.runtime.Symbol peek() {
+        return token(this.next);
+    }
+
+    /*************************************************************************
+     ***** Direct access to the token stream, for parsers that don't need a
+     ***** java_cup.runtime.Symbol per token. Indices run from 0 to
+     ***** tokenCount()-1; the last token is always EOF.
+     ****************************/
+
+    public int tokenCount() {
+        return this.count;
+    }
+
+    public int kind(int i) {
+        return this.kind[i];
+    }
+
+    public int left(int i) {
+        return this.left[i];
+    }
+
+    public int right(int i) {
+        return this.right[i];
+    }
+
+    /**
+     * Returns the value of token i (a String for ID and STRING, an Integer for
+     * INT, and null otherwise), decoding it from the input.
+     */
+    public Object value(int i) {
+        switch (this.kind[i]) {
+        case TigerSyms.ID:
+            return name(this.offset[i], this.right[i] - this.left[i]);
+        case TigerSyms.INT:
+            return Integer.valueOf(ascii(this.offset[i], this.right[i] - this.left[i]));
+        case TigerSyms.STRING:
+            return stringValue(this.offset[i]);
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Makes the calls to ErrorMsg (newline() and error()) that TigerLex would
+     * have made by the time it returned token i. Calls are made at most once,
+     * so this may be called repeatedly and out of order.
+     */
+    public void report(int i) {
+        while (this.nextErr < this.errCount && this.errToken[this.nextErr] <= i) {
+            reportLines(this.errLines[this.nextErr]);
+            this.errorMsg.error(this.errColumn[this.nextErr], this.errText[this.nextErr]);
+            this.nextErr++;
+        }
+        reportLines(this.lines[i]);
+    }
+
+    /*************************************************************************
+     ***** private utility methods
+     ****************************/
+
+    private java_cup.runtime.Symbol token(int i) {
+        report(i);
+        return new java_cup.runtime.Symbol(this.kind[i], this.left[i], this.right[i], value(i));
+    }
+
+    private void reportLines(int n) {
+        while (this.linesReported < n) {
+            this.errorMsg.newline();
+            this.linesReported++;
+        }
+    }
+
+    private static ByteBuffer map(File f) throws IOException {
+        try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+    }
+
+    private static byte[] readAll(java.io.InputStream s) throws IOException {
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        for (int n; (n = s.read(chunk)) > 0;)
+            out.write(chunk, 0, n);
+        return out.toByteArray();
+    }
+
+    private static int kwHash(int first, int last, int length) {
+        return (3 * first + 51 * last + length) & (KW_SLOTS - 1);
+    }
+
+    private int at(int i) {
+        return (i < this.limit ? this.buf.get(i) & 0xff : -1);
+    }
+
+    private int charPos(int i) {
+        return i - this.continuations;
+    }
+
+    private void emit(int k, int l, int r, int off) {
+        if (this.count == this.kind.length) {
+            int n = 2 * this.count;
+            this.kind = java.util.Arrays.copyOf(this.kind, n);
+            this.left = java.util.Arrays.copyOf(this.left, n);
+            this.right = java.util.Arrays.copyOf(this.right, n);
+            this.offset = java.util.Arrays.copyOf(this.offset, n);
+            this.lines = java.util.Arrays.copyOf(this.lines, n);
+        }
+        this.kind[this.count] = (byte) k;
+        this.left[this.count] = l;
+        this.right[this.count] = r;
+        this.offset[this.count] = off;
+        this.lines[this.count] = this.newlines;
+        this.count++;
+    }
+
+    private void emit(int k, int length) {
+        int p = charPos(this.pos);
+        emit(k, p, p + length, this.pos);
+        this.pos += length;
+    }
+
+    /*
+     * Records an error at the column of the character at position p.
+     */
+    private void err(int p, String msg) {
+        if (this.errCount == this.errText.length) {
+            int n = 2 * this.errCount;
+            this.errToken = java.util.Arrays.copyOf(this.errToken, n);
+            this.errLines = java.util.Arrays.copyOf(this.errLines, n);
+            this.errColumn = java.util.Arrays.copyOf(this.errColumn, n);
+            this.errText = java.util.Arrays.copyOf(this.errText, n);
+        }
+        this.errToken[this.errCount] = this.count;
+        this.errLines[this.errCount] = this.newlines;
+        this.errColumn[this.errCount] = p - this.lineStart;
+        this.errText[this.errCount] = msg;
+        this.errCount++;
+    }
+
+    /*
+     * If there is a line terminator at pos, consumes it and returns true.
+     * This only maintains the JFlex line count; whether the line break counts
+     * as a newline() is up to the caller.
+     */
+    private boolean lineTerminator() {
+        int c = at(this.pos);
+        if (c == '\n' || c == 0x0b || c == 0x0c) {
+            this.pos++;
+        } else if (c == '\r') {
+            this.pos += (at(this.pos + 1) == '\n' ? 2 : 1);
+        } else {
+            return false;
+        }
+        this.yyline++;
+        this.lineStart = charPos(this.pos);
+        return true;
+    }
+
+    /*
+     * Advances past one (possibly multi-byte) character that is not a line
+     * terminator, and returns its code point.
+     */
+    private int skipChar() {
+        int c = at(this.pos++);
+        if (c < 0x80)
+            return c;
+
+        int n = (c >= 0xf0 ? 3 : c >= 0xe0 ? 2 : c >= 0xc0 ? 1 : 0);
+        int cp = c & (0x3f >> n);
+        for (int k = 0; k < n && (at(this.pos) & 0xc0) == 0x80; k++) {
+            cp = (cp << 6) | (at(this.pos) & 0x3f);
+            this.pos++;
+            this.continuations++;
+        }
+        return cp;
+    }
+
+    private void scan() {
+        while (true) {
+            int c = at(this.pos);
+            switch (c) {
+            case -1:
+                emit(TigerSyms.EOF, 0);
+                return;
+            case '\n':
+            case '\r':
+                lineTerminator();
+                this.newlines++;
+                break;
+            case ' ':
+            case '\t':
+                this.pos++;
+                break;
+            case '<':
+                if (at(this.pos + 1) == '-' && at(this.pos + 2) == '-') {
+                    emit(TigerSyms.EOF, 3);
+                    return;
+                } else if (at(this.pos + 1) == '>') {
+                    emit(TigerSyms.NEQ, 2);
+                } else if (at(this.pos + 1) == '=') {
+                    emit(TigerSyms.LE, 2);
+                } else {
+                    emit(TigerSyms.LT, 1);
+                }
+                break;
+            case '>':
+                if (at(this.pos + 1) == '=')
+                    emit(TigerSyms.GE, 2);
+                else
+                    emit(TigerSyms.GT, 1);
+                break;
+            case ':':
+                if (at(this.pos + 1) == '=')
+                    emit(TigerSyms.ASSIGN, 2);
+                else
+                    emit(TigerSyms.COLON, 1);
+                break;
+            case '/':
+                if (at(this.pos + 1) == '*')
+                    comment();
+                else
+                    emit(TigerSyms.DIVIDE, 1);
+                break;
+            case '=': emit(TigerSyms.EQ, 1); break;
+            case ',': emit(TigerSyms.COMMA, 1); break;
+            case ';': emit(TigerSyms.SEMICOLON, 1); break;
+            case '(': emit(TigerSyms.LPAREN, 1); break;
+            case ')': emit(TigerSyms.RPAREN, 1); break;
+            case '[': emit(TigerSyms.LBRACK, 1); break;
+            case ']': emit(TigerSyms.RBRACK, 1); break;
+            case '{': emit(TigerSyms.LBRACE, 1); break;
+            case '}': emit(TigerSyms.RBRACE, 1); break;
+            case '.': emit(TigerSyms.DOT, 1); break;
+            case '+': emit(TigerSyms.PLUS, 1); break;
+            case '-': emit(TigerSyms.MINUS, 1); break;
+            case '*': emit(TigerSyms.TIMES, 1); break;
+            case '&': emit(TigerSyms.AND, 1); break;
+            case '|': emit(TigerSyms.OR, 1); break;
+            case '"':
+                string();
+                break;
+            default:
+                if (isLetter(c)) {
+                    identifier();
+                } else if (isDigit(c)) {
+                    int n = 1;
+                    while (isDigit(at(this.pos + n)))
+                        n++;
+                    emit(TigerSyms.INT, n);
+                } else if (c == 0x0b || c == 0x0c) {
+                    lineTerminator();
+                } else {
+                    int start = charPos(this.pos);
+                    int cp = skipChar();
+                    if (!Character.isWhitespace(cp)) {
+                        err(start, "Ignoring unknown character "
+                                + new String(Character.toChars(cp)) + " at line " + this.yyline);
+                    }
+                }
+            }
+        }
+    }
+
+    private void identifier() {
+        int n = 1;
+        int c;
+        while (isLetter(c = at(this.pos + n)) || isDigit(c) || c == '_')
+            n++;
+
+        int first = at(this.pos), last = at(this.pos + n - 1);
+        int h = kwHash(first, last, n);
+        byte[] kw = KW_TEXT[h];
+        if (kw != null && kw.length == n && matches(this.pos, kw))
+            emit(KW_KIND[h], n);
+        else
+            emit(TigerSyms.ID, n);
+    }
+
+    private boolean matches(int i, byte[] text) {
+        for (int k = 0; k < text.length; k++) {
+            if (this.buf.get(i + k) != text[k])
+                return false;
+        }
+        return true;
+    }
+
+    private void comment() {
+        int begins = this.yyline;
+        int depth = 1;
+        this.pos += 2;
+        while (depth > 0) {
+            int c = at(this.pos);
+            if (c == -1) {
+                err(charPos(this.pos), "Unclosed comment detected at end of file "
+                        + "(begins on line " + begins + ").");
+                return;
+            } else if (c == '/' && at(this.pos + 1) == '*') {
+                depth++;
+                this.pos += 2;
+            } else if (c == '*' && at(this.pos + 1) == '/') {
+                depth--;
+                this.pos += 2;
+            } else if (c == '\n' || c == '\r') {
+                lineTerminator();
+                this.newlines++;
+            } else if (!lineTerminator()) {
+                skipChar();
+            }
+        }
+    }
+
+    /*
+     * Scans a string literal, beginning with the opening quote at pos,
+     * reporting errors and counting lines. The value is decoded later by
+     * stringValue(), which follows the same steps.
+     */
+    private void string() {
+        int begins = this.yyline;
+        int open = this.pos;
+        this.pos++;
+        while (true) {
+            int c = at(this.pos);
+            if (c == -1) {
+                err(charPos(this.pos), "Unclosed string detected at end of file "
+                        + "(begins on line " + begins + ").");
+                return;
+            } else if (c == '"') {
+                int p = charPos(this.pos);
+                emit(TigerSyms.STRING, p, p + 1, open);
+                this.pos++;
+                return;
+            } else if (c == '\n' || c == '\r') {
+                err(charPos(this.pos), "String ended by newline character at line " + this.yyline);
+                lineTerminator();
+            } else if (c == '\\') {
+                int n = escape(this.pos);
+                if (n > 2 && !isDigit(at(this.pos + 1))) {
+                    // A line continuation, which TigerLex counts as one line
+                    int end = this.pos + n;
+                    this.pos++;
+                    while (at(this.pos) == ' ' || at(this.pos) == '\t')
+                        this.pos++;
+                    lineTerminator();
+                    this.newlines++;
+                    this.pos = end;
+                } else if (n > 0) {
+                    this.pos += n;
+                } else if (at(this.pos + 1) == -1 || at(this.pos + 1) == '\r') {
+                    // Not an escape (in TigerLex, the "." of \\(.|\n) can't
+                    // match \r), so an ordinary backslash
+                    this.pos++;
+                } else {
+                    err(charPos(this.pos), "String contains illegal escape character at line " + this.yyline);
+                    this.pos++;
+                    if (!lineTerminator())
+                        skipChar();
+                }
+            } else if (!lineTerminator()) {
+                skipChar();
+            }
+        }
+    }
+
+    /*
+     * If there is a legal escape sequence beginning at the backslash at index
+     * i, returns its length in bytes; otherwise, returns 0.
+     */
+    private int escape(int i) {
+        int c = at(i + 1);
+        if (c == 'n' || c == 't' || c == '"' || c == '\\')
+            return 2;
+        if (isDigit(c) && isDigit(at(i + 2)) && isDigit(at(i + 3))
+                && (at(i + 4) == ' ' || at(i + 4) == '\t'))
+            return 5;
+
+        // \ [ \t]* linebreak [ \t]* \
+        int k = i + 1;
+        while (at(k) == ' ' || at(k) == '\t')
+            k++;
+        if (at(k) == '\r' && at(k + 1) == '\n')
+            k += 2;
+        else if (at(k) == '\n' || at(k) == '\r')
+            k++;
+        else
+            return 0;
+        while (at(k) == ' ' || at(k) == '\t')
+            k++;
+        return (at(k) == '\\' ? k + 1 - i : 0);
+    }
+
+    /*
+     * Decodes the value of the string literal whose opening quote is at
+     * index open.
+     */
+    private String stringValue(int open) {
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        int i = open + 1;
+        while (true) {
+            int c = at(i);
+            if (c == -1 || c == '"') {
+                return new String(out.toByteArray(), StandardCharsets.UTF_8);
+            } else if (c == '\n' || c == '\r') {
+                i++;
+            } else if (c == '\\') {
+                int n = escape(i);
+                int e = at(i + 1);
+                if (n == 0) {
+                    if (e == -1 || e == '\r') {
+                        out.write(c);
+                        i++;
+                    } else {
+                        // an illegal escape: skip the backslash and one character
+                        i += 2;
+                        while (e >= 0xc0 && (at(i) & 0xc0) == 0x80)
+                            i++;
+                    }
+                } else {
+                    if (e == 'n') {
+                        out.write('\n');
+                    } else if (e == 't') {
+                        out.write('\t');
+                    } else if (e == '"' || e == '\\') {
+                        out.write('\\');
+                        out.write(e);
+                    } else if (isDigit(e) && n == 5) {
+                        int v = Integer.parseInt(ascii(i + 1, 3)) % 256;
+                        byte[] b = ("\\" + v + " ").getBytes(StandardCharsets.US_ASCII);
+                        out.write(b, 0, b.length);
+                    }
+                    // otherwise, a line continuation, which contributes nothing
+                    i += n;
+                }
+            } else {
+                out.write(c);
+                i++;
+            }
+        }
+    }
+
+    private String ascii(int i, int n) {
+        char[] cs = new char[n];
+        for (int k = 0; k < n; k++)
+            cs[k] = (char) (this.buf.get(i + k) & 0xff);
+        return new String(cs);
+    }
+
+    private String name(int i, int n) {
+        int h = 0;
+        for (int k = 0; k < n; k++)
+            h = 31 * h + this.buf.get(i + k);
+
+        int mask = this.names.length - 1;
+        for (int slot = h & mask;; slot = (slot + 1) & mask) {
+            String s = this.names[slot];
+            if (s == null) {
+                s = ascii(i, n);
+                this.names[slot] = s;
+                if (2 * ++this.nameCount > this.names.length)
+                    rehashNames();
+                return s;
+            } else if (s.length() == n && s.hashCode() == h && sameText(s, i)) {
+                return s;
+            }
+        }
+    }
+
+    private boolean sameText(String s, int i) {
+        for (int k = 0; k < s.length(); k++) {
+            if (s.charAt(k) != this.buf.get(i + k))
+                return false;
+        }
+        return true;
+    }
+
+    private void rehashNames() {
+        String[] old = this.names;
+        this.names = new String[2 * old.length];
+        int mask = this.names.length - 1;
+        for (String s : old) {
+            if (s != null) {
+                int slot = s.hashCode() & mask;
+                while (this.names[slot] != null)
+                    slot = (slot + 1) & mask;
+                this.names[slot] = s;
+            }
+        }
+    }
+
+    private static boolean isLetter(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,608 @@
+/*************************************************************************
+ **  TigerRDParse.java
+ **  tigerc
+ **
+ **  A hand-written recursive descent parser for Tiger, as an alternative to
+ **  the CUP-generated TigerParse.  It builds exactly the same syntax tree --
+ **  same node classes, same positions -- and reports syntax errors the same
+ **  way, at the same token.
+ **
+ **  Binary operators are parsed by operator precedence, with explicit operand
+ **  and operator stacks, so that a long chain such as a+b+c+...+z takes
+ **  constant Java stack.  Sequences, argument lists, declaration lists and
+ **  prefix minus signs are parsed by loops.  The only recursion is on the
+ **  nesting of the program itself (parentheses, if, let, etc.).
+ **
+ **  The precedences and associativity are those given in Tiger.cup.  The
+ **  forms that end in an expression (if, while, for, :=, array creation and
+ **  unary minus) behave as CUP resolves their conflicts: all but unary minus
+ **  extend as far to the right as possible, while unary minus binds tighter
+ **  than any binary operator.
+ **
+ **  Positions follow CUP's rules: a node built from a rule gets the left
+ **  position of the symbol named in its action, which for a nonterminal is
+ **  the left position of its first token (or, if it derives no tokens, of
+ **  the token just before it).
+ **
+ **  When the lexer is a TigerMappedLex, tokens are read directly from its
+ **  arrays, and no java_cup.runtime.Symbol is ever allocated.
+ **
+ **  TigerIncrementalParse also uses this parser to reparse fragments of a
+ **  program: a let, or a run of declarations, read from a lexer over just
+ **  that fragment, with positions offset by where it begins in the file.
+ **
+ **  History:  10/18/2026 created
+ **
+ **************************************************************************/
+
+package tigerc.syntax.parse;
+
+import static tigerc.syntax.parse.TigerSyms.*;
+
+import java.util.List;
+
+import tigerc.syntax.absyn.*;
+import tigerc.util.ErrorMsg;
+import tigerc.util.Pair;
+import tigerc.util.Symbol;
+
+public class TigerRDParse {
+    private final Lexer lexer;
+    private final TigerMappedLex mapped;
+    private final ErrorMsg errorMsg;
+
+    // The current token
+    private int kind;
+    private int left;
+    private Object value; // unused when reading from a TigerMappedLex
+    private int right;
+    private int index = -1; // index of the current token in a TigerMappedLex
+    private int lastRight; // the right position of the last token consumed
+
+    /*
+     * For fragments: the position at which the lexer's input begins, whether
+     * to keep quiet about syntax errors, and who to tell the extent of each
+     * let and declaration parsed.
+     */
+    int base = 0;
+    boolean quiet = false;
+    ExtentListener extents;
+
+    /**
+     * Receives the extent -- from the left position of its first token to
+     * the right position of its last -- of every ExpLet, Decl, DeclFn and
+     * DeclTy, as soon as it has been parsed (so inner ones come first).
+     */
+    interface ExtentListener {
+        void extent(ISyntaxElt node, int start, int end);
+    }
+
+    /*
+     * Operator precedence parsing stacks, shared by all (nested) calls to
+     * exp(); each call uses the part above the height it found on entry.
+     */
+    private Exp[] operands = new Exp[32];
+    private int[] operandLefts = new int[32];
+    private int operandTop = 0;
+    private int[] operators = new int[32];
+    private int operatorTop = 0;
+
+    public TigerRDParse(Lexer lexer, ErrorMsg errorMsg) {
+        this.lexer = lexer;
+        this.mapped = (lexer instanceof TigerMappedLex ? (TigerMappedLex) lexer : null);
+        this.errorMsg = errorMsg;
+    }
+
+    /**
+     * Parses a complete program. As with TigerParse.parse(), the value of the
+     * returned symbol is the program's syntax tree.
+     *
+     * @throws Exception
+     *             on a syntax error (after reporting it to the ErrorMsg)
+     */
+    public java_cup.runtime.Symbol parse() throws Exception {
+        advance();
+        int l = this.left;
+        Exp e = exp();
+        expect(EOF);
+        return new java_cup.runtime.Symbol(0, l, l, e);
+    }
+
+    /*
+     * Parses an expression that makes up the whole input.
+     */
+    Exp parseExp() throws Exception {
+        advance();
+        Exp e = exp();
+        expect(EOF);
+        return e;
+    }
+
+    /*
+     * Parses a sequence of declarations that makes up the whole input.
+     */
+    List<Decl> parseDecls() throws Exception {
+        advance();
+        List<Decl> ds = decls();
+        expect(EOF);
+        return ds;
+    }
+
+    /*
+     * The right position of the last token before EOF.
+     */
+    int end() {
+        return this.lastRight;
+    }
+
+    /*************************************************************************
+     ***** Expressions
+     ****************************/
+
+    /*
+     * exp ::= operand (binop operand)*
+     */
+    private Exp exp() throws Exception {
+        int operandBase = this.operandTop;
+        int operatorBase = this.operatorTop;
+
+        int l = this.left;
+        pushOperand(operand(), l);
+        while (precedence(this.kind) > 0) {
+            int op = this.kind;
+            int prec = precedence(op);
+            while (this.operatorTop > operatorBase) {
+                int top = this.operators[this.operatorTop - 1];
+                int topPrec = precedence(top);
+                if (topPrec == prec && isNonassoc(op))
+                    syntaxError(); // e.g., a = b = c
+                else if (topPrec < prec)
+                    break;
+                reduce();
+            }
+            pushOperator(op);
+            advance();
+            l = this.left;
+            pushOperand(operand(), l);
+        }
+        while (this.operatorTop > operatorBase)
+            reduce();
+
+        Exp e = this.operands[--this.operandTop];
+        assert this.operandTop == operandBase;
+        this.operands[this.operandTop] = null;
+        return e;
+    }
+
+    /*
+     * operand ::= MINUS* primary
+     */
+    private Exp operand() throws Exception {
+        if (this.kind != MINUS)
+            return primary();
+
+        // Collect the positions of a run of prefix minus signs
+        int[] minuses = new int[4];
+        int n = 0;
+        while (this.kind == MINUS) {
+            if (n == minuses.length)
+                minuses = java.util.Arrays.copyOf(minuses, 2 * n);
+            minuses[n++] = this.left;
+            advance();
+        }
+        int operandLeft = this.left;
+        Exp e = primary();
+        while (n > 0) {
+            int m = minuses[--n];
+            e = new ExpOp(m, new ExpInt(operandLeft, 0), ExpOp.Op.MIN, e);
+            operandLeft = m;
+        }
+        return e;
+    }
+
+    private Exp primary() throws Exception {
+        int l = this.left;
+        switch (this.kind) {
+        case INT: {
+            int v = ((Integer) value()).intValue();
+            advance();
+            return new ExpInt(l, v);
+        }
+        case STRING: {
+            String s = (String) value();
+            advance();
+            return new ExpString(l, s);
+        }
+        case NIL:
+            advance();
+            return new ExpNil(l);
+        case BREAK:
+            advance();
+            return new ExpBreak(l);
+        case LPAREN: {
+            advance();
+            int seqLeft = (this.kind == RPAREN ? l : this.left);
+            List<Exp> es = expSeq(RPAREN);
+            expect(RPAREN);
+            return new ExpSeq(seqLeft, es);
+        }
+        case IF: {
+            advance();
+            Exp test = exp();
+            expect(THEN);
+            Exp thenclause = exp();
+            if (this.kind != ELSE)
+                return new ExpIf(l, test, thenclause);
+            advance();
+            return new ExpIfElse(l, test, thenclause, exp());
+        }
+        case WHILE: {
+            advance();
+            Exp test = exp();
+            expect(DO);
+            return new ExpWhile(l, test, exp());
+        }
+        case FOR: {
+            advance();
+            Symbol i = id();
+            expect(ASSIGN);
+            Exp lo = exp();
+            expect(TO);
+            Exp hi = exp();
+            expect(DO);
+            return new ExpFor(l, i, lo, hi, exp());
+        }
+        case LET: {
+            advance();
+            List<Decl> ds = decls();
+            int inLeft = this.left;
+            expect(IN);
+            int bodyLeft = (this.kind == END ? inLeft : this.left);
+            List<Exp> body = expSeq(END);
+            expect(END);
+            return extent(new ExpLet(l, ds, new ExpSeq(bodyLeft, body)), l);
+        }
+        case ID:
+            return idExp();
+        default:
+            syntaxError();
+            return null;
+        }
+    }
+
+    /*
+     * Everything that begins with an identifier: calls, record and array
+     * creation, variables and assignments.
+     */
+    private Exp idExp() throws Exception {
+        int l = this.left;
+        Symbol x = id();
+        Var v;
+
+        switch (this.kind) {
+        case LPAREN: {
+            advance();
+            List<Exp> args = new java.util.ArrayList<Exp>();
+            if (this.kind != RPAREN) {
+                args.add(exp());
+                while (this.kind == COMMA) {
+                    advance();
+                    args.add(exp());
+                }
+            }
+            expect(RPAREN);
+            return new ExpCall(l, x, args);
+        }
+        case LBRACE: {
+            advance();
+            List<Pair<Symbol, Exp>> fields = new java.util.ArrayList<Pair<Symbol, Exp>>();
+            if (this.kind != RBRACE) {
+                fields.add(fieldExp());
+                while (this.kind == COMMA) {
+                    advance();
+                    fields.add(fieldExp());
+                }
+            }
+            expect(RBRACE);
+            return new ExpRecord(l, x, fields);
+        }
+        case LBRACK: {
+            advance();
+            Exp e = exp();
+            expect(RBRACK);
+            if (this.kind == OF) {
+                advance();
+                return new ExpArray(l, x, e, exp());
+            }
+            v = new VarSubscript(l, new VarSimple(l, x), e);
+            break;
+        }
+        default:
+            v = new VarSimple(l, x);
+        }
+
+        // lvalue suffixes
+        while (true) {
+            if (this.kind == DOT) {
+                advance();
+                int fl = this.left;
+                v = new VarField(fl, v, id());
+            } else if (this.kind == LBRACK) {
+                advance();
+                Exp e = exp();
+                expect(RBRACK);
+                v = new VarSubscript(l, v, e);
+            } else {
+                break;
+            }
+        }
+
+        if (this.kind == ASSIGN) {
+            advance();
+            return new ExpAssign(l, v, exp());
+        }
+        return new ExpVar(l, v);
+    }
+
+    private Pair<Symbol, Exp> fieldExp() throws Exception {
+        Symbol f = id();
+        expect(EQ);
+        return new Pair<Symbol, Exp>(f, exp());
+    }
+
+    /*
+     * exp_seq ::= [ exp (SEMICOLON exp)* ], followed by the token close
+     */
+    private List<Exp> expSeq(int close) throws Exception {
+        List<Exp> es = new java.util.ArrayList<Exp>();
+        if (this.kind != close) {
+            es.add(exp());
+            while (this.kind == SEMICOLON) {
+                advance();
+                es.add(exp());
+            }
+        }
+        return es;
+    }
+
+    /*************************************************************************
+     ***** Declarations
+     ****************************/
+
+    private List<Decl> decls() throws Exception {
+        List<Decl> ds = new java.util.ArrayList<Decl>();
+        while (true) {
+            int l = this.left;
+            switch (this.kind) {
+            case VAR:
+                ds.add(declVar());
+                break;
+            case TYPE: {
+                List<DeclTy> ts = new java.util.ArrayList<DeclTy>();
+                while (this.kind == TYPE)
+                    ts.add(declTy());
+                ds.add(extent(new DeclGroupType(l, ts), l));
+                break;
+            }
+            case FUNCTION: {
+                List<DeclFn> fs = new java.util.ArrayList<DeclFn>();
+                while (this.kind == FUNCTION)
+                    fs.add(declFn());
+                ds.add(extent(new DeclGroupFunction(l, fs), l));
+                break;
+            }
+            default:
+                return ds;
+            }
+        }
+    }
+
+    private DeclVar declVar() throws Exception {
+        int l = this.left;
+        expect(VAR);
+        Symbol name = id();
+        Symbol t = null;
+        if (this.kind == COLON) {
+            advance();
+            t = id();
+        }
+        expect(ASSIGN);
+        return extent(new DeclVar(l, name, t, exp()), l);
+    }
+
+    private DeclTy declTy() throws Exception {
+        int l = this.left;
+        expect(TYPE);
+        Symbol name = id();
+        expect(EQ);
+
+        int tl = this.left;
+        Ty t;
+        switch (this.kind) {
+        case ID:
+            t = new TyName(tl, id());
+            break;
+        case LBRACE:
+            advance();
+            List<Pair<Symbol, Symbol>> fields = tyFields(RBRACE);
+            expect(RBRACE);
+            t = new TyRecord(tl, fields);
+            break;
+        case ARRAY:
+            advance();
+            expect(OF);
+            t = new TyArray(tl, id());
+            break;
+        default:
+            syntaxError();
+            return null;
+        }
+        return extent(new DeclTy(l, name, t), l);
+    }
+
+    private DeclFn declFn() throws Exception {
+        int l = this.left;
+        expect(FUNCTION);
+        Symbol name = id();
+        expect(LPAREN);
+        List<Pair<Symbol, Symbol>> params = tyFields(RPAREN);
+        expect(RPAREN);
+        TyName result = null;
+        if (this.kind == COLON) {
+            advance();
+            int rl = this.left;
+            result = new TyName(rl, id());
+        }
+        expect(EQ);
+        return extent(new DeclFn(l, name, params, result, exp()), l);
+    }
+
+    private List<Pair<Symbol, Symbol>> tyFields(int close) throws Exception {
+        List<Pair<Symbol, Symbol>> fields = new java.util.ArrayList<Pair<Symbol, Symbol>>();
+        if (this.kind != close) {
+            fields.add(tyField());
+            while (this.kind == COMMA) {
+                advance();
+                fields.add(tyField());
+            }
+        }
+        return fields;
+    }
+
+    private Pair<Symbol, Symbol> tyField() throws Exception {
+        Symbol i = id();
+        expect(COLON);
+        return new Pair<Symbol, Symbol>(i, id());
+    }
+
+    /*************************************************************************
+     ***** private utility methods
+     ****************************/
+
+    /*
+     * Binding strength of each binary operator, from Tiger.cup; 0 for any
+     * other token.
+     */
+    private static int precedence(int k) {
+        switch (k) {
+        case OR:
+            return 1;
+        case AND:
+            return 2;
+        case EQ: case NEQ: case LT: case LE: case GT: case GE:
+            return 3;
+        case PLUS: case MINUS:
+            return 4;
+        case TIMES: case DIVIDE:
+            return 5;
+        default:
+            return 0;
+        }
+    }
+
+    private static boolean isNonassoc(int k) {
+        return precedence(k) == 3;
+    }
+
+    private static ExpOp.Op operator(int k) {
+        switch (k) {
+        case PLUS: return ExpOp.Op.PLUS;
+        case MINUS: return ExpOp.Op.MIN;
+        case TIMES: return ExpOp.Op.MUL;
+        case DIVIDE: return ExpOp.Op.DIV;
+        case EQ: return ExpOp.Op.EQ;
+        case NEQ: return ExpOp.Op.NE;
+        case LT: return ExpOp.Op.LT;
+        case LE: return ExpOp.Op.LE;
+        case GT: return ExpOp.Op.GT;
+        case GE: return ExpOp.Op.GE;
+        case AND: return ExpOp.Op.AND;
+        default: return ExpOp.Op.OR;
+        }
+    }
+
+    private void pushOperand(Exp e, int l) {
+        if (this.operandTop == this.operands.length) {
+            this.operands = java.util.Arrays.copyOf(this.operands, 2 * this.operandTop);
+            this.operandLefts = java.util.Arrays.copyOf(this.operandLefts, 2 * this.operandTop);
+        }
+        this.operands[this.operandTop] = e;
+        this.operandLefts[this.operandTop] = l;
+        this.operandTop++;
+    }
+
+    private void pushOperator(int op) {
+        if (this.operatorTop == this.operators.length)
+            this.operators = java.util.Arrays.copyOf(this.operators, 2 * this.operatorTop);
+        this.operators[this.operatorTop++] = op;
+    }
+
+    /*
+     * Replaces the top two operands with their combination by the top
+     * operator. The result, like CUP's exp_bop, has the left position of its
+     * left operand.
+     */
+    private void reduce() {
+        int op = this.operators[--this.operatorTop];
+        Exp r = this.operands[--this.operandTop];
+        this.operands[this.operandTop] = null;
+        int i = this.operandTop - 1;
+        this.operands[i] = new ExpOp(this.operandLefts[i], this.operands[i], operator(op), r);
+    }
+
+    private <T extends ISyntaxElt> T extent(T node, int start) {
+        if (this.extents != null)
+            this.extents.extent(node, start, this.lastRight);
+        return node;
+    }
+
+    private Symbol id() throws Exception {
+        if (this.kind != ID)
+            syntaxError();
+        Symbol x = Symbol.sym((String) value());
+        advance();
+        return x;
+    }
+
+    private void expect(int k) throws Exception {
+        if (this.kind != k)
+            syntaxError();
+        if (k != EOF)
+            advance();
+    }
+
+    private Object value() {
+        return (this.mapped != null ? this.mapped.value(this.index) : this.value);
+    }
+
+    private void advance() throws Exception {
+        this.lastRight = this.right;
+        if (this.mapped != null) {
+            if (this.index < this.mapped.tokenCount() - 1)
+                this.index++;
+            this.mapped.report(this.index);
+            this.kind = this.mapped.kind(this.index);
+            this.left = this.base + this.mapped.left(this.index);
+            this.right = this.base + this.mapped.right(this.index);
+        } else {
+            java_cup.runtime.Symbol t = this.lexer.next_token();
+            this.kind = t.sym;
+            this.left = this.base + t.left;
+            this.right = this.base + t.right;
+            this.value = t.value;
+        }
+    }
+
+    /*
+     * Reports a syntax error at the current token, just as TigerParse does
+     * (including the message that CUP's report_fatal_error prints), and
+     * gives up.
+     */
+    private void syntaxError() throws Exception {
+        this.errorMsg.error(this.left, "Syntax error (" + this.kind + ")");
+        if (!this.quiet)
+            System.err.println("Couldn't repair and continue parse at character "
+                + this.left + " of input");
+        throw new Exception("Can't recover from previous error(s)");
+    }
+}
@@ -0,0 +1,293 @@
+/*
+    CommonSubexpressions.java
+
+    Which int expressions of a checked program compute a value that has
+    been computed already, so that a code generator can keep the first
+    one's value (in a local, say) and use it again, rather than work it out
+    a second time, as in "a[i*n + j] := a[i*n + j] + 1".
+
+    Only arithmetic (+, -, * and /) on int constants and variables that are
+    never assigned is looked at, so that two expressions that look the same
+    always have the same value, and computing one has no effect that
+    computing the other again would repeat.  (A division by zero fails the
+    first time, and the second is never reached.)  The variable of a for
+    loop counts as never assigned, since it only changes between one run of
+    the body and the next, and so does a copy of another variable (see
+    Propagation), which is taken to be that variable.
+
+    An expression can be replaced only by one that is always evaluated
+    before it: one earlier in the same sequence, or in the code around a
+    branch of an if, a loop body or the right of & and |.  Nothing in those
+    is used after them, and nothing in a let is used after it, since a code
+    generator may free its locals once it ends.  The body of each function
+    is a program of its own.
+
+    This is common subexpression elimination, on the syntax tree, for pure
+    int arithmetic only;  there is no IR here in which to number values
+    across a whole function, and what is done is what a generator working
+    straight from the tree can safely use.
+
+    History:
+        10/19/2026        created
+ */
+
+package tigerc.translate;
+
+import tigerc.syntax.absyn.*;
+import tigerc.semant.analysis.Resolution;
+import tigerc.semant.analysis.VarEntry;
+import tigerc.semant.analysis.types.INT;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class CommonSubexpressions implements IAbsynVisitor {
+
+    private final Resolution res;
+    private final Propagation propagation;
+
+    private final Set<VarEntry> assigned = java.util.Collections.newSetFromMap(new java.util.IdentityHashMap<>());
+    private boolean finding = false;
+    // (the second pass, which finds the repeats, once the first has found
+    // which variables are ever assigned)
+
+    private Map<Object, Exp> available = new java.util.HashMap<>();
+    // The first expression computed, on the way to where we are, with each
+    // value (by the key() of the expression)
+
+    private final Map<Exp, List<Exp>> repeats = new java.util.IdentityHashMap<>();
+    private int found = 0;
+
+    /**
+     * Finds the common subexpressions of prog, which SemantV has checked
+     * (with no errors) and found res for, and in which propagation has found
+     * the constants and copies.
+     */
+    public CommonSubexpressions(IAbsyn prog, Resolution res, Propagation propagation) {
+        this.res = res;
+        this.propagation = propagation;
+        prog.accept(this);
+        this.finding = true;
+        prog.accept(this);
+    }
+
+    /**
+     * The expressions that have the value of e, and are only evaluated after
+     * it, in the order they appear (none, if e is not computed again).
+     */
+    public List<Exp> repeats(Exp e) {
+        List<Exp> later = this.repeats.get(e);
+        return (later != null ? later : java.util.Collections.<Exp>emptyList());
+    }
+
+    /**
+     * The number of expressions whose value can be taken from one computed
+     * before
+     */
+    public int eliminated() {
+        return this.found;
+    }
+
+    /*
+     * What e computes, as a value that equals that of any expression that
+     * computes the same, or null if e is not int arithmetic on constants and
+     * variables that are never assigned
+     */
+    private Object key(Exp e) {
+        while (e instanceof ExpSeq && ((ExpSeq) e).list.size() == 1)
+            e = ((ExpSeq) e).list.get(0);
+
+        Integer c = this.propagation.constant(e);
+        if (c != null)
+            return c;
+        if (e instanceof ExpVar && ((ExpVar) e).var instanceof VarSimple) {
+            VarEntry x = this.res.binding((VarSimple) ((ExpVar) e).var);
+            if (!this.res.typeOf(e).coerceTo(INT.inst) || this.assigned.contains(x))
+                return null;
+            VarEntry y = this.propagation.copyOf(x);
+            return (y != null ? y : x);
+        }
+        if (e instanceof ExpOp && ((ExpOp) e).oper.val < ExpOp.Op.EQ.val) {
+            ExpOp op = (ExpOp) e;
+            Object l = key(op.left), r = key(op.right);
+            return (l != null && r != null ? java.util.Arrays.asList(op.oper, l, r) : null);
+        }
+        return null;
+    }
+
+    /*
+     * Looks at e, and forgets what it computes once done, as when it might
+     * not be evaluated at all
+     */
+    private void branch(Exp e) {
+        Map<Object, Exp> saved = this.available;
+        this.available = new java.util.HashMap<>(saved);
+        e.accept(this);
+        this.available = saved;
+    }
+
+    // //////////////////////// IAbsynVisitor ////////////////////////
+
+    @Override
+    public void visit(DeclGroupFunction d) {
+        Map<Object, Exp> saved = this.available;
+        for (DeclFn dfn : d.fns) {
+            this.available = new java.util.HashMap<>();
+            dfn.body.accept(this);
+        }
+        this.available = saved;
+    }
+
+    @Override
+    public void visit(DeclGroupType d) {
+    }
+
+    @Override
+    public void visit(DeclVar d) {
+        d.init.accept(this);
+    }
+
+    @Override
+    public void visit(ExpArray e) {
+        e.size.accept(this);
+        e.init.accept(this);
+    }
+
+    @Override
+    public void visit(ExpAssign e) {
+        if (e.lhs instanceof VarSimple) {
+            this.assigned.add(this.res.binding((VarSimple) e.lhs));
+        } else {
+            e.lhs.accept(this);
+        }
+        e.rhs.accept(this);
+    }
+
+    @Override
+    public void visit(ExpBreak e) {
+    }
+
+    @Override
+    public void visit(ExpCall e) {
+        for (Exp arg : e.args)
+            arg.accept(this);
+    }
+
+    @Override
+    public void visit(ExpFor e) {
+        // (a generator need not work out the bounds in the order given)
+        branch(e.lo);
+        branch(e.hi);
+        branch(e.body);
+    }
+
+    @Override
+    public void visit(ExpIf e) {
+        e.test.accept(this);
+        branch(e.thenclause);
+    }
+
+    @Override
+    public void visit(ExpIfElse e) {
+        e.test.accept(this);
+        branch(e.thenclause);
+        branch(e.elseclause);
+    }
+
+    @Override
+    public void visit(ExpInt e) {
+    }
+
+    @Override
+    public void visit(ExpLet e) {
+        Map<Object, Exp> saved = this.available;
+        this.available = new java.util.HashMap<>(saved);
+        for (Decl d : e.decls)
+            d.accept(this);
+        e.body.accept(this);
+        this.available = saved;
+    }
+
+    @Override
+    public void visit(ExpNil e) {
+    }
+
+    @Override
+    public void visit(ExpOp e) {
+        if (e.oper == ExpOp.Op.AND || e.oper == ExpOp.Op.OR) {
+            e.left.accept(this);
+            branch(e.right);
+            return;
+        }
+
+        Object k = (this.finding && e.oper.val < ExpOp.Op.EQ.val && this.propagation.constant(e) == null ? key(e)
+                : null);
+        Exp first = (k != null ? this.available.get(k) : null);
+        if (first != null) {
+            this.repeats.computeIfAbsent(first, x -> new java.util.ArrayList<>()).add(e);
+            this.found++;
+            return;
+        }
+
+        e.left.accept(this);
+        e.right.accept(this);
+        if (k != null)
+            this.available.put(k, e);
+    }
+
+    @Override
+    public void visit(ExpRecord e) {
+        for (tigerc.util.Pair<tigerc.util.Symbol, Exp> field : e.fields)
+            field.snd.accept(this);
+    }
+
+    @Override
+    public void visit(ExpSeq e) {
+        for (Exp e1 : e.list)
+            e1.accept(this);
+    }
+
+    @Override
+    public void visit(ExpString e) {
+    }
+
+    @Override
+    public void visit(ExpVar e) {
+        e.var.accept(this);
+    }
+
+    @Override
+    public void visit(ExpWhile e) {
+        // (a generator may well put the test after the body)
+        branch(e.test);
+        branch(e.body);
+    }
+
+    @Override
+    public void visit(TyArray t) {
+    }
+
+    @Override
+    public void visit(TyName t) {
+    }
+
+    @Override
+    public void visit(TyRecord t) {
+    }
+
+    @Override
+    public void visit(VarField v) {
+        v.var.accept(this);
+    }
+
+    @Override
+    public void visit(VarSimple v) {
+    }
+
+    @Override
+    public void visit(VarSubscript v) {
+        v.var.accept(this);
+        v.index.accept(this);
+    }
+}
@@ -10,6 +10,8 @@
  *                             made class publicly-visible;  
  *                             added extern and affiliated methods
  *                             added label and affiliated methods
+ *           10/18/2026        added captured, the variables passed to the
+ *                             procedure besides its own parameters
  *
  *  The value environment has two kinds of entries: variable entries and function
  *  entries. 
@@ -40,15 +42,17 @@ public class FunEntry implements Entry {
 	private Label label;
 	private Class<?> enclosingClass;
 	
-	// private Level level;  // The static nesting depth of this procedure
-	// -- TODO:  This abstraction or something like it is necessary to support the
-	// lexical scoping rules that arise in the presence of nested procedure definitions.
+	// The variables of enclosing procedures that this one uses (or that
+	// procedures it calls use), which are passed to it after its formals.
+	// See tigerc.translate.jvm.FreeVariables.
+	private List<tigerc.semant.analysis.VarEntry> captured;
 
 	public FunEntry(List<Pair<Symbol, Type>> fs, Type rTy) {
 		formals = (fs==null? new java.util.LinkedList<Pair<Symbol, Type>>(): fs);
 		result = rTy;
 		enclosingClass = null;
 		label = null;
+		captured = java.util.Collections.emptyList();
 	}
 
 	public void setEnclosingClass(Class<?> ext) {
@@ -70,4 +74,12 @@ public class FunEntry implements Entry {
 	public Label getLabel() {
 		return label;
 	}
+
+	public void setCaptured(List<tigerc.semant.analysis.VarEntry> vs) {
+		captured = vs;
+	}
+
+	public List<tigerc.semant.analysis.VarEntry> getCaptured() {
+		return captured;
+	}
 }
@@ -21,6 +21,13 @@ public interface ICodegen {
      */
     void emitMain();
 
+    /**
+     * Any further classes the program needs, besides the one written by the
+     * methods above (for example, one for each record type), as a map from
+     * each class's name to its text. Called after emitProcedures().
+     */
+    java.util.Map<String, String> classes();
+
     /**
      * Set the AST from which we'll generate code and the name + extension of
      * the generated executable file
@@ -33,5 +40,22 @@ public interface ICodegen {
      *            - The extension to add to the compiled executable file name
      */
     void setProg(IAbsyn prog, String outFName, String nameExtension);
-    
+
+    /**
+     * How hard to try to make the generated code fast, from 0 (not at all)
+     * up; what each level does is up to the implementation. Must be called
+     * before setProg, if at all.
+     * 
+     * @param level
+     *            - The optimization level, as in the -O option
+     */
+    void setOptimization(int level);
+
+    /**
+     * What the optimizer did to the program, as counts by name (for
+     * example, of the allocations it left out), for the compiler to report.
+     * Called after emitProcedures().
+     */
+    java.util.Map<String, Integer> statistics();
+
 }
@@ -0,0 +1,322 @@
+/*
+    Propagation.java
+
+    What is known about the values of a checked program before it runs:
+    which int expressions are constant, and which variables are only ever
+    a constant, or a copy of another variable.  A code generator can use
+    this to put the value itself, or the other variable, wherever such a
+    variable is read, and leave out the variable altogether.  An if or
+    while whose test is constant only ever takes one way, and the code for
+    the other is dead.
+
+    Only a variable that is never assigned, and only read in the function
+    that declares it, is replaced like this, so that none of this has to
+    be known by the functions it would otherwise be passed to.  A variable
+    that is never read at all, and whose initializer does nothing but
+    compute a value, is dead too.
+
+    History:
+        10/18/2026        created
+ */
+
+package tigerc.translate;
+
+import tigerc.syntax.absyn.*;
+import tigerc.semant.analysis.Resolution;
+import tigerc.semant.analysis.VarEntry;
+import tigerc.semant.analysis.types.INT;
+
+import java.util.Map;
+import java.util.Set;
+
+public class Propagation implements IAbsynVisitor {
+
+    private final Resolution res;
+
+    private final Map<VarEntry, Exp> init = new java.util.IdentityHashMap<>();
+    // The initializer of each variable declared by a DeclVar
+
+    private final Map<VarEntry, DeclFn> owner = new java.util.IdentityHashMap<>();
+    private final Map<VarEntry, Integer> reads = new java.util.IdentityHashMap<>();
+    private final Set<VarEntry> assigned = java.util.Collections.newSetFromMap(new java.util.IdentityHashMap<>());
+    private final Set<VarEntry> captured = java.util.Collections.newSetFromMap(new java.util.IdentityHashMap<>());
+
+    private DeclFn current = null; // (the function whose body we are in)
+
+    /**
+     * Finds out what can be known about prog, which SemantV has checked (with
+     * no errors) and found res for.
+     */
+    public Propagation(IAbsyn prog, Resolution res) {
+        this.res = res;
+        prog.accept(this);
+    }
+
+    /**
+     * The value of e, if it is an int expression whose value is always the
+     * same, and null otherwise. An expression that could fail (a division by
+     * zero) is not constant.
+     */
+    public Integer constant(Exp e) {
+        if (e instanceof ExpInt) {
+            return ((ExpInt) e).value;
+        } else if (e instanceof ExpVar && ((ExpVar) e).var instanceof VarSimple) {
+            VarEntry x = this.res.binding((VarSimple) ((ExpVar) e).var);
+            return (replaced(x) ? constant(this.init.get(x)) : null);
+        } else if (e instanceof ExpSeq && ((ExpSeq) e).list.size() == 1) {
+            return constant(((ExpSeq) e).list.get(0));
+        } else if (e instanceof ExpOp) {
+            ExpOp op = (ExpOp) e;
+            Integer l = constant(op.left), r = constant(op.right);
+
+            // & and | only look at the right when they must
+            if (op.oper == ExpOp.Op.AND && l != null && l == 0)
+                return 0;
+            if (op.oper == ExpOp.Op.OR && l != null && l != 0)
+                return 1;
+            if (l == null || r == null)
+                return null;
+
+            switch (op.oper) {
+            case PLUS:
+                return l + r;
+            case MIN:
+                return l - r;
+            case MUL:
+                return l * r;
+            case DIV:
+                return (r == 0 ? null : l / r);
+            case EQ:
+                return (l.intValue() == r.intValue() ? 1 : 0);
+            case NE:
+                return (l.intValue() != r.intValue() ? 1 : 0);
+            case LT:
+                return (l < r ? 1 : 0);
+            case LE:
+                return (l <= r ? 1 : 0);
+            case GT:
+                return (l > r ? 1 : 0);
+            case GE:
+                return (l >= r ? 1 : 0);
+            case AND:
+            case OR:
+                return (r != 0 ? 1 : 0);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The variable that x is a copy of (through any number of copies), if it
+     * can be read in place of x, and null otherwise.
+     */
+    public VarEntry copyOf(VarEntry x) {
+        if (!replaced(x) || constant(this.init.get(x)) != null)
+            return null;
+        VarEntry y = this.res.binding((VarSimple) ((ExpVar) this.init.get(x)).var);
+        VarEntry z = copyOf(y);
+        return (z != null ? z : y);
+    }
+
+    /**
+     * Whether the code for d can be left out: the variable it declares is
+     * replaced wherever it is read, or never read.
+     */
+    public boolean dead(DeclVar d) {
+        VarEntry x = this.res.variable(d);
+        return replaced(x)
+                || (!this.reads.containsKey(x) && !this.assigned.contains(x) && pure(d.init));
+    }
+
+    /*
+     * Whether every read of x can be replaced by a constant, or by a read of
+     * another variable
+     */
+    private boolean replaced(VarEntry x) {
+        Exp e = this.init.get(x);
+        if (e == null || this.assigned.contains(x) || this.captured.contains(x))
+            return false;
+        if (this.res.typeOf(e).coerceTo(INT.inst) && constant(e) != null)
+            return true;
+
+        // A copy of a variable that never changes, declared by a DeclVar or
+        // as a parameter (whose own value is known all along, unlike that of
+        // a for loop's variable)
+        if (e instanceof ExpVar && ((ExpVar) e).var instanceof VarSimple) {
+            VarEntry y = this.res.binding((VarSimple) ((ExpVar) e).var);
+            return !this.assigned.contains(y) && this.owner.containsKey(y);
+        }
+        return false;
+    }
+
+    /*
+     * Whether evaluating e does nothing besides compute its value
+     */
+    private boolean pure(Exp e) {
+        return e instanceof ExpInt || e instanceof ExpString || e instanceof ExpNil
+                || (e instanceof ExpVar && ((ExpVar) e).var instanceof VarSimple) || constant(e) != null;
+    }
+
+    // //////////////////////// IAbsynVisitor ////////////////////////
+
+    @Override
+    public void visit(DeclGroupFunction d) {
+        for (DeclFn dfn : d.fns) {
+            for (VarEntry x : this.res.params(dfn))
+                this.owner.put(x, dfn);
+        }
+
+        DeclFn saved = this.current;
+        for (DeclFn dfn : d.fns) {
+            this.current = dfn;
+            dfn.body.accept(this);
+        }
+        this.current = saved;
+    }
+
+    @Override
+    public void visit(DeclGroupType d) {
+    }
+
+    @Override
+    public void visit(DeclVar d) {
+        d.init.accept(this);
+        VarEntry x = this.res.variable(d);
+        this.owner.put(x, this.current);
+        this.init.put(x, d.init);
+    }
+
+    @Override
+    public void visit(ExpArray e) {
+        e.size.accept(this);
+        e.init.accept(this);
+    }
+
+    @Override
+    public void visit(ExpAssign e) {
+        if (e.lhs instanceof VarSimple) {
+            VarEntry x = this.res.binding((VarSimple) e.lhs);
+            this.assigned.add(x);
+            use(x);
+        } else {
+            e.lhs.accept(this);
+        }
+        e.rhs.accept(this);
+    }
+
+    @Override
+    public void visit(ExpBreak e) {
+    }
+
+    @Override
+    public void visit(ExpCall e) {
+        for (Exp arg : e.args)
+            arg.accept(this);
+    }
+
+    @Override
+    public void visit(ExpFor e) {
+        e.lo.accept(this);
+        e.hi.accept(this);
+        e.body.accept(this);
+    }
+
+    @Override
+    public void visit(ExpIf e) {
+        e.test.accept(this);
+        e.thenclause.accept(this);
+    }
+
+    @Override
+    public void visit(ExpIfElse e) {
+        e.test.accept(this);
+        e.thenclause.accept(this);
+        e.elseclause.accept(this);
+    }
+
+    @Override
+    public void visit(ExpInt e) {
+    }
+
+    @Override
+    public void visit(ExpLet e) {
+        for (Decl d : e.decls)
+            d.accept(this);
+        e.body.accept(this);
+    }
+
+    @Override
+    public void visit(ExpNil e) {
+    }
+
+    @Override
+    public void visit(ExpOp e) {
+        e.left.accept(this);
+        e.right.accept(this);
+    }
+
+    @Override
+    public void visit(ExpRecord e) {
+        for (tigerc.util.Pair<tigerc.util.Symbol, Exp> field : e.fields)
+            field.snd.accept(this);
+    }
+
+    @Override
+    public void visit(ExpSeq e) {
+        for (Exp e1 : e.list)
+            e1.accept(this);
+    }
+
+    @Override
+    public void visit(ExpString e) {
+    }
+
+    @Override
+    public void visit(ExpVar e) {
+        e.var.accept(this);
+    }
+
+    @Override
+    public void visit(ExpWhile e) {
+        e.test.accept(this);
+        e.body.accept(this);
+    }
+
+    @Override
+    public void visit(TyArray t) {
+    }
+
+    @Override
+    public void visit(TyName t) {
+    }
+
+    @Override
+    public void visit(TyRecord t) {
+    }
+
+    @Override
+    public void visit(VarField v) {
+        v.var.accept(this);
+    }
+
+    @Override
+    public void visit(VarSimple v) {
+        VarEntry x = this.res.binding(v);
+        this.reads.merge(x, 1, Integer::sum);
+        use(x);
+    }
+
+    @Override
+    public void visit(VarSubscript v) {
+        v.var.accept(this);
+        v.index.accept(this);
+    }
+
+    /*
+     * Notes a use of x in the current function
+     */
+    private void use(VarEntry x) {
+        if (this.owner.get(x) != this.current)
+            this.captured.add(x);
+    }
+}
@@ -9,6 +9,8 @@
  *           05/02/2014 (jhel) added access field, for code generation
  *           09/05/2014 (jhel) major refactoring, to separate from interp 
  *                             and translate versions
+ *           10/18/2026        escapes set by the JVM generator, for a
+ *                             variable kept in a heap cell
  *           
  *  The value environment has two kinds of entries: variable entries and function
  *  entries. 
@@ -36,6 +38,10 @@ public class VarEntry implements Entry {
      * register.  This is not necessarily relevant for JVM generation, but it's
      * a property that gives rise to a couple of special cases in other kinds of
      * back end construction.
+     *
+     * For the JVM, a variable that escapes into a nested function that
+     * might see it change is kept in a one-element array (see
+     * tigerc.translate.jvm.FreeVariables), and its access holds the array.
      */
 
     public VarEntry(Type t) {
@@ -0,0 +1,262 @@
+/*
+    FreeVariables.java
+
+    The variables each function uses but does not declare, for closure
+    conversion.  The JVM gives a method no way to reach the frame of
+    another, so a static link is out of the question (see
+    JVMFrame.staticLink());  instead, each variable a function uses from a
+    function around it is passed to it as one more parameter, after its own.
+
+    A function also needs the variables of any function it calls, since it
+    must pass them on, so its free variables are what its own body uses,
+    together with those of the functions it calls that are not its own.  A
+    group of mutually recursive functions makes this a fixed point.
+
+    Passing a copy of a variable's value is only correct if nobody changes
+    it.  A captured variable that is ever assigned is "boxed":  it is kept,
+    from its declaration on, in a one-element array, and it is the array
+    that is passed around.  A variable that no function captures is a plain
+    local, whether it is assigned or not.
+
+    History:
+        10/18/2026        created
+ */
+
+package tigerc.translate.jvm;
+
+import tigerc.syntax.absyn.*;
+import tigerc.semant.analysis.Resolution;
+import tigerc.semant.analysis.VarEntry;
+import tigerc.semant.analysis.FunEntry;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class FreeVariables implements IAbsynVisitor {
+
+    private final Resolution res;
+
+    private final Map<VarEntry, DeclFn> owner = new java.util.IdentityHashMap<>();
+    // The function that declares each binding (null for the main program)
+
+    private final Map<DeclFn, Set<VarEntry>> free = new java.util.IdentityHashMap<>();
+    // What each function uses, but does not declare
+
+    private final Map<DeclFn, Set<DeclFn>> calls = new java.util.IdentityHashMap<>();
+    private final Map<FunEntry, DeclFn> declarations = new java.util.IdentityHashMap<>();
+    private final Set<VarEntry> assigned = java.util.Collections.newSetFromMap(new java.util.IdentityHashMap<>());
+    private final Set<VarEntry> boxed = java.util.Collections.newSetFromMap(new java.util.IdentityHashMap<>());
+
+    private DeclFn current = null; // (the function whose body we are in)
+
+    /**
+     * Finds the free variables of every function in prog, which SemantV has
+     * checked (with no errors) and found res for.
+     */
+    public FreeVariables(IAbsyn prog, Resolution res) {
+        this.res = res;
+        prog.accept(this);
+
+        // Add what each function must pass to the functions it calls, until
+        // there is nothing more to add
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Map.Entry<DeclFn, Set<DeclFn>> f : this.calls.entrySet()) {
+                Set<VarEntry> fv = this.free.get(f.getKey());
+                for (DeclFn g : f.getValue()) {
+                    for (VarEntry x : this.free.get(g).toArray(new VarEntry[0])) {
+                        if (this.owner.get(x) != f.getKey())
+                            changed = fv.add(x) || changed;
+                    }
+                }
+            }
+        }
+
+        for (Set<VarEntry> fv : this.free.values()) {
+            for (VarEntry x : fv) {
+                if (this.assigned.contains(x))
+                    this.boxed.add(x);
+            }
+        }
+    }
+
+    /**
+     * The variables f uses but does not declare, in the order of the extra
+     * parameters that carry them.
+     */
+    public List<VarEntry> of(DeclFn f) {
+        List<VarEntry> fv = new java.util.ArrayList<>(this.free.get(f));
+        fv.sort((x, y) -> Integer.compare(x.slot, y.slot));
+        return fv;
+    }
+
+    /**
+     * Whether x is kept in a one-element array, rather than directly in a
+     * local.
+     */
+    public boolean boxed(VarEntry x) {
+        return this.boxed.contains(x);
+    }
+
+    // //////////////////////// IAbsynVisitor ////////////////////////
+
+    @Override
+    public void visit(DeclGroupFunction d) {
+        for (DeclFn dfn : d.fns) {
+            this.declarations.put(this.res.function(dfn), dfn);
+            this.free.put(dfn, new java.util.LinkedHashSet<>());
+            this.calls.put(dfn, new java.util.LinkedHashSet<>());
+            for (VarEntry x : this.res.params(dfn))
+                this.owner.put(x, dfn);
+        }
+
+        DeclFn saved = this.current;
+        for (DeclFn dfn : d.fns) {
+            this.current = dfn;
+            dfn.body.accept(this);
+        }
+        this.current = saved;
+    }
+
+    @Override
+    public void visit(DeclGroupType d) {
+    }
+
+    @Override
+    public void visit(DeclVar d) {
+        d.init.accept(this);
+        this.owner.put(this.res.variable(d), this.current);
+    }
+
+    @Override
+    public void visit(ExpArray e) {
+        e.size.accept(this);
+        e.init.accept(this);
+    }
+
+    @Override
+    public void visit(ExpAssign e) {
+        if (e.lhs instanceof VarSimple)
+            this.assigned.add(this.res.binding((VarSimple) e.lhs));
+        e.lhs.accept(this);
+        e.rhs.accept(this);
+    }
+
+    @Override
+    public void visit(ExpBreak e) {
+    }
+
+    @Override
+    public void visit(ExpCall e) {
+        DeclFn callee = this.declarations.get(this.res.target(e));
+        if (callee != null && this.current != null)
+            this.calls.get(this.current).add(callee);
+        // (the library's functions have no DeclFn, and capture nothing;
+        // nor do the calls of the main program need to be recorded, since
+        // it has no caller to be passed anything by)
+
+        for (Exp arg : e.args)
+            arg.accept(this);
+    }
+
+    @Override
+    public void visit(ExpFor e) {
+        e.lo.accept(this);
+        e.hi.accept(this);
+        this.owner.put(this.res.variable(e), this.current);
+        e.body.accept(this);
+    }
+
+    @Override
+    public void visit(ExpIf e) {
+        e.test.accept(this);
+        e.thenclause.accept(this);
+    }
+
+    @Override
+    public void visit(ExpIfElse e) {
+        e.test.accept(this);
+        e.thenclause.accept(this);
+        e.elseclause.accept(this);
+    }
+
+    @Override
+    public void visit(ExpInt e) {
+    }
+
+    @Override
+    public void visit(ExpLet e) {
+        for (Decl d : e.decls)
+            d.accept(this);
+        e.body.accept(this);
+    }
+
+    @Override
+    public void visit(ExpNil e) {
+    }
+
+    @Override
+    public void visit(ExpOp e) {
+        e.left.accept(this);
+        e.right.accept(this);
+    }
+
+    @Override
+    public void visit(ExpRecord e) {
+        for (tigerc.util.Pair<tigerc.util.Symbol, Exp> field : e.fields)
+            field.snd.accept(this);
+    }
+
+    @Override
+    public void visit(ExpSeq e) {
+        for (Exp e1 : e.list)
+            e1.accept(this);
+    }
+
+    @Override
+    public void visit(ExpString e) {
+    }
+
+    @Override
+    public void visit(ExpVar e) {
+        e.var.accept(this);
+    }
+
+    @Override
+    public void visit(ExpWhile e) {
+        e.test.accept(this);
+        e.body.accept(this);
+    }
+
+    @Override
+    public void visit(TyArray t) {
+    }
+
+    @Override
+    public void visit(TyName t) {
+    }
+
+    @Override
+    public void visit(TyRecord t) {
+    }
+
+    @Override
+    public void visit(VarField v) {
+        v.var.accept(this);
+    }
+
+    @Override
+    public void visit(VarSimple v) {
+        VarEntry x = this.res.binding(v);
+        if (this.current != null && this.owner.get(x) != this.current)
+            this.free.get(this.current).add(x);
+    }
+
+    @Override
+    public void visit(VarSubscript v) {
+        v.var.accept(this);
+        v.index.accept(this);
+    }
+}
@@ -0,0 +1,209 @@
+/*
+    Idiom.java
+
+    A for loop that does one of a few common things to an array, each of
+    which JVMGeneratorV can compile as a single call of a method of
+    TigerRuntime (which is part of the standard library jar), in place of
+    the loop:
+
+        FILL        for i := lo to hi do a[i] := v
+        COPY        for i := lo to hi do a[i + k] := b[i + m]
+        SUM         for i := lo to hi do s := s + a[i]
+        SEARCH      for i := lo to hi do if a[i] = v then (...; break)
+        MISMATCH    for i := lo to hi do if a[i] <> b[i] then (...; break)
+
+    where the arrays, v, k and m are invariant (see Loop), k and m are
+    optional, and either may be subtracted instead.  A sum, search or
+    mismatch is of an array of int;  a fill or copy is of any array.  For a
+    search or mismatch, what comes before the break is run once, with i
+    the index found, if there is one.
+
+    History:
+        10/18/2026        created
+ */
+
+package tigerc.translate.jvm;
+
+import tigerc.syntax.absyn.*;
+import tigerc.semant.analysis.Resolution;
+import tigerc.semant.analysis.types.INT;
+
+import java.util.List;
+
+public class Idiom {
+
+    public enum Kind {
+        FILL, COPY, SUM, SEARCH, MISMATCH
+    }
+
+    /*
+     * An index i + offset, or i - offset if negated (or just i, if offset is
+     * null)
+     */
+    static final class Index {
+        final Exp offset;
+        final boolean negated;
+
+        Index(Exp offset, boolean negated) {
+            this.offset = offset;
+            this.negated = negated;
+        }
+    }
+
+    public final Kind kind;
+    final boolean ints; // whether the arrays are of int
+
+    VarSimple array; // (a)
+    VarSimple other; // (b, for a copy or mismatch)
+    Index arrayIndex, otherIndex; // (for a copy)
+    Exp value; // (v, for a fill or search)
+    VarSimple sum; // (s)
+    List<Exp> found; // (what comes before the break)
+
+    private Idiom(Kind kind, boolean ints) {
+        this.kind = kind;
+        this.ints = ints;
+    }
+
+    /**
+     * The idiom that for loop e is, if any, and null otherwise; loop is what
+     * is known about it, closures the free variables of the program, for
+     * which SemantV found res.
+     */
+    public static Idiom of(ExpFor e, Loop loop, FreeVariables closures, Resolution res) {
+        Exp body = unwrap(e.body);
+
+        if (body instanceof ExpAssign && ((ExpAssign) body).lhs instanceof VarSubscript) {
+            ExpAssign assign = (ExpAssign) body;
+            VarSubscript lhs = (VarSubscript) assign.lhs;
+            if (!(lhs.var instanceof VarSimple) || !loop.invariant((VarSimple) lhs.var))
+                return null;
+            boolean ints = res.typeOf(assign.rhs).coerceTo(INT.inst);
+            Exp rhs = unwrap(assign.rhs);
+
+            if (loop.isIndex(lhs.index)
+                    && (loop.invariant(rhs) || rhs instanceof ExpString || rhs instanceof ExpNil)) {
+                Idiom fill = new Idiom(Kind.FILL, ints);
+                fill.array = (VarSimple) lhs.var;
+                fill.value = rhs;
+                return fill;
+            }
+
+            VarSimple src = element(rhs, loop);
+            Index dstIndex = index(lhs.index, loop), srcIndex = (src != null ? index(sub(rhs).index, loop) : null);
+            if (src != null && dstIndex != null && srcIndex != null) {
+                Idiom copy = new Idiom(Kind.COPY, ints);
+                copy.array = (VarSimple) lhs.var;
+                copy.arrayIndex = dstIndex;
+                copy.other = src;
+                copy.otherIndex = srcIndex;
+                return copy;
+            }
+
+        } else if (body instanceof ExpAssign && ((ExpAssign) body).lhs instanceof VarSimple
+                && unwrap(((ExpAssign) body).rhs) instanceof ExpOp) {
+            VarSimple s = (VarSimple) ((ExpAssign) body).lhs;
+            ExpOp op = (ExpOp) unwrap(((ExpAssign) body).rhs);
+            if (op.oper != ExpOp.Op.PLUS || closures.boxed(res.binding(s)))
+                return null;
+
+            Exp rest = (names(op.left, s, res) ? op.right : names(op.right, s, res) ? op.left : null);
+            VarSimple a = (rest != null ? element(unwrap(rest), loop) : null);
+            if (a != null && loop.isIndex(sub(unwrap(rest)).index) && res.binding(a) != res.binding(s)) {
+                Idiom sum = new Idiom(Kind.SUM, true);
+                sum.array = a;
+                sum.sum = s;
+                return sum;
+            }
+
+        } else if (body instanceof ExpIf && unwrap(((ExpIf) body).test) instanceof ExpOp) {
+            ExpOp test = (ExpOp) unwrap(((ExpIf) body).test);
+            List<Exp> then = statements(((ExpIf) body).thenclause);
+            if (then.isEmpty() || !(then.get(then.size() - 1) instanceof ExpBreak)
+                    || !res.typeOf(test.left).coerceTo(INT.inst))
+                return null;
+
+            Exp l = unwrap(test.left), r = unwrap(test.right);
+            VarSimple a = element(l, loop), b = element(r, loop);
+            boolean atL = (a != null && loop.isIndex(sub(l).index));
+            boolean atR = (b != null && loop.isIndex(sub(r).index));
+
+            Idiom idiom = null;
+            if (test.oper == ExpOp.Op.EQ && atL && loop.invariant(r)) {
+                idiom = new Idiom(Kind.SEARCH, true);
+                idiom.array = a;
+                idiom.value = r;
+            } else if (test.oper == ExpOp.Op.EQ && atR && loop.invariant(l)) {
+                idiom = new Idiom(Kind.SEARCH, true);
+                idiom.array = b;
+                idiom.value = l;
+            } else if (test.oper == ExpOp.Op.NE && atL && atR) {
+                idiom = new Idiom(Kind.MISMATCH, true);
+                idiom.array = a;
+                idiom.other = b;
+            }
+            if (idiom != null)
+                idiom.found = then.subList(0, then.size() - 1);
+            return idiom;
+        }
+        return null;
+    }
+
+    // //////////////////////// private methods ////////////////////////
+
+    /*
+     * If e is an element x[...] of an invariant array variable x, then x;
+     * otherwise null
+     */
+    private static VarSimple element(Exp e, Loop loop) {
+        if (!(e instanceof ExpVar) || !(((ExpVar) e).var instanceof VarSubscript))
+            return null;
+        Var x = sub(e).var;
+        return (x instanceof VarSimple && loop.invariant((VarSimple) x) ? (VarSimple) x : null);
+    }
+
+    private static VarSubscript sub(Exp e) {
+        return (VarSubscript) ((ExpVar) e).var;
+    }
+
+    /*
+     * e as an Index, if it is one, and null otherwise
+     */
+    private static Index index(Exp e, Loop loop) {
+        e = unwrap(e);
+        if (loop.isIndex(e))
+            return new Index(null, false);
+        if (!(e instanceof ExpOp))
+            return null;
+        ExpOp op = (ExpOp) e;
+        if (op.oper == ExpOp.Op.PLUS && loop.isIndex(op.left) && loop.invariant(op.right))
+            return new Index(op.right, false);
+        if (op.oper == ExpOp.Op.PLUS && loop.isIndex(op.right) && loop.invariant(op.left))
+            return new Index(op.left, false);
+        if (op.oper == ExpOp.Op.MIN && loop.isIndex(op.left) && loop.invariant(op.right))
+            return new Index(op.right, true);
+        return null;
+    }
+
+    /*
+     * Whether e is a use of the variable x
+     */
+    private static boolean names(Exp e, VarSimple x, Resolution res) {
+        e = unwrap(e);
+        return e instanceof ExpVar && ((ExpVar) e).var instanceof VarSimple
+                && res.binding((VarSimple) ((ExpVar) e).var) == res.binding(x);
+    }
+
+    /*
+     * The expressions of e, in order, if it is a sequence, or else just e
+     */
+    private static List<Exp> statements(Exp e) {
+        return (e instanceof ExpSeq ? ((ExpSeq) e).list : java.util.Collections.singletonList(e));
+    }
+
+    private static Exp unwrap(Exp e) {
+        while (e instanceof ExpSeq && ((ExpSeq) e).list.size() == 1)
+            e = ((ExpSeq) e).list.get(0);
+        return e;
+    }
+}
@@ -0,0 +1,270 @@
+/*
+    Inliner.java
+
+    Which functions JVMGeneratorV compiles into the code of each call,
+    rather than into a method of their own.  A call through invokestatic is
+    cheap once the JIT inlines it, but it only does so for callers under a
+    size budget, and the methods we generate for a let body are often
+    larger than that.  Tiny functions such as max, abs or a field getter are
+    better off copied to where they are used.
+
+    A function is inlined at every call if it:
+
+        - calls no function of the program (so that it is not recursive,
+          and copying it cannot go on forever),
+        - declares no functions, and captures no variables (so that it has
+          no closure to be built for it),
+        - and is small: its body has at most SMALL nodes, or at most ONCE if
+          it is called from only one place (when the copy is all there is).
+
+    Its method is then never called, and is not generated;  nor is that of
+    a function that is never called at all.
+
+    History:
+        10/18/2026        created
+ */
+
+package tigerc.translate.jvm;
+
+import tigerc.syntax.absyn.*;
+import tigerc.semant.analysis.Resolution;
+import tigerc.semant.analysis.FunEntry;
+
+import java.util.Map;
+import java.util.Set;
+
+public class Inliner implements IAbsynVisitor {
+
+    private static final int SMALL = 16;
+    private static final int ONCE = 64;
+
+    private final Resolution res;
+
+    private final Map<FunEntry, DeclFn> declarations = new java.util.IdentityHashMap<>();
+    private final Map<DeclFn, Integer> size = new java.util.IdentityHashMap<>();
+    private final Map<DeclFn, Integer> calls = new java.util.IdentityHashMap<>();
+    // The number of nodes in each function's body, and of calls to it
+
+    private final Set<DeclFn> excluded = java.util.Collections.newSetFromMap(new java.util.IdentityHashMap<>());
+    // The functions that call others of the program, or declare any
+
+    private final Set<DeclFn> inlined = java.util.Collections.newSetFromMap(new java.util.IdentityHashMap<>());
+
+    private DeclFn current = null; // (the function whose body we are in)
+
+    /**
+     * Decides which functions of prog, which SemantV has checked (with no
+     * errors) and found res for, to inline; closures are their free
+     * variables.
+     */
+    public Inliner(IAbsyn prog, Resolution res, FreeVariables closures) {
+        this.res = res;
+        prog.accept(this);
+
+        for (Map.Entry<DeclFn, Integer> f : this.size.entrySet()) {
+            DeclFn dfn = f.getKey();
+            int n = this.calls.get(dfn);
+            if (!this.excluded.contains(dfn) && closures.of(dfn).isEmpty() && n > 0
+                    && (f.getValue() <= SMALL || (n == 1 && f.getValue() <= ONCE)))
+                this.inlined.add(dfn);
+        }
+    }
+
+    /**
+     * The declaration of f, if every call of f is to be replaced by its body,
+     * and null otherwise.
+     */
+    public DeclFn inlined(FunEntry f) {
+        DeclFn dfn = this.declarations.get(f);
+        return (dfn != null && this.inlined.contains(dfn) ? dfn : null);
+    }
+
+    /**
+     * Whether f needs a method: whether it is called, other than where it is
+     * inlined.
+     */
+    public boolean called(DeclFn f) {
+        return this.calls.get(f) > 0 && !this.inlined.contains(f);
+    }
+
+    // //////////////////////// IAbsynVisitor ////////////////////////
+
+    /*
+     * Counts one more node of the body we are in
+     */
+    private void node() {
+        if (this.current != null)
+            this.size.merge(this.current, 1, Integer::sum);
+    }
+
+    @Override
+    public void visit(DeclGroupFunction d) {
+        if (this.current != null)
+            this.excluded.add(this.current);
+
+        for (DeclFn dfn : d.fns) {
+            this.declarations.put(this.res.function(dfn), dfn);
+            this.size.put(dfn, 0);
+            this.calls.put(dfn, 0);
+        }
+
+        DeclFn saved = this.current;
+        for (DeclFn dfn : d.fns) {
+            this.current = dfn;
+            dfn.body.accept(this);
+        }
+        this.current = saved;
+    }
+
+    @Override
+    public void visit(DeclGroupType d) {
+    }
+
+    @Override
+    public void visit(DeclVar d) {
+        node();
+        d.init.accept(this);
+    }
+
+    @Override
+    public void visit(ExpArray e) {
+        node();
+        e.size.accept(this);
+        e.init.accept(this);
+    }
+
+    @Override
+    public void visit(ExpAssign e) {
+        node();
+        e.lhs.accept(this);
+        e.rhs.accept(this);
+    }
+
+    @Override
+    public void visit(ExpBreak e) {
+        node();
+    }
+
+    @Override
+    public void visit(ExpCall e) {
+        node();
+        DeclFn callee = this.declarations.get(this.res.target(e));
+        if (callee != null) {
+            this.calls.merge(callee, 1, Integer::sum);
+            if (this.current != null)
+                this.excluded.add(this.current);
+        }
+        // (a call of the library's functions is like any other expression)
+
+        for (Exp arg : e.args)
+            arg.accept(this);
+    }
+
+    @Override
+    public void visit(ExpFor e) {
+        node();
+        e.lo.accept(this);
+        e.hi.accept(this);
+        e.body.accept(this);
+    }
+
+    @Override
+    public void visit(ExpIf e) {
+        node();
+        e.test.accept(this);
+        e.thenclause.accept(this);
+    }
+
+    @Override
+    public void visit(ExpIfElse e) {
+        node();
+        e.test.accept(this);
+        e.thenclause.accept(this);
+        e.elseclause.accept(this);
+    }
+
+    @Override
+    public void visit(ExpInt e) {
+        node();
+    }
+
+    @Override
+    public void visit(ExpLet e) {
+        node();
+        for (Decl d : e.decls)
+            d.accept(this);
+        e.body.accept(this);
+    }
+
+    @Override
+    public void visit(ExpNil e) {
+        node();
+    }
+
+    @Override
+    public void visit(ExpOp e) {
+        node();
+        e.left.accept(this);
+        e.right.accept(this);
+    }
+
+    @Override
+    public void visit(ExpRecord e) {
+        node();
+        for (tigerc.util.Pair<tigerc.util.Symbol, Exp> field : e.fields)
+            field.snd.accept(this);
+    }
+
+    @Override
+    public void visit(ExpSeq e) {
+        for (Exp e1 : e.list)
+            e1.accept(this);
+    }
+
+    @Override
+    public void visit(ExpString e) {
+        node();
+    }
+
+    @Override
+    public void visit(ExpVar e) {
+        e.var.accept(this);
+    }
+
+    @Override
+    public void visit(ExpWhile e) {
+        node();
+        e.test.accept(this);
+        e.body.accept(this);
+    }
+
+    @Override
+    public void visit(TyArray t) {
+    }
+
+    @Override
+    public void visit(TyName t) {
+    }
+
+    @Override
+    public void visit(TyRecord t) {
+    }
+
+    @Override
+    public void visit(VarField v) {
+        node();
+        v.var.accept(this);
+    }
+
+    @Override
+    public void visit(VarSimple v) {
+        node();
+    }
+
+    @Override
+    public void visit(VarSubscript v) {
+        node();
+        v.var.accept(this);
+        v.index.accept(this);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+    Insn.java
+
+    One instruction of a method body, as JVMGeneratorV builds it and
+    Peephole rewrites it, before it is written out as a line of Jasmin.
+
+    History:
+        10/18/2026        created
+ */
+
+package tigerc.translate.jvm;
+
+public class Insn {
+    public final String opcode; // (null for a label)
+    public final String operand; // everything after the opcode, if anything
+    public final Label target; // the label of a branch, or the label this is
+    public final String comment;
+
+    private Insn(String opcode, String operand, Label target, String comment) {
+        this.opcode = opcode;
+        this.operand = operand;
+        this.target = target;
+        this.comment = comment;
+    }
+
+    /**
+     * An instruction that is not a branch, such as "iadd" or "istore 3"
+     *
+     * @param opcode
+     * @param operand
+     *            may be null
+     * @param comment
+     *            may be null
+     */
+    public static Insn op(String opcode, String operand, String comment) {
+        assert opcode != null && !isBranch(opcode);
+        return new Insn(opcode, operand, null, comment);
+    }
+
+    /**
+     * A branch (goto, or one of the conditional branches) to target
+     */
+    public static Insn jump(String opcode, Label target) {
+        assert isBranch(opcode) && target != null;
+        return new Insn(opcode, null, target, null);
+    }
+
+    /**
+     * The point in the code that branches to l go to
+     */
+    public static Insn label(Label l) {
+        assert l != null;
+        return new Insn(null, null, l, null);
+    }
+
+    public boolean isLabel() {
+        return this.opcode == null;
+    }
+
+    public boolean isJump() {
+        return this.opcode != null && this.target != null;
+    }
+
+    /**
+     * Whether control never goes on to the next instruction
+     */
+    public boolean endsBlock() {
+        return "goto".equals(this.opcode) || "athrow".equals(this.opcode) || "return".equals(this.opcode)
+                || "ireturn".equals(this.opcode) || "areturn".equals(this.opcode);
+    }
+
+    /**
+     * Whether this is opcode, with the same operand as that
+     */
+    public boolean is(String opcode, Insn that) {
+        return opcode.equals(this.opcode) && that.operand != null && that.operand.equals(this.operand);
+    }
+
+    /**
+     * This branch, with a new target
+     */
+    public Insn to(Label l) {
+        assert isJump();
+        return jump(this.opcode, l);
+    }
+
+    /**
+     * The conditional branch taken exactly when this one is not
+     */
+    public Insn negate() {
+        assert isJump() && !"goto".equals(this.opcode);
+        for (int i = 0; i < NEGATIONS.length; i++) {
+            if (NEGATIONS[i].equals(this.opcode))
+                return jump(NEGATIONS[i ^ 1], this.target);
+        }
+        throw new Error("Insn.negate(): internal bug [" + this + "]");
+    }
+
+    /**
+     * The line of Jasmin for this instruction
+     */
+    @Override
+    public String toString() {
+        String s;
+        if (isLabel())
+            s = this.target + ":";
+        else if (isJump())
+            s = this.opcode + " " + this.target;
+        else
+            s = (this.operand == null ? this.opcode : this.opcode + " " + this.operand);
+        return (this.comment == null ? s : s + " ; " + this.comment);
+    }
+
+    private static boolean isBranch(String opcode) {
+        if (opcode.equals("goto"))
+            return true;
+        for (String op : NEGATIONS) {
+            if (op.equals(opcode))
+                return true;
+        }
+        return false;
+    }
+
+    // The conditional branches, in pairs of opposites
+    private static final String[] NEGATIONS = { "ifeq", "ifne", "iflt", "ifge", "ifgt", "ifle", "if_icmpeq",
+            "if_icmpne", "if_icmplt", "if_icmpge", "if_icmpgt", "if_icmple", "if_acmpeq", "if_acmpne", "ifnull",
+            "ifnonnull" };
+}
@@ -0,0 +1,194 @@
+/*
+    InsnList.java
+
+    The body of a method, as a list of instructions and the labels between
+    them.  JVMGeneratorV adds to it as it visits the tree; Peephole then
+    improves it; toString() is the Jasmin text for it.
+
+    History:
+        10/18/2026        created
+        10/18/2026        maxStack()
+ */
+
+package tigerc.translate.jvm;
+
+import java.util.List;
+
+public class InsnList {
+    private List<Insn> insns = new java.util.ArrayList<>();
+
+    public void add(String opcode) {
+        this.insns.add(Insn.op(opcode, null, null));
+    }
+
+    public void add(String opcode, Object operand) {
+        this.insns.add(Insn.op(opcode, operand.toString(), null));
+    }
+
+    public void add(String opcode, Object operand, String comment) {
+        this.insns.add(Insn.op(opcode, (operand == null ? null : operand.toString()), comment));
+    }
+
+    public void jump(String opcode, Label target) {
+        this.insns.add(Insn.jump(opcode, target));
+    }
+
+    public void label(Label l) {
+        this.insns.add(Insn.label(l));
+    }
+
+    /**
+     * The instructions, in order. Peephole changes the list in place.
+     */
+    List<Insn> insns() {
+        return this.insns;
+    }
+
+    /**
+     * The most words the operand stack ever holds, running this code from an
+     * empty stack (for the .limit stack of its method)
+     */
+    public int maxStack() {
+        java.util.Map<Label, Integer> at = new java.util.HashMap<>();
+        for (int k = 0; k < this.insns.size(); k++) {
+            if (this.insns.get(k).isLabel())
+                at.put(this.insns.get(k).target, k);
+        }
+
+        // The depth on entry to each instruction, found by following every
+        // path through the code from the start (the code is well-formed, so
+        // each instruction has the same depth on every path to it)
+        int[] depth = new int[this.insns.size() + 1];
+        java.util.Arrays.fill(depth, -1);
+        java.util.Deque<Integer> work = new java.util.ArrayDeque<>();
+        depth[0] = 0;
+        work.push(0);
+        int max = 0;
+
+        while (!work.isEmpty()) {
+            int k = work.pop();
+            if (k == this.insns.size())
+                continue;
+            Insn i = this.insns.get(k);
+            int after = depth[k] + (i.isLabel() ? 0 : stackEffect(i));
+            max = Math.max(max, after);
+
+            if (i.isJump() && depth[at.get(i.target)] < 0) {
+                depth[at.get(i.target)] = after;
+                work.push(at.get(i.target));
+            }
+            if (!i.endsBlock() && depth[k + 1] < 0) {
+                depth[k + 1] = after;
+                work.push(k + 1);
+            }
+        }
+        return max;
+    }
+
+    /*
+     * The number of words i pushes, less the number it pops, for each of the
+     * instructions JVMGeneratorV uses
+     */
+    private static int stackEffect(Insn i) {
+        switch (i.opcode) {
+        case "aconst_null":
+        case "aload":
+        case "iload":
+        case "iconst_m1":
+        case "iconst_0":
+        case "iconst_1":
+        case "iconst_2":
+        case "iconst_3":
+        case "iconst_4":
+        case "iconst_5":
+        case "bipush":
+        case "sipush":
+        case "ldc":
+        case "dup":
+        case "dup_x1":
+        case "new":
+        case "getstatic":
+            return 1;
+        case "swap":
+        case "iinc":
+        case "ineg":
+        case "newarray":
+        case "anewarray":
+        case "arraylength":
+        case "getfield":
+        case "checkcast":
+        case "goto":
+        case "return":
+            return 0;
+        case "astore":
+        case "istore":
+        case "pop":
+        case "iadd":
+        case "isub":
+        case "imul":
+        case "idiv":
+        case "irem":
+        case "iaload":
+        case "aaload":
+        case "baload":
+        case "ifeq":
+        case "ifne":
+        case "iflt":
+        case "ifge":
+        case "ifgt":
+        case "ifle":
+        case "ifnull":
+        case "ifnonnull":
+        case "ireturn":
+        case "areturn":
+        case "athrow":
+            return -1;
+        case "putfield":
+        case "if_icmpeq":
+        case "if_icmpne":
+        case "if_icmplt":
+        case "if_icmpge":
+        case "if_icmpgt":
+        case "if_icmple":
+        case "if_acmpeq":
+        case "if_acmpne":
+            return -2;
+        case "iastore":
+        case "aastore":
+        case "bastore":
+            return -3;
+        case "invokestatic":
+            return invokeEffect(i.operand);
+        case "invokevirtual":
+        case "invokespecial":
+            return invokeEffect(i.operand) - 1;
+        default:
+            throw new Error("InsnList.stackEffect(): internal bug [" + i + "]");
+        }
+    }
+
+    /*
+     * The stack effect of a call of the method with descriptor desc, not
+     * counting the object (one word for every argument, and for the result
+     * unless it is void)
+     */
+    private static int invokeEffect(String desc) {
+        int k = desc.indexOf('(') + 1, args = 0;
+        while (desc.charAt(k) != ')') {
+            while (desc.charAt(k) == '[')
+                k++;
+            k = (desc.charAt(k) == 'L' ? desc.indexOf(';', k) : k) + 1;
+            args++;
+        }
+        return (desc.charAt(k + 1) == 'V' ? 0 : 1) - args;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        for (Insn i : this.insns) {
+            b.append(i).append('\n');
+        }
+        return b.toString();
+    }
+}
@@ -39,6 +39,17 @@ public class JVMFrame implements IFrame {
         return a;
     }
 
+    /*
+     * Whether a is allocated still, and not popped
+     */
+    boolean holds(IAccess a) {
+        for (IAccess b : locals) {
+            if (b == a)
+                return true;
+        }
+        return false;
+    }
+
     /*
      * Returns the offset from the beginning of this frame of the first
      * available word.
@@ -60,7 +71,9 @@ public class JVMFrame implements IFrame {
      */
     @Override
     public IFrame staticLink() {
-        // TODO Implement static link support (necessary for nested procedure definitions)
+        // The JVM gives no access to another method's frame, so there are no
+        // static links: nested procedures are closure-converted instead (see
+        // FreeVariables)
         throw new UnsupportedOperationException(
                 "static links not implemented.");
     }
@@ -9,6 +9,44 @@
         05/01/2016 (jhel) implemented all methods, except visit(DeclGroupFunctio)
         04/13/2018 (jhel) many bug fixes
         04/15/2018 (jhel) added emitPrintMainResultInstruction(); fixed visit(ExpArray)
+        10/18/2026        types, bindings and call targets are taken from the
+                          Resolution made by SemantV, rather than found again
+        10/18/2026        a class with typed fields for each record type, in
+                          place of java.util.Hashtable
+        10/18/2026        method bodies are built as an InsnList, and improved
+                          by Peephole before they are written out
+        10/18/2026        if and while tests, comparisons, & and | compiled
+                          as jumping code (genCond())
+        10/18/2026        closure conversion: nested procedures are passed the
+                          variables they use from enclosing ones (see
+                          FreeVariables)
+        10/18/2026        tail calls within a procedure group are jumps
+        10/18/2026        small leaf procedures are inlined (see Inliner);
+                          .limit stack is worked out from the code
+        10/18/2026        optimization levels (setOptimization()); constants
+                          and copies are propagated (see Propagation)
+        10/18/2026        loops: invariant expressions are computed before
+                          the loop, products of a for loop's variable are
+                          strength-reduced, and short for loops unrolled
+                          (see Loop)
+        10/18/2026        records that never escape the procedure that makes
+                          them are kept as a local for each field (see
+                          EscapeAnalysis)
+        10/18/2026        a chain of calls of concat is one StringBuilder; a
+                          string a loop only appends to is kept in one
+                          until the loop ends
+        10/18/2026        arrays are created, and fill, copy, sum and search
+                          loops run, by TigerRuntime (see Idiom)
+        10/18/2026        main's result is printed after what TigerStdLib
+                          has buffered
+        10/18/2026        readline, readint, eof, readfile, readints and
+                          printints, in the library
+        10/18/2026        the type table, and its functions, in the library
+        10/19/2026        main writes out what TigerStdLib has buffered
+                          before an uncaught exception is reported
+        10/19/2026        int arithmetic computed again is taken from a
+                          local (see CommonSubexpressions)
+        10/19/2026        the type itable, and its functions, in the library
  */
 
 package tigerc.translate.jvm;
@@ -18,11 +56,12 @@ import tigerc.semant.Env;
 
 import tigerc.translate.*;
 import tigerc.translate.access.IAccess;
+import tigerc.semant.analysis.EscapeAnalysis;
+import tigerc.semant.analysis.Resolution;
 import tigerc.semant.analysis.types.*;
 import tigerc.util.*;
 
 import java.io.PrintWriter;
-import java.util.Collection;
 import java.util.List;
 
 public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.absyn.IAbsynVisitor {
@@ -46,16 +85,14 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
 
     private IAbsyn prog; // The program we're translating
     private String classname; // The name of the class file we'll generate
-    private java.io.PrintWriter code;
-    // The code we generate for this program (without procedure fragments)
+    private InsnList code;
+    // The code we generate for this program (without procedure fragments),
+    // which is only written out as text once Peephole has been over it
 
     // private int localsCt = 0;
     // private int maxLocals = 0; <---- moved to maxLocals() method in JVMFrame
     // The number of local variables allocated for this frame
 
-    private int maxStack = 10;
-    // TODO: this can be improved, along the same lines as maxLocals
-
     private JVMFrame frame;
 
     private java.util.Stack<Label> enclosingLoop;
@@ -64,37 +101,116 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
     // inside a loop do not retain the enclosingLoop stack, a new JVMGeneratoV
     // Should be created for each method body.
 
-    private Env<Entry> venv;
-    private Env<Type> tenv;
+    private Resolution res;
+    // What SemantV found out about the program: the type of every expression,
+    // the binding each variable names, and the function each call calls.
+    // There is no need for environments of our own, then, only for what the
+    // JVM needs to know that SemantV does not:
+
+    private java.util.Map<tigerc.semant.analysis.FunEntry, FunEntry> functions;
+    // The label of each function, by its signature in res
+
+    private VarEntry[] variables;
+    // The local allocated for each binding, by its slot in res, in the method
+    // we are generating. A variable of an enclosing procedure has a local of
+    // its own in each procedure that uses it (see closures).
+
+    private java.util.Map<RECORD, String> records;
+    // The name of the class made for each record type used so far (see
+    // classes()). This and functions are shared by every generator for the
+    // same program.
+
+    private FreeVariables closures;
+    // The variables each procedure uses from enclosing ones, which are
+    // passed to it as extra parameters
+
+    private int optLevel = 2;
+
+    private Inliner inliner;
+    // The procedures whose body is compiled into each call, in place of a
+    // method (null below level 2)
+
+    private Propagation propagation;
+    // The constants, and the variables that can be replaced by others or left
+    // out (null below level 2)
+
+    private CommonSubexpressions subexpressions;
+    // The int expressions whose value is computed again later, and where
+    // (null below level 2)
+
+    private EscapeAnalysis escapes;
+    // The record variables whose fields are kept in locals, in place of a
+    // record (null below level 2)
+
+    private java.util.Map<tigerc.semant.analysis.VarEntry, IAccess[]> scalars = new java.util.IdentityHashMap<>();
+    // The locals for the fields of each of those, in the method we are
+    // generating
+
+    private java.util.Map<Exp, IAccess> precomputed = new java.util.IdentityHashMap<>();
+    // The expressions of the loops we are in whose value is kept in a local,
+    // and so need not be computed where they are (see Loop)
+
+    private java.util.Map<Exp, IAccess> common = new java.util.IdentityHashMap<>();
+    // The local that holds the value of each of those, once the expression
+    // that computes it first has been generated
+
+    private java.util.Map<tigerc.semant.analysis.VarEntry, IAccess> builders = new java.util.IdentityHashMap<>();
+    // The string variables of the loops we are in that are kept in a
+    // StringBuilder, and the locals that hold those (see Loop)
+
+    private static final String BUILDER = "java/lang/StringBuilder";
+    private static final String RUNTIME = "TigerRuntime";
+
+    private static final int UNROLL_TRIPS = 8;
+    private static final int UNROLL_SIZE = 64;
+    // A for loop with constant bounds is unrolled if it runs at most
+    // UNROLL_TRIPS times, and that many copies of its body add up to at most
+    // UNROLL_SIZE nodes
+
+    private java.util.Map<tigerc.semant.analysis.FunEntry, TailTarget> tailTargets = new java.util.IdentityHashMap<>();
+    private java.util.Set<ExpCall> tailCalls = java.util.Collections.newSetFromMap(new java.util.IdentityHashMap<>());
+    // The procedures whose code is in the method we are generating, and the
+    // calls to them in tail position, which are compiled as jumps (see
+    // visit(DeclGroupFunction))
+
+    /*
+     * Where a tail call to a procedure goes: the locals that hold its
+     * arguments, and the start of its code, where they are bound to its
+     * parameters
+     */
+    private static final class TailTarget {
+        final Label entry;
+        final IAccess[] args;
+
+        TailTarget(Label entry, IAccess[] args) {
+            this.entry = entry;
+            this.args = args;
+        }
+    }
 
     private static Env<Entry> extern_venv;
-    private static Env<Type> extern_tenv;
 
     static {
         try {
             JVMGeneratorV.extern_venv = Env.instance_noparent(); //new Env<Entry>();
-            JVMGeneratorV.extern_tenv = Env.instance_noparent(); //new Env<Type>();
             JVMGeneratorV.setupStdLibrary();
         } catch (ClassNotFoundException e) {
             throw new Error("Fatal error:  Cannot load standard library file TigerStdLib");
         }
     }
 
-    // To record variable allocations and procedure frames (and type
-    // definitions)
-
-    // "return values" of each visit call:
-    private Type expType; // type of the most recently-visited expression
     private boolean rvalueMode = true;
 
     /**
      * Minimal code generator, for writing to stdout. Likely to be rarely, if
      * ever, used
      * 
+     * @param res
+     *            what SemantV found out about the program
      * @throws ClassNotFoundException
      */
-    public JVMGeneratorV() throws ClassNotFoundException {
-        this(System.out);
+    public JVMGeneratorV(Resolution res) throws ClassNotFoundException {
+        this(System.out, res);
     }
 
     /**
@@ -102,10 +218,15 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
      * 
      * @param o
      *            the text stream Writer where source code will be written
+     * @param res
+     *            what SemantV found out about the program (see
+     *            SemantV.getResolution())
      * @throws ClassNotFoundException
      */
-    public JVMGeneratorV(java.io.PrintWriter o) throws ClassNotFoundException {
-        this(new Env<Entry>(JVMGeneratorV.extern_venv), new Env<Type>(JVMGeneratorV.extern_tenv), o, makePrintableWriter(), new java.util.LinkedList<String>());
+    public JVMGeneratorV(java.io.PrintWriter o, Resolution res) throws ClassNotFoundException {
+        this(res, o, new InsnList(), new java.util.LinkedList<String>(),
+                new java.util.IdentityHashMap<tigerc.semant.analysis.FunEntry, FunEntry>(),
+                new VarEntry[res.bindings()], new java.util.LinkedHashMap<RECORD, String>());
     }
 
     /**
@@ -114,36 +235,43 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
      * @param o
      * @throws ClassNotFoundException
      */
-    private JVMGeneratorV(java.io.PrintStream o) throws ClassNotFoundException {
-        this(new java.io.PrintWriter(o));
+    private JVMGeneratorV(java.io.PrintStream o, Resolution res) throws ClassNotFoundException {
+        this(new java.io.PrintWriter(o), res);
     }
 
     /**
      * Actual workhorse of the constructors.
      * 
-     * @param ve
-     *            value environment
-     * @param te
-     *            type environment
+     * @param res
+     *            what SemantV found out about the program
      * @param tgt
      *            output writer
      * @param c
-     *            procedure text writer (used internally)
+     *            procedure code (used internally)
      * @param ps
      *            list of procedure definitions
+     * @param fns
+     *            labels of the procedures defined so far
+     * @param vars
+     *            locals of the variables declared so far
+     * @param recs
+     *            classes of the record types used so far
      * @throws ClassNotFoundException
      */
-    private JVMGeneratorV(Env<Entry> ve, Env<Type> te, java.io.PrintWriter tgt, java.io.PrintWriter c, List<String> ps)
-            throws ClassNotFoundException {
+    private JVMGeneratorV(Resolution res, java.io.PrintWriter tgt, InsnList c, List<String> ps,
+            java.util.Map<tigerc.semant.analysis.FunEntry, FunEntry> fns, VarEntry[] vars,
+            java.util.Map<RECORD, String> recs) throws ClassNotFoundException {
 
-        assert JVMGeneratorV.extern_venv != null && JVMGeneratorV.extern_tenv != null;
-        assert ve != null && te != null && tgt != null && c != null && ps != null;
+        assert JVMGeneratorV.extern_venv != null;
+        assert res != null && tgt != null && c != null && ps != null && fns != null && vars != null && recs != null;
 
-        this.venv = ve;
-        this.tenv = te;
+        this.res = res;
         this.tgtOut = tgt;
         this.code = c;
         this.procs = ps;
+        this.functions = fns;
+        this.variables = vars;
+        this.records = recs;
         this.enclosingLoop = new java.util.Stack<Label>();
         this.frame = new JVMFrame();
 
@@ -158,40 +286,26 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
      *            this constructor is only called from the
      *            visit(DeclGroupFunction) method, the value of this.classname
      *            will not be set from the usual, top-level setProg call.
-     * @param venv
-     *            this procedure's enclosing "value" environment
-     * @param tenv
-     *            this procedure's enclosing type environment
-     * @param procBodyWriter
-     *            the target stream for writing the procedure body's code
-     * @param formals
-     *            the list of <ID,Type> pairs that are this procedures'
-     *            parameters
-     * @param procs
-     *            the list of procedure definitions that have been competed so
-     *            far; if there are nested definitions inside this body, we're
-     *            going to need to add them.
+     * @param enclosing
+     *            the generator for the code around the procedure, whose list
+     *            of procedure definitions and labels this one shares; if
+     *            there are nested definitions inside this body, we're going
+     *            to need to add them.
      * @throws ClassNotFoundException
      * @pre this constructor is only called from the context of code generation
      *      for a procedure's body, i.e. from within a visit (DeclGroupFunction)
      *      call. That's impossible to formalize or easily, check, I think.
      */
-    private JVMGeneratorV(String classname, Env<Entry> venv, Env<Type> tenv, List<Pair<Symbol, Type>> formals,
-            List<String> procs) throws ClassNotFoundException {
-        this(venv, tenv, null, makePrintableWriter(), procs);
-
-        this.venv.beginScope();
-        for (Pair<Symbol, Type> param : formals) {
-
-            this.venv.extend(param.fst, new VarEntry(param.snd, this.frame.allocLocal(param.snd)));
-        }
-
+    private JVMGeneratorV(String classname, JVMGeneratorV enclosing) throws ClassNotFoundException {
+        this(enclosing.res, null, new InsnList(), enclosing.procs, enclosing.functions,
+                new VarEntry[enclosing.res.bindings()], enclosing.records);
+        this.closures = enclosing.closures;
+        this.optLevel = enclosing.optLevel;
+        this.inliner = enclosing.inliner;
+        this.propagation = enclosing.propagation;
+        this.subexpressions = enclosing.subexpressions;
+        this.escapes = enclosing.escapes;
         this.classname = classname;
-        // we won't bother to close the scope, since that will be done by the
-        // enclosing
-        // visit(DeclGroupFunction) method that created this generator function
-        // object
-
     }
 
     /**************** ICodegen implementation ************************/
@@ -206,21 +320,36 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
         // will calculate local variable allocation, add procedure fragments
         // to procs, and write JVM instructions to code
 
+        if (this.optLevel >= 1)
+            Peephole.optimize(this.code);
         emitLn(this.tgtOut, ".limit locals " + this.frame.maxLocals() + 1);
-        emitLn(this.tgtOut, ".limit stack " + this.maxStack);
-        // lazy stack limit guess: we could improve with a mechanism
-        // similar to maxLocals
+        emitLn(this.tgtOut, ".limit stack " + Math.max(this.code.maxStack(), 2));
+        // (printing the result takes it and System.out)
+
+        // If the program fails, what it printed first must come out before
+        // the stack trace does, and not after it, from the shutdown hook
+        Label begin = new Label(this.serialNumber, "main"), end = new Label(this.serialNumber, "endmain"),
+                failed = new Label(this.serialNumber, "failed");
+        emitLn(this.tgtOut, ".catch all from " + begin + " to " + end + " using " + failed);
+        emitLn(this.tgtOut, begin + ":");
         emit(this.tgtOut, this.code.toString());
+        emitLn(this.tgtOut, "invokestatic TigerStdLib/flush()V");
+        emitLn(this.tgtOut, end + ":");
 
-        if (!this.expType.coerceTo(VOID.inst)) {
+        Type progType = this.res.typeOf(this.prog);
+        if (!progType.coerceTo(VOID.inst)) {
             emitLn(this.tgtOut, "getstatic java/lang/System/out Ljava/io/PrintStream;");
             emitLn(this.tgtOut, "swap");
 
-            printMainResult();
+            printMainResult(progType);
         }
 
         emitLn(this.tgtOut, "return");
 
+        emitLn(this.tgtOut, failed + ":");
+        emitLn(this.tgtOut, "invokestatic TigerStdLib/flush()V");
+        emitLn(this.tgtOut, "athrow");
+
         emitLn(this.tgtOut, ".end method", "    -- (main)");
     }
 
@@ -247,6 +376,45 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
         }
     }
 
+    /**
+     * One class for each record type, with a public field for each of its
+     * fields, typed as jvmType() says: I for an int, a reference otherwise.
+     * An instance starts with 0 and null in them; visit(ExpRecord) fills
+     * them in.
+     */
+    @Override
+    public java.util.Map<String, String> classes() {
+        java.util.Map<String, String> defs = new java.util.LinkedHashMap<String, String>();
+
+        // Declaring a field of another record type can add that type to
+        // this.records, so we go on until no new type turns up
+        List<RECORD> done = new java.util.ArrayList<RECORD>();
+        while (done.size() < this.records.size()) {
+            List<RECORD> todo = new java.util.ArrayList<RECORD>(this.records.keySet());
+            for (RECORD r : todo.subList(done.size(), todo.size())) {
+                PrintWriter out = makePrintableWriter();
+                String cls = this.records.get(r);
+
+                emitComment(out, "record type " + r);
+                emitLn(out, ".class public " + cls);
+                emitLn(out, ".super java/lang/Object");
+                for (int i = 0; i < r.fields.size(); i++) {
+                    emitLn(out, ".field public '" + r.fields.get(i).fst + "' " + jvmType(r.fields.get(i).snd));
+                }
+                emitLn(out, ".method public <init>()V");
+                emitLn(out, "aload_0");
+                emitLn(out, "invokespecial java/lang/Object/<init>()V");
+                emitLn(out, "return");
+                emitLn(out, ".end method");
+
+                out.flush();
+                defs.put(cls, out.toString());
+                done.add(r);
+            }
+        }
+        return defs;
+    }
+
     /**
      * Sets the AST for which we'll generate code. Must be used before calling
      * <tt>emitPrelude</tt>, <tt>emitMain</tt>, or <tt>emitProcedures</tt> The
@@ -257,6 +425,40 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
         assert outFName != null && nameExtension != null;
         this.prog = program;
         this.classname = outFName;
+        this.closures = new FreeVariables(program, this.res);
+        if (this.optLevel >= 2) {
+            this.inliner = new Inliner(program, this.res, this.closures);
+            this.propagation = new Propagation(program, this.res);
+            this.subexpressions = new CommonSubexpressions(program, this.res, this.propagation);
+            this.escapes = new EscapeAnalysis(program, this.res);
+        }
+    }
+
+    /**
+     * At level 2, the number of record allocations left out, since the
+     * record never escapes (see EscapeAnalysis), and of int expressions
+     * whose value is taken from one computed before (see
+     * CommonSubexpressions)
+     */
+    @Override
+    public java.util.Map<String, Integer> statistics() {
+        java.util.Map<String, Integer> stats = new java.util.LinkedHashMap<>();
+        if (this.escapes != null)
+            stats.put("record allocations eliminated", this.escapes.eliminated());
+        if (this.subexpressions != null)
+            stats.put("common subexpressions eliminated", this.subexpressions.eliminated());
+        return stats;
+    }
+
+    /**
+     * Level 0 generates each construct's code as it stands; level 1 also runs
+     * Peephole on each method and compiles tail calls as jumps; level 2 (the
+     * default) also inlines small procedures, propagates constants and
+     * copies, and computes repeated int arithmetic only once.
+     */
+    @Override
+    public void setOptimization(int level) {
+        this.optLevel = level;
     }
 
     /**************** IAbsynVisitor implementation **********************/
@@ -264,27 +466,15 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
     @Override
     public void visit(DeclGroupFunction fun_decs) {
         /*
-         * FIRST PASS: Enter the signature of each function in this declaration
+         * FIRST PASS: Make a label for each function in this declaration
          * block.
          */
 
         for (DeclFn dfn : fun_decs.fns) {
-            // A. Check that the result type makes sense
-            Type t_result;
-            if (dfn.resultTy != null) {
-                dfn.resultTy.accept(this);
-                // Give this visitor to the resultTy object, in order to
-                // correctly dispatch the visit method (one of the
-                // visit(Ty*** ) methods)
-                t_result = this.expType;
-
-            } else {
-                // dfn has no declared return type (i.e. a procedure).
-                t_result = VOID.inst;
-            }
-
-            // B. Check the list of formals & build the FunEntry component
-            List<Pair<Symbol, Type>> formals_construction = visitTypeFields(dfn, dfn.params);
+            // A. Find the signature SemantV gave it
+            tigerc.semant.analysis.FunEntry sig = this.res.function(dfn);
+            Type t_result = sig.result;
+            List<Pair<Symbol, Type>> formals_construction = sig.formals;
 
             // C. Make a new FunEntry for this procedure
             FunEntry dfnEntry = new FunEntry(formals_construction, t_result);
@@ -304,20 +494,25 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
             for (Pair<Symbol, Type> fml : formals_construction) {
                 paramsLabel += jvmType(fml.snd);
             }
+
+            // E. The variables it uses from enclosing procedures come after
+            // its formals: a boxed one as its cell, the others by value
+            dfnEntry.setCaptured(this.closures.of(dfn));
+            for (tigerc.semant.analysis.VarEntry x : dfnEntry.getCaptured()) {
+                paramsLabel += (this.closures.boxed(x) ? "[" : "") + jvmType(x.ty);
+            }
             Label fnameLabel = new Label(fname + "(" + paramsLabel + ")" + jvmType(t_result));
             dfnEntry.setLabel(fnameLabel);
 
-            venv.extend(dfn.name, dfnEntry);
+            this.functions.put(sig, dfnEntry);
         } // (FIRST PASS)
 
         /*
          * SECOND PASS: Generate the body of each function in this declaration
          * block. Since a procedure invocation represents another stack frame
          * (and since certain things like the break scope are reset), we do this
-         * with a new code generator. For each of the parameters, we make a new
-         * VarEntry in venv, for the duration of the time we spend checking that
-         * function's body. For each of these, we also allocate another local in
-         * the frame.
+         * with a new code generator. For each of the parameters, we allocate
+         * another local in the frame.
          * 
          * Finally, we're going to generate code to a temporary target, rather
          * than this.code. This allows us to assemble the three parts of the
@@ -326,9 +521,21 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
          * emitted to our target object file at a later time (i.e. in the
          * emitProcedures() call).
          */
+        List<List<DeclFn>> merged = (this.optLevel >= 1 ? tailCallCycles(fun_decs.fns)
+                : java.util.Collections.<List<DeclFn>>emptyList());
+        java.util.Set<DeclFn> inCycle = java.util.Collections.newSetFromMap(new java.util.IdentityHashMap<>());
+        for (List<DeclFn> cycle : merged) {
+            inCycle.addAll(cycle);
+        }
+
         for (DeclFn dfn : fun_decs.fns) {
-            FunEntry fentry = (FunEntry) this.venv.lookup(dfn.name);
-            // Note: this cast is safe, since we have just made FunEntry
+            if (inCycle.contains(dfn) || (this.inliner != null && !this.inliner.called(dfn)))
+                continue;
+            // (nothing calls the method of a procedure that is inlined
+            // wherever it is used)
+
+            FunEntry fentry = this.functions.get(this.res.function(dfn));
+            // Note: this is never null, since we have just made FunEntry
             // bindings for every element in d.fns
 
             // (1) Create a new generator for the body of cur.
@@ -337,49 +544,34 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
             // leverage the checking of correct nesting of break statements.
             // You'll have to think about how. This is a hint here.
 
-            JVMGeneratorV bodyCodeGen;
-            try {
-                // (2) This constructor call will open a new scope, and enter
-                // the formals in
-                // venv. This corresponds to the requirement in the interpreter
-                // that the
-                // present at the point of a function's definition must be saved
-                // with the
-                // function's "value" (closure), in order to implement lexical
-                // scope.
-
-                bodyCodeGen = new JVMGeneratorV(this.classname, this.venv, this.tenv, fentry.formals, this.procs);
-            } catch (ClassNotFoundException e) {
-                e.printStackTrace();
-                throw new Error("INTERNAL BUG");
-            }
-
-            dfn.body.accept(bodyCodeGen);
-
-            // Done with checking the current body. Close this scope.
-            bodyCodeGen.venv.endScope();
+            JVMGeneratorV bodyCodeGen = bodyGenerator();
 
-            // write code for handling the prelude
-            String procDefnCode = ";\n.method public static " + fentry.getLabel().toString() + "\n"; // "prelude"
-            procDefnCode += (".limit locals " + bodyCodeGen.frame.maxLocals() + "\n");// bodyCodeGen.frame.maxLocals()
-                                                                                      // +
-                                                                                      // "\n");
-            procDefnCode += ".limit stack " + bodyCodeGen.maxStack + "\n";
+            // (2) Allocate a local for each of the formals, and each of the
+            // captured variables.
+            IAccess[] args = bodyCodeGen.allocArgs(this.res.params(dfn));
+            bodyCodeGen.allocCaptured(fentry.getCaptured());
 
-            // the body:
-            procDefnCode += bodyCodeGen.code.toString();
+            // (3) The body, in which a call of dfn itself in tail position
+            // is a jump back to the start
+            Label entry = new Label(this.serialNumber, "entry");
+            if (this.optLevel >= 1)
+                bodyCodeGen.tailTargets.put(this.res.function(dfn), new TailTarget(entry, args));
+            bodyCodeGen.code.label(entry);
+            bodyCodeGen.genBody(dfn, args);
 
-            // the postlude (not much to do, in the JVM case)
-            if (bodyCodeGen.expType.coerceTo(INT.inst))
-                procDefnCode += "ireturn\n";
-            else if (bodyCodeGen.expType.coerceTo(VOID.inst))
-                procDefnCode += "return\n";
-            else
-                procDefnCode += "areturn\n";
-            procDefnCode += ".end method ;     < " + fentry.getLabel() + " >";
-
-            this.procs.add(procDefnCode);
+            this.procs.add(methodText(fentry.getLabel().toString(), bodyCodeGen));
         } // (SECOND PASS)
+
+        /*
+         * THIRD PASS: Functions that call each other in tail position, in a
+         * cycle, share a single method, which takes the arguments of all of
+         * them (and an int to say which to start with), so that each of those
+         * calls can be a jump, too. The method of each of these functions
+         * calls that method; nothing else does.
+         */
+        for (List<DeclFn> cycle : merged) {
+            genMergedProcedures(cycle);
+        }
     }
 
     @Override
@@ -387,63 +579,79 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
         assert dts != null;
 
         /*
-         * The body of this visit method is virtually identical to the one in
-         * SemantV, with the exception of no error checking (since it's
-         * unnecessary). Declarations of types occur only in let expressions. A
-         * new scope has already been declared there, and it will end at the end
-         * of the let-body. Hence, we do not open a new scope here.
+         * Nothing to do: SemantV has already worked out the types declared
+         * here, and recorded the type of each expression that uses them.
          */
-
-        // PASS ONE: Add the names to tenv
-        for (DeclTy dt : dts.decls) {
-            tenv.extend(dt.name, new THUNK(dt.name));
-        }
-
-        // PASS TWO: Compute the actual bindings
-        for (DeclTy dt : dts.decls) {
-            dt.ty.accept(this);
-            Type t_binding = this.expType;
-            THUNK namet = (THUNK) tenv.lookup(dt.name);
-            // Safe, since we just put these same symbols in env.
-            namet.bind(t_binding);
-        }
     }
 
     @Override
     public void visit(DeclVar d) {
         /*
          * <i>Effects:</i> a new IAccess is allocated and added to this.frame;
-         * code is emitted for istore/astore instruction; a new binding is added
-         * to this.venv;
+         * code is emitted for istore/astore instruction; the IAccess is
+         * recorded for d's binding in this.variables;
          */
         assert d != null;
 
+        if (this.propagation != null && this.propagation.dead(d))
+            return;
+
+        tigerc.semant.analysis.VarEntry binding = this.res.variable(d);
+        if (this.escapes != null && this.escapes.scalar(binding)) {
+            genScalar(d, binding);
+            return;
+        }
+
         d.init.accept(this);
-        Type t = this.expType;
+        Type t = binding.ty;
 
         IAccess acc = this.frame.allocLocal(t.actual());
 
-        emitLn(this.code, ((t.coerceTo(INT.inst) ? "istore " : "astore ") + acc.offset()));
+        boolean boxed = this.closures.boxed(binding);
+        if (boxed) {
+            newCell(t);
+            this.code.add("astore", acc.offset());
+        } else {
+            this.code.add(store(t), acc.offset());
+        }
 
-        venv.extend(d.name, new VarEntry(t, true, acc));
+        this.variables[binding.slot] = new VarEntry(t, boxed, acc);
     }
 
     @Override
     public void visit(ExpArray e) {
         // PRE: Stack is [STK]
-        // POST: Stack is [arr_ref::STK ] && expType is arrayResultType
+        // POST: Stack is [arr_ref::STK ]
         assert e != null;
 
         // 1. push array size onto the stack
         e.size.accept(this);
-        assert this.expType.coerceTo(INT.inst) : "e.size is not an int";
-        emitLn(this.code, "dup");
+        assert this.res.typeOf(e.size).coerceTo(INT.inst) : "e.size is not an int";
+
+        Type eltType = ((ARRAY) this.res.typeOf(e).actual()).element.actual();
+        if (this.optLevel >= 1) {
+            // The JVM has set every element to 0 or null already; anything
+            // else is up to TigerRuntime.fill
+            boolean ints = eltType.coerceTo(INT.inst);
+            if (ints)
+                this.code.add("newarray", "int");
+            else
+                this.code.add("anewarray", jvmClass(eltType));
+
+            Integer k = constant(e.init);
+            if (ints ? (k == null || k != 0) : !(unwrap(e.init) instanceof ExpNil)) {
+                this.code.add("dup");
+                e.init.accept(this);
+                this.code.add("invokestatic",
+                        RUNTIME + (ints ? "/fill([II)V" : "/fill([Ljava/lang/Object;Ljava/lang/Object;)V"));
+            }
+            return;
+        }
+
+        this.code.add("dup");
         // Stack is: [arr_length::arr_length::STK]
 
-        ARRAY arrayRefType = (ARRAY) tenv.lookup(e.typ).actual(); // This will
-                                                                  // be expType
-                                                                  // when we're
-                                                                  // done
+        ARRAY arrayRefType = (ARRAY) this.res.typeOf(e).actual();
         Type arrayEltType = arrayRefType.element.actual();
 
         /*
@@ -462,11 +670,12 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
         char jvmArrRefType = 0;
 
         if (arrayEltType.coerceTo(INT.inst)) {
-            emitLn(this.code, "newarray int");
+            this.code.add("newarray", "int");
             jvmArrRefType = 'i';
         } else if (arrayEltType.coerceTo(STRING.inst) || arrayEltType.actual() instanceof RECORD
-                || arrayEltType.actual() instanceof ARRAY) {
-            emitLn(this.code, "anewarray " + jvmType(arrayRefType));
+                || arrayEltType.actual() instanceof ARRAY || arrayEltType.actual() instanceof TABLE
+                || arrayEltType.actual() instanceof ITABLE) {
+            this.code.add("anewarray", jvmClass(arrayEltType));
             /*
              * TODO For multidimensional arrays, using multianewarray would
              * produce faster code. We could even calculate every dimension up
@@ -481,7 +690,7 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
         IAccess arrRefTmp = this.frame.allocLocal(arrayEltType);
         // maxLocals += 1
 
-        emitLn(this.code, "astore " + arrRefTmp.offset(), "store array reference");
+        this.code.add("astore", arrRefTmp.offset(), "store array reference");
         // Stack: [ arr_length::STK ]
 
         // 3. Evaluate initial value expression
@@ -512,14 +721,14 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
         // maxLocals += 1;
         e.init.accept(this);
         // Stack: [ v_init::arr_length::STK ]
-        emitLn(this.code, init_jvmT + "store " + initTmp.offset(), "initial value for array cells");
+        this.code.add(init_jvmT + "store", initTmp.offset(), "initial value for array cells");
 
         // 4. Make another integer temporary, i, initialized to 0
         IAccess idx = this.frame.allocLocal(INT.inst);
         // maxLocals += 1;
 
-        emitLn(this.code, "iconst_0");
-        emitLn(this.code, "istore " + idx.offset(), "index variable, for initialization");
+        this.code.add("iconst_0");
+        this.code.add("istore", idx.offset(), "index variable, for initialization");
         // (INV) Stack is [ arr_length::STK ] -- beginning of loop
 
         // 5. Walk through each cell, i, calculate the value of e.init,
@@ -527,31 +736,31 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
         Label initLoopBody = new Label(this.serialNumber, "L");
         Label initLoopTest = new Label(this.serialNumber, "Test");
 
-        emitLn(this.code, "goto " + initLoopTest);
-        emitLn(this.code, initLoopBody + ":");
+        this.code.jump("goto", initLoopTest);
+        this.code.label(initLoopBody);
         // (INV) Stack is [ arr_length::STK ]
-        emitLn(this.code, "aload " + arrRefTmp.offset());
-        emitLn(this.code, "iload " + idx.offset());
+        this.code.add("aload", arrRefTmp.offset());
+        this.code.add("iload", idx.offset());
         // Stack is [ i::arr_address::arr_length::STK ]
 
-        emitLn(this.code, init_jvmT + "load " + initTmp.offset());
+        this.code.add(init_jvmT + "load", initTmp.offset());
         // Stack is [ v_init::i::arr_address::arr_length::STK ]
 
-        emitLn(this.code, jvmArrRefType + "astore");
+        this.code.add(jvmArrRefType + "astore");
         // (INV) Stack is [ arr_length::STK ]
-        emitLn(this.code, "iinc " + idx.offset() + " 1", "end of init loop body"); // i++;
+        this.code.add("iinc", idx.offset() + " 1", "end of init loop body"); // i++;
         // (INV) Stack is [ arr_length::STK ]
 
-        emitLn(this.code, initLoopTest + ":");
+        this.code.label(initLoopTest);
         // (INV) Stack is [ arr_length::STK ]
 
-        emitLn(this.code, "dup", "init loop entry");
-        emitLn(this.code, "iload " + idx.offset());
+        this.code.add("dup", null, "init loop entry");
+        this.code.add("iload", idx.offset());
         // Stack: [ i::arr_length::arr_length::STK]
 
-        emitLn(this.code, "if_icmpgt " + initLoopBody);
+        this.code.jump("if_icmpgt", initLoopBody);
         // (INV) Stack is [ arr_length::STK ] -- end of iteration
-        emitLn(this.code, "pop");
+        this.code.add("pop");
         // Stack: (after loop cleanup): [ STK ]
 
         // 6. All done. Time for frame clean-up:
@@ -561,9 +770,8 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
         this.frame.popLocal(); // deallocate initTmp
         assert this.frame.frameEnd() == frameSz;
 
-        emitLn(this.code, "aload " + arrRefTmp.offset(), "reference to created array");
+        this.code.add("aload", arrRefTmp.offset(), "reference to created array");
         // Stack (done): [ arr_address::STK ]
-        this.expType = arrayRefType;
     }
 
     @Override
@@ -579,18 +787,30 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
          * hence we generate its code first.
          * 
          * In the case of either VarField, however, we must first calculate the
-         * address of the record itself, then the value of the field where we're
-         * storing the RHS, then generate the call to the record's (i.e.
-         * java.util.Hashtable's) put() method. This means that the *LHS* must
-         * be generated first. A similar constraint arises with VarSubscript.
+         * address of the record itself, then the value we're storing in the
+         * field, then generate the putfield instruction. This means that the
+         * *LHS* must be generated first. A similar constraint arises with VarSubscript.
          * First, we must put the address of the array on top of the stack, then
          * the value of the index, and finally, the value to be written. Again,
          * this requires that the LHS be executed first.
          */
 
-        if (e.lhs instanceof VarSimple) {
+        IAccess builder = (e.lhs instanceof VarSimple ? this.builders.get(this.res.binding((VarSimple) e.lhs)) : null);
+        List<Exp> appended = (builder != null ? concatenation(e.rhs) : null);
+        if (appended != null && appended.get(0) instanceof ExpVar && ((ExpVar) appended.get(0)).var instanceof VarSimple
+                && this.res.binding((VarSimple) ((ExpVar) appended.get(0)).var) == this.res.binding((VarSimple) e.lhs)) {
+            // A string kept in a StringBuilder while the loop runs (which
+            // only ever appends to it)
+            this.code.add("aload", builder.offset());
+            for (Exp part : appended.subList(1, appended.size())) {
+                part.accept(this);
+                this.code.add("invokevirtual", BUILDER + "/append(Ljava/lang/String;)L" + BUILDER + ";");
+            }
+            this.code.add("pop");
+        } else if (e.lhs instanceof VarSimple || scalarField(e.lhs) != null) {
             // For simple identifiers, we don't need to put the LHS value on the
             // stack. It suffices to compute the RHS, then store the value.
+            // (Likewise for a field kept in a local of its own.)
 
             e.rhs.accept(this);
 
@@ -613,49 +833,88 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
             // STACK: [ rhs_val, lhs_addr, ... ]
 
             if (e.lhs instanceof VarField) {
-                emitLn(this.code,
-                        "invokevirtual java/util/Hashtable/put(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;");
-                emitLn(this.code, "pop");
-                // We don't care about the return value of put(), so throw it
-                // away
+                this.code.add("putfield", fieldRef((VarField) e.lhs));
 
             } else { // array store
-                String tid = (this.expType.coerceTo(INT.inst) ? "i" : "a");
-                emitLn(this.code, tid + "astore");
+                String tid = (this.res.typeOf(e.rhs).coerceTo(INT.inst) ? "i" : "a");
+                this.code.add(tid + "astore");
             }
             // STACK: [ ... ]
         }
-        this.expType = VOID.inst;
     }
 
     @Override
     public void visit(ExpBreak e) {
         assert e != null && this.enclosingLoop != null && !this.enclosingLoop.empty();
 
-        emitLn(this.code, "goto " + this.enclosingLoop.peek());
-        this.expType = VOID.inst;
+        this.code.jump("goto", this.enclosingLoop.peek());
     }
 
     @Override
     public void visit(ExpCall e) {
         assert e != null;
 
-        FunEntry f = (FunEntry) venv.lookup(e.func);
+        if (this.precomputed.containsKey(e)) {
+            this.code.add("iload", this.precomputed.get(e).offset());
+            return;
+        }
+
+        List<Exp> parts = (this.optLevel >= 2 ? concatenation(e) : null);
+        if (parts != null && parts.size() > 2) {
+            // One StringBuilder, rather than a new string for each concat
+            newBuilder();
+            for (Exp part : parts) {
+                part.accept(this);
+                this.code.add("invokevirtual", BUILDER + "/append(Ljava/lang/String;)L" + BUILDER + ";");
+            }
+            this.code.add("invokevirtual", BUILDER + "/toString()Ljava/lang/String;");
+            return;
+        }
+
+        FunEntry f = this.functions.get(this.res.target(e));
+        if (f == null) {
+            // Only the library's functions are not declared in the program
+            f = (FunEntry) extern_venv.lookup(e.func);
+        }
 
         // evaluation and passing of arguments
         for (Exp arg : e.args) {
             arg.accept(this);
         }
 
+        DeclFn inline = (this.inliner == null ? null : this.inliner.inlined(this.res.target(e)));
+        if (inline != null) {
+            genInline(inline);
+            return;
+        }
+
+        if (this.tailCalls.contains(e)) {
+            // The callee's code is in this method, and this call is the last
+            // thing we do, so its frame can be ours: its arguments replace
+            // those we were called with, and we start again (with the same
+            // captured variables, which never change)
+            TailTarget callee = this.tailTargets.get(this.res.target(e));
+            for (int i = e.args.size() - 1; i >= 0; i--) {
+                this.code.add(store(f.formals.get(i).snd), callee.args[i].offset());
+            }
+            this.code.jump("goto", callee.entry);
+            return;
+        }
+
+        // and of the variables it captures: the cell of a boxed one, and the
+        // value of any other
+        for (tigerc.semant.analysis.VarEntry x : f.getCaptured()) {
+            VarEntry v = this.variables[x.slot];
+            this.code.add((v.escapes ? "aload" : load(v.ty)), v.access.offset());
+        }
+
         // control transfer to procedure entry point
         if (f.isExternal()) {
             Class<?> extern = f.getEnclosingClass();
-            emitLn(this.code, "invokestatic " + extern.getCanonicalName().replace(".", "/") + "/" + f.getLabel());
+            this.code.add("invokestatic", extern.getCanonicalName().replace(".", "/") + "/" + f.getLabel());
         } else {
-            emitLn(this.code, "invokestatic " + classname + "/" + f.getLabel());
+            this.code.add("invokestatic", classname + "/" + f.getLabel());
         }
-
-        this.expType = f.result;
         // INVARIANT: Stack is [result::STK]
     }
 
@@ -676,49 +935,134 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
         IAccess idx = this.frame.allocLocal(INT.inst); // for e.var
         // this.localsCt += 1;
         // this.maxLocals = (maxLocals < localsCt ? localsCt : maxLocals);
+        int frameSz = this.frame.frameEnd();
+
+        Loop loop = (this.optLevel >= 2 ? new Loop(e, this.res, this.closures, this::pure, this::concatenation)
+                : null);
+        if (loop != null && unroll(e, loop, idx)) {
+            this.frame.popLocal(); // idx
+            return;
+        }
+        Idiom idiom = (loop != null ? Idiom.of(e, loop, this.closures, this.res) : null);
+        if (idiom != null) {
+            genIdiom(e, idiom, idx);
+            this.frame.popLocal(); // idx
+            return;
+        }
 
         e.lo.accept(this);
         // Stack: [ vlo, ... ]
 
-        emitLn(this.code, "istore " + idx.offset());
+        this.code.add("istore", idx.offset());
         // Stack: [ ... ]
 
         e.hi.accept(this);
         // Stack: [ vhi, ... ]
         // Since this value won't change, we can just keep it on the stack.
 
-        this.venv.beginScope();
-        this.venv.extend(e.var, new VarEntry(INT.inst, false, idx));
+        this.variables[this.res.variable(e).slot] = new VarEntry(INT.inst, false, idx);
+
+        // What the loop needs worked out before it starts: its invariant
+        // expressions, and the first value of each product of idx (with
+        // what it goes up by, unless that is a constant)
+        List<Exp> hoisted = new java.util.ArrayList<>();
+        List<IAccess[]> reductions = new java.util.ArrayList<>();
+        List<Integer> steps = new java.util.ArrayList<>();
+        List<tigerc.semant.analysis.VarEntry> accumulators = java.util.Collections.emptyList();
+        if (loop != null) {
+            hoisted = hoist(loop);
+            accumulators = openBuilders(loop);
+            java.util.Map<Object, IAccess> sameFactor = new java.util.HashMap<>();
+            for (ExpOp p : loop.products()) {
+                Exp factor = loop.factor(p);
+                Object key = factorKey(factor);
+                if (key != null && sameFactor.containsKey(key)) {
+                    this.precomputed.put(p, sameFactor.get(key));
+                    hoisted.add(p);
+                    continue;
+                }
+
+                Integer k = constant(factor);
+                IAccess step = null;
+                if (k == null) {
+                    factor.accept(this);
+                    step = this.frame.allocLocal(INT.inst);
+                    this.code.add("istore", step.offset());
+                }
+                IAccess product = this.frame.allocLocal(INT.inst);
+                this.code.add("iload", idx.offset());
+                if (k != null)
+                    pushInt(k);
+                else
+                    this.code.add("iload", step.offset());
+                this.code.add("imul");
+                this.code.add("istore", product.offset());
+
+                this.precomputed.put(p, product);
+                hoisted.add(p);
+                reductions.add(new IAccess[] { product, step });
+                steps.add(k);
+                if (key != null)
+                    sameFactor.put(key, product);
+            }
+        }
 
         // Now for the actual loop:
         Label test = new Label(this.serialNumber, "test");
         Label body = new Label(this.serialNumber, "body");
+        Label endFor = new Label(this.serialNumber, "endfor");
+        this.enclosingLoop.push(endFor);
+        // record loop nesting, for potential break statements
 
         // Stack: [ vhi, ... ]
-        emitLn(this.code, "goto " + test);
+        this.code.jump("goto", test);
 
         // Stack (invariant): [ vhi, ... ]
-        emitLn(this.code, body + ":");
+        this.code.label(body);
         e.body.accept(this);
-        assert this.expType.coerceTo(VOID.inst);
+        this.enclosingLoop.pop();
+        assert this.res.typeOf(e.body).coerceTo(VOID.inst);
 
         // Stack (invariant): [ vhi, ... ] (since body produces no value)
-        emitLn(this.code, "iinc " + idx.offset() + " 1");
+        for (int i = 0; i < reductions.size(); i++) {
+            IAccess product = reductions.get(i)[0], step = reductions.get(i)[1];
+            Integer k = steps.get(i);
+            if (k != null && -128 <= k && k <= 127) {
+                this.code.add("iinc", product.offset() + " " + k);
+            } else {
+                this.code.add("iload", product.offset());
+                if (k != null)
+                    pushInt(k);
+                else
+                    this.code.add("iload", step.offset());
+                this.code.add("iadd");
+                this.code.add("istore", product.offset());
+            }
+        }
+        this.code.add("iinc", idx.offset() + " 1");
 
-        emitLn(this.code, test + ":");
+        this.code.label(test);
         // Stack: [ vhi, ... ]
-        emitLn(this.code, "dup");
-        emitLn(this.code, "iload " + idx.offset());
+        this.code.add("dup");
+        this.code.add("iload", idx.offset());
         // Stack: [ idx, vhi, vhi, ... ]
-        emitLn(this.code, "if_icmpge " + body);
+        this.code.jump("if_icmpge", body);
         // Stack (invariant): [ vhi, ... ]
 
-        emitLn(this.code, "pop");
+        this.code.label(endFor);
+        // (a break lands here, where vhi is still on the stack)
+        this.code.add("pop");
         // remove the remaining vhi value from the stack, which gives us
         // Stack: [ ... ] (since body produces no value)
+        closeBuilders(accumulators);
 
-        // remove the loop counter variable
-        this.venv.endScope();
+        // remove the precomputed values, and the loop counter variable
+        for (Exp x : hoisted) {
+            this.precomputed.remove(x);
+        }
+        while (this.frame.frameEnd() > frameSz) {
+            this.frame.popLocal();
+        }
         this.frame.popLocal(); // idx
         // this.localsCt -= 1;
     }
@@ -729,12 +1073,9 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
 
         Label skip = new Label(this.serialNumber, "endif");
 
-        e.test.accept(this);
-        emitLn(this.code, "ifeq " + skip);
+        genCond(e.test, false, skip);
         e.thenclause.accept(this);
-        emitLn(this.code, skip + ":");
-
-        // Assuming a correct SemantV, expType will be VOID
+        this.code.label(skip);
     }
 
     @Override
@@ -744,45 +1085,28 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
         Label falseBranch = new Label(this.serialNumber, "false");
         Label joinPoint = new Label(this.serialNumber, "endif");
 
-        e.test.accept(this);
-        emitLn(this.code, "ifeq " + falseBranch);
+        genCond(e.test, false, falseBranch);
 
         e.thenclause.accept(this);
-        emitLn(this.code, "goto " + joinPoint);
+        this.code.jump("goto", joinPoint);
 
-        emitLn(this.code, falseBranch + ":");
+        this.code.label(falseBranch);
         e.elseclause.accept(this);
 
-        emitLn(this.code, joinPoint + ":");
-
-        // Assuming a correct SemantV, expType will always be the type of the
-        // then/else clauses
+        this.code.label(joinPoint);
     }
 
     @Override
     public void visit(ExpInt e) {
         assert e != null;
 
-        if (e.value == -1)
-            emitLn(this.code, "iconst_m1");
-        else if (0 <= e.value && e.value <= 5)
-            emitLn(this.code, "iconst_" + e.value);
-        else if (-128 <= e.value && e.value <= 127)
-            emitLn(this.code, "bipush " + e.value);
-        else if (Short.MIN_VALUE <= e.value && e.value <= Short.MAX_VALUE)
-            emitLn(this.code, "sipush " + e.value);
-        else
-            emitLn(this.code, "ldc " + e.value);
-
-        this.expType = INT.inst;
+        pushInt(e.value);
     }
 
     @Override
     public void visit(ExpLet e) {
         assert e != null;
 
-        this.venv.beginScope();
-        this.tenv.beginScope();
         int savedCount = this.frame.frameEnd();
 
         for (Decl d : e.decls) {
@@ -798,96 +1122,94 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
         }
 
         // this.localsCt = savedCount;
-
-        this.venv.endScope();
-        this.tenv.endScope();
-
     }
 
     @Override
     public void visit(ExpNil e) {
-        emitLn(this.code, "aconst_null");
-        this.expType = NIL.inst;
+        this.code.add("aconst_null");
     }
 
     @Override
     public void visit(ExpOp e) {
         assert e != null;
 
+        if (this.precomputed.containsKey(e)) {
+            this.code.add("iload", this.precomputed.get(e).offset());
+            return;
+        }
+
+        // (a local freed since, as at the end of a let, is no use)
+        IAccess computed = this.common.get(e);
+        if (computed != null && this.frame.holds(computed)) {
+            this.code.add("iload", computed.offset());
+            return;
+        }
+
+        Integer c = constant(e);
+        if (c != null) {
+            pushInt(c);
+            return;
+        }
+
         switch (e.oper) {
         case PLUS:
         case MIN:
         case MUL:
         case DIV: {
             genopArith(e);
-            break;
-        }
-        case AND:
-        case OR: {
-            genopLogical(e);
+            List<Exp> repeats = (this.subexpressions != null ? this.subexpressions.repeats(e)
+                    : java.util.Collections.<Exp>emptyList());
+            if (!repeats.isEmpty()) {
+                IAccess acc = this.frame.allocLocal(INT.inst);
+                this.code.add("dup");
+                this.code.add("istore", acc.offset());
+                for (Exp r : repeats)
+                    this.common.put(r, acc);
+            }
             break;
         }
         default:
-            genopCompare(e);
+            // AND, OR, and the comparisons
+            genopCondition(e);
             break;
         }
-
-        this.expType = INT.inst;
     }
 
     @Override
     public void visit(ExpRecord e) {
         /*
-         * There are a few choices for implementing record types, but perhaps
-         * the most straightforward in the JVM is to use java.util.Hashtable.
-         * This offers the advantage of great simplicity, since reading and
-         * writing from fields becomes a matter of using the hashtable's get()
-         * and put() methods. The disadvantages are the impossibility of
-         * checking at run time whether the field referenced is valid for this
-         * record type, the commitment to implementing records on the heap, and
-         * the requirement that all stored field values be of reference type
-         * (with the associated performance hit).
+         * Each record type is a class of its own (see classes()), with a field
+         * for each of the record's. Reading and writing a field is then a
+         * getfield or putfield instruction, and an int field holds an int, not
+         * an Integer.
          */
         assert e != null;
 
-        emitLn(this.code, "new java/util/Hashtable");
-        emitLn(this.code, "dup");
-        emitLn(this.code, "invokespecial java/util/Hashtable/<init>()V");
-
-        tigerc.semant.analysis.types.RECORD r = (RECORD) tenv.lookup(e.type);
+        RECORD r = (RECORD) this.res.typeOf(e).actual();
         assert r.fields.size() == e.fields.size();
+        String cls = recordClass(r);
+
+        this.code.add("new", cls);
+        this.code.add("dup");
+        this.code.add("invokespecial", cls + "/<init>()V");
 
-        // INV:TOS is reference to the Hashtable we're setting up
+        // INV:TOS is reference to the record we're setting up
         for (int i = 0; i < e.fields.size(); i++) {
-            Pair<Symbol, Type> fld = r.fields.get(i);
             Pair<Symbol, Exp> init = e.fields.get(i);
+            assert r.fields.get(i).fst == init.fst;
 
-            // 0. duplicate hashtable reference (since we'll pop the currently
-            // sole copy with put)
-            emitLn(this.code, "dup");
-
-            // 1. code for loading key value: always a String ldc "val"
-            assert fld.fst == init.fst;
-            emitLn(this.code, "ldc \"" + fld.fst + "\"");
-
-            // 2.code for loading associated value: any type, and we may need to
-            // convert (if it's an INT)
+            // 0. duplicate the record reference (since putfield will pop the
+            // currently sole copy)
+            this.code.add("dup");
 
+            // 1. code for the field's value
             init.snd.accept(this);
-            assert this.expType.coerceTo(fld.snd);
-
-            if (this.expType.coerceTo(INT.inst)) {
-                emitLn(this.code, "invokestatic java/lang/Integer/valueOf(I)Ljava/lang/Integer; ");
-            }
-
-            // 3. code to store field & its value
-            emitLn(this.code, "invokevirtual " + "java/util/Hashtable/put(Ljava/lang/Object;"
-                    + "Ljava/lang/Object;)Ljava/lang/Object;");
+            assert this.res.typeOf(init.snd).coerceTo(r.fields.get(i).snd);
 
-            // 4. remove reference returned by put()
-            emitLn(this.code, "pop");
+            // 2. code to store it
+            this.code.add("putfield", cls + "/" + init.fst + " " + jvmType(r.fields.get(i).snd));
 
-            // INV:TOS is reference to the Hashtable we're setting up
+            // INV:TOS is reference to the record we're setting up
         }
     }
 
@@ -895,24 +1217,32 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
     public void visit(ExpSeq es) {
         assert es != null;
 
-        for (Exp e : es.list) {
+        for (int i = 0; i < es.list.size(); i++) {
+            Exp e = es.list.get(i);
             e.accept(this);
+            // The value of anything but the last is thrown away
+            if (i < es.list.size() - 1 && !this.res.typeOf(e).coerceTo(VOID.inst))
+                this.code.add("pop");
         }
-        // expTy will be the type of the final Exp in e.list
     }
 
     @Override
     public void visit(ExpString e) {
         assert e != null;
 
-        emitLn(this.code, "ldc \"" + e.value + "\"");
-        this.expType = STRING.inst;
+        this.code.add("ldc", "\"" + e.value + "\"");
     }
 
     @Override
     public void visit(ExpVar e) {
         assert e != null;
 
+        Integer c = constant(e);
+        if (c != null) {
+            pushInt(c);
+            return;
+        }
+
         e.var.accept(this);
     }
 
@@ -923,66 +1253,69 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
         Label test = new Label(this.serialNumber, "test");
         Label loop = new Label(this.serialNumber, "loop");
         Label endWhile = new Label(this.serialNumber, "endwhile");
+
+        int frameSz = this.frame.frameEnd();
+        List<Exp> hoisted = java.util.Collections.emptyList();
+        List<tigerc.semant.analysis.VarEntry> accumulators = java.util.Collections.emptyList();
+        if (this.optLevel >= 2) {
+            Loop info = new Loop(e, this.res, this.closures, this::pure, this::concatenation);
+            hoisted = hoist(info);
+            accumulators = openBuilders(info);
+        }
+
         this.enclosingLoop.push(endWhile);
         // record loop nesting, for potential break statements
 
-        emitLn(this.code, "goto " + test);
-        emitLn(this.code, loop + ":");
+        this.code.jump("goto", test);
+        this.code.label(loop);
 
         e.body.accept(this);
 
-        emitLn(this.code, test + ":");
-        e.test.accept(this);
-        emitLn(this.code, "ifne " + loop);
+        this.code.label(test);
+        genCond(e.test, true, loop);
 
-        emitLn(this.code, endWhile + ":");
+        this.code.label(endWhile);
+        closeBuilders(accumulators);
 
         this.enclosingLoop.pop();
         // This nesting must exclude the test expression,
         // which may need to use the exit label of an enclosing loop
 
-        this.expType = VOID.inst;
-        // necessary, since we generated the test code last
+        for (Exp x : hoisted) {
+            this.precomputed.remove(x);
+        }
+        while (this.frame.frameEnd() > frameSz) {
+            this.frame.popLocal();
+        }
     }
 
     /**
      * The visit(Ty*) methods are encountered while processing the RHS of a type
-     * declaration. The resulting "return value" (assignment to this.ty) will be
-     * the tenv binding for the identifier on the LHS of this declaration.
-     * 
-     * NOTE: Except for the lack of error checking, the bodies are identical to
-     * those in SemantV.
+     * declaration, which SemantV has already done (see visit(DeclGroupType)),
+     * so they are never called.
      */
     public void visit(TyArray ta) {
-        assert ta != null;
-
-        Type t = tenv.lookup(ta.typ);
-        this.expType = new ARRAY(t);
-
     }
 
     @Override
     public void visit(TyName tn) {
-        assert tn != null;
-
-        Type t = tenv.lookup(tn.name);
-        this.expType = t;
-
     }
 
     @Override
     public void visit(TyRecord tr) {
-        assert tr != null;
-
-        List<Pair<Symbol, Type>> field_construction = visitTypeFields(tr, tr.fields);
-
-        this.expType = new RECORD(field_construction);
     }
 
     @Override
     public void visit(VarField v) {
         assert v != null;
 
+        IAccess local = scalarField(v);
+        if (local != null) {
+            Type t = this.res.typeOf(v);
+            this.code.add((this.rvalueMode ? load(t) : store(t)), local.offset());
+            return;
+        }
+
         // STACK: [ S ]
         // 0. Load the record value pointer:
 
@@ -993,41 +1326,20 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
 
         // STACK: [ record_addr, S ]
 
-        // 1. compute the key:
-        emitLn(this.code, "ldc " + v.field.toString());
-
-        // STACK: [ key, record_addr, S ]
-
-        // 2. Set the type to be the one associated with v.field. Note that
-        // this.expType is currently the type associated with v.var, i.e.
-        // a RECORD. Hence, the resulting value of this.expType should be
-        // the result of looking up in this record the associated Type for
-        // v.field
-
-        this.expType = lookup(((RECORD) this.expType.actual()).fields, v.field).actual();
-        assert this.expType != null;
-
-        // 3a. If this is part of an r-value, invoke the associated get()
+        // 1a. If this is part of an r-value, read the field
         if (this.rvalueMode) {
 
-            emitLn(this.code, "invokevirtual java/util/Hashtable/get(Ljava/lang/Object;)Ljava/lang/Object;");
-
-            // Fine point: Hashtables only store object references as values, so
-            // if the type of this field is INT, we'll need to convert it to its
-            // primitive equivalent:
-            if (this.expType.coerceTo(tigerc.semant.analysis.types.INT.inst)) {
-                emitLn(this.code, "invokestatic java/lang/Integer/intValue()I");
-            }
+            this.code.add("getfield", fieldRef(v));
 
-            // STACK: [ key_binding, S ]
+            // STACK: [ field_value, S ]
         } else {
 
-            // 3b. On the other hand, a "put" corresponds to the LHS of an
+            // 1b. On the other hand, a putfield corresponds to the LHS of an
             // ExpAssign. We need the RHS for that, we'll defer it to the rest
             // of the visit(ExpAssign) call in which this visit(VarField) method
             // must have been nested.
 
-            // STACK: [ key, record_addr, S ]
+            // STACK: [ record_addr, S ]
         }
     }
 
@@ -1035,16 +1347,27 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
     public void visit(VarSimple x) {
         assert x != null;
 
-        VarEntry v = (VarEntry) venv.lookup(x.name);
-        String loadstore = (this.rvalueMode ? "load" : "store");
-
-        if (v.ty.coerceTo(INT.inst)) {
-            emitLn(this.code, "i" + loadstore + " " + v.access.offset());
-        } else { // strings, arrays, and records are all reference types
-            emitLn(this.code, "a" + loadstore + " " + v.access.offset());
+        tigerc.semant.analysis.VarEntry binding = this.res.binding(x);
+        if (this.propagation != null && this.propagation.copyOf(binding) != null)
+            binding = this.propagation.copyOf(binding);
+        // (this is never an assignment)
+        VarEntry v = this.variables[binding.slot];
+
+        if (!v.escapes) {
+            this.code.add((this.rvalueMode ? load(v.ty) : store(v.ty)), v.access.offset());
+        } else if (this.rvalueMode) {
+            // the value in the cell
+            this.code.add("aload", v.access.offset());
+            this.code.add("iconst_0");
+            this.code.add(load(v.ty).charAt(0) + "aload");
+        } else {
+            // Stack: [ value, ... ] ==> [ value, 0, cell, ... ]
+            this.code.add("aload", v.access.offset());
+            this.code.add("swap");
+            this.code.add("iconst_0");
+            this.code.add("swap");
+            this.code.add(store(v.ty).charAt(0) + "astore");
         }
-
-        this.expType = v.ty.actual();
     }
 
     @Override
@@ -1068,11 +1391,8 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
 
         // 0b. Get the array part:
         v.var.accept(this);
-        // System.out.println("ExpArray: found v.var type " + expType);
-        assert (this.expType instanceof ARRAY);
-        Type te = ((ARRAY) this.expType).element.actual();
-
-        this.rvalueMode = savedMode;
+        assert (this.res.typeOf(v.var).actual() instanceof ARRAY);
+        Type te = this.res.typeOf(v).actual();
 
         // Stack: [ arr_addr, ... ]
 
@@ -1081,29 +1401,27 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
 
         if (te instanceof INT) {
             jvmArrType = 'i';
-        } else if (te instanceof STRING || te instanceof RECORD || te instanceof ARRAY) {
+        } else if (te instanceof STRING || te instanceof RECORD || te instanceof ARRAY || te instanceof TABLE
+                || te instanceof ITABLE) {
             jvmArrType = 'a';
         } else {
             throw new Error("visit(ExpArray): internal bug");
         }
 
-        // 1. compute the index:
+        // 1. compute the index (which is an r-value, even if v is not):
 
         v.index.accept(this);
+        this.rvalueMode = savedMode;
         // Stack: [ idx, arr_addr, ... ]
 
         // 2a. If this is part of an r-value, invoke the associated get()
         if (this.rvalueMode) {
-            emitLn(this.code, jvmArrType + "aload");
+            this.code.add(jvmArrType + "aload");
         }
         // 2b. On the other hand, a "*astore" corresponds to the LHS of an
         // ExpAssign. We need the RHS for that, so we'll defer it to the rest
         // of the visit(ExpAssign) call in which this visit(VarSubscript) method
         // must be nested.
-
-        this.expType = te;
-        // If subscript expression is part of an assignment, the value of
-        // this.expType communicates what we know about the value of the RHS.
     } // visit(VarSubscript)
 
     
@@ -1116,12 +1434,636 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
         emitComment(out, comment);
     }
 
-    private void printMainResult() {
+    private JVMGeneratorV bodyGenerator() {
+        try {
+            return new JVMGeneratorV(this.classname, this);
+        } catch (ClassNotFoundException e) {
+            e.printStackTrace();
+            throw new Error("INTERNAL BUG");
+        }
+    }
+
+    /*
+     * Allocates a local for each of params, in order, and returns them. As
+     * the first locals of a method, these hold its arguments.
+     */
+    private IAccess[] allocArgs(List<tigerc.semant.analysis.VarEntry> params) {
+        IAccess[] args = new IAccess[params.size()];
+        for (int i = 0; i < params.size(); i++) {
+            args[i] = this.frame.allocLocal(params.get(i).ty);
+        }
+        return args;
+    }
+
+    /*
+     * Allocates a local for each of the variables of enclosing procedures
+     * passed after the arguments
+     */
+    private void allocCaptured(List<tigerc.semant.analysis.VarEntry> captured) {
+        for (tigerc.semant.analysis.VarEntry x : captured) {
+            // (for a boxed variable, this is the reference to its cell)
+            this.variables[x.slot] = new VarEntry(x.ty, this.closures.boxed(x), this.frame.allocLocal(x.ty));
+        }
+    }
+
+    /*
+     * The code of dfn, whose arguments are in args: binds its parameters,
+     * then runs its body and returns its value
+     */
+    private void genBody(DeclFn dfn, IAccess[] args) {
+        List<tigerc.semant.analysis.VarEntry> params = this.res.params(dfn);
+        int frameSz = this.frame.frameEnd();
+
+        // A parameter that a nested procedure captures and someone assigns
+        // is moved into a cell of its own
+        for (int i = 0; i < params.size(); i++) {
+            tigerc.semant.analysis.VarEntry param = params.get(i);
+            if (this.closures.boxed(param)) {
+                this.code.add(load(param.ty), args[i].offset());
+                IAccess cell = this.frame.allocLocal(param.ty);
+                newCell(param.ty);
+                this.code.add("astore", cell.offset());
+                this.variables[param.slot] = new VarEntry(param.ty, true, cell);
+            } else {
+                this.variables[param.slot] = new VarEntry(param.ty, false, args[i]);
+            }
+        }
+
+        this.tailCalls.clear();
+        findTailCalls(dfn.body);
+        dfn.body.accept(this);
+
+        // the postlude (not much to do, in the JVM case)
+        this.code.add(returnOp(this.res.typeOf(dfn.body)));
+
+        while (this.frame.frameEnd() > frameSz) {
+            this.frame.popLocal();
+        }
+    }
+
+    /*
+     * The code of a call of dfn, with its arguments on the stack: they are
+     * stored in new locals of this method, for its parameters, and its body
+     * follows, leaving its value (if any) on the stack, as a call would.
+     * Inliner guarantees that dfn has no closure and calls nothing, so this
+     * is all there is to it.
+     */
+    private void genInline(DeclFn dfn) {
+        List<tigerc.semant.analysis.VarEntry> params = this.res.params(dfn);
+        int frameSz = this.frame.frameEnd();
+
+        IAccess[] args = allocArgs(params);
+        for (int i = params.size() - 1; i >= 0; i--) {
+            this.code.add(store(params.get(i).ty), args[i].offset());
+            this.variables[params.get(i).slot] = new VarEntry(params.get(i).ty, false, args[i]);
+        }
+
+        dfn.body.accept(this);
+
+        while (this.frame.frameEnd() > frameSz) {
+            this.frame.popLocal();
+        }
+    }
+
+    /*
+     * The code of d, which declares a record variable that EscapeAnalysis has
+     * found to be scalar: each field's first value goes straight into a local
+     * of its own. If the record is made by a call, the body of the function
+     * called is compiled here, as in genInline(), but for its fields only.
+     */
+    private void genScalar(DeclVar d, tigerc.semant.analysis.VarEntry binding) {
+        DeclFn helper = this.escapes.helper(d);
+        int frameSz = this.frame.frameEnd();
+
+        if (helper != null) {
+            List<Exp> actuals = ((ExpCall) unwrap(d.init)).args;
+            for (Exp arg : actuals)
+                arg.accept(this);
+
+            List<tigerc.semant.analysis.VarEntry> params = this.res.params(helper);
+            IAccess[] args = allocArgs(params);
+            for (int i = params.size() - 1; i >= 0; i--) {
+                this.code.add(store(params.get(i).ty), args[i].offset());
+                this.variables[params.get(i).slot] = new VarEntry(params.get(i).ty, false, args[i]);
+            }
+        }
+
+        // Each field's value is worked out before the locals for them are
+        // allocated, so that those outlive the parameters above
+        List<Pair<Symbol, Exp>> fields = this.escapes.allocation(d).fields;
+        RECORD r = (RECORD) binding.ty.actual();
+        for (int i = 0; i < fields.size(); i++)
+            fields.get(i).snd.accept(this);
+        while (this.frame.frameEnd() > frameSz) {
+            this.frame.popLocal();
+        }
+
+        IAccess[] locals = new IAccess[fields.size()];
+        for (int i = 0; i < fields.size(); i++)
+            locals[i] = this.frame.allocLocal(r.fields.get(i).snd.actual());
+        for (int i = fields.size() - 1; i >= 0; i--)
+            this.code.add(store(r.fields.get(i).snd), locals[i].offset());
+        this.scalars.put(binding, locals);
+    }
+
+    /*
+     * The local that holds the field v, if it is one of a scalar record
+     * variable (see genScalar()), and null otherwise
+     */
+    private IAccess scalarField(Var v) {
+        if (!(v instanceof VarField) || !(((VarField) v).var instanceof VarSimple))
+            return null;
+        IAccess[] locals = this.scalars.get(this.res.binding((VarSimple) ((VarField) v).var));
+        if (locals == null)
+            return null;
+        RECORD r = (RECORD) this.res.typeOf(((VarField) v).var).actual();
+        return locals[r.indexOf(((VarField) v).field)];
+    }
+
+    /*
+     * e, without the parentheses around it
+     */
+    private static Exp unwrap(Exp e) {
+        while (e instanceof ExpSeq && ((ExpSeq) e).list.size() == 1)
+            e = ((ExpSeq) e).list.get(0);
+        return e;
+    }
+
+    /*
+     * Adds to this.tailCalls each call to one of this.tailTargets in e that
+     * is in tail position, i.e. whose value is the value of e
+     */
+    private void findTailCalls(Exp e) {
+        if (e instanceof ExpCall) {
+            if (this.tailTargets.containsKey(this.res.target((ExpCall) e)))
+                this.tailCalls.add((ExpCall) e);
+        } else if (e instanceof ExpIf) {
+            findTailCalls(((ExpIf) e).thenclause);
+        } else if (e instanceof ExpIfElse) {
+            findTailCalls(((ExpIfElse) e).thenclause);
+            findTailCalls(((ExpIfElse) e).elseclause);
+        } else if (e instanceof ExpSeq && !((ExpSeq) e).list.isEmpty()) {
+            List<Exp> es = ((ExpSeq) e).list;
+            findTailCalls(es.get(es.size() - 1));
+        } else if (e instanceof ExpLet) {
+            findTailCalls(((ExpLet) e).body);
+        }
+    }
+
+    /*
+     * The sets of fns (of two or more functions each) that call one another
+     * in tail position, in a cycle: the strongly-connected components of
+     * the graph of those calls. Only functions that return the same kind of
+     * value, and capture the same variables, can share a method.
+     */
+    private List<List<DeclFn>> tailCallCycles(List<DeclFn> fns) {
+        java.util.Map<tigerc.semant.analysis.FunEntry, TailTarget> group = new java.util.IdentityHashMap<>();
+        java.util.Map<tigerc.semant.analysis.FunEntry, Integer> index = new java.util.IdentityHashMap<>();
+        for (int i = 0; i < fns.size(); i++) {
+            group.put(this.res.function(fns.get(i)), null);
+            index.put(this.res.function(fns.get(i)), i);
+        }
+
+        // The calls in tail position of each function to the others
+        List<List<Integer>> edges = new java.util.ArrayList<>();
+        java.util.Map<tigerc.semant.analysis.FunEntry, TailTarget> saved = this.tailTargets;
+        this.tailTargets = group;
+        for (DeclFn dfn : fns) {
+            this.tailCalls.clear();
+            findTailCalls(dfn.body);
+            List<Integer> out = new java.util.ArrayList<>();
+            for (ExpCall call : this.tailCalls) {
+                out.add(index.get(this.res.target(call)));
+            }
+            edges.add(out);
+        }
+        this.tailCalls.clear();
+        this.tailTargets = saved;
+
+        List<List<DeclFn>> cycles = new java.util.ArrayList<>();
+        for (List<Integer> scc : stronglyConnected(edges)) {
+            if (scc.size() < 2)
+                continue;
+            List<DeclFn> cycle = new java.util.ArrayList<>();
+            for (int i : scc) {
+                cycle.add(fns.get(i));
+            }
+            cycle.sort((f, g) -> Integer.compare(fns.indexOf(f), fns.indexOf(g)));
+
+            DeclFn first = cycle.get(0);
+            boolean compatible = true;
+            for (DeclFn dfn : cycle) {
+                compatible = compatible
+                        && returnOp(this.res.typeOf(dfn.body)).equals(returnOp(this.res.typeOf(first.body)))
+                        && this.closures.of(dfn).equals(this.closures.of(first));
+            }
+            if (compatible)
+                cycles.add(cycle);
+        }
+        return cycles;
+    }
+
+    /*
+     * Tarjan's algorithm, on the graph with an edge from i to each of
+     * edges[i]
+     */
+    private static List<List<Integer>> stronglyConnected(List<List<Integer>> edges) {
+        int n = edges.size();
+        int[] index = new int[n], low = new int[n];
+        boolean[] onStack = new boolean[n];
+        java.util.Arrays.fill(index, -1);
+        java.util.Deque<Integer> stack = new java.util.ArrayDeque<>();
+        List<List<Integer>> sccs = new java.util.ArrayList<>();
+        int[] counter = { 0 };
+
+        for (int v = 0; v < n; v++) {
+            if (index[v] < 0)
+                strongConnect(v, edges, index, low, onStack, stack, sccs, counter);
+        }
+        return sccs;
+    }
+
+    private static void strongConnect(int v, List<List<Integer>> edges, int[] index, int[] low, boolean[] onStack,
+            java.util.Deque<Integer> stack, List<List<Integer>> sccs, int[] counter) {
+        index[v] = low[v] = counter[0]++;
+        stack.push(v);
+        onStack[v] = true;
+
+        for (int w : edges.get(v)) {
+            if (index[w] < 0) {
+                strongConnect(w, edges, index, low, onStack, stack, sccs, counter);
+                low[v] = Math.min(low[v], low[w]);
+            } else if (onStack[w]) {
+                low[v] = Math.min(low[v], index[w]);
+            }
+        }
+
+        if (low[v] == index[v]) {
+            List<Integer> scc = new java.util.ArrayList<>();
+            int w;
+            do {
+                w = stack.pop();
+                onStack[w] = false;
+                scc.add(w);
+            } while (w != v);
+            sccs.add(scc);
+        }
+    }
+
+    /*
+     * One method for the functions of cycle, taking an int to say which of
+     * them to run, followed by the arguments of each of them in turn, and
+     * then the variables they all capture. A tail call from one to another
+     * stores the callee's arguments and jumps to its code. Each function
+     * keeps a method of its own (so that no other call changes), which
+     * calls the shared one.
+     */
+    private void genMergedProcedures(List<DeclFn> cycle) {
+        List<tigerc.semant.analysis.VarEntry> captured = this.functions.get(this.res.function(cycle.get(0)))
+                .getCaptured();
+        String resultType = jvmType(this.res.function(cycle.get(0)).result);
+
+        JVMGeneratorV bodyCodeGen = bodyGenerator();
+        IAccess which = bodyCodeGen.frame.allocLocal(INT.inst);
+        String desc = "I";
+        IAccess[][] args = new IAccess[cycle.size()][];
+        Label[] entries = new Label[cycle.size()];
+        for (int i = 0; i < cycle.size(); i++) {
+            DeclFn dfn = cycle.get(i);
+            args[i] = bodyCodeGen.allocArgs(this.res.params(dfn));
+            for (tigerc.semant.analysis.VarEntry param : this.res.params(dfn)) {
+                desc += jvmType(param.ty);
+            }
+            entries[i] = new Label(this.serialNumber, "entry");
+            bodyCodeGen.tailTargets.put(this.res.function(dfn), new TailTarget(entries[i], args[i]));
+        }
+        bodyCodeGen.allocCaptured(captured);
+        for (tigerc.semant.analysis.VarEntry x : captured) {
+            desc += (this.closures.boxed(x) ? "[" : "") + jvmType(x.ty);
+        }
+        String label = new Label(this.serialNumber, "group") + "(" + desc + ")" + resultType;
+
+        // Start with the function which says
+        for (int i = 0; i < cycle.size() - 1; i++) {
+            bodyCodeGen.code.add("iload", which.offset());
+            bodyCodeGen.pushInt(i);
+            bodyCodeGen.code.jump("if_icmpeq", entries[i]);
+        }
+        bodyCodeGen.code.jump("goto", entries[cycle.size() - 1]);
+
+        for (int i = 0; i < cycle.size(); i++) {
+            bodyCodeGen.code.label(entries[i]);
+            bodyCodeGen.genBody(cycle.get(i), args[i]);
+        }
+        this.procs.add(methodText(label, bodyCodeGen));
+
+        // The function's own methods, which pass their arguments on, and
+        // 0 or null for those of the others
+        for (int i = 0; i < cycle.size(); i++) {
+            DeclFn dfn = cycle.get(i);
+            JVMGeneratorV stub = bodyGenerator();
+            IAccess[] own = stub.allocArgs(this.res.params(dfn));
+            stub.allocCaptured(captured);
+
+            stub.pushInt(i);
+            for (int j = 0; j < cycle.size(); j++) {
+                for (int k = 0; k < args[j].length; k++) {
+                    Type t = this.res.params(cycle.get(j)).get(k).ty;
+                    if (j == i)
+                        stub.code.add(load(t), own[k].offset());
+                    else
+                        stub.code.add(t.coerceTo(INT.inst) ? "iconst_0" : "aconst_null");
+                }
+            }
+            for (tigerc.semant.analysis.VarEntry x : captured) {
+                VarEntry v = stub.variables[x.slot];
+                stub.code.add((v.escapes ? "aload" : load(v.ty)), v.access.offset());
+            }
+            stub.code.add("invokestatic", this.classname + "/" + label);
+            stub.code.add(returnOp(this.res.typeOf(dfn.body)));
+
+            this.procs.add(stub.methodText(this.functions.get(this.res.function(dfn)).getLabel().toString(), stub));
+        }
+    }
+
+    /*
+     * The definition of the method label, whose code gen has generated
+     */
+    private String methodText(String label, JVMGeneratorV gen) {
+        if (this.optLevel >= 1)
+            Peephole.optimize(gen.code);
+
+        // write code for handling the prelude
+        String procDefnCode = ";\n.method public static " + label + "\n"; // "prelude"
+        procDefnCode += (".limit locals " + gen.frame.maxLocals() + "\n");
+        procDefnCode += ".limit stack " + gen.code.maxStack() + "\n";
+
+        // the body:
+        procDefnCode += gen.code.toString();
+        procDefnCode += ".end method ;     < " + label + " >";
+        return procDefnCode;
+    }
+
+    /*
+     * The instruction that returns a value of type t
+     */
+    private static String returnOp(Type t) {
+        if (t.coerceTo(INT.inst))
+            return "ireturn";
+        else if (t.coerceTo(VOID.inst))
+            return "return";
+        else
+            return "areturn";
+    }
+
+    /*
+     * Computes each of loop's invariant expressions into a local of its own,
+     * which is where the loop will find it, and returns them
+     */
+    private List<Exp> hoist(Loop loop) {
+        List<Exp> hoisted = new java.util.ArrayList<>();
+        for (Exp x : loop.invariants()) {
+            if (this.precomputed.containsKey(x) || constant(x) != null)
+                continue;
+            // (an enclosing loop has it already, or it costs nothing)
+            x.accept(this);
+            IAccess acc = this.frame.allocLocal(INT.inst);
+            this.code.add("istore", acc.offset());
+            this.precomputed.put(x, acc);
+            hoisted.add(x);
+        }
+        return hoisted;
+    }
+
+    /*
+     * What two factors of a loop's products must have in common to be the
+     * same (their variable, or value), or null if there is no telling
+     */
+    private Object factorKey(Exp factor) {
+        if (constant(factor) != null)
+            return constant(factor);
+        if (factor instanceof ExpVar && ((ExpVar) factor).var instanceof VarSimple)
+            return this.res.binding((VarSimple) ((ExpVar) factor).var);
+        return null;
+    }
+
+    /*
+     * Whether a call of the library does nothing but compute an int, and
+     * cannot fail
+     */
+    private boolean pure(ExpCall e) {
+        if (this.functions.get(this.res.target(e)) != null)
+            return false;
+        String name = e.func.toString();
+        return name.equals("size") || name.equals("ord") || name.equals("not");
+    }
+
+    /*
+     * If e is a call of the library's concat, the strings it joins, in order:
+     * the arguments of any call of concat among its arguments are joined in
+     * their place, and so on. Otherwise null.
+     */
+    private List<Exp> concatenation(Exp e) {
+        e = unwrap(e);
+        if (!(e instanceof ExpCall) || !((ExpCall) e).func.toString().equals("concat")
+                || this.functions.get(this.res.target((ExpCall) e)) != null)
+            return null;
+
+        List<Exp> parts = new java.util.ArrayList<>();
+        for (Exp arg : ((ExpCall) e).args) {
+            List<Exp> inner = concatenation(arg);
+            if (inner != null)
+                parts.addAll(inner);
+            else
+                parts.add(arg);
+        }
+        return parts;
+    }
+
+    /*
+     * Pushes a new, empty StringBuilder
+     */
+    private void newBuilder() {
+        this.code.add("new", BUILDER);
+        this.code.add("dup");
+        this.code.add("invokespecial", BUILDER + "/<init>()V");
+    }
+
+    /*
+     * Moves each accumulator of loop (that an enclosing loop does not have
+     * already) into a StringBuilder, in a new local, and returns them
+     */
+    private List<tigerc.semant.analysis.VarEntry> openBuilders(Loop loop) {
+        List<tigerc.semant.analysis.VarEntry> opened = new java.util.ArrayList<>();
+        for (tigerc.semant.analysis.VarEntry x : loop.accumulators()) {
+            if (this.builders.containsKey(x))
+                continue;
+            newBuilder();
+            this.code.add("aload", this.variables[x.slot].access.offset());
+            this.code.add("invokevirtual", BUILDER + "/append(Ljava/lang/String;)L" + BUILDER + ";");
+            IAccess acc = this.frame.allocLocal(x.ty);
+            this.code.add("astore", acc.offset());
+            this.builders.put(x, acc);
+            opened.add(x);
+        }
+        return opened;
+    }
+
+    /*
+     * Puts the string in each of the StringBuilders of xs back in its
+     * variable, once the loop that appends to them is over
+     */
+    private void closeBuilders(List<tigerc.semant.analysis.VarEntry> xs) {
+        for (tigerc.semant.analysis.VarEntry x : xs) {
+            this.code.add("aload", this.builders.remove(x).offset());
+            this.code.add("invokevirtual", BUILDER + "/toString()Ljava/lang/String;");
+            this.code.add("astore", this.variables[x.slot].access.offset());
+        }
+    }
+
+    /*
+     * The code of e, which is idiom: a call of the method of TigerRuntime
+     * that does what it does, in place of the loop. idx is the local for its
+     * variable.
+     */
+    private void genIdiom(ExpFor e, Idiom idiom, IAccess idx) {
+        e.lo.accept(this);
+        this.code.add("istore", idx.offset());
+        e.hi.accept(this);
+        IAccess hi = this.frame.allocLocal(INT.inst);
+        this.code.add("istore", hi.offset());
+        this.variables[this.res.variable(e).slot] = new VarEntry(INT.inst, false, idx);
+
+        String arr = (idiom.ints ? "[I" : "[Ljava/lang/Object;");
+        switch (idiom.kind) {
+        case FILL:
+            idiom.array.accept(this);
+            this.code.add("iload", idx.offset());
+            this.code.add("iload", hi.offset());
+            idiom.value.accept(this);
+            this.code.add("invokestatic", RUNTIME + "/fill(" + arr + "II" + (idiom.ints ? "I" : "Ljava/lang/Object;") + ")V");
+            break;
+        case COPY:
+            idiom.array.accept(this);
+            genOffset(idiom.arrayIndex);
+            idiom.other.accept(this);
+            genOffset(idiom.otherIndex);
+            this.code.add("iload", idx.offset());
+            this.code.add("iload", hi.offset());
+            this.code.add("invokestatic", RUNTIME + "/copy(" + arr + "I" + arr + "III)V");
+            break;
+        case SUM:
+            idiom.sum.accept(this);
+            idiom.array.accept(this);
+            this.code.add("iload", idx.offset());
+            this.code.add("iload", hi.offset());
+            this.code.add("invokestatic", RUNTIME + "/sum([III)I");
+            this.code.add("iadd");
+            this.rvalueMode = false;
+            idiom.sum.accept(this);
+            this.rvalueMode = true;
+            break;
+        case SEARCH:
+        case MISMATCH:
+            idiom.array.accept(this);
+            if (idiom.kind == Idiom.Kind.MISMATCH)
+                idiom.other.accept(this);
+            this.code.add("iload", idx.offset());
+            this.code.add("iload", hi.offset());
+            if (idiom.kind == Idiom.Kind.SEARCH) {
+                idiom.value.accept(this);
+                this.code.add("invokestatic", RUNTIME + "/indexOf([IIII)I");
+            } else {
+                this.code.add("invokestatic", RUNTIME + "/mismatch([I[III)I");
+            }
+
+            // The index found, if any (or -1), for what comes before the
+            // break
+            Label endFor = new Label(this.serialNumber, "endfor");
+            this.code.add("dup");
+            this.code.add("istore", idx.offset());
+            this.code.jump("iflt", endFor);
+            this.enclosingLoop.push(endFor);
+            for (Exp x : idiom.found) {
+                x.accept(this);
+                if (!this.res.typeOf(x).coerceTo(VOID.inst))
+                    this.code.add("pop");
+            }
+            this.enclosingLoop.pop();
+            this.code.label(endFor);
+            break;
+        }
+
+        this.frame.popLocal(); // hi
+    }
+
+    /*
+     * Pushes the offset of i in index (0 if there is none)
+     */
+    private void genOffset(Idiom.Index index) {
+        if (index.offset == null) {
+            this.code.add("iconst_0");
+        } else {
+            index.offset.accept(this);
+            if (index.negated)
+                this.code.add("ineg");
+        }
+    }
+
+    /*
+     * If e has constant bounds, and only a few, short iterations, its body
+     * once for each value of idx, in turn (and true); otherwise nothing (and
+     * false)
+     */
+    private boolean unroll(ExpFor e, Loop loop, IAccess idx) {
+        Integer lo = constant(e.lo), hi = constant(e.hi);
+        if (lo == null || hi == null || loop.declaresFunctions())
+            return false;
+        long trips = Math.max(0L, (long) hi - lo + 1);
+        if (trips > UNROLL_TRIPS || trips * loop.size() > UNROLL_SIZE)
+            return false;
+
+        this.variables[this.res.variable(e).slot] = new VarEntry(INT.inst, false, idx);
+        Label endFor = new Label(this.serialNumber, "endfor");
+        this.enclosingLoop.push(endFor);
+        for (long i = lo; i <= hi; i++) {
+            pushInt((int) i);
+            this.code.add("istore", idx.offset());
+            e.body.accept(this);
+        }
+        this.enclosingLoop.pop();
+        this.code.label(endFor);
+        return true;
+    }
+
+    /*
+     * The value of e, if it is known to be constant (see Propagation)
+     */
+    private Integer constant(Exp e) {
+        if (this.propagation != null)
+            return this.propagation.constant(e);
+        return (e instanceof ExpInt ? ((ExpInt) e).value : null);
+    }
+
+    private void pushInt(int value) {
+        if (value == -1)
+            this.code.add("iconst_m1");
+        else if (0 <= value && value <= 5)
+            this.code.add("iconst_" + value);
+        else if (-128 <= value && value <= 127)
+            this.code.add("bipush", value);
+        else if (Short.MIN_VALUE <= value && value <= Short.MAX_VALUE)
+            this.code.add("sipush", value);
+        else
+            this.code.add("ldc", value);
+    }
+
+    private void printMainResult(Type progType) {
         // println isn't defined on that
         // PRE: Stack is [mainRes::System_out_ref::'()]
 
-        if (this.expType instanceof ARRAY) {
-            ARRAY arrExpTy = (ARRAY) this.expType;
+        if (progType.actual() instanceof ARRAY) {
+            ARRAY arrExpTy = (ARRAY) progType.actual();
             if (arrExpTy.element.coerceTo((INT.inst))) {
                 // Use java.util.Arrays.toString(intArray);
                 emitLn(this.tgtOut, "invokestatic java/util/Arrays/toString([I)Ljava/lang/String;");
@@ -1133,31 +2075,125 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
             }
             emitLn(this.tgtOut, "invokevirtual java/io/PrintStream/println(Ljava/lang/String;)V");
             // Stack is ['()]
-        } else if (!this.expType.coerceTo(VOID.inst)) {
-            emitLn(this.tgtOut, "invokevirtual java/io/PrintStream/println(" + jvmType(this.expType) + ")V");
+        } else if (progType.actual() instanceof RECORD || progType.actual() instanceof TABLE
+                || progType.actual() instanceof ITABLE) {
+            emitLn(this.tgtOut, "invokevirtual java/io/PrintStream/println(Ljava/lang/Object;)V");
+        } else if (!progType.coerceTo(VOID.inst)) {
+            emitLn(this.tgtOut, "invokevirtual java/io/PrintStream/println(" + jvmType(progType) + ")V");
             // Stack is ['()]
         }
     }
 
+    /*
+     * The instruction that loads a local of type t (strings, arrays, and
+     * records are all references)
+     */
+    private static String load(Type t) {
+        return (t.coerceTo(INT.inst) ? "iload" : "aload");
+    }
+
+    private static String store(Type t) {
+        return (t.coerceTo(INT.inst) ? "istore" : "astore");
+    }
+
+    /*
+     * Code to put the value on top of the stack in a new cell (a one-element
+     * array) for a variable of type t, leaving the cell in its place
+     */
+    private void newCell(Type t) {
+        // Stack: [ value, ... ]
+        this.code.add("iconst_1");
+        if (t.coerceTo(INT.inst))
+            this.code.add("newarray", "int");
+        else
+            this.code.add("anewarray", jvmClass(t));
+        // Stack: [ cell, value, ... ] ==> [ value, 0, cell, cell, ... ]
+        this.code.add("dup_x1");
+        this.code.add("swap");
+        this.code.add("iconst_0");
+        this.code.add("swap");
+        this.code.add(store(t).charAt(0) + "astore");
+        // Stack: [ cell, ... ]
+    }
+
+    /*
+     * The JVM type descriptor of t
+     */
+    private String jvmType(Type t) {
+        assert t != null;
+
+        t = t.actual();
+
+        if (t instanceof INT) {
+            return "I";
+        } else if (t instanceof VOID) {
+            return "V";
+        } else if (t instanceof STRING) {
+            return "Ljava/lang/String;";
+        } else if (t instanceof RECORD) {
+            return "L" + recordClass((RECORD) t) + ";";
+        } else if (t instanceof ARRAY) {
+            return "[" + jvmType(((ARRAY) t).element);
+        } else if (t instanceof TABLE) {
+            return "LTigerTable;";
+        } else if (t instanceof ITABLE) {
+            return "LTigerIntTable;";
+        } else
+            throw new Error("JVMGenerator.jvmType(): internal bug");
+    }
+
+    /*
+     * The name of the class of the values of t, a reference type, as anewarray
+     * (and new) want it
+     */
+    private String jvmClass(Type t) {
+        t = t.actual();
+        if (t instanceof ARRAY)
+            return jvmType(t);
+        String desc = jvmType(t);
+        return desc.substring(1, desc.length() - 1);
+    }
+
+    /*
+     * The name of the class made for r, which is added to this.records the
+     * first time it is asked for
+     */
+    private String recordClass(RECORD r) {
+        String cls = this.records.get(r);
+        if (cls == null) {
+            cls = this.classname + "$Rec" + (this.records.size() + 1);
+            this.records.put(r, cls);
+        }
+        return cls;
+    }
+
+    /*
+     * The operand of the getfield or putfield instruction for v
+     */
+    private String fieldRef(VarField v) {
+        RECORD r = (RECORD) this.res.typeOf(v.var).actual();
+        return recordClass(r) + "/" + v.field + " " + jvmType(this.res.typeOf(v));
+    }
+
     private void genopArith(ExpOp e) {
 
         e.left.accept(this);
         e.right.accept(this);
         switch (e.oper) {
         case PLUS: {
-            emitLn(this.code, "iadd");
+            this.code.add("iadd");
             break;
         }
         case MIN: {
-            emitLn(this.code, "isub");
+            this.code.add("isub");
             break;
         }
         case MUL: {
-            emitLn(this.code, "imul");
+            this.code.add("imul");
             break;
         }
         case DIV: {
-            emitLn(this.code, "idiv");
+            this.code.add("idiv");
             break;
         }
         default:
@@ -1165,85 +2201,90 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
         }
     }
 
-    private void genopCompare(ExpOp e) {
-        final Label labelT = new Label(this.serialNumber, "true");
-        final Label join = new Label(this.serialNumber, "end");
-        final java.util.Hashtable<ExpOp.Op, String> intCmds = intCmds();
-        final java.util.Hashtable<ExpOp.Op, String> strCmds = strCmds();
-
-        e.left.accept(this);
-        e.right.accept(this);
-
-        // First, we generate the appropriate comparison instruction(s)
-        if (this.expType.coerceTo(INT.inst)) {
-            emitLn(this.code, intCmds.get(e.oper) + " " + labelT);
-        } else if (this.expType.coerceTo(STRING.inst)) {
-            emitLn(this.code, "invokevirtual Ljava/lang/String/compareTo(Ljava/lang/String;)Z");
-            emitLn(this.code, strCmds.get(e.oper) + " " + labelT);
-        } else
-            throw new Error("JVMGeneratorV::genopCompare() -- internal bug");
-
-        // the "false" branch of the comparison begins here
-        emitLn(this.code, "iconst_0");
-        emitLn(this.code, "goto " + join);
-        // the "true" branch"
-        emitLn(this.code, labelT + ":");
-        emitLn(this.code, "iconst_1");
-        // and, done.
-        emitLn(this.code, join + ":");
-    }
-
-    private void genopLogical(ExpOp e) {
-        Label labRight = new Label(this.serialNumber, "right");
-        Label join = new Label(this.serialNumber, "join");
-
-        e.left.accept(this);
-
-        if (e.oper == ExpOp.Op.AND) {
-            emitLn(this.code, "ifne " + labRight);
-            emitLn(this.code, "iconst_0");
-            emitLn(this.code, "goto " + join);
-        } else if (e.oper == ExpOp.Op.OR) {
-            emitLn(this.code, "ifeq " + labRight);
-            emitLn(this.code, "iconst_1");
-            emitLn(this.code, "goto " + join);
-        } else
-            throw new Error("JVMGeneratorV.genopLogical() -- internal bug");
-
-        emitLn(this.code, labRight + ":");
-        e.right.accept(this);
-        emitLn(this.code, join + ":");
+    /*
+     * The value (0 or 1) of a comparison, or of & or |, made from the code
+     * for it as a condition (see genCond())
+     */
+    private void genopCondition(ExpOp e) {
+        Label isFalse = new Label(this.serialNumber, "false");
+        Label join = new Label(this.serialNumber, "end");
+
+        genCond(e, false, isFalse);
+        this.code.add("iconst_1");
+        this.code.jump("goto", join);
+        this.code.label(isFalse);
+        this.code.add("iconst_0");
+        this.code.label(join);
     }
 
-    /**
-     * From a collection of (id,type-id) pairs, this produces a corresponding
-     * list of (id,type) pairs. Except for the error checking and the additional
-     * sentinel boolean value in the result, this function is identical to the
-     * one in SemantV.
-     * 
-     * @param a
-     *            The syntax element where the access list occurs used for error
-     *            reporting
-     * @param access
-     * @return
+    /*
+     * Code that goes to target if the value of e is true (non-zero) when
+     * sense is, or false when it is not, and otherwise goes on to whatever
+     * comes next. This is Appel's Cx translation, with one of its two labels
+     * being the fall-through: a comparison is a single compare-and-branch,
+     * and & and | are only branches, instead of each leaving 0 or 1 on the
+     * stack for an ifeq or ifne to test.
      */
-    private List<Pair<Symbol, Type>> visitTypeFields(ISyntaxElt a, Collection<Pair<Symbol, Symbol>> access) {
-
-        List<Pair<Symbol, Type>> container = new java.util.ArrayList<Pair<Symbol, Type>>();
-        java.util.Set<Symbol> defined = new java.util.HashSet<Symbol>();
+    private void genCond(Exp e, boolean sense, Label target) {
+        if (constant(e) != null) {
+            if ((constant(e) != 0) == sense)
+                this.code.jump("goto", target);
+
+        } else if (this.precomputed.containsKey(e)) {
+            this.code.add("iload", this.precomputed.get(e).offset());
+            this.code.jump((sense ? "ifne" : "ifeq"), target);
+
+        } else if (e instanceof ExpOp && (((ExpOp) e).oper == ExpOp.Op.AND || ((ExpOp) e).oper == ExpOp.Op.OR)) {
+            ExpOp op = (ExpOp) e;
+
+            // "a & b" is true only if both are, and "a | b" false only if both
+            // are; on the way to the other outcome, each can stop at a
+            if ((op.oper == ExpOp.Op.AND) != sense) {
+                genCond(op.left, sense, target);
+                genCond(op.right, sense, target);
+            } else {
+                Label skip = new Label(this.serialNumber, "skip");
+                genCond(op.left, !sense, skip);
+                genCond(op.right, sense, target);
+                this.code.label(skip);
+            }
 
-        for (Pair<Symbol, Symbol> p : access) {
-            Type t = tenv.lookup(p.snd);
-            assert t != null;
+        } else if (e instanceof ExpOp && ((ExpOp) e).oper.val >= ExpOp.Op.EQ.val) {
+            ExpOp op = (ExpOp) e;
+            ExpOp.Op test = (sense ? op.oper : opposite(op.oper));
+
+            op.left.accept(this);
+            op.right.accept(this);
+
+            Type operandType = this.res.typeOf(op.right);
+            if (operandType.coerceTo(INT.inst)) {
+                this.code.jump(intCmds().get(test), target);
+            } else if (operandType.coerceTo(STRING.inst)) {
+                this.code.add("invokevirtual", "java/lang/String/compareTo(Ljava/lang/String;)I");
+                this.code.jump(strCmds().get(test), target);
+            } else if (test == ExpOp.Op.EQ || test == ExpOp.Op.NE) {
+                // records (or nil) and arrays are equal only if they are the
+                // same
+                this.code.jump((test == ExpOp.Op.EQ ? "if_acmpeq" : "if_acmpne"), target);
+            } else
+                throw new Error("JVMGeneratorV::genCond() -- internal bug");
+
+        } else if (e instanceof ExpSeq && !((ExpSeq) e).list.isEmpty()) {
+            // (as in "if (a < b) then ...")
+            List<Exp> es = ((ExpSeq) e).list;
+            for (Exp e1 : es.subList(0, es.size() - 1)) {
+                e1.accept(this);
+                if (!this.res.typeOf(e1).coerceTo(VOID.inst))
+                    this.code.add("pop");
+            }
+            genCond(es.get(es.size() - 1), sense, target);
 
-            container.add(new Pair<Symbol, Type>(p.fst, t));
-            defined.add(p.fst);
+        } else {
+            e.accept(this);
+            this.code.jump((sense ? "ifne" : "ifeq"), target);
         }
-
-        return container;
     }
 
-    
     /************************************************************************* 
      ***** private utility methods (static)
      ****************************/
@@ -1252,13 +2293,6 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
 
         final Class<?> STDLIB_CLASS = Class.forName("TigerStdLib");
 
-        /****************
-         * The two "built-in" types:
-         */
-
-        extern_tenv.extend(Symbol.sym("int"), INT.inst);
-        extern_tenv.extend(Symbol.sym("string"), STRING.inst);
-
         /****************
          * Labels for the library procedures:
          */
@@ -1267,90 +2301,219 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
 
         // print
         fmls = new java.util.ArrayList<>();
-        fmls.add(new Pair<Symbol, Type>(Symbol.sym("s"), STRING.inst));
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("s"), STRING.inst));
         fe = new FunEntry(fmls, VOID.inst);
         fe.setEnclosingClass(STDLIB_CLASS);
         fe.setLabel(new Label("print(Ljava/lang/String;)V"));
-        extern_venv.extend(Symbol.sym("print"), fe);
+        extern_venv.extend(Symbol.global("print"), fe);
 
         // printi
         fmls.clear();
-        fmls.add(new Pair<Symbol, Type>(Symbol.sym("s"), INT.inst));
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("s"), INT.inst));
         fe = new FunEntry(fmls, VOID.inst);
         fe.setEnclosingClass(STDLIB_CLASS);
         fe.setLabel(new Label("printi(I)V"));
-        extern_venv.extend(Symbol.sym("printi"), fe);
+        extern_venv.extend(Symbol.global("printi"), fe);
 
         // flush
         fe = new FunEntry(null, VOID.inst);
         fe.setEnclosingClass(STDLIB_CLASS);
         fe.setLabel(new Label("flush()V"));
-        extern_venv.extend(Symbol.sym("flush"), fe);
+        extern_venv.extend(Symbol.global("flush"), fe);
 
         // getchar
         fe = new FunEntry(null, STRING.inst);
         fe.setEnclosingClass(STDLIB_CLASS);
         fe.setLabel(new Label("getchar()Ljava/lang/String;"));
-        extern_venv.extend(Symbol.sym("getchar"), fe);
+        extern_venv.extend(Symbol.global("getchar"), fe);
 
         // ord
         fmls.clear();
-        fmls.add(new Pair<Symbol, Type>(Symbol.sym("s"), STRING.inst));
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("s"), STRING.inst));
         fe = new FunEntry(fmls, INT.inst);
         fe.setEnclosingClass(STDLIB_CLASS);
         fe.setLabel(new Label("ord(Ljava/lang/String;)I"));
-        extern_venv.extend(Symbol.sym("ord"), fe);
+        extern_venv.extend(Symbol.global("ord"), fe);
 
         // chr
         fmls.clear();
-        fmls.add(new Pair<Symbol, Type>(Symbol.sym("s"), INT.inst));
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("s"), INT.inst));
         fe = new FunEntry(fmls, STRING.inst);
         fe.setEnclosingClass(STDLIB_CLASS);
         fe.setLabel(new Label("chr(I)Ljava/lang/String;"));
-        extern_venv.extend(Symbol.sym("chr"), fe);
+        extern_venv.extend(Symbol.global("chr"), fe);
 
         // size
         fmls.clear();
-        fmls.add(new Pair<Symbol, Type>(Symbol.sym("s"), STRING.inst));
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("s"), STRING.inst));
         fe = new FunEntry(fmls, INT.inst);
         fe.setEnclosingClass(STDLIB_CLASS);
         fe.setLabel(new Label("size(Ljava/lang/String;)I"));
-        extern_venv.extend(Symbol.sym("size"), fe);
+        extern_venv.extend(Symbol.global("size"), fe);
 
         // substring
         fmls.clear();
-        fmls.add(new Pair<Symbol, Type>(Symbol.sym("s"), STRING.inst));
-        fmls.add(new Pair<Symbol, Type>(Symbol.sym("first"), INT.inst));
-        fmls.add(new Pair<Symbol, Type>(Symbol.sym("n"), INT.inst));
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("s"), STRING.inst));
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("first"), INT.inst));
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("n"), INT.inst));
         fe = new FunEntry(fmls, STRING.inst);
         fe.setEnclosingClass(STDLIB_CLASS);
         fe.setLabel(new Label("substring(Ljava/lang/String;II)Ljava/lang/String;"));
-        extern_venv.extend(Symbol.sym("substring"), fe);
+        extern_venv.extend(Symbol.global("substring"), fe);
 
         // concat
         fmls.clear();
-        fmls.add(new Pair<Symbol, Type>(Symbol.sym("s1"), STRING.inst));
-        fmls.add(new Pair<Symbol, Type>(Symbol.sym("s2"), STRING.inst));
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("s1"), STRING.inst));
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("s2"), STRING.inst));
         fe = new FunEntry(fmls, STRING.inst);
         fe.setEnclosingClass(STDLIB_CLASS);
         fe.setLabel(new Label("concat(Ljava/lang/String;Ljava/lang/String;)Ljava/lang/String;"));
-        extern_venv.extend(Symbol.sym("concat"), fe);
+        extern_venv.extend(Symbol.global("concat"), fe);
 
         // not
         fmls.clear();
-        fmls.add(new Pair<Symbol, Type>(Symbol.sym("i"), INT.inst));
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("i"), INT.inst));
         fe = new FunEntry(fmls, INT.inst);
         fe.setEnclosingClass(STDLIB_CLASS);
         fe.setLabel(new Label("not(I)I"));
-        extern_venv.extend(Symbol.sym("not"), fe);
+        extern_venv.extend(Symbol.global("not"), fe);
 
         // exit
         fmls.clear();
-        fmls.add(new Pair<Symbol, Type>(Symbol.sym("i"), INT.inst));
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("i"), INT.inst));
         fe = new FunEntry(fmls, VOID.inst);
         fe.setEnclosingClass(STDLIB_CLASS);
         fe.setLabel(new Label("exit(I)V"));
-        extern_venv.extend(Symbol.sym("exit"), fe);
+        extern_venv.extend(Symbol.global("exit"), fe);
+
+        // readline
+        fe = new FunEntry(null, STRING.inst);
+        fe.setEnclosingClass(STDLIB_CLASS);
+        fe.setLabel(new Label("readline()Ljava/lang/String;"));
+        extern_venv.extend(Symbol.global("readline"), fe);
+
+        // readint
+        fe = new FunEntry(null, INT.inst);
+        fe.setEnclosingClass(STDLIB_CLASS);
+        fe.setLabel(new Label("readint()I"));
+        extern_venv.extend(Symbol.global("readint"), fe);
+
+        // eof
+        fe = new FunEntry(null, INT.inst);
+        fe.setEnclosingClass(STDLIB_CLASS);
+        fe.setLabel(new Label("eof()I"));
+        extern_venv.extend(Symbol.global("eof"), fe);
+
+        // readfile
+        fmls = new java.util.ArrayList<>();
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("name"), STRING.inst));
+        fe = new FunEntry(fmls, STRING.inst);
+        fe.setEnclosingClass(STDLIB_CLASS);
+        fe.setLabel(new Label("readfile(Ljava/lang/String;)Ljava/lang/String;"));
+        extern_venv.extend(Symbol.global("readfile"), fe);
+
+        // readints
+        fmls = new java.util.ArrayList<>();
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("name"), STRING.inst));
+        fe = new FunEntry(fmls, ARRAY.intarray);
+        fe.setEnclosingClass(STDLIB_CLASS);
+        fe.setLabel(new Label("readints(Ljava/lang/String;)[I"));
+        extern_venv.extend(Symbol.global("readints"), fe);
+
+        // printints
+        fmls = new java.util.ArrayList<>();
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("a"), ARRAY.intarray));
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("sep"), STRING.inst));
+        fe = new FunEntry(fmls, VOID.inst);
+        fe.setEnclosingClass(STDLIB_CLASS);
+        fe.setLabel(new Label("printints([ILjava/lang/String;)V"));
+        extern_venv.extend(Symbol.global("printints"), fe);
+
+        // table_new
+        fe = new FunEntry(null, TABLE.inst);
+        fe.setEnclosingClass(STDLIB_CLASS);
+        fe.setLabel(new Label("table_new()LTigerTable;"));
+        extern_venv.extend(Symbol.global("table_new"), fe);
+
+        // table_get
+        fmls = new java.util.ArrayList<>();
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("t"), TABLE.inst));
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("key"), STRING.inst));
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("absent"), INT.inst));
+        fe = new FunEntry(fmls, INT.inst);
+        fe.setEnclosingClass(STDLIB_CLASS);
+        fe.setLabel(new Label("table_get(LTigerTable;Ljava/lang/String;I)I"));
+        extern_venv.extend(Symbol.global("table_get"), fe);
+
+        // table_put
+        fmls = new java.util.ArrayList<>();
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("t"), TABLE.inst));
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("key"), STRING.inst));
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("value"), INT.inst));
+        fe = new FunEntry(fmls, VOID.inst);
+        fe.setEnclosingClass(STDLIB_CLASS);
+        fe.setLabel(new Label("table_put(LTigerTable;Ljava/lang/String;I)V"));
+        extern_venv.extend(Symbol.global("table_put"), fe);
+
+        // table_remove
+        fmls = new java.util.ArrayList<>();
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("t"), TABLE.inst));
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("key"), STRING.inst));
+        fe = new FunEntry(fmls, VOID.inst);
+        fe.setEnclosingClass(STDLIB_CLASS);
+        fe.setLabel(new Label("table_remove(LTigerTable;Ljava/lang/String;)V"));
+        extern_venv.extend(Symbol.global("table_remove"), fe);
+
+        // table_size
+        fmls = new java.util.ArrayList<>();
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("t"), TABLE.inst));
+        fe = new FunEntry(fmls, INT.inst);
+        fe.setEnclosingClass(STDLIB_CLASS);
+        fe.setLabel(new Label("table_size(LTigerTable;)I"));
+        extern_venv.extend(Symbol.global("table_size"), fe);
+
+        // itable_new
+        fe = new FunEntry(null, ITABLE.inst);
+        fe.setEnclosingClass(STDLIB_CLASS);
+        fe.setLabel(new Label("itable_new()LTigerIntTable;"));
+        extern_venv.extend(Symbol.global("itable_new"), fe);
+
+        // itable_get
+        fmls = new java.util.ArrayList<>();
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("t"), ITABLE.inst));
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("key"), INT.inst));
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("absent"), INT.inst));
+        fe = new FunEntry(fmls, INT.inst);
+        fe.setEnclosingClass(STDLIB_CLASS);
+        fe.setLabel(new Label("itable_get(LTigerIntTable;II)I"));
+        extern_venv.extend(Symbol.global("itable_get"), fe);
+
+        // itable_put
+        fmls = new java.util.ArrayList<>();
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("t"), ITABLE.inst));
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("key"), INT.inst));
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("value"), INT.inst));
+        fe = new FunEntry(fmls, VOID.inst);
+        fe.setEnclosingClass(STDLIB_CLASS);
+        fe.setLabel(new Label("itable_put(LTigerIntTable;II)V"));
+        extern_venv.extend(Symbol.global("itable_put"), fe);
+
+        // itable_remove
+        fmls = new java.util.ArrayList<>();
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("t"), ITABLE.inst));
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("key"), INT.inst));
+        fe = new FunEntry(fmls, VOID.inst);
+        fe.setEnclosingClass(STDLIB_CLASS);
+        fe.setLabel(new Label("itable_remove(LTigerIntTable;I)V"));
+        extern_venv.extend(Symbol.global("itable_remove"), fe);
+
+        // itable_size
+        fmls = new java.util.ArrayList<>();
+        fmls.add(new Pair<Symbol, Type>(Symbol.global("t"), ITABLE.inst));
+        fe = new FunEntry(fmls, INT.inst);
+        fe.setEnclosingClass(STDLIB_CLASS);
+        fe.setLabel(new Label("itable_size(LTigerIntTable;)I"));
+        extern_venv.extend(Symbol.global("itable_size"), fe);
     }
 
     // /////////////////////////////////////////////////////////////////////
@@ -1380,45 +2543,6 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
         return cmds;
     }
 
-    private static String jvmType(Type t) {
-        assert t != null;
-
-        t = t.actual();
-
-        if (t instanceof INT) {
-            return "I";
-        } else if (t instanceof VOID) {
-            return "V";
-        } else if (t instanceof STRING) {
-            return "Ljava/lang/String;";
-        } else if (t instanceof RECORD) {
-            return "Ljava/util/Hashtable;";
-        } else if (t instanceof ARRAY) {
-            return "[" + jvmType(((ARRAY) t).element);
-        } else
-            throw new Error("JVMGenerator.jvmType(): internal bug");
-    }
-
-    /*
-     * For a given list of Pairs and left element x, returns the corresponding
-     * right element in the Pair with the lowest index
-     * 
-     * @param ls The list of Pairs
-     * 
-     * @param x The left element we're looking for
-     * 
-     * @return y such that (x,y) is the first Pair in ls containing x. Returns
-     * <tt>null</tt>, if <em>x</em> is not found
-     */
-    private static <A, B> B lookup(List<Pair<A, B>> ls, A x) {
-        for (Pair<A, B> p : ls) {
-            if (p.fst.equals(x))
-                return p.snd;
-        }
-
-        return null;
-    }
-
     /**
      * This is used in the constructor and visit(DecGroupFunction) methods to
      * build a PrintWriter from which we can print contents of the underlying
@@ -1436,6 +2560,25 @@ public class JVMGeneratorV implements tigerc.translate.ICodegen, tigerc.syntax.a
         };
     }
 
+    private static ExpOp.Op opposite(ExpOp.Op op) {
+        switch (op) {
+        case EQ:
+            return ExpOp.Op.NE;
+        case NE:
+            return ExpOp.Op.EQ;
+        case LT:
+            return ExpOp.Op.GE;
+        case GE:
+            return ExpOp.Op.LT;
+        case GT:
+            return ExpOp.Op.LE;
+        case LE:
+            return ExpOp.Op.GT;
+        default:
+            throw new Error("JVMGeneratorV.opposite() -- internal bug");
+        }
+    }
+
     private static java.util.Hashtable<ExpOp.Op, String> strCmds() {
         java.util.Hashtable<ExpOp.Op, String> cmds = new java.util.Hashtable<ExpOp.Op, String>();
 
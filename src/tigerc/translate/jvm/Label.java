@@ -39,4 +39,9 @@ public class Label {
     public boolean equals(Object o) {
         return (o instanceof Label) && ((Label) o).name.equals(name);
     }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
 }
@@ -0,0 +1,431 @@
+/*
+    Loop.java
+
+    What JVMGeneratorV needs to know about a for or while loop to compile it
+    well:
+
+        - its invariant expressions, whose value is the same on every
+          iteration, and which can be computed once, before the loop starts,
+          instead of on each iteration.  Only expressions that do nothing
+          but compute an int, and cannot fail, are moved: an expression the
+          loop would never have evaluated (because it is in a branch not
+          taken, or the loop runs no times) is then evaluated to no effect.
+          A field of a record, or an element of an array, is not one of
+          these, since it can fail on nil, or an index out of range.
+
+        - the products, in the body of a for loop, of its variable with an
+          invariant factor (as in "a[i*n + j]").  Each goes up by the factor
+          from one iteration to the next, so it can be kept in a local that
+          is added to, instead of multiplied out every time.  (Not if it
+          is only worked out on some iterations, in a branch of an if, and
+          the addition on every one would cost more.)
+
+        - the size of its body, and whether it declares functions (so
+          whether it can be copied, to unroll it).
+
+        - its accumulators: string variables that it only ever appends to,
+          as in "s := concat(s, t)", which can be kept in a StringBuilder
+          until the loop ends, instead of copied whole on every iteration.
+
+    An expression is invariant if every variable it reads is, and a variable
+    is invariant if it is declared outside the loop, never assigned in it,
+    and not kept in a cell (see FreeVariables), since only a boxed variable
+    can be changed by a function the loop calls.
+
+    History:
+        10/18/2026        created
+ */
+
+package tigerc.translate.jvm;
+
+import tigerc.syntax.absyn.*;
+import tigerc.semant.analysis.Resolution;
+import tigerc.semant.analysis.VarEntry;
+
+import java.util.List;
+import java.util.Set;
+
+public class Loop implements IAbsynVisitor {
+
+    private final Resolution res;
+    private final FreeVariables closures;
+    private final java.util.function.Predicate<ExpCall> pure;
+    // Which calls do nothing but compute an int, and cannot fail
+    private final java.util.function.Function<Exp, List<Exp>> concatenation;
+    // The strings joined by an expression that calls concat (or null)
+
+    private final VarEntry index; // the variable of a for loop (or null)
+
+    private final Set<VarEntry> assigned = java.util.Collections.newSetFromMap(new java.util.IdentityHashMap<>());
+    private final Set<VarEntry> declared = java.util.Collections.newSetFromMap(new java.util.IdentityHashMap<>());
+    private final Set<VarEntry> appended = java.util.Collections.newSetFromMap(new java.util.IdentityHashMap<>());
+    private final Set<VarEntry> used = java.util.Collections.newSetFromMap(new java.util.IdentityHashMap<>());
+    // The variables appended to, and those used in any other way
+    private int size = 0;
+    private boolean declaresFunctions = false;
+
+    private final List<Exp> invariants = new java.util.ArrayList<>();
+    private final List<ExpOp> products = new java.util.ArrayList<>();
+    private boolean collecting = false;
+    // (the second pass, which finds the two above, once the first has
+    // found which variables the loop changes)
+
+    private int branches = 0, loops = 0;
+    // The number of branches, and of inner loops, around the part of the
+    // loop we are looking at
+
+    /**
+     * The loop e, in a program for which SemantV found res; pure says which
+     * calls of the library can be moved out of it, and concatenation which
+     * join strings.
+     */
+    public Loop(ExpFor e, Resolution res, FreeVariables closures, java.util.function.Predicate<ExpCall> pure,
+            java.util.function.Function<Exp, List<Exp>> concatenation) {
+        this.res = res;
+        this.closures = closures;
+        this.pure = pure;
+        this.concatenation = concatenation;
+        this.index = res.variable(e);
+
+        exp(e.body);
+        this.collecting = true;
+        exp(e.body);
+    }
+
+    /**
+     * The loop e, in a program for which SemantV found res; pure says which
+     * calls of the library can be moved out of it, and concatenation which
+     * join strings.
+     */
+    public Loop(ExpWhile e, Resolution res, FreeVariables closures, java.util.function.Predicate<ExpCall> pure,
+            java.util.function.Function<Exp, List<Exp>> concatenation) {
+        this.res = res;
+        this.closures = closures;
+        this.pure = pure;
+        this.concatenation = concatenation;
+        this.index = null;
+
+        exp(e.test);
+        exp(e.body);
+        this.collecting = true;
+        exp(e.test);
+        exp(e.body);
+    }
+
+    /**
+     * The largest invariant expressions that take any work to compute, in the
+     * order they appear (none is part of another)
+     */
+    public List<Exp> invariants() {
+        return this.invariants;
+    }
+
+    /**
+     * The products of a for loop's variable with an invariant factor (see
+     * factor())
+     */
+    public List<ExpOp> products() {
+        return this.products;
+    }
+
+    /**
+     * The invariant side of product p, one of products()
+     */
+    public Exp factor(ExpOp p) {
+        return (isIndex(p.left) ? p.right : p.left);
+    }
+
+    /**
+     * The variables that the loop only ever appends to (see append())
+     */
+    public List<VarEntry> accumulators() {
+        List<VarEntry> xs = new java.util.ArrayList<>();
+        for (VarEntry x : this.appended) {
+            if (!this.used.contains(x) && !this.declared.contains(x) && !this.closures.boxed(x))
+                xs.add(x);
+        }
+        return xs;
+    }
+
+    /**
+     * If e is an assignment "x := concat(x, ...)" (or of a chain of concats
+     * that starts with x), the strings appended to x; otherwise null
+     */
+    public List<Exp> append(ExpAssign e) {
+        if (!(e.lhs instanceof VarSimple))
+            return null;
+        List<Exp> parts = this.concatenation.apply(e.rhs);
+        if (parts == null || !(parts.get(0) instanceof ExpVar) || !(((ExpVar) parts.get(0)).var instanceof VarSimple)
+                || this.res.binding((VarSimple) ((ExpVar) parts.get(0)).var) != this.res.binding((VarSimple) e.lhs))
+            return null;
+        return parts.subList(1, parts.size());
+    }
+
+    /**
+     * The number of nodes of the loop's body
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Whether the loop declares any function (whose method would be generated
+     * again for each copy of the loop)
+     */
+    public boolean declaresFunctions() {
+        return this.declaresFunctions;
+    }
+
+    /**
+     * Whether e computes an int, and nothing else, cannot fail, and has the
+     * same value on every iteration of the loop
+     */
+    public boolean invariant(Exp e) {
+        if (e instanceof ExpInt) {
+            return true;
+        } else if (e instanceof ExpVar && ((ExpVar) e).var instanceof VarSimple) {
+            return invariant((VarSimple) ((ExpVar) e).var);
+        } else if (e instanceof ExpSeq && ((ExpSeq) e).list.size() == 1) {
+            return invariant(((ExpSeq) e).list.get(0));
+        } else if (e instanceof ExpOp) {
+            ExpOp op = (ExpOp) e;
+            if (op.oper == ExpOp.Op.DIV
+                    && !(op.right instanceof ExpInt && ((ExpInt) op.right).value != 0))
+                return false;
+            // (every other operator, on any two values, is safe)
+            return invariant(op.left) && invariant(op.right);
+        } else if (e instanceof ExpCall && this.pure.test((ExpCall) e)) {
+            for (Exp arg : ((ExpCall) e).args) {
+                if (!invariant(arg))
+                    return false;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Whether x has the same value on every iteration of the loop
+     */
+    public boolean invariant(VarSimple x) {
+        VarEntry v = this.res.binding(x);
+        return v != this.index && !this.assigned.contains(v) && !this.declared.contains(v) && !this.closures.boxed(v);
+    }
+
+    /**
+     * Whether e is (a use of) the variable of a for loop
+     */
+    public boolean isIndex(Exp e) {
+        if (e instanceof ExpSeq && ((ExpSeq) e).list.size() == 1)
+            return isIndex(((ExpSeq) e).list.get(0));
+        return this.index != null && e instanceof ExpVar && ((ExpVar) e).var instanceof VarSimple
+                && this.res.binding((VarSimple) ((ExpVar) e).var) == this.index;
+    }
+
+    // //////////////////////// private methods ////////////////////////
+
+    /*
+     * Looks at e, a part of the loop: in the second pass, an invariant
+     * expression is noted, and looked no further into
+     */
+    private void exp(Exp e) {
+        if (this.collecting && (e instanceof ExpOp || e instanceof ExpCall) && invariant(e))
+            this.invariants.add(e);
+        else
+            e.accept(this);
+    }
+
+    private void node() {
+        if (!this.collecting)
+            this.size++;
+    }
+
+    // //////////////////////// IAbsynVisitor ////////////////////////
+
+    @Override
+    public void visit(DeclGroupFunction d) {
+        // The bodies are other methods, which are not part of the loop, but
+        // can assign (boxed) variables of it
+        this.declaresFunctions = true;
+        if (!this.collecting) {
+            for (DeclFn dfn : d.fns)
+                dfn.body.accept(this);
+        }
+    }
+
+    @Override
+    public void visit(DeclGroupType d) {
+    }
+
+    @Override
+    public void visit(DeclVar d) {
+        node();
+        this.declared.add(this.res.variable(d));
+        exp(d.init);
+    }
+
+    @Override
+    public void visit(ExpArray e) {
+        node();
+        exp(e.size);
+        exp(e.init);
+    }
+
+    @Override
+    public void visit(ExpAssign e) {
+        node();
+        List<Exp> appended = append(e);
+        if (appended != null) {
+            if (!this.collecting)
+                this.appended.add(this.res.binding((VarSimple) e.lhs));
+            this.assigned.add(this.res.binding((VarSimple) e.lhs));
+            for (Exp part : appended)
+                exp(part);
+            return;
+        }
+        if (e.lhs instanceof VarSimple)
+            this.assigned.add(this.res.binding((VarSimple) e.lhs));
+        e.lhs.accept(this);
+        exp(e.rhs);
+    }
+
+    @Override
+    public void visit(ExpBreak e) {
+        node();
+    }
+
+    @Override
+    public void visit(ExpCall e) {
+        node();
+        for (Exp arg : e.args)
+            exp(arg);
+    }
+
+    @Override
+    public void visit(ExpFor e) {
+        node();
+        this.declared.add(this.res.variable(e));
+        exp(e.lo);
+        exp(e.hi);
+        this.loops++;
+        exp(e.body);
+        this.loops--;
+    }
+
+    @Override
+    public void visit(ExpIf e) {
+        node();
+        exp(e.test);
+        this.branches++;
+        exp(e.thenclause);
+        this.branches--;
+    }
+
+    @Override
+    public void visit(ExpIfElse e) {
+        node();
+        exp(e.test);
+        this.branches++;
+        exp(e.thenclause);
+        exp(e.elseclause);
+        this.branches--;
+    }
+
+    @Override
+    public void visit(ExpInt e) {
+        node();
+    }
+
+    @Override
+    public void visit(ExpLet e) {
+        node();
+        for (Decl d : e.decls)
+            d.accept(this);
+        exp(e.body);
+    }
+
+    @Override
+    public void visit(ExpNil e) {
+        node();
+    }
+
+    @Override
+    public void visit(ExpOp e) {
+        node();
+        if (this.collecting && e.oper == ExpOp.Op.MUL && (isIndex(e.left) || isIndex(e.right))
+                && invariant(factor(e)) && (this.loops > 0 || this.branches == 0)) {
+            this.products.add(e);
+            return;
+        }
+        exp(e.left);
+        boolean shortCircuit = (e.oper == ExpOp.Op.AND || e.oper == ExpOp.Op.OR);
+        if (shortCircuit)
+            this.branches++;
+        exp(e.right);
+        if (shortCircuit)
+            this.branches--;
+    }
+
+    @Override
+    public void visit(ExpRecord e) {
+        node();
+        for (tigerc.util.Pair<tigerc.util.Symbol, Exp> field : e.fields)
+            exp(field.snd);
+    }
+
+    @Override
+    public void visit(ExpSeq e) {
+        for (Exp e1 : e.list)
+            exp(e1);
+    }
+
+    @Override
+    public void visit(ExpString e) {
+        node();
+    }
+
+    @Override
+    public void visit(ExpVar e) {
+        e.var.accept(this);
+    }
+
+    @Override
+    public void visit(ExpWhile e) {
+        node();
+        this.loops++;
+        exp(e.test);
+        exp(e.body);
+        this.loops--;
+    }
+
+    @Override
+    public void visit(TyArray t) {
+    }
+
+    @Override
+    public void visit(TyName t) {
+    }
+
+    @Override
+    public void visit(TyRecord t) {
+    }
+
+    @Override
+    public void visit(VarField v) {
+        node();
+        v.var.accept(this);
+    }
+
+    @Override
+    public void visit(VarSimple v) {
+        node();
+        this.used.add(this.res.binding(v));
+    }
+
+    @Override
+    public void visit(VarSubscript v) {
+        node();
+        v.var.accept(this);
+        exp(v.index);
+    }
+}
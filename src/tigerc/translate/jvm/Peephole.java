@@ -0,0 +1,232 @@
+/*
+    Peephole.java
+
+    A peephole optimizer for the body of a method.  JVMGeneratorV produces
+    each construct's code on its own, without looking at what comes before
+    or after it, and the seams show:  a comparison leaves 0 or 1 on the
+    stack only for the if or while around it to branch on it at once, a
+    branch goes to a goto, or to the very next instruction, a loop tests a
+    constant, and the code after a break can never run.  Each of the passes here looks through a
+    small window of the instructions for one of these patterns and rewrites
+    it, and they are repeated until none of them finds anything more to do.
+
+    No pass changes what is on the stack at any label, or what the method
+    does;  only how many instructions it takes to do it.
+
+    History:
+        10/18/2026        created
+ */
+
+package tigerc.translate.jvm;
+
+import java.util.List;
+import java.util.Map;
+
+public class Peephole {
+
+    /**
+     * Rewrites code in place.
+     */
+    public static void optimize(InsnList code) {
+        List<Insn> insns = code.insns();
+        boolean changed;
+        do {
+            changed = dropUnusedLabels(insns);
+            changed |= dropUnreachable(insns);
+            changed |= threadJumps(insns);
+            changed |= rewrite(insns);
+        } while (changed);
+    }
+
+    /*
+     * A label that nothing branches to is only in the way of the patterns
+     * below.
+     */
+    private static boolean dropUnusedLabels(List<Insn> insns) {
+        Map<Label, Integer> refs = references(insns);
+        return insns.removeIf(i -> i.isLabel() && !refs.containsKey(i.target));
+    }
+
+    /*
+     * Code that follows a goto or a return, up to the next label, can never
+     * run (at this point, every label is the target of some branch).
+     */
+    private static boolean dropUnreachable(List<Insn> insns) {
+        List<Insn> out = new java.util.ArrayList<>(insns.size());
+        boolean reachable = true;
+        for (Insn i : insns) {
+            if (i.isLabel())
+                reachable = true;
+            if (reachable)
+                out.add(i);
+            if (i.endsBlock())
+                reachable = false;
+        }
+        return replace(insns, out);
+    }
+
+    /*
+     * A branch to a goto goes straight to where that goto goes, and a goto
+     * to a return is that return.
+     */
+    private static boolean threadJumps(List<Insn> insns) {
+        Map<Label, Integer> at = new java.util.HashMap<>();
+        for (int k = 0; k < insns.size(); k++) {
+            if (insns.get(k).isLabel())
+                at.put(insns.get(k).target, k);
+        }
+
+        boolean changed = false;
+        for (int k = 0; k < insns.size(); k++) {
+            Insn i = insns.get(k);
+            if (!i.isJump())
+                continue;
+
+            Label dest = i.target;
+            java.util.Set<Label> seen = new java.util.HashSet<>();
+            Insn next = firstAfter(insns, at.get(dest));
+            while (next.isJump() && next.opcode.equals("goto")) {
+                seen.add(dest);
+                dest = next.target;
+                if (seen.contains(dest)) {
+                    // (a loop of gotos, which can never be left: leave it be)
+                    dest = i.target;
+                    next = firstAfter(insns, at.get(dest));
+                    break;
+                }
+                next = firstAfter(insns, at.get(dest));
+            }
+
+            if (i.opcode.equals("goto") && next.endsBlock() && !next.isJump()) {
+                insns.set(k, next);
+                changed = true;
+            } else if (dest != i.target) {
+                insns.set(k, i.to(dest));
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /*
+     * The patterns that fit in a window of a few instructions
+     */
+    private static boolean rewrite(List<Insn> insns) {
+        Map<Label, Integer> refs = references(insns);
+        List<Insn> out = new java.util.ArrayList<>(insns.size());
+
+        for (int k = 0; k < insns.size(); k++) {
+            Insn i = insns.get(k);
+
+            // goto L; L:  ==>  L:
+            if (i.isJump() && i.opcode.equals("goto") && fallsTo(insns, k + 1, i.target))
+                continue;
+
+            // ifXX L1; goto L2; L1:  ==>  ifYY L2; L1:  (where YY is the
+            // opposite of XX)
+            if (i.isJump() && !i.opcode.equals("goto") && k + 2 < insns.size() && insns.get(k + 1).isJump()
+                    && insns.get(k + 1).opcode.equals("goto") && fallsTo(insns, k + 2, i.target)) {
+                out.add(i.negate().to(insns.get(k + 1).target));
+                k += 1;
+                continue;
+            }
+
+            // The code for a comparison, followed by a branch on its value:
+            //
+            // ifXX T; iconst_0; goto E; T: iconst_1; E: ifeq L  ==>  ifYY L
+            // ifXX T; iconst_0; goto E; T: iconst_1; E: ifne L  ==>  ifXX L
+            if (i.isJump() && !i.opcode.equals("goto") && k + 6 < insns.size()) {
+                Insn zero = insns.get(k + 1), skip = insns.get(k + 2), t = insns.get(k + 3),
+                        one = insns.get(k + 4), e = insns.get(k + 5), test = insns.get(k + 6);
+                if ("iconst_0".equals(zero.opcode) && skip.isJump() && skip.opcode.equals("goto") && t.isLabel()
+                        && t.target.equals(i.target) && "iconst_1".equals(one.opcode) && e.isLabel()
+                        && e.target.equals(skip.target) && refs.get(t.target) == 1 && refs.get(e.target) == 1
+                        && test.isJump() && (test.opcode.equals("ifeq") || test.opcode.equals("ifne"))) {
+                    out.add((test.opcode.equals("ifne") ? i : i.negate()).to(test.target));
+                    k += 6;
+                    continue;
+                }
+            }
+
+            if (k + 1 < insns.size()) {
+                Insn j = insns.get(k + 1);
+
+                // iload n; istore n  ==>  (nothing), and likewise for aload
+                if ((i.opcode != null && i.opcode.equals("iload") && j.is("istore", i))
+                        || (i.opcode != null && i.opcode.equals("aload") && j.is("astore", i))) {
+                    k += 1;
+                    continue;
+                }
+
+                // iconst_1; ifne L  ==>  goto L, iconst_1; ifeq L  ==>  (nothing),
+                // and likewise for iconst_0 (as in "while 1 do ...")
+                if (("iconst_0".equals(i.opcode) || "iconst_1".equals(i.opcode)) && j.isJump()
+                        && (j.opcode.equals("ifeq") || j.opcode.equals("ifne"))) {
+                    if (i.opcode.equals("iconst_0") == j.opcode.equals("ifeq"))
+                        out.add(Insn.jump("goto", j.target));
+                    k += 1;
+                    continue;
+                }
+
+                // A value pushed only to be popped
+                if ("pop".equals(j.opcode) && i.opcode != null && PURE_PUSHES.contains(i.opcode)) {
+                    k += 1;
+                    continue;
+                }
+            }
+
+            out.add(i);
+        }
+        return replace(insns, out);
+    }
+
+    // //////////////////////// private utility methods ////////////////////////
+
+    // Instructions that push one word, and do nothing else
+    private static final java.util.Set<String> PURE_PUSHES = new java.util.HashSet<>(java.util.Arrays.asList(
+            "iload", "aload", "iconst_m1", "iconst_0", "iconst_1", "iconst_2", "iconst_3", "iconst_4", "iconst_5",
+            "bipush", "sipush", "ldc", "aconst_null", "dup"));
+
+    /*
+     * The number of branches to each label
+     */
+    private static Map<Label, Integer> references(List<Insn> insns) {
+        Map<Label, Integer> refs = new java.util.HashMap<>();
+        for (Insn i : insns) {
+            if (i.isJump())
+                refs.merge(i.target, 1, Integer::sum);
+        }
+        return refs;
+    }
+
+    /*
+     * Whether l is among the labels at insns[k] and right after it
+     */
+    private static boolean fallsTo(List<Insn> insns, int k, Label l) {
+        for (; k < insns.size() && insns.get(k).isLabel(); k++) {
+            if (insns.get(k).target.equals(l))
+                return true;
+        }
+        return false;
+    }
+
+    /*
+     * The first instruction after insns[k] that is not a label, or a label
+     * if there is none (at the end of the body)
+     */
+    private static Insn firstAfter(List<Insn> insns, int k) {
+        for (int j = k + 1; j < insns.size(); j++) {
+            if (!insns.get(j).isLabel())
+                return insns.get(j);
+        }
+        return insns.get(k);
+    }
+
+    private static boolean replace(List<Insn> insns, List<Insn> out) {
+        if (out.size() == insns.size())
+            return false;
+        insns.clear();
+        insns.addAll(out);
+        return true;
+    }
+}
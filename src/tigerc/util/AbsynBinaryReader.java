@@ -0,0 +1,304 @@
+/**************************************************************
+ ** AbsynBinaryReader.java
+ *
+ *  Loads an abstract syntax tree written by AbsynBinaryWriter (which
+ *  describes the format).  Files are memory-mapped rather than read, and
+ *  the entries of the string table are only decoded -- and, for
+ *  identifiers, interned -- the first time a node refers to them.
+ *
+ *  The tree that comes back is indistinguishable from the one the parser
+ *  built: same classes, same symbols, same positions.  Nothing downstream
+ *  of the parser (SemantV, InterpV, JVMGeneratorV) needs to know where it
+ *  came from.
+ *
+ *  History: 10/18/2026 created
+ *
+ **************************************************************/
+
+package tigerc.util;
+
+import static tigerc.util.AbsynBinaryWriter.*;
+
+import tigerc.syntax.absyn.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+public class AbsynBinaryReader {
+	private final ByteBuffer buf;
+	private final int[] stringStart;
+	private final int[] stringLength;
+	private final String[] strings;
+	private final Symbol[] symbols;
+	private int lastPos = 0;
+
+	private AbsynBinaryReader(ByteBuffer b) throws IOException {
+		this.buf = b;
+
+		int n = uv();
+		if (n < 0 || n > b.remaining())
+			throw new IOException("corrupt binary AST: bad string table");
+		this.stringStart = new int[n];
+		this.stringLength = new int[n];
+		this.strings = new String[n];
+		this.symbols = new Symbol[n];
+		for (int i = 0; i < n; i++) {
+			this.stringLength[i] = uv();
+			this.stringStart[i] = b.position();
+			b.position(b.position() + this.stringLength[i]);
+		}
+	}
+
+	/**
+	 * Returns true if f begins with the binary AST magic number.
+	 */
+	public static boolean isBinaryAbsyn(File f) {
+		try (java.io.InputStream in = new java.io.FileInputStream(f)) {
+			byte[] m = new byte[MAGIC.length];
+			return in.read(m) == m.length && java.util.Arrays.equals(m, MAGIC);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Maps the file f into memory and returns the tree it holds.
+	 *
+	 * @throws IOException
+	 *             if f cannot be read, or is not a binary AST file of a
+	 *             version that this reader understands
+	 */
+	public static IAbsyn read(File f) throws IOException {
+		try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+			// The mapping remains valid after the channel is closed
+			return read(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+		}
+	}
+
+	/**
+	 * Returns the tree held in b, from its current position on.
+	 */
+	public static IAbsyn read(ByteBuffer b) throws IOException {
+		b.order(java.nio.ByteOrder.BIG_ENDIAN);
+		byte[] m = new byte[MAGIC.length];
+		if (b.remaining() < m.length + 2)
+			throw new IOException("not a binary AST file");
+		b.get(m);
+		if (!java.util.Arrays.equals(m, MAGIC))
+			throw new IOException("not a binary AST file");
+		int version = b.getShort() & 0xffff;
+		if (version != VERSION)
+			throw new IOException("unsupported binary AST version " + version
+					+ " (expected " + VERSION + ")");
+
+		try {
+			return (IAbsyn) new AbsynBinaryReader(b).node();
+		} catch (RuntimeException e) {
+			// BufferUnderflowException, ClassCastException, etc.
+			throw new IOException("corrupt binary AST: " + e, e);
+		}
+	}
+
+	/*************************************************************************
+	 ***** private utility methods
+	 ****************************/
+
+	private ISyntaxElt node() throws IOException {
+		int tag = this.buf.get();
+		if (tag == TAG_NULL)
+			return null;
+
+		int p = this.lastPos + sv();
+		this.lastPos = p;
+
+		switch (tag) {
+		case TAG_DECL_GROUP_FUNCTION: {
+			int n = uv();
+			List<DeclFn> fns = new java.util.ArrayList<>(capacity(n));
+			for (int i = 0; i < n; i++)
+				fns.add((DeclFn) node());
+			return new DeclGroupFunction(p, fns);
+		}
+		case TAG_DECL_FN: {
+			Symbol name = symbol();
+			List<Pair<Symbol, Symbol>> params = pairs();
+			TyName result = (TyName) node();
+			return new DeclFn(p, name, params, result, (Exp) node());
+		}
+		case TAG_DECL_GROUP_TYPE: {
+			int n = uv();
+			List<DeclTy> decls = new java.util.ArrayList<>(capacity(n));
+			for (int i = 0; i < n; i++)
+				decls.add((DeclTy) node());
+			return new DeclGroupType(p, decls);
+		}
+		case TAG_DECL_TY: {
+			Symbol name = symbol();
+			return new DeclTy(p, name, (Ty) node());
+		}
+		case TAG_DECL_VAR: {
+			Symbol name = symbol();
+			Symbol typ = symbol();
+			return new DeclVar(p, name, typ, (Exp) node());
+		}
+		case TAG_EXP_ARRAY: {
+			Symbol typ = symbol();
+			Exp size = (Exp) node();
+			return new ExpArray(p, typ, size, (Exp) node());
+		}
+		case TAG_EXP_ASSIGN: {
+			Var lhs = (Var) node();
+			return new ExpAssign(p, lhs, (Exp) node());
+		}
+		case TAG_EXP_BREAK:
+			return new ExpBreak(p);
+		case TAG_EXP_CALL: {
+			Symbol func = symbol();
+			return new ExpCall(p, func, this.<Exp>nodes());
+		}
+		case TAG_EXP_FOR: {
+			Symbol var = symbol();
+			Exp lo = (Exp) node();
+			Exp hi = (Exp) node();
+			return new ExpFor(p, var, lo, hi, (Exp) node());
+		}
+		case TAG_EXP_IF: {
+			Exp test = (Exp) node();
+			return new ExpIf(p, test, (Exp) node());
+		}
+		case TAG_EXP_IF_ELSE: {
+			Exp test = (Exp) node();
+			Exp thenclause = (Exp) node();
+			return new ExpIfElse(p, test, thenclause, (Exp) node());
+		}
+		case TAG_EXP_INT:
+			return new ExpInt(p, sv());
+		case TAG_EXP_LET: {
+			List<Decl> decls = this.<Decl>nodes();
+			return new ExpLet(p, decls, (Exp) node());
+		}
+		case TAG_EXP_NIL:
+			return new ExpNil(p);
+		case TAG_EXP_OP: {
+			ExpOp.Op oper = ExpOp.Op.values()[uv()];
+			Exp left = (Exp) node();
+			return new ExpOp(p, left, oper, (Exp) node());
+		}
+		case TAG_EXP_RECORD: {
+			Symbol type = symbol();
+			int n = uv();
+			List<Pair<Symbol, Exp>> fields = new java.util.ArrayList<>(capacity(n));
+			for (int i = 0; i < n; i++) {
+				Symbol f = symbol();
+				fields.add(new Pair<Symbol, Exp>(f, (Exp) node()));
+			}
+			return new ExpRecord(p, type, fields);
+		}
+		case TAG_EXP_SEQ:
+			return new ExpSeq(p, this.<Exp>nodes());
+		case TAG_EXP_STRING:
+			return new ExpString(p, string());
+		case TAG_EXP_VAR:
+			return new ExpVar(p, (Var) node());
+		case TAG_EXP_WHILE: {
+			Exp test = (Exp) node();
+			return new ExpWhile(p, test, (Exp) node());
+		}
+		case TAG_TY_ARRAY:
+			return new TyArray(p, symbol());
+		case TAG_TY_NAME:
+			return new TyName(p, symbol());
+		case TAG_TY_RECORD:
+			return new TyRecord(p, pairs());
+		case TAG_VAR_FIELD: {
+			Var var = (Var) node();
+			return new VarField(p, var, symbol());
+		}
+		case TAG_VAR_SIMPLE:
+			return new VarSimple(p, symbol());
+		case TAG_VAR_SUBSCRIPT: {
+			Var var = (Var) node();
+			return new VarSubscript(p, var, (Exp) node());
+		}
+		default:
+			throw new IOException("corrupt binary AST: unknown node tag " + tag);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> List<T> nodes() throws IOException {
+		int n = uv();
+		List<T> ns = new java.util.ArrayList<>(capacity(n));
+		for (int i = 0; i < n; i++)
+			ns.add((T) node());
+		return ns;
+	}
+
+	private List<Pair<Symbol, Symbol>> pairs() {
+		int n = uv();
+		List<Pair<Symbol, Symbol>> ps = new java.util.ArrayList<>(capacity(n));
+		for (int i = 0; i < n; i++) {
+			Symbol id = symbol();
+			ps.add(new Pair<Symbol, Symbol>(id, symbol()));
+		}
+		return ps;
+	}
+
+	/*
+	 * Every element takes at least one byte, so a corrupt count can't make us
+	 * allocate more than the file could hold.
+	 */
+	private int capacity(int n) {
+		return Math.max(0, Math.min(n, this.buf.remaining()));
+	}
+
+	private String string() {
+		int i = uv() - 1;
+		if (i < 0)
+			return null;
+
+		if (this.strings[i] == null) {
+			byte[] b = new byte[this.stringLength[i]];
+			ByteBuffer view = this.buf.duplicate();
+			view.position(this.stringStart[i]);
+			view.get(b);
+			this.strings[i] = new String(b, StandardCharsets.UTF_8);
+		}
+		return this.strings[i];
+	}
+
+	private Symbol symbol() {
+		int at = this.buf.position();
+		int i = uv() - 1;
+		if (i < 0)
+			return null;
+
+		if (this.symbols[i] == null) {
+			this.buf.position(at);
+			this.symbols[i] = Symbol.sym(string());
+		}
+		return this.symbols[i];
+	}
+
+	private int uv() {
+		int n = 0;
+		for (int shift = 0;; shift += 7) {
+			if (shift > 28)
+				throw new IllegalStateException("varint too long");
+			byte b = this.buf.get();
+			n |= (b & 0x7f) << shift;
+			if (b >= 0)
+				return n;
+		}
+	}
+
+	private int sv() {
+		int n = uv();
+		return (n >>> 1) ^ -(n & 1);
+	}
+}
@@ -0,0 +1,353 @@
+/**************************************************************
+ ** AbsynBinaryWriter.java
+ *
+ *  Serializes an abstract syntax tree into TigerC's binary AST format,
+ *  which AbsynBinaryReader loads without lexing or parsing anything.
+ *
+ *  A file in this format is laid out as follows.  All multi-byte integers
+ *  in the header are big-endian; everything after it is a sequence of
+ *  unsigned LEB128 varints ("uv") and zig-zag encoded signed varints ("sv").
+ *
+ *     magic     4 bytes, "TAST"
+ *     version   u2, currently 1
+ *     strings   uv n, then n entries of (uv length, UTF-8 bytes)
+ *     tree      the root node
+ *
+ *  A node is a one-byte tag (see the TAG_ constants) followed by its
+ *  position and then its children, in the order in which they are
+ *  declared in the node's class.  Positions are written as the sv
+ *  difference from the previous node's position, which is almost always a
+ *  small number.  A symbol or string is an index into the string table,
+ *  offset by one so that 0 can stand for null.  A list is a uv count
+ *  followed by its elements.  The (id, type) pairs of parameters and
+ *  record fields are written as two symbols; the (id, exp) pairs of record
+ *  expressions as a symbol and a node.
+ *
+ *  History: 10/18/2026 created
+ *
+ **************************************************************/
+
+package tigerc.util;
+
+import tigerc.syntax.absyn.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class AbsynBinaryWriter implements IAbsynVisitor {
+	static final byte[] MAGIC = { 'T', 'A', 'S', 'T' };
+	static final int VERSION = 1;
+
+	static final int TAG_NULL = 0;
+	static final int TAG_DECL_GROUP_FUNCTION = 1;
+	static final int TAG_DECL_GROUP_TYPE = 2;
+	static final int TAG_DECL_VAR = 3;
+	static final int TAG_EXP_ARRAY = 4;
+	static final int TAG_EXP_ASSIGN = 5;
+	static final int TAG_EXP_BREAK = 6;
+	static final int TAG_EXP_CALL = 7;
+	static final int TAG_EXP_FOR = 8;
+	static final int TAG_EXP_IF = 9;
+	static final int TAG_EXP_IF_ELSE = 10;
+	static final int TAG_EXP_INT = 11;
+	static final int TAG_EXP_LET = 12;
+	static final int TAG_EXP_NIL = 13;
+	static final int TAG_EXP_OP = 14;
+	static final int TAG_EXP_RECORD = 15;
+	static final int TAG_EXP_SEQ = 16;
+	static final int TAG_EXP_STRING = 17;
+	static final int TAG_EXP_VAR = 18;
+	static final int TAG_EXP_WHILE = 19;
+	static final int TAG_TY_ARRAY = 20;
+	static final int TAG_TY_NAME = 21;
+	static final int TAG_TY_RECORD = 22;
+	static final int TAG_VAR_FIELD = 23;
+	static final int TAG_VAR_SIMPLE = 24;
+	static final int TAG_VAR_SUBSCRIPT = 25;
+	static final int TAG_DECL_FN = 26;
+	static final int TAG_DECL_TY = 27;
+
+	private final ByteArrayOutputStream tree = new ByteArrayOutputStream();
+	private final java.util.Map<String, Integer> strings = new java.util.LinkedHashMap<>();
+	private int lastPos = 0;
+
+	private AbsynBinaryWriter() {
+	}
+
+	/**
+	 * Writes the binary form of prog to out. The stream is not closed.
+	 */
+	public static void write(IAbsyn prog, OutputStream out) throws IOException {
+		AbsynBinaryWriter w = new AbsynBinaryWriter();
+		w.node(prog);
+
+		DataOutputStream data = new DataOutputStream(out);
+		data.write(MAGIC);
+		data.writeShort(VERSION);
+
+		ByteArrayOutputStream table = new ByteArrayOutputStream();
+		uv(table, w.strings.size());
+		for (String s : w.strings.keySet()) {
+			byte[] b = s.getBytes(StandardCharsets.UTF_8);
+			uv(table, b.length);
+			table.write(b);
+		}
+		table.writeTo(data);
+		w.tree.writeTo(data);
+		data.flush();
+	}
+
+	/**
+	 * Writes the binary form of prog to the file f.
+	 */
+	public static void write(IAbsyn prog, java.io.File f) throws IOException {
+		try (OutputStream out = new java.io.BufferedOutputStream(
+				new java.io.FileOutputStream(f))) {
+			write(prog, out);
+		}
+	}
+
+	@Override
+	public void visit(DeclGroupFunction d) {
+		header(TAG_DECL_GROUP_FUNCTION, d);
+		uv(this.tree, d.fns.size());
+		for (DeclFn f : d.fns) {
+			header(TAG_DECL_FN, f);
+			string(f.name);
+			pairs(f.params);
+			node(f.resultTy);
+			node(f.body);
+		}
+	}
+
+	@Override
+	public void visit(DeclGroupType d) {
+		header(TAG_DECL_GROUP_TYPE, d);
+		uv(this.tree, d.decls.size());
+		for (DeclTy t : d.decls) {
+			header(TAG_DECL_TY, t);
+			string(t.name);
+			node(t.ty);
+		}
+	}
+
+	@Override
+	public void visit(DeclVar d) {
+		header(TAG_DECL_VAR, d);
+		string(d.name);
+		string(d.typ);
+		node(d.init);
+	}
+
+	@Override
+	public void visit(ExpArray e) {
+		header(TAG_EXP_ARRAY, e);
+		string(e.typ);
+		node(e.size);
+		node(e.init);
+	}
+
+	@Override
+	public void visit(ExpAssign e) {
+		header(TAG_EXP_ASSIGN, e);
+		node(e.lhs);
+		node(e.rhs);
+	}
+
+	@Override
+	public void visit(ExpBreak e) {
+		header(TAG_EXP_BREAK, e);
+	}
+
+	@Override
+	public void visit(ExpCall e) {
+		header(TAG_EXP_CALL, e);
+		string(e.func);
+		nodes(e.args);
+	}
+
+	@Override
+	public void visit(ExpFor e) {
+		header(TAG_EXP_FOR, e);
+		string(e.var);
+		node(e.lo);
+		node(e.hi);
+		node(e.body);
+	}
+
+	@Override
+	public void visit(ExpIf e) {
+		header(TAG_EXP_IF, e);
+		node(e.test);
+		node(e.thenclause);
+	}
+
+	@Override
+	public void visit(ExpIfElse e) {
+		header(TAG_EXP_IF_ELSE, e);
+		node(e.test);
+		node(e.thenclause);
+		node(e.elseclause);
+	}
+
+	@Override
+	public void visit(ExpInt e) {
+		header(TAG_EXP_INT, e);
+		sv(this.tree, e.value);
+	}
+
+	@Override
+	public void visit(ExpLet e) {
+		header(TAG_EXP_LET, e);
+		nodes(e.decls);
+		node(e.body);
+	}
+
+	@Override
+	public void visit(ExpNil e) {
+		header(TAG_EXP_NIL, e);
+	}
+
+	@Override
+	public void visit(ExpOp e) {
+		header(TAG_EXP_OP, e);
+		uv(this.tree, e.oper.val);
+		node(e.left);
+		node(e.right);
+	}
+
+	@Override
+	public void visit(ExpRecord e) {
+		header(TAG_EXP_RECORD, e);
+		string(e.type);
+		uv(this.tree, e.fields.size());
+		for (Pair<Symbol, Exp> p : e.fields) {
+			string(p.fst);
+			node(p.snd);
+		}
+	}
+
+	@Override
+	public void visit(ExpSeq e) {
+		header(TAG_EXP_SEQ, e);
+		nodes(e.list);
+	}
+
+	@Override
+	public void visit(ExpString e) {
+		header(TAG_EXP_STRING, e);
+		string(e.value);
+	}
+
+	@Override
+	public void visit(ExpVar e) {
+		header(TAG_EXP_VAR, e);
+		node(e.var);
+	}
+
+	@Override
+	public void visit(ExpWhile e) {
+		header(TAG_EXP_WHILE, e);
+		node(e.test);
+		node(e.body);
+	}
+
+	@Override
+	public void visit(TyArray t) {
+		header(TAG_TY_ARRAY, t);
+		string(t.typ);
+	}
+
+	@Override
+	public void visit(TyName t) {
+		header(TAG_TY_NAME, t);
+		string(t.name);
+	}
+
+	@Override
+	public void visit(TyRecord t) {
+		header(TAG_TY_RECORD, t);
+		pairs(t.fields);
+	}
+
+	@Override
+	public void visit(VarField v) {
+		header(TAG_VAR_FIELD, v);
+		node(v.var);
+		string(v.field);
+	}
+
+	@Override
+	public void visit(VarSimple v) {
+		header(TAG_VAR_SIMPLE, v);
+		string(v.name);
+	}
+
+	@Override
+	public void visit(VarSubscript v) {
+		header(TAG_VAR_SUBSCRIPT, v);
+		node(v.var);
+		node(v.index);
+	}
+
+	/*************************************************************************
+	 ***** private utility methods
+	 ****************************/
+
+	private void node(IAbsyn n) {
+		if (n == null)
+			this.tree.write(TAG_NULL);
+		else
+			n.accept(this);
+	}
+
+	private void nodes(List<? extends IAbsyn> ns) {
+		uv(this.tree, ns.size());
+		for (IAbsyn n : ns)
+			node(n);
+	}
+
+	private void pairs(List<Pair<Symbol, Symbol>> ps) {
+		uv(this.tree, ps.size());
+		for (Pair<Symbol, Symbol> p : ps) {
+			string(p.fst);
+			string(p.snd);
+		}
+	}
+
+	private void header(int tag, ISyntaxElt n) {
+		this.tree.write(tag);
+		sv(this.tree, n.getPos() - this.lastPos);
+		this.lastPos = n.getPos();
+	}
+
+	private void string(Object s) {
+		if (s == null) {
+			uv(this.tree, 0);
+		} else {
+			String k = s.toString();
+			Integer i = this.strings.get(k);
+			if (i == null) {
+				i = this.strings.size();
+				this.strings.put(k, i);
+			}
+			uv(this.tree, i + 1);
+		}
+	}
+
+	private static void uv(ByteArrayOutputStream out, int n) {
+		while ((n & ~0x7f) != 0) {
+			out.write((n & 0x7f) | 0x80);
+			n >>>= 7;
+		}
+		out.write(n);
+	}
+
+	private static void sv(ByteArrayOutputStream out, int n) {
+		uv(out, (n << 1) ^ (n >> 31));
+	}
+}
@@ -1,60 +1,227 @@
 /**************************************************************
  ** Symbol.java
  *
- *  The Symbol class provides a representation of Tiger symbols that supports 
+ *  The Symbol class provides a representation of Tiger symbols that supports
  *  fast equality and comparison checking.
- * 
- *  Source code taken from Andrew Appel's _Modern Compiler Implementation in Java_, 
+ *
+ *  Source code taken from Andrew Appel's _Modern Compiler Implementation in Java_,
  *  updated (J. Lasseter) to use the new java.util.Map interface and generics.
- *  
+ *
+ *  Each Symbol also carries a small, dense integer id, assigned in the order
+ *  in which symbols are first interned.  The id is what environments and
+ *  record layouts hash on.  The symbols a thread can see -- the global ones,
+ *  and those of the session open on it -- have distinct ids, all below
+ *  bound(), so a table of per-symbol data can be an array indexed by id.
+ *  (That holds as long as no global symbol is interned while another thread
+ *  has a session of its own open;  see Dictionary.)
+ *
+ *  Interning is done in a ConcurrentHashMap, so lookups of symbols that
+ *  already exist never take a lock.  A long-running process (e.g., the
+ *  interactive interpreter) should open a Session for each compilation, so
+ *  that the identifiers of one program do not accumulate in the dictionary
+ *  forever.  Names that must outlive every session -- the built-in types and
+ *  the standard library bindings -- are interned with global().  A session
+ *  belongs to the thread that opened it;  a worker thread doing part of the
+ *  same compilation must join() it.
+ *
+ *  History: 10/18/2026 concurrent interning, dense ids, sessions, O(1) fresh()
+ *           10/19/2026 global symbols made in a session take its ids, so
+ *                      ids stay distinct; bound(); join()
+ *
  **************************************************************/
 
 package tigerc.util;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class Symbol {
-	private String name;
-	private static java.util.Map<String, Symbol> dict = new java.util.Hashtable<String, Symbol>();
-	private static int serialNum = 0;
+	private final String name;
+	public final int id;
 
-	private Symbol(String n) {
-		name = n;
+	private static final Dictionary global = new Dictionary(null);
+	private static final ThreadLocal<Session> session = new ThreadLocal<Session>();
+
+	private Symbol(String n, int id) {
+		this.name = n;
+		this.id = id;
 	}
 
 	public String toString() {
 		return name;
 	}
 
+	@Override
+	public int hashCode() {
+		return id;
+	}
+
 	/**
 	 * Make and return the unique symbol associated with a string. Repeated
-	 * calls to <tt>symbol("abc")</tt> will return the same Symbol.
+	 * calls to <tt>symbol("abc")</tt> will return the same Symbol (within the
+	 * same session, if one is open on the calling thread).
 	 */
 
 	public static Symbol sym(String n) {
-		String u = n.intern();
-		Symbol s = dict.get(u);
+		return current().intern(n);
+	}
+
+	/**
+	 * Like sym(), but the symbol is always interned in the process-wide
+	 * dictionary, regardless of any session open on the calling thread. Use
+	 * this for names that are bound in static tables, such as the standard
+	 * library environments.
+	 *
+	 * If a session is open on this thread (which happens when a static table
+	 * is initialized lazily, after parsing has begun), a new global symbol
+	 * takes the session's next id, and one the session has already interned
+	 * is promoted to the global dictionary, so that both names remain the
+	 * same Symbol.  Either way, no later global symbol or session can have
+	 * its id.
+	 */
+	public static Symbol global(String n) {
+		Session open = session.get();
+		if (open == null)
+			return global.intern(n);
+
+		Symbol s = global.dict.get(n);
 		if (s == null) {
-			s = new Symbol(u);
-			dict.put(u, s);
+			final Dictionary d = open.dict;
+			s = global.dict.computeIfAbsent(n, k -> {
+				Symbol own = d.dict.get(k);
+				return (own != null ? own : new Symbol(k, d.nextId.getAndIncrement()));
+			});
+			final int next = s.id + 1;
+			global.nextId.accumulateAndGet(next, Math::max);
 		}
 		return s;
 	}
 
+	/**
+	 * One more than the largest id of any symbol the calling thread can see
+	 * (in the session open on it, if there is one), and so the size of an
+	 * array indexed by their ids. It only grows as more are interned.
+	 */
+	public static int bound() {
+		return current().nextId.get();
+	}
+
 	/**
 	 * Generates a new identifier, guaranteed distinct from all other
 	 * identifiers used in the current compilation.
-	 * 
+	 *
+	 * Since a Tiger identifier must begin with a letter, no name of the form
+	 * "_t$n" can come from source code, so there is no need to search the
+	 * dictionary for a free name.
+	 *
 	 * @return The newly-generated identifier.
 	 */
 	public static Symbol fresh() {
-		while (dict.get("_t$" + serialNum) != null) {
-			serialNum += 1;
-		}
-
-		String u = "_t$" + serialNum++;
-		Symbol s = new Symbol(u);
-		// Unlike "ordinary" calls to Symbol.symbol(), the symbols generated
+		Dictionary d = current();
+		// Unlike "ordinary" calls to Symbol.sym(), the symbols generated
 		// here are not stored in the underlying hashtable.
+		return new Symbol("_t$" + d.nextFresh.getAndIncrement(), d.nextId.getAndIncrement());
+	}
 
+	/**
+	 * Begins a new interning session on the calling thread. Until the session
+	 * is closed, new names are interned in a dictionary private to the
+	 * session, which is discarded by close(). Names already in the global
+	 * dictionary resolve to the global symbols.
+	 *
+	 * Sessions may be nested; closing one restores the session (if any) that
+	 * was open when it began.
+	 */
+	public static Session openSession() {
+		Session s = new Session(session.get(), new Dictionary(global));
+		session.set(s);
 		return s;
 	}
+
+	/**
+	 * The session open on the calling thread, or null if there is none
+	 */
+	public static Session session() {
+		return session.get();
+	}
+
+	private static Dictionary current() {
+		Session s = session.get();
+		return (s == null ? global : s.dict);
+	}
+
+	/**
+	 * Handle for a per-compilation interning scope. Intended for use in a
+	 * try-with-resources statement.
+	 */
+	public static final class Session implements AutoCloseable {
+		private final Session enclosing;
+		private final Dictionary dict;
+
+		private Session(Session enclosing, Dictionary dict) {
+			this.enclosing = enclosing;
+			this.dict = dict;
+		}
+
+		/**
+		 * Opens this session on the calling thread too, as on a worker
+		 * thread doing part of the compilation this session is for, until the
+		 * handle returned is closed. Both threads then intern the same
+		 * symbols.
+		 */
+		public Session join() {
+			Session s = new Session(session.get(), this.dict);
+			session.set(s);
+			return s;
+		}
+
+		@Override
+		public void close() {
+			if (enclosing == null)
+				session.remove();
+			else
+				session.set(enclosing);
+		}
+	}
+
+	/*
+	 * One interning table. A session's table falls back on the global one, and
+	 * numbers its own symbols starting just past the global symbols that exist
+	 * when the session begins. A global symbol made from within the session
+	 * is numbered by the session, and the global numbering moves past it, so
+	 * that it is distinct from the session's symbols and from those of every
+	 * later session. (A global symbol interned while another thread has a
+	 * session of its own open could share an id with one of that session's,
+	 * which is why that is best avoided: they would still be distinct
+	 * Symbols, which is all that hashing on the id needs, but the ids would
+	 * not index an array. The threads of one compilation share a session;
+	 * see Session.join().)
+	 */
+	private static final class Dictionary {
+		final Dictionary parent;
+		final ConcurrentHashMap<String, Symbol> dict = new ConcurrentHashMap<String, Symbol>();
+		final AtomicInteger nextId;
+		final AtomicInteger nextFresh = new AtomicInteger();
+
+		Dictionary(Dictionary parent) {
+			this.parent = parent;
+			this.nextId = new AtomicInteger(parent == null ? 0 : parent.nextId.get());
+		}
+
+		Symbol intern(String n) {
+			if (parent != null) {
+				Symbol s = parent.dict.get(n);
+				if (s != null)
+					return s;
+			}
+
+			Symbol s = dict.get(n);
+			if (s == null) {
+				// The mapping function runs at most once per name, so ids stay
+				// dense even when two threads race to intern the same name.
+				s = dict.computeIfAbsent(n, k -> new Symbol(k, nextId.getAndIncrement()));
+			}
+			return s;
+		}
+	}
 }